@@ -0,0 +1,66 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.model.ChatMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The messages shared by the benchmarks, built the same way as the StompSubProtocolHandler builds them from the frontend clients' frames.
+ */
+final class BenchmarkMessages {
+
+    private BenchmarkMessages() {
+    }
+
+    /**
+     * @param contentLength: Length of ChatMessage.content, in characters.
+     * @return A CHAT ChatMessage, as sent by the frontend client in main.js.
+     */
+    static ChatMessage chatMessage(int contentLength) {
+        char[] content = new char[contentLength];
+        Arrays.fill(content, 'a');
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setType(ChatMessage.MessageType.CHAT);
+        chatMessage.setSender("benchmark");
+        chatMessage.setContent(new String(content));
+        return chatMessage;
+    }
+
+    /**
+     * @return A SEND frame of the ChatMessage to /app/chat.sendMessage.
+     */
+    static Message<byte[]> sendFrame(String sessionId, int contentLength) throws JsonProcessingException {
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        stompHeaderAccessor.setSessionId(sessionId);
+        stompHeaderAccessor.setSessionAttributes(new HashMap<>());
+        stompHeaderAccessor.setDestination("/app/chat.sendMessage");
+        stompHeaderAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        byte[] payload = new ObjectMapper().writeValueAsBytes(chatMessage(contentLength));
+        return MessageBuilder.createMessage(payload, stompHeaderAccessor.getMessageHeaders());
+    }
+
+    static Message<byte[]> connectFrame(String sessionId) {
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        stompHeaderAccessor.setSessionId(sessionId);
+        stompHeaderAccessor.setSessionAttributes(new HashMap<>());
+        stompHeaderAccessor.setAcceptVersion("1.2");
+        return MessageBuilder.createMessage(new byte[0], stompHeaderAccessor.getMessageHeaders());
+    }
+
+    static Message<byte[]> subscribeFrame(String sessionId, String destination) {
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        stompHeaderAccessor.setSessionId(sessionId);
+        stompHeaderAccessor.setSessionAttributes(new HashMap<>());
+        stompHeaderAccessor.setSubscriptionId("sub-0");
+        stompHeaderAccessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], stompHeaderAccessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.model.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of ChatMessage, which is done once per SEND frame (payload -> ChatMessage)
+ * and once per @SendTo(...) reply (ChatMessage -> payload).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatMessageSerializationBenchmark {
+
+    // Length of ChatMessage.content, in characters.
+    @Param({"16", "256", "4096"})
+    private int contentLength;
+
+    private ObjectWriter objectWriter;
+
+    private ObjectReader objectReader;
+
+    private ChatMessage chatMessage;
+
+    private byte[] chatMessageJson;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectWriter = objectMapper.writerFor(ChatMessage.class);
+        objectReader = objectMapper.readerFor(ChatMessage.class);
+        chatMessage = BenchmarkMessages.chatMessage(contentLength);
+        chatMessageJson = objectWriter.writeValueAsBytes(chatMessage);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectWriter.writeValueAsBytes(chatMessage);
+    }
+
+    @Benchmark
+    public ChatMessage deserialize() throws IOException {
+        return objectReader.readValue(chatMessageJson);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.scheduling.HashedWheelTaskScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The heartbeats rescheduled per second with 100k idle sessions, on 4 threads like the clientOutbound executor.
+ * A SockJS session cancels its heartbeat and schedules the next one (25 seconds later) every time a frame is sent to it,
+ * so this is the cost of the timers for every message sent.
+ * threadPool is the messageBrokerTaskScheduler that Spring gives the SockJS endpoints by default (a ThreadPoolTaskScheduler,
+ * which keeps the cancelled tasks in its heap until they are due, so it grows by 25 seconds of reschedules),
+ * threadPoolRemoveOnCancel removes them from the heap (O(log n) under its lock, like the webSocketTaskScheduler),
+ * and wheel is the HashedWheelTaskScheduler of websocket.heartbeat.wheel.enabled=true (100 ms ticks, 512 buckets).
+ * Run it with -prof gc as well: the allocations and the GC time matter as much as the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class HeartbeatSchedulerBenchmark {
+
+    private static final int SESSIONS = 100_000;
+
+    private static final long HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(25);
+
+    private static final Runnable HEARTBEAT = () -> { };
+
+    @Param({"threadPool", "threadPoolRemoveOnCancel", "wheel"})
+    private String scheduler;
+
+    private TaskScheduler taskScheduler;
+
+    private ThreadPoolTaskExecutor executor;
+
+    private AtomicReferenceArray<ScheduledFuture<?>> heartbeats;
+
+    @Setup
+    public void setup() {
+        if ("wheel".equals(scheduler)) {
+            executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(2);
+            executor.initialize();
+            taskScheduler = new HashedWheelTaskScheduler(100, 512, 256, executor, "benchmarkHeartbeatTaskScheduler");
+        } else {
+            ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
+            threadPoolTaskScheduler.setPoolSize(Runtime.getRuntime().availableProcessors());
+            threadPoolTaskScheduler.setRemoveOnCancelPolicy("threadPoolRemoveOnCancel".equals(scheduler));
+            threadPoolTaskScheduler.initialize();
+            taskScheduler = threadPoolTaskScheduler;
+        }
+        heartbeats = new AtomicReferenceArray<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            heartbeats.set(i, nextHeartbeat());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (taskScheduler instanceof HashedWheelTaskScheduler) {
+            ((HashedWheelTaskScheduler) taskScheduler).destroy();
+            executor.shutdown();
+        } else {
+            ((ThreadPoolTaskScheduler) taskScheduler).shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean reschedule() {
+        int session = ThreadLocalRandom.current().nextInt(SESSIONS);
+        return heartbeats.getAndSet(session, nextHeartbeat()).cancel(false);
+    }
+
+    private ScheduledFuture<?> nextHeartbeat() {
+        return taskScheduler.schedule(HEARTBEAT, new Date(System.currentTimeMillis() + HEARTBEAT_MILLIS));
+    }
+}
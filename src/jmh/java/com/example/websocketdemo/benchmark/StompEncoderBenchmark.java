@@ -0,0 +1,84 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.stomp.SharedPayloadStompEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding the MESSAGE frames of one broadcast to all the subscribers, as the StompSubProtocolHandler does:
+ * StompEncoder encodes every frame from scratch, SharedPayloadStompEncoder encodes the payload once.
+ * Run with -prof gc to compare the allocation per broadcast.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StompEncoderBenchmark {
+
+    @Param({"StompEncoder", "SharedPayloadStompEncoder"})
+    private String encoderName;
+
+    @Param({"1000"})
+    private int subscriberCount;
+
+    @Param({"256", "4096"})
+    private int payloadSize;
+
+    private StompEncoder stompEncoder;
+
+    private byte[] payload;
+
+    // The headers of the message of each subscriber, as created by the SimpleBrokerMessageHandler and the StompSubProtocolHandler.
+    private List<Map<String, Object>> subscriberHeaders;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        stompEncoder = "SharedPayloadStompEncoder".equals(encoderName) ? new SharedPayloadStompEncoder(128) : new StompEncoder();
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'a');
+        subscriberHeaders = new ArrayList<>(subscriberCount);
+        for (int i = 0; i < subscriberCount; i++) {
+            SimpMessageHeaderAccessor simpMessageHeaderAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            simpMessageHeaderAccessor.setSessionId("session-" + i);
+            simpMessageHeaderAccessor.setSubscriptionId("sub-0");
+            simpMessageHeaderAccessor.setDestination("/topic/public");
+            simpMessageHeaderAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            StompHeaderAccessor stompHeaderAccessor =
+                    StompHeaderAccessor.wrap(MessageBuilder.createMessage(payload, simpMessageHeaderAccessor.getMessageHeaders()));
+            stompHeaderAccessor.updateStompCommandAsServerMessage();
+            subscriberHeaders.add(stompHeaderAccessor.getMessageHeaders());
+        }
+    }
+
+    @Benchmark
+    public void encodeBroadcast(Blackhole blackhole) {
+        for (Map<String, Object> headers : subscriberHeaders) {
+            blackhole.consume(stompEncoder.encode(headers, payload));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.controller.ChatController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.support.SimpAnnotationMethodMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full path of a chat message through the STOMP message broker, in one thread:
+ * SEND frame from the publisher -> StompSubProtocolHandler (decode) -> clientInboundChannel -> ChatController.sendMessage(...)
+ * -> brokerChannel -> SimpleBrokerMessageHandler -> clientOutboundChannel -> StompSubProtocolHandler (encode) -> each of the subscribers.
+ *
+ * The channels have no executors, so every message is handled by the thread that sends it, and the WebSocket sessions are in-memory.
+ * The result is the time of one SEND frame, including the fanout to all the subscribers of /topic/public.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StompMessagePathBenchmark {
+
+    // Number of sessions subscribed to /topic/public.
+    @Param({"1", "100", "1000"})
+    private int subscriberCount;
+
+    @Param({"256"})
+    private int contentLength;
+
+    private final Map<String, BenchmarkWebSocketSession> sessions = new HashMap<>();
+
+    private GenericApplicationContext applicationContext;
+
+    private SimpAnnotationMethodMessageHandler simpAnnotationMethodMessageHandler;
+
+    private SimpleBrokerMessageHandler simpleBrokerMessageHandler;
+
+    private StompSubProtocolHandler stompSubProtocolHandler;
+
+    private ExecutorSubscribableChannel clientInboundChannel;
+
+    private BenchmarkWebSocketSession publisherSession;
+
+    private TextMessage sendFrame;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        clientInboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+
+        applicationContext = new GenericApplicationContext();
+        applicationContext.registerBean(ChatController.class);
+        applicationContext.refresh();
+
+        SimpMessagingTemplate brokerMessagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        brokerMessagingTemplate.setMessageConverter(new MappingJackson2MessageConverter());
+        simpAnnotationMethodMessageHandler = new SimpAnnotationMethodMessageHandler(clientInboundChannel, clientOutboundChannel, brokerMessagingTemplate);
+        simpAnnotationMethodMessageHandler.setApplicationContext(applicationContext);
+        simpAnnotationMethodMessageHandler.setDestinationPrefixes(Arrays.asList("/app"));
+        simpAnnotationMethodMessageHandler.setMessageConverter(new MappingJackson2MessageConverter());
+        simpAnnotationMethodMessageHandler.afterPropertiesSet();
+        simpAnnotationMethodMessageHandler.start();
+
+        simpleBrokerMessageHandler = new SimpleBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel,
+                Arrays.asList("/topic", "/queue"));
+        simpleBrokerMessageHandler.start();
+
+        stompSubProtocolHandler = new StompSubProtocolHandler();
+        clientOutboundChannel.subscribe(message -> {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            stompSubProtocolHandler.handleMessageToClient(sessions.get(sessionId), message);
+        });
+
+        publisherSession = openSession("publisher");
+        for (int i = 0; i < subscriberCount; i++) {
+            BenchmarkWebSocketSession subscriberSession = openSession("subscriber-" + i);
+            stompSubProtocolHandler.handleMessageFromClient(subscriberSession,
+                    textFrame(BenchmarkMessages.subscribeFrame(subscriberSession.getId(), "/topic/public")), clientInboundChannel);
+        }
+        sendFrame = textFrame(BenchmarkMessages.sendFrame(publisherSession.getId(), contentLength));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        simpleBrokerMessageHandler.stop();
+        simpAnnotationMethodMessageHandler.stop();
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public void sendAndFanout() {
+        stompSubProtocolHandler.handleMessageFromClient(publisherSession, sendFrame, clientInboundChannel);
+    }
+
+    private BenchmarkWebSocketSession openSession(String sessionId) {
+        BenchmarkWebSocketSession session = new BenchmarkWebSocketSession(sessionId);
+        sessions.put(sessionId, session);
+        stompSubProtocolHandler.afterSessionStarted(session, clientInboundChannel);
+        stompSubProtocolHandler.handleMessageFromClient(session, textFrame(BenchmarkMessages.connectFrame(sessionId)), clientInboundChannel);
+        return session;
+    }
+
+    private static TextMessage textFrame(Message<byte[]> message) {
+        return new TextMessage(new StompEncoder().encode(message));
+    }
+}
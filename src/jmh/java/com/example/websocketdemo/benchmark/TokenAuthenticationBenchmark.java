@@ -0,0 +1,81 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.interceptor.StompErrorSender;
+import com.example.websocketdemo.interceptor.TokenAuthenticationChannelInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CONNECT frames authenticated per second by TokenAuthenticationChannelInterceptor, on 4 threads like the clientInbound executor,
+ * as in a reconnection storm of the clients of 1000 users.
+ * cacheMaxSize=0 verifies the signature and parses the claims of every token, cacheMaxSize=10000 only the first time.
+ * Building the CONNECT frame is included, as the StompSubProtocolHandler builds one for every frame too.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TokenAuthenticationBenchmark {
+
+    private static final int USERS = 1000;
+
+    @Param({"0", "10000"})
+    private int cacheMaxSize;
+
+    private TokenAuthenticationChannelInterceptor tokenAuthenticationChannelInterceptor;
+
+    private ExecutorSubscribableChannel channel;
+
+    private String[] authorizations;
+
+    @Setup
+    public void setup() {
+        ExecutorSubscribableChannel clientOutboundChannel = new ExecutorSubscribableChannel();
+        tokenAuthenticationChannelInterceptor = new TokenAuthenticationChannelInterceptor(true, true,
+                "benchmark secret, at least 32 bytes long", cacheMaxSize, new ObjectMapper(),
+                new StompErrorSender(clientOutboundChannel), new SimpleMeterRegistry());
+        channel = new ExecutorSubscribableChannel();
+        authorizations = new String[USERS];
+        long expiresAt = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < USERS; i++) {
+            authorizations[i] = "Bearer " + tokenAuthenticationChannelInterceptor.getTokenVerifier().sign("user-" + i, expiresAt);
+        }
+    }
+
+    @Benchmark
+    public Message<?> connect() {
+        String authorization = authorizations[ThreadLocalRandom.current().nextInt(USERS)];
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        stompHeaderAccessor.setSessionId("benchmark");
+        stompHeaderAccessor.setSessionAttributes(new HashMap<>());
+        stompHeaderAccessor.setAcceptVersion("1.2");
+        stompHeaderAccessor.setNativeHeader(TokenAuthenticationChannelInterceptor.AUTHORIZATION_HEADER, authorization);
+        stompHeaderAccessor.setLeaveMutable(true);
+        Message<byte[]> connectFrame = MessageBuilder.createMessage(new byte[0], stompHeaderAccessor.getMessageHeaders());
+        return tokenAuthenticationChannelInterceptor.preSend(connectFrame, channel);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.websocketdemo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.sockjs.frame.DefaultSockJsFrameFormat;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+import org.springframework.web.socket.sockjs.frame.SockJsFrame;
+import org.springframework.web.socket.sockjs.frame.SockJsFrameFormat;
+import org.springframework.web.socket.sockjs.frame.SockJsMessageCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The framing of a MESSAGE frame of a ChatMessage broadcast to /topic/public, as each transport puts it on the wire:
+ * websocket: the STOMP frame as it is (the native endpoints, websocket.broker.native-endpoint.list).
+ * sockjs-websocket: the STOMP frame JSON-escaped into a SockJS a["..."] array, in a WebSocket message.
+ * xhr-streaming/xhr-polling: the same SockJS frame, followed by a new line, in an HTTP response. A polling client also
+ * sends a request per response, whose round trip is in TransportLatencyBenchmark.
+ * The sizes on the wire are reported along with the time, as frame:wireBytes and frame:stompBytes. The JSON body of the ChatMessage is what SockJS escapes the most (every quote),
+ * along with the new lines of the headers and the NUL at the end of the frame (\u0000).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransportFramingBenchmark {
+
+    @Param({"websocket", "sockjs-websocket", "xhr-streaming", "xhr-polling"})
+    private String transport;
+
+    @Param({"256"})
+    private int contentLength;
+
+    private final StompEncoder stompEncoder = new StompEncoder();
+
+    private final SockJsMessageCodec sockJsMessageCodec = new Jackson2SockJsMessageCodec();
+
+    private SockJsFrameFormat sockJsFrameFormat;
+
+    private Message<byte[]> message;
+
+    @Setup
+    public void setup() throws Exception {
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        stompHeaderAccessor.setDestination("/topic/public");
+        stompHeaderAccessor.setSubscriptionId("sub-0");
+        stompHeaderAccessor.setMessageId("8f2c6a4e-0b1d-4f3a-9c7e-5d6b8a9e0f12-0");
+        stompHeaderAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        byte[] payload = new ObjectMapper().writeValueAsBytes(BenchmarkMessages.chatMessage(contentLength));
+        message = MessageBuilder.createMessage(payload, stompHeaderAccessor.getMessageHeaders());
+        // The WebSocket transport sends the frames as they are, the HTTP ones end them with a new line.
+        sockJsFrameFormat = new DefaultSockJsFrameFormat("sockjs-websocket".equals(transport) ? "%s" : "%s\n");
+    }
+
+    @Benchmark
+    public int frame(FrameSizes frameSizes) {
+        byte[] stompFrame = stompEncoder.encode(message);
+        frameSizes.stompBytes = stompFrame.length;
+        if ("websocket".equals(transport)) {
+            frameSizes.wireBytes = stompFrame.length;
+            return frameSizes.wireBytes;
+        }
+        SockJsFrame sockJsFrame = SockJsFrame.messageFrame(sockJsMessageCodec, new String(stompFrame, StandardCharsets.UTF_8));
+        frameSizes.wireBytes = sockJsFrameFormat.format(sockJsFrame).getBytes(StandardCharsets.UTF_8).length;
+        return frameSizes.wireBytes;
+    }
+
+    /**
+     * The sizes of the last frame, which are the same for every frame. They're set rather than added up, so they're reported as they are.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FrameSizes {
+
+        public int wireBytes;
+
+        public int stompBytes;
+    }
+}
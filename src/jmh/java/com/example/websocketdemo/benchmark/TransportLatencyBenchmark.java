@@ -0,0 +1,145 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.WebsocketDemoApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.RestTemplateXhrTransport;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.Transport;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The round trip of a chat message over each transport, against the application on a random port:
+ * SEND frame to /app/chat.sendMessage -> ChatController -> broker -> MESSAGE frame from /topic/public, back to the same client.
+ * websocket: WebSocketStompClient on the native endpoint /ws-native (no SockJS).
+ * sockjs-websocket: SockJsClient over WebSocket on /ws, like the browsers.
+ * xhr-streaming: SockJsClient on /ws, sending with a POST per frame, and receiving on a long-lived HTTP response.
+ * xhr-polling: SockJsClient on /ws, sending with a POST per frame, and receiving with a new request per message.
+ * The framing of each transport is in TransportFramingBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportLatencyBenchmark {
+
+    @Param({"websocket", "sockjs-websocket", "xhr-streaming", "xhr-polling"})
+    private String transport;
+
+    @Param({"256"})
+    private int contentLength;
+
+    private final BlockingQueue<byte[]> receivedMessages = new LinkedBlockingQueue<>();
+
+    private ConfigurableApplicationContext applicationContext;
+
+    private WebSocketStompClient webSocketStompClient;
+
+    private StompSession stompSession;
+
+    private StompHeaders sendHeaders;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        applicationContext = new SpringApplicationBuilder(WebsocketDemoApplication.class)
+                // As arguments, since the default properties of the builder are overridden by application.properties.
+                .run("--server.port=0", "--spring.main.banner-mode=off", "--logging.level.root=WARN",
+                        "--websocket.stomp.rate-limit.enabled=false", "--websocket.stomp.resume.enabled=false");
+        String port = applicationContext.getEnvironment().getProperty("local.server.port");
+
+        webSocketStompClient = new WebSocketStompClient(webSocketClient());
+        String url = "websocket".equals(transport) ? "ws://localhost:" + port + "/ws-native" : "http://localhost:" + port + "/ws";
+        stompSession = webSocketStompClient.connect(url, new StompSessionHandlerAdapter() { }).get(10, TimeUnit.SECONDS);
+        stompSession.subscribe("/topic/public", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                receivedMessages.add((byte[]) payload);
+            }
+        });
+
+        sendHeaders = new StompHeaders();
+        sendHeaders.setDestination("/app/chat.sendMessage");
+        sendHeaders.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        payload = new ObjectMapper().writeValueAsBytes(BenchmarkMessages.chatMessage(contentLength));
+        // The frames of a session may be handled out of order by the clientInbound threads, and the SUBSCRIBE frame has no receipt,
+        // so send until a message is back.
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (receivedMessages.poll(100, TimeUnit.MILLISECONDS) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The subscription to /topic/public has failed over " + transport + ".");
+            }
+            stompSession.send(sendHeaders, payload);
+        }
+        Thread.sleep(500);
+        receivedMessages.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stompSession.disconnect();
+        webSocketStompClient.stop();
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public byte[] roundTrip() throws InterruptedException {
+        stompSession.send(sendHeaders, payload);
+        byte[] message = receivedMessages.poll(10, TimeUnit.SECONDS);
+        if (message == null) {
+            throw new IllegalStateException("The message has not come back over " + transport + ".");
+        }
+        return message;
+    }
+
+    private WebSocketClient webSocketClient() {
+        if ("websocket".equals(transport)) {
+            return new StandardWebSocketClient();
+        }
+        Transport sockJsTransport;
+        if ("sockjs-websocket".equals(transport)) {
+            sockJsTransport = new WebSocketTransport(new StandardWebSocketClient());
+        } else {
+            RestTemplateXhrTransport xhrTransport = new RestTemplateXhrTransport();
+            xhrTransport.setXhrStreamingDisabled("xhr-polling".equals(transport));
+            sockJsTransport = xhrTransport;
+        }
+        return new SockJsClient(Collections.singletonList(sockJsTransport));
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.config.WebSocketCustomHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocketCustomHandler.handleMessage(...) echoing a text message back to an in-memory session,
+ * in the thread that received it (websocket.execution.mode=PLATFORM).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WebSocketCustomHandlerBenchmark {
+
+    @Param({"16", "4096"})
+    private int messageLength;
+
+    private WebSocketCustomHandler webSocketCustomHandler;
+
+    private BenchmarkWebSocketSession session;
+
+    private TextMessage textMessage;
+
+    @Setup
+    public void setup() throws Exception {
+        webSocketCustomHandler = new WebSocketCustomHandler();
+        session = new BenchmarkWebSocketSession("echo");
+        webSocketCustomHandler.afterConnectionEstablished(session);
+        char[] payload = new char[messageLength];
+        Arrays.fill(payload, 'a');
+        textMessage = new TextMessage(new String(payload));
+    }
+
+    @Benchmark
+    public long echo() throws Exception {
+        webSocketCustomHandler.handleMessage(session, textMessage);
+        return session.getSentByteCount();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.websocketdemo.benchmark;
+
+import com.example.websocketdemo.interceptor.WebsocketChannelInterceptor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead that WebsocketChannelInterceptor.preSend(...) adds to every frame of the clientInbound and clientOutbound channels,
+ * when websocket.stomp.diagnostics.enabled=true. It runs on 4 threads, like the channel executors do.
+ * sampleRate=0 measures the counters only.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class WebsocketChannelInterceptorBenchmark {
+
+    @Param({"0", "1000"})
+    private int sampleRate;
+
+    private WebsocketChannelInterceptor websocketChannelInterceptor;
+
+    private ExecutorSubscribableChannel channel;
+
+    private Message<byte[]> sendFrame;
+
+    @Setup
+    public void setup() throws Exception {
+        websocketChannelInterceptor = new WebsocketChannelInterceptor(new ObjectMapper(), true, sampleRate, 1024);
+        websocketChannelInterceptor.start();
+        channel = new ExecutorSubscribableChannel();
+        sendFrame = BenchmarkMessages.sendFrame("publisher", 256);
+    }
+
+    @TearDown
+    public void tearDown() {
+        websocketChannelInterceptor.stop();
+    }
+
+    @Benchmark
+    public Message<?> preSend() {
+        return websocketChannelInterceptor.preSend(sendFrame, channel);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.websocketdemo.loadtest;
+
+import com.example.websocketdemo.WebsocketDemoApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.PropertyResolver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the execution modes (websocket.execution.mode) under the same load: for each mode, the app is started in its own JVM
+ * (the same java and classpath as this one, on a free port), the LoadGenerator runs against it, then the app is stopped.
+ * The reports of all the modes are logged at the end, one after the other.
+ * Run it with: ./gradlew compareExecutionModes -PloadTestArgs="--clients=10000 --rate=0.5 --transport=websocket"
+ * The VIRTUAL mode needs the app to run on Java 21 or later (see ExecutionMode), so run the task with -PloadTestJava=/path/to/java21/bin/java
+ * (the app is started with the java of the task).
+ *
+ * The app runs in another JVM, as a JVM may not have enough file descriptors for both ends of the connections.
+ * Its rate limits (websocket.stomp.rate-limit.*, websocket.handshake.admission.*) are disabled, since all the clients come from one address,
+ * and Tomcat accepts as many connections as there are clients.
+ *
+ * Options (all optional), and those of LoadGenerator:
+ * --execution-modes: Default: PLATFORM,VIRTUAL
+ * --app-args: More arguments of the app, separated by spaces. Default: none
+ * --startup-timeout: Seconds to wait for the app to listen on its port. Default: 120
+ */
+public class ExecutionModeComparison {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final String[] args;
+
+    private final PropertyResolver options;
+
+    public ExecutionModeComparison(String... args) {
+        this.args = args;
+        this.options = LoadGenerator.parseOptions(args);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ExecutionModeComparison(args).run();
+    }
+
+    public void run() throws Exception {
+        List<LoadTestMetrics> results = new ArrayList<>();
+        for (String executionMode : options.getProperty("execution-modes", "PLATFORM,VIRTUAL").split(",")) {
+            int port = findFreePort();
+            Process app = startApp(executionMode, port);
+            try {
+                waitForPort(app, port);
+                List<String> loadGeneratorArgs = new ArrayList<>(Arrays.asList(args));
+                loadGeneratorArgs.add("--url=http://localhost:" + port);
+                loadGeneratorArgs.add("--label=" + executionMode + ": ");
+                results.addAll(new LoadGenerator(LoadGenerator.parseOptions(loadGeneratorArgs.toArray(new String[0]))).runAll());
+            } finally {
+                app.destroy();
+                if (!app.waitFor(30, TimeUnit.SECONDS)) {
+                    app.destroyForcibly();
+                }
+            }
+        }
+        for (LoadTestMetrics result : results) {
+            result.report();
+        }
+    }
+
+    private Process startApp(String executionMode, int port) throws IOException {
+        int clientCount = options.getProperty("clients", Integer.class, 1000);
+        List<String> command = new ArrayList<>(Arrays.asList(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                WebsocketDemoApplication.class.getName(),
+                "--server.port=" + port,
+                "--server.tomcat.max-connections=" + (clientCount + 1000),
+                "--websocket.execution.mode=" + executionMode,
+                "--websocket.stomp.rate-limit.enabled=false",
+                "--websocket.handshake.admission.enabled=false",
+                "--spring.main.banner-mode=off"));
+        String appArgs = options.getProperty("app-args", "");
+        if (!appArgs.isEmpty()) {
+            command.addAll(Arrays.asList(appArgs.split(" ")));
+        }
+        logger.info("Starting the app in {} mode on port {}...", executionMode, port);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private void waitForPort(Process app, int port) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getProperty("startup-timeout", Integer.class, 120));
+        while (System.nanoTime() < deadlineNanos) {
+            if (!app.isAlive()) {
+                throw new IllegalStateException("The app has exited with " + app.exitValue() + ".");
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 1000);
+                return;
+            } catch (IOException e) {
+                TimeUnit.MILLISECONDS.sleep(500);
+            }
+        }
+        throw new IllegalStateException("The app is not listening on port " + port + ".");
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.websocketdemo.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A load generator for a running instance of this app (start it first, with ./gradlew bootRun).
+ * Run it with: ./gradlew loadTest -PloadTestArgs="--clients=1000 --rate=0.1"
+ *
+ * It opens the clients, lets them send messages at the target rate for the warmup, then measures for the duration, and reports:
+ * The connection setup time, the messages sent and delivered per second, and the p50/p99/p999 delivery latency.
+ * stomp: STOMP clients (WebSocketStompClient) spread over websocket.broker.endpoint.list. Each of them subscribes to /topic/public
+ * and sends ChatMessages to /app/chat.sendMessage, so every message is delivered to every client.
+ * raw: Raw WebSocket clients of the echo endpoint (websocket.raw.endpoint.list), the latency is the round trip of each message.
+ * both: stomp first, then raw, to compare the two stacks on the same server.
+ *
+ * To compare the execution modes (websocket.execution.mode), run it once against the app started with each mode
+ * (see ExecutionModeComparison).
+ *
+ * Options (all optional):
+ * --url: Base URL of the app. Default: http://localhost:8080
+ * --mode: stomp, raw or both. Default: both
+ * --transport: sockjs (SockJsClient over WebSocket, like the browsers) or websocket (plain WebSocket). Default: sockjs
+ * --clients: Number of clients per stack. Default: 1000
+ * --rate: Messages per second sent by each client. Default: 0.1
+ * --warmup: Seconds of sending before the measurement. Default: 10
+ * --duration: Seconds of measurement. Default: 60
+ * --connect-concurrency: Maximum number of clients connecting at once. Default: 100
+ * --stomp-endpoints: Default: /ws,/greeting
+ * --raw-endpoints: Default: /echo
+ * --label: Prefix of the names of the runs in the report. Default: none
+ *
+ * ExecutionModeComparison runs it against the app started with each execution mode.
+ */
+public class LoadGenerator {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String SEND_DESTINATION = "/app/chat.sendMessage";
+
+    private static final String TOPIC = "/topic/public";
+
+    private final PropertyResolver options;
+
+    private final String url;
+
+    private final String label;
+
+    private final boolean sockJs;
+
+    private final int clientCount;
+
+    private final double rate;
+
+    private final int warmupSeconds;
+
+    private final int durationSeconds;
+
+    private final int connectConcurrency;
+
+    private final ScheduledExecutorService sendScheduler =
+            Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+
+    public LoadGenerator(PropertyResolver options) {
+        this.options = options;
+        this.url = options.getProperty("url", "http://localhost:8080");
+        this.label = options.getProperty("label", "");
+        this.sockJs = "sockjs".equals(options.getProperty("transport", "sockjs"));
+        this.clientCount = options.getProperty("clients", Integer.class, 1000);
+        this.rate = options.getProperty("rate", Double.class, 0.1);
+        this.warmupSeconds = options.getProperty("warmup", Integer.class, 10);
+        this.durationSeconds = options.getProperty("duration", Integer.class, 60);
+        this.connectConcurrency = options.getProperty("connect-concurrency", Integer.class, 100);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(parseOptions(args)).run();
+    }
+
+    /**
+     * @param args: The options, as --name=value.
+     * @return PropertyResolver object to read the options from, converted to the needed types.
+     */
+    public static PropertyResolver parseOptions(String... args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        return environment;
+    }
+
+    public void run() throws Exception {
+        for (LoadTestMetrics result : runAll()) {
+            result.report();
+        }
+    }
+
+    /**
+     * @return The measurements of the runs, to be reported.
+     */
+    List<LoadTestMetrics> runAll() throws InterruptedException {
+        String mode = options.getProperty("mode", "both");
+        List<LoadTestMetrics> results = new ArrayList<>();
+        try {
+            if ("stomp".equals(mode) || "both".equals(mode)) {
+                results.add(runStomp());
+            }
+            if ("raw".equals(mode) || "both".equals(mode)) {
+                results.add(runRaw());
+            }
+        } finally {
+            sendScheduler.shutdownNow();
+        }
+        return results;
+    }
+
+    private LoadTestMetrics runStomp() throws InterruptedException {
+        String[] endpoints = options.getProperty("stomp-endpoints", "/ws,/greeting").split(",");
+        LoadTestMetrics metrics = new LoadTestMetrics(label + "STOMP " + String.join(",", endpoints) + " over " + (sockJs ? "SockJS" : "WebSocket"));
+        WebSocketStompClient stompClient = new WebSocketStompClient(createWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        String senderPrefix = "loadtest-" + UUID.randomUUID().toString().substring(0, 8) + "-";
+
+        List<LoadTestClient> clients = connect(metrics, endpoints, (index) -> {
+            StompLoadTestClient client = new StompLoadTestClient(metrics, senderPrefix, index, SEND_DESTINATION, TOPIC);
+            return new PendingConnection(client, stompClient.connect(endpointUrl(endpoints, index), client));
+        });
+        measure(metrics, clients);
+        stompClient.stop();
+        return metrics;
+    }
+
+    private LoadTestMetrics runRaw() throws InterruptedException {
+        String[] endpoints = options.getProperty("raw-endpoints", "/echo").split(",");
+        LoadTestMetrics metrics = new LoadTestMetrics(label + "Raw echo " + String.join(",", endpoints) + " over " + (sockJs ? "SockJS" : "WebSocket"));
+        WebSocketClient webSocketClient = createWebSocketClient();
+
+        List<LoadTestClient> clients = connect(metrics, endpoints, (index) -> {
+            RawEchoLoadTestClient client = new RawEchoLoadTestClient(metrics);
+            return new PendingConnection(client, webSocketClient.doHandshake(client, endpointUrl(endpoints, index)));
+        });
+        measure(metrics, clients);
+        return metrics;
+    }
+
+    private WebSocketClient createWebSocketClient() {
+        StandardWebSocketClient standardWebSocketClient = new StandardWebSocketClient();
+        if (sockJs) {
+            return new SockJsClient(Collections.singletonList(new WebSocketTransport(standardWebSocketClient)));
+        }
+        return standardWebSocketClient;
+    }
+
+    /**
+     * The clients are spread over the endpoints, round-robin.
+     * SockJsClient connects to the HTTP URL of the endpoint, the plain WebSocket client to its /websocket path.
+     */
+    private String endpointUrl(String[] endpoints, int index) {
+        String endpoint = endpoints[index % endpoints.length];
+        if (sockJs) {
+            return url + endpoint;
+        }
+        return url.replaceFirst("^http", "ws") + endpoint + "/websocket";
+    }
+
+    /**
+     * Connect the clients, with at most connectConcurrency of them connecting at once, and wait until all of them are done.
+     */
+    private List<LoadTestClient> connect(LoadTestMetrics metrics, String[] endpoints,
+                                         Function<Integer, PendingConnection> connector) throws InterruptedException {
+        logger.info("{}: Connecting {} clients...", metrics.getName(), clientCount);
+        Semaphore connectPermits = new Semaphore(connectConcurrency);
+        List<LoadTestClient> clients = new ArrayList<>(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            connectPermits.acquire();
+            long connectStartNanos = System.nanoTime();
+            PendingConnection pendingConnection = connector.apply(i);
+            clients.add(pendingConnection.client);
+            pendingConnection.future.addCallback(result -> {
+                metrics.recordConnectionSetup(connectStartNanos);
+                connectPermits.release();
+            }, exception -> {
+                metrics.recordFailedConnection();
+                connectPermits.release();
+            });
+        }
+        connectPermits.acquire(connectConcurrency);
+        logger.info("{} of {} clients connected.", metrics.getConnectedCount(), clientCount);
+        return clients;
+    }
+
+    /**
+     * Send from every client at the target rate (starting at a random time, so the clients don't send all at once),
+     * through the warmup and the measurement, then close the clients.
+     * The messages sent during the warmup are not measured, but their connection setup times are.
+     */
+    private void measure(LoadTestMetrics metrics, List<LoadTestClient> clients) throws InterruptedException {
+        long periodMicros = Math.max(1, (long) (TimeUnit.SECONDS.toMicros(1) / rate));
+        List<ScheduledFuture<?>> sendTasks = new ArrayList<>(clients.size());
+        metrics.startMeasurement();
+        for (LoadTestClient client : clients) {
+            long initialDelayMicros = ThreadLocalRandom.current().nextLong(periodMicros);
+            sendTasks.add(sendScheduler.scheduleAtFixedRate(client::send, initialDelayMicros, periodMicros, TimeUnit.MICROSECONDS));
+        }
+        logger.info("Warming up for {} s...", warmupSeconds);
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        metrics.startMeasurement();
+        logger.info("Measuring for {} s...", durationSeconds);
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        metrics.stopMeasurement();
+
+        for (ScheduledFuture<?> sendTask : sendTasks) {
+            sendTask.cancel(false);
+        }
+        for (LoadTestClient client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * A client, and the future of its connection.
+     */
+    private static class PendingConnection {
+        private final LoadTestClient client;
+
+        private final ListenableFuture<?> future;
+
+        PendingConnection(LoadTestClient client, ListenableFuture<?> future) {
+            this.client = client;
+            this.future = future;
+        }
+    }
+}
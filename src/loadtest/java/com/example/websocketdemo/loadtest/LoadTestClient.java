@@ -0,0 +1,14 @@
+package com.example.websocketdemo.loadtest;
+
+/**
+ * One connection opened by the load generator.
+ */
+interface LoadTestClient {
+
+    /**
+     * Send one message, carrying the System.nanoTime() when it's sent, so that the delivery latency can be measured when it comes back.
+     */
+    void send();
+
+    void close();
+}
@@ -0,0 +1,133 @@
+package com.example.websocketdemo.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The measurements of one load test run (one stack: STOMP or raw), recorded from many client threads at once.
+ * The times are recorded in microseconds into HdrHistogram recorders, so the percentiles are exact up to 3 significant digits.
+ */
+class LoadTestMetrics {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final String name;
+
+    private final Recorder connectionSetupRecorder = new Recorder(3);
+
+    private final Recorder deliveryLatencyRecorder = new Recorder(3);
+
+    private final LongAdder connectedCounter = new LongAdder();
+
+    private final LongAdder failedConnectionCounter = new LongAdder();
+
+    private final LongAdder sentCounter = new LongAdder();
+
+    private final LongAdder deliveredCounter = new LongAdder();
+
+    private final LongAdder errorCounter = new LongAdder();
+
+    private Histogram connectionSetupHistogram;
+
+    private Histogram deliveryLatencyHistogram;
+
+    private long measurementStartNanos;
+
+    private double measuredSeconds;
+
+    private long sentCount;
+
+    private long deliveredCount;
+
+    private long errorCount;
+
+    LoadTestMetrics(String name) {
+        this.name = name;
+    }
+
+    void recordConnectionSetup(long connectStartNanos) {
+        connectionSetupRecorder.recordValue(toMicros(System.nanoTime() - connectStartNanos));
+        connectedCounter.increment();
+    }
+
+    void recordFailedConnection() {
+        failedConnectionCounter.increment();
+    }
+
+    void recordSent() {
+        sentCounter.increment();
+    }
+
+    /**
+     * @param sentNanos: System.nanoTime() when the message was sent by a client of this load generator.
+     */
+    void recordDelivery(long sentNanos) {
+        deliveryLatencyRecorder.recordValue(toMicros(System.nanoTime() - sentNanos));
+        deliveredCounter.increment();
+    }
+
+    void recordError() {
+        errorCounter.increment();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getConnectedCount() {
+        return connectedCounter.sum();
+    }
+
+    /**
+     * Called once all the clients are connected, and again once the warmup is over:
+     * Keep the connection setup times, and forget the messages sent and delivered so far.
+     */
+    void startMeasurement() {
+        if (connectionSetupHistogram == null) {
+            connectionSetupHistogram = connectionSetupRecorder.getIntervalHistogram();
+        }
+        deliveryLatencyRecorder.reset();
+        sentCounter.reset();
+        deliveredCounter.reset();
+        errorCounter.reset();
+        measurementStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Called at the end of the measurement: Keep what has been measured until now, to be reported later.
+     */
+    void stopMeasurement() {
+        measuredSeconds = (System.nanoTime() - measurementStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        deliveryLatencyHistogram = deliveryLatencyRecorder.getIntervalHistogram();
+        sentCount = sentCounter.sum();
+        deliveredCount = deliveredCounter.sum();
+        errorCount = errorCounter.sum();
+    }
+
+    void report() {
+        logger.info("===== {} =====", name);
+        logger.info("Clients: {} connected, {} failed", connectedCounter.sum(), failedConnectionCounter.sum());
+        logger.info("Connection setup (ms): {}", percentiles(connectionSetupHistogram));
+        logger.info("Sent: {} msg/s, delivered: {} msg/s, errors: {} (over {} s)",
+                String.format("%.1f", sentCount / measuredSeconds), String.format("%.1f", deliveredCount / measuredSeconds),
+                errorCount, String.format("%.1f", measuredSeconds));
+        logger.info("Delivery latency (ms): {}", percentiles(deliveryLatencyHistogram));
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram == null || histogram.getTotalCount() == 0) {
+            return "no samples";
+        }
+        return String.format("p50=%.3f p99=%.3f p999=%.3f max=%.3f (%d samples)",
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0, histogram.getTotalCount());
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+}
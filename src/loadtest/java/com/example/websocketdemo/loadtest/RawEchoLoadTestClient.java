@@ -0,0 +1,68 @@
+package com.example.websocketdemo.loadtest;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+
+/**
+ * A client of the raw echo endpoint (WebSocketCustomHandler): it sends text messages and records the latency of their echoes.
+ */
+class RawEchoLoadTestClient extends TextWebSocketHandler implements LoadTestClient {
+
+    private final LoadTestMetrics metrics;
+
+    private volatile WebSocketSession session;
+
+    RawEchoLoadTestClient(LoadTestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        this.session = session;
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        metrics.recordDelivery(Long.parseLong(message.getPayload()));
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        metrics.recordError();
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        this.session = null;
+    }
+
+    @Override
+    public void send() {
+        WebSocketSession currentSession = session;
+        if (currentSession == null || !currentSession.isOpen()) {
+            return;
+        }
+        try {
+            currentSession.sendMessage(new TextMessage(Long.toString(System.nanoTime())));
+            metrics.recordSent();
+        } catch (IOException | RuntimeException exception) {
+            metrics.recordError();
+        }
+    }
+
+    @Override
+    public void close() {
+        WebSocketSession currentSession = session;
+        if (currentSession != null) {
+            try {
+                currentSession.close();
+            } catch (IOException ioException) {
+                metrics.recordError();
+            }
+        }
+    }
+}
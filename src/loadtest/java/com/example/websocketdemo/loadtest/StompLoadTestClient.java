@@ -0,0 +1,94 @@
+package com.example.websocketdemo.loadtest;
+
+import com.example.websocketdemo.model.ChatMessage;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * A STOMP client that behaves like the chat page (main.js): it subscribes to the public topic,
+ * and sends ChatMessages to /app/chat.sendMessage.
+ * Every client receives the messages of every other client, and records their delivery latency.
+ */
+class StompLoadTestClient extends StompSessionHandlerAdapter implements LoadTestClient {
+
+    private final LoadTestMetrics metrics;
+
+    // Sender of the messages of this client, starting with the prefix of this load generator run.
+    private final String sender;
+
+    private final String senderPrefix;
+
+    private final String sendDestination;
+
+    private final String topic;
+
+    private volatile StompSession session;
+
+    StompLoadTestClient(LoadTestMetrics metrics, String senderPrefix, int index, String sendDestination, String topic) {
+        this.metrics = metrics;
+        this.senderPrefix = senderPrefix;
+        this.sender = senderPrefix + index;
+        this.sendDestination = sendDestination;
+        this.topic = topic;
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        session.subscribe(topic, this);
+    }
+
+    @Override
+    public Type getPayloadType(StompHeaders headers) {
+        return ChatMessage.class;
+    }
+
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        ChatMessage chatMessage = (ChatMessage) payload;
+        // Only the messages sent by this load generator run carry a System.nanoTime() of this JVM.
+        if (chatMessage != null && chatMessage.getSender() != null && chatMessage.getSender().startsWith(senderPrefix)) {
+            metrics.recordDelivery(Long.parseLong(chatMessage.getContent()));
+        }
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+        metrics.recordError();
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        metrics.recordError();
+    }
+
+    @Override
+    public void send() {
+        StompSession currentSession = session;
+        if (currentSession == null || !currentSession.isConnected()) {
+            return;
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setType(ChatMessage.MessageType.CHAT);
+        chatMessage.setSender(sender);
+        chatMessage.setContent(Long.toString(System.nanoTime()));
+        try {
+            currentSession.send(sendDestination, chatMessage);
+            metrics.recordSent();
+        } catch (RuntimeException runtimeException) {
+            metrics.recordError();
+        }
+    }
+
+    @Override
+    public void close() {
+        StompSession currentSession = session;
+        if (currentSession != null && currentSession.isConnected()) {
+            currentSession.disconnect();
+        }
+    }
+}
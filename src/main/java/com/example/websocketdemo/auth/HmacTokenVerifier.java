@@ -0,0 +1,162 @@
+package com.example.websocketdemo.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs and verifies the JSON Web Tokens (RFC 7519) of the STOMP clients, signed with HMAC-SHA256 (HS256) and a shared secret:
+ * base64url({"alg":"HS256","typ":"JWT"}) + "." + base64url({"sub":"alice","exp":1571234567}) + "." + base64url(signature)
+ *
+ * The signature is checked first, before anything is parsed, so a forged token costs a single HMAC.
+ * Then the header must name the HS256 algorithm (so a token with "alg":"none" is rejected), and the claims must have a subject,
+ * the name of the user, and an expiry ("exp", in seconds since the epoch) in the future.
+ *
+ * A Mac isn't thread-safe, and creating one looks up the security providers, so each thread keeps its own.
+ */
+public class HmacTokenVerifier {
+    public static final String ALGORITHM = "HS256";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    // RFC 7518: The key must be at least as long as the hash.
+    private static final int MIN_SECRET_LENGTH = 32;
+
+    private static final int SIGNATURE_LENGTH = 32;
+
+    private static final List<GrantedAuthority> AUTHORITIES = AuthorityUtils.createAuthorityList("ROLE_USER");
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec secretKey;
+
+    private final ThreadLocal<Mac> macs;
+
+    private final ObjectMapper objectMapper;
+
+    private final String encodedHeader;
+
+    /**
+     * @param secret:       The shared secret, at least 32 bytes long.
+     * @param objectMapper: To write and read the header and the claims.
+     */
+    public HmacTokenVerifier(byte[] secret, ObjectMapper objectMapper) {
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("The secret of the HS256 tokens must be at least " + MIN_SECRET_LENGTH + " bytes long.");
+        }
+        this.secretKey = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::createMac);
+        this.objectMapper = objectMapper;
+        ObjectNode header = objectMapper.createObjectNode().put("alg", ALGORITHM).put("typ", "JWT");
+        this.encodedHeader = encode(header);
+        // Fails fast if the JVM has no HmacSHA256.
+        createMac();
+    }
+
+    /**
+     * @param subject:         The name of the user.
+     * @param expiresAtMillis: The expiry of the token, in milliseconds since the epoch. It's rounded down to the second.
+     * @return The signed token.
+     */
+    public String sign(String subject, long expiresAtMillis) {
+        ObjectNode claims = objectMapper.createObjectNode()
+                .put("sub", subject)
+                .put("exp", TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis));
+        String signingInput = encodedHeader + "." + encode(claims);
+        byte[] signature = macs.get().doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + ENCODER.encodeToString(signature);
+    }
+
+    /**
+     * @param token:     The token, as sent by the client.
+     * @param nowMillis: The current time, in milliseconds since the epoch.
+     * @return The verified token, with the Authentication of its subject.
+     * @throws BadCredentialsException If the token is malformed, its signature doesn't match, or it has expired.
+     */
+    public VerifiedToken verify(String token, long nowMillis) {
+        int headerEnd = token.indexOf('.');
+        int claimsEnd = headerEnd < 0 ? -1 : token.indexOf('.', headerEnd + 1);
+        if (claimsEnd < 0 || token.indexOf('.', claimsEnd + 1) >= 0) {
+            throw new BadCredentialsException("Malformed token.");
+        }
+        byte[] tokenBytes = token.getBytes(StandardCharsets.US_ASCII);
+        Mac mac = macs.get();
+        mac.update(tokenBytes, 0, claimsEnd);
+        byte[] expectedSignature = mac.doFinal();
+        byte[] signature = decode(tokenBytes, claimsEnd + 1, tokenBytes.length);
+        if (signature.length != SIGNATURE_LENGTH || !MessageDigest.isEqual(expectedSignature, signature)) {
+            throw new BadCredentialsException("Invalid token signature.");
+        }
+
+        JsonNode header = readJson(tokenBytes, 0, headerEnd);
+        if (!ALGORITHM.equals(header.path("alg").asText())) {
+            throw new BadCredentialsException("Unsupported token algorithm.");
+        }
+        JsonNode claims = readJson(tokenBytes, headerEnd + 1, claimsEnd);
+        String subject = claims.path("sub").asText();
+        JsonNode expiry = claims.path("exp");
+        if (subject.isEmpty() || !expiry.canConvertToLong()) {
+            throw new BadCredentialsException("The token has no subject or no expiry.");
+        }
+        long expiresAtMillis = TimeUnit.SECONDS.toMillis(expiry.asLong());
+        if (expiresAtMillis <= nowMillis) {
+            throw new BadCredentialsException("The token has expired.");
+        }
+        return new VerifiedToken(new UsernamePasswordAuthenticationToken(subject, null, AUTHORITIES), expiresAtMillis);
+    }
+
+    private JsonNode readJson(byte[] tokenBytes, int from, int to) {
+        try {
+            JsonNode jsonNode = objectMapper.readTree(decode(tokenBytes, from, to));
+            if (jsonNode == null || !jsonNode.isObject()) {
+                throw new BadCredentialsException("Malformed token.");
+            }
+            return jsonNode;
+        } catch (IOException e) {
+            throw new BadCredentialsException("Malformed token.", e);
+        }
+    }
+
+    private String encode(JsonNode jsonNode) {
+        try {
+            return ENCODER.encodeToString(objectMapper.writeValueAsBytes(jsonNode));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] decode(byte[] tokenBytes, int from, int to) {
+        try {
+            return DECODER.decode(Arrays.copyOfRange(tokenBytes, from, to));
+        } catch (IllegalArgumentException e) {
+            throw new BadCredentialsException("Malformed token.", e);
+        }
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create the " + MAC_ALGORITHM + " Mac.", e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.websocketdemo.auth;
+
+import org.springframework.security.core.Authentication;
+
+/**
+ * A token whose signature and claims have been checked, with the Authentication of its subject.
+ * The Authentication is built once, so the CONNECT frames with a cached token share it instead of building their own.
+ */
+public class VerifiedToken {
+
+    private final Authentication authentication;
+
+    private final long expiresAtMillis;
+
+    public VerifiedToken(Authentication authentication, long expiresAtMillis) {
+        this.authentication = authentication;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public Authentication getAuthentication() {
+        return authentication;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return expiresAtMillis <= nowMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "VerifiedToken[subject=" + authentication.getName() + ", expiresAtMillis=" + expiresAtMillis + "]";
+    }
+}
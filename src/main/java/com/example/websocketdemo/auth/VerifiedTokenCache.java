@@ -0,0 +1,110 @@
+package com.example.websocketdemo.auth;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The tokens verified recently, so a client reconnecting with the same token (e.g. after a network blip, or all the clients
+ * after a restart of the node) is authenticated without checking its signature and parsing its claims again.
+ *
+ * The lookups are lock-free. Adding a token (only after a cache miss, so after a signature check) takes a lock, and evicts:
+ * - The tokens that have expired. An expired token is never returned, even if it hasn't been evicted yet.
+ * - Then, while the cache is full, the tokens that expire first, as they are the least useful to keep.
+ * So a token is only kept while it's valid, and the cache never keeps more than maxSize tokens.
+ * A maxSize of 0 disables the cache.
+ */
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+
+    private final ConcurrentMap<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    // The cached tokens, the first to expire first. Guarded by itself.
+    private final PriorityQueue<Expiry> expiries = new PriorityQueue<>();
+
+    private long evictionCount;
+
+    public VerifiedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param token:     The token, as sent by the client.
+     * @param nowMillis: The current time, in milliseconds since the epoch.
+     * @return The verified token, or null if it isn't cached or has expired.
+     */
+    public VerifiedToken get(String token, long nowMillis) {
+        VerifiedToken verifiedToken = verifiedTokens.get(token);
+        if (verifiedToken == null) {
+            return null;
+        }
+        if (verifiedToken.isExpired(nowMillis)) {
+            verifiedTokens.remove(token, verifiedToken);
+            return null;
+        }
+        return verifiedToken;
+    }
+
+    /**
+     * @param token:         The token, as sent by the client.
+     * @param verifiedToken: The token, once verified.
+     * @param nowMillis:     The current time, in milliseconds since the epoch.
+     */
+    public void put(String token, VerifiedToken verifiedToken, long nowMillis) {
+        if (maxSize <= 0 || verifiedToken.isExpired(nowMillis)) {
+            return;
+        }
+        synchronized (expiries) {
+            evictExpired(nowMillis);
+            // Another CONNECT frame with the same token may have been verified at the same time.
+            if (verifiedTokens.putIfAbsent(token, verifiedToken) != null) {
+                return;
+            }
+            expiries.add(new Expiry(token, verifiedToken));
+            while (expiries.size() > maxSize) {
+                evict(expiries.poll());
+            }
+        }
+    }
+
+    public int size() {
+        return verifiedTokens.size();
+    }
+
+    public long getEvictionCount() {
+        synchronized (expiries) {
+            return evictionCount;
+        }
+    }
+
+    private void evictExpired(long nowMillis) {
+        Expiry expiry;
+        while ((expiry = expiries.peek()) != null && expiry.verifiedToken.isExpired(nowMillis)) {
+            evict(expiries.poll());
+        }
+    }
+
+    private void evict(Expiry expiry) {
+        // Only if it wasn't already removed by get(...) once expired.
+        if (verifiedTokens.remove(expiry.token, expiry.verifiedToken)) {
+            evictionCount++;
+        }
+    }
+
+    private static class Expiry implements Comparable<Expiry> {
+        private final String token;
+
+        private final VerifiedToken verifiedToken;
+
+        Expiry(String token, VerifiedToken verifiedToken) {
+            this.token = token;
+            this.verifiedToken = verifiedToken;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(verifiedToken.getExpiresAtMillis(), other.verifiedToken.getExpiresAtMillis());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.websocketdemo.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executor of the brokerChannel, split into shards: each shard is one thread with its own queue,
+ * and the messages to a destination are always handled by the shard of its hash.
+ *
+ * So the messages to a room are delivered in the order they were sent, and a busy room only holds up the rooms of its shard,
+ * instead of the whole broker. The shards don't share any lock: with the DestinationSubscriptionRegistry,
+ * two rooms on different shards never wait for each other.
+ *
+ * The tasks that are not messages, or messages without a destination, go to the ThreadPoolTaskExecutor itself.
+ * It's a ThreadPoolTaskExecutor, as that's the only kind of executor the brokerChannel can be configured with.
+ */
+public class DestinationShardedTaskExecutor extends ThreadPoolTaskExecutor {
+    private static final long serialVersionUID = 1L;
+
+    private final int shardCount;
+
+    private final int shardQueueCapacity;
+
+    private final RejectedExecutionHandler shardRejectedExecutionHandler;
+
+    private ThreadPoolExecutor[] shards;
+
+    /**
+     * @param shardCount:                    Number of shards (threads).
+     * @param shardQueueCapacity:            Number of messages each shard can queue.
+     * @param shardRejectedExecutionHandler: What a shard does with a message when its queue is full.
+     */
+    public DestinationShardedTaskExecutor(int shardCount, int shardQueueCapacity, RejectedExecutionHandler shardRejectedExecutionHandler) {
+        this.shardCount = shardCount;
+        this.shardQueueCapacity = shardQueueCapacity;
+        this.shardRejectedExecutionHandler = shardRejectedExecutionHandler;
+        setCorePoolSize(1);
+        setMaxPoolSize(1);
+        setRejectedExecutionHandler(shardRejectedExecutionHandler);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return Number of messages waiting in the queues of all the shards.
+     */
+    public int getQueueSize() {
+        int queueSize = getThreadPoolExecutor().getQueue().size();
+        if (shards != null) {
+            for (ThreadPoolExecutor shard : shards) {
+                queueSize += shard.getQueue().size();
+            }
+        }
+        return queueSize;
+    }
+
+    @Override
+    public int getActiveCount() {
+        int activeCount = super.getActiveCount();
+        if (shards != null) {
+            for (ThreadPoolExecutor shard : shards) {
+                activeCount += shard.getActiveCount();
+            }
+        }
+        return activeCount;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String destination = null;
+        if (task instanceof MessageHandlingRunnable) {
+            Message<?> message = ((MessageHandlingRunnable) task).getMessage();
+            destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        }
+        if (destination == null || shards == null) {
+            super.execute(task);
+            return;
+        }
+        shards[shardIndex(destination)].execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (shards == null) {
+            return;
+        }
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+        for (ThreadPoolExecutor shard : shards) {
+            try {
+                shard.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+        shards = new ThreadPoolExecutor[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(shardQueueCapacity),
+                    new CustomizableThreadFactory(getThreadNamePrefix() + "shard-" + i + "-"), shardRejectedExecutionHandler);
+        }
+        return super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    }
+
+    private int shardIndex(String destination) {
+        int hash = destination.hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % shardCount;
+    }
+}
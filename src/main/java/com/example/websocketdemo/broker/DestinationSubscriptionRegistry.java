@@ -0,0 +1,200 @@
+package com.example.websocketdemo.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A SubscriptionRegistry for the SimpleBrokerMessageHandler that finds the subscribers of a destination with one map lookup.
+ *
+ * The DefaultSubscriptionRegistry matches the destination of a message against the pattern of every subscription
+ * (it caches the results, but every SUBSCRIBE or UNSUBSCRIBE goes through all the cached destinations).
+ * Here, the subscriptions to an exact destination (like /topic/room.general) are kept by destination, each with its own lock,
+ * so the subscribers of a room only contend with each other. The broker gets an immutable snapshot of the subscribers,
+ * which is made again on the first message after a change, so a burst of subscriptions costs one copy and not one each.
+ *
+ * The subscriptions to a pattern (/topic/room.*) or with a selector header are rare, and are kept by a DefaultSubscriptionRegistry,
+ * which is only asked while it has any.
+ */
+public class DestinationSubscriptionRegistry extends AbstractSubscriptionRegistry {
+    private static final String SELECTOR_HEADER = "selector";
+
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private final Map<String, DestinationSubscriptions> destinationSubscriptions = new ConcurrentHashMap<>();
+
+    // Session ID -> (Subscription ID -> Destination), as the UNSUBSCRIBE frames don't have the destination.
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    private final DefaultSubscriptionRegistry patternSubscriptionRegistry = new DefaultSubscriptionRegistry();
+
+    // Session ID -> IDs of its subscriptions that are kept by the patternSubscriptionRegistry.
+    private final Map<String, Set<String>> patternSubscriptionIds = new ConcurrentHashMap<>();
+
+    /**
+     * @return Number of destinations with at least one subscription to exactly that destination.
+     */
+    public int getDestinationCount() {
+        return destinationSubscriptions.size();
+    }
+
+    @Override
+    protected void addSubscriptionInternal(String sessionId, String subscriptionId, String destination, Message<?> message) {
+        String previousDestination = sessionSubscriptions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previousDestination != null) {
+            // The same subscription ID again replaces the previous subscription.
+            removeSubscription(sessionId, subscriptionId, previousDestination);
+        }
+        if (pathMatcher.isPattern(destination)
+                || NativeMessageHeaderAccessor.getFirstNativeHeader(SELECTOR_HEADER, message.getHeaders()) != null) {
+            patternSubscriptionIds.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(subscriptionId);
+            patternSubscriptionRegistry.registerSubscription(message);
+            return;
+        }
+        // The subscriptions of a destination are removed from the map once they are empty, and then a new one is needed.
+        while (!destinationSubscriptions.computeIfAbsent(destination, key -> new DestinationSubscriptions())
+                .add(sessionId, subscriptionId)) {
+            Thread.yield();
+        }
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(String sessionId, String subscriptionId, Message<?> message) {
+        Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+        String destination = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination != null) {
+            removeSubscription(sessionId, subscriptionId, destination);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) -> removeExactSubscription(sessionId, subscriptionId, destination));
+        }
+        if (patternSubscriptionIds.remove(sessionId) != null) {
+            patternSubscriptionRegistry.unregisterAllSubscriptions(sessionId);
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(String destination, Message<?> message) {
+        DestinationSubscriptions subscriptions = destinationSubscriptions.get(destination);
+        MultiValueMap<String, String> result = subscriptions != null ? subscriptions.getSnapshot() : null;
+        if (patternSubscriptionIds.isEmpty()) {
+            return result != null ? result : new LinkedMultiValueMap<>();
+        }
+        MultiValueMap<String, String> patternResult = patternSubscriptionRegistry.findSubscriptions(message);
+        if (CollectionUtils.isEmpty(result)) {
+            return patternResult;
+        }
+        if (patternResult.isEmpty()) {
+            return result;
+        }
+        MultiValueMap<String, String> mergedResult = new LinkedMultiValueMap<>(result.size() + patternResult.size());
+        result.forEach(mergedResult::addAll);
+        patternResult.forEach(mergedResult::addAll);
+        return mergedResult;
+    }
+
+    private void removeSubscription(String sessionId, String subscriptionId, String destination) {
+        Set<String> subscriptionIds = patternSubscriptionIds.get(sessionId);
+        if (subscriptionIds == null || !subscriptionIds.remove(subscriptionId)) {
+            removeExactSubscription(sessionId, subscriptionId, destination);
+            return;
+        }
+        if (subscriptionIds.isEmpty()) {
+            patternSubscriptionIds.remove(sessionId, subscriptionIds);
+        }
+        // The DefaultSubscriptionRegistry only takes an UNSUBSCRIBE, which the replaced subscription doesn't have.
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        patternSubscriptionRegistry.unregisterSubscription(MessageBuilder.createMessage(EMPTY_PAYLOAD, headerAccessor.getMessageHeaders()));
+    }
+
+    private void removeExactSubscription(String sessionId, String subscriptionId, String destination) {
+        DestinationSubscriptions subscriptions = destinationSubscriptions.get(destination);
+        if (subscriptions != null && subscriptions.remove(sessionId, subscriptionId)) {
+            destinationSubscriptions.remove(destination, subscriptions);
+        }
+    }
+
+    /**
+     * The subscriptions to one destination: Session ID -> Subscription IDs.
+     */
+    private static class DestinationSubscriptions {
+        private final Map<String, List<String>> subscriptionIds = new HashMap<>();
+
+        // Given to the broker, never modified. It's null when it has to be made again.
+        private volatile MultiValueMap<String, String> snapshot;
+
+        // Set once it's empty and removed from the map, so no subscription is added to it anymore.
+        private boolean removed;
+
+        /**
+         * @return false if it has been removed from the map, and the subscription has to be added to a new one.
+         */
+        synchronized boolean add(String sessionId, String subscriptionId) {
+            if (removed) {
+                return false;
+            }
+            List<String> ids = subscriptionIds.computeIfAbsent(sessionId, key -> new ArrayList<>(1));
+            if (!ids.contains(subscriptionId)) {
+                ids.add(subscriptionId);
+                snapshot = null;
+            }
+            return true;
+        }
+
+        /**
+         * @return true if it's empty now, and has to be removed from the map.
+         */
+        synchronized boolean remove(String sessionId, String subscriptionId) {
+            List<String> ids = subscriptionIds.get(sessionId);
+            if (ids != null && ids.remove(subscriptionId)) {
+                if (ids.isEmpty()) {
+                    subscriptionIds.remove(sessionId);
+                }
+                snapshot = null;
+            }
+            removed = subscriptionIds.isEmpty();
+            return removed;
+        }
+
+        MultiValueMap<String, String> getSnapshot() {
+            MultiValueMap<String, String> result = snapshot;
+            if (result != null) {
+                return result;
+            }
+            synchronized (this) {
+                if (snapshot == null) {
+                    LinkedMultiValueMap<String, String> copy = new LinkedMultiValueMap<>(subscriptionIds.size());
+                    subscriptionIds.forEach((sessionId, ids) -> copy.put(sessionId, new ArrayList<>(ids)));
+                    snapshot = CollectionUtils.unmodifiableMultiValueMap(copy);
+                }
+                return snapshot;
+            }
+        }
+    }
+}
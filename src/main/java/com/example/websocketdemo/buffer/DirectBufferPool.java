@@ -0,0 +1,76 @@
+package com.example.websocketdemo.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of direct ByteBuffers of the same size, recycled once their content has been sent.
+ *
+ * A direct buffer is outside of the heap, so the messages waiting to be sent don't grow the heap, however big they are.
+ * And the socket writes it as it is, where a heap buffer is first copied to a temporary direct buffer by the JDK.
+ * But a direct buffer is slow to allocate, and only freed once the GC finds it unreachable, so they are recycled:
+ * acquire() takes a pooled buffer, or allocates one if there's none left, and release(...) puts it back,
+ * unless maxPooledBuffers are already pooled (it's then left to the GC).
+ */
+public class DirectBufferPool {
+
+    private final int bufferSize;
+
+    private final BlockingQueue<ByteBuffer> pooledBuffers;
+
+    private final AtomicLong allocatedCount = new AtomicLong();
+
+    /**
+     * @param bufferSize:       Capacity of the buffers, in bytes.
+     * @param maxPooledBuffers: Maximum number of buffers kept in the pool.
+     */
+    public DirectBufferPool(int bufferSize, int maxPooledBuffers) {
+        if (bufferSize <= 0 || maxPooledBuffers <= 0) {
+            throw new IllegalArgumentException("The buffer size and the maximum number of pooled buffers must be positive.");
+        }
+        this.bufferSize = bufferSize;
+        this.pooledBuffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    /**
+     * @return An empty buffer of bufferSize bytes, to be released once its content has been sent.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = pooledBuffers.poll();
+        if (buffer == null) {
+            allocatedCount.incrementAndGet();
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * @param buffer: A buffer from acquire(), which mustn't be used anymore.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == bufferSize) {
+            buffer.clear();
+            pooledBuffers.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return Number of buffers in the pool, ready to be acquired.
+     */
+    public int getPooledCount() {
+        return pooledBuffers.size();
+    }
+
+    /**
+     * @return Number of buffers allocated since the pool was created, because the pool was empty.
+     */
+    public long getAllocatedCount() {
+        return allocatedCount.get();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.websocketdemo.config;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * What a channel executor does with a message when all of its threads are busy and its queue is full.
+ */
+public enum ChannelExecutorRejectionPolicy {
+    // Throw an exception to the sender of the message.
+    ABORT,
+    // Handle the message in the thread of the sender, which slows the sender down.
+    CALLER_RUNS,
+    // Drop the message silently.
+    DISCARD,
+    // Drop the oldest message in the queue, and queue the message.
+    DISCARD_OLDEST;
+
+    public RejectedExecutionHandler toRejectedExecutionHandler() {
+        switch (this) {
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case DISCARD:
+                return new ThreadPoolExecutor.DiscardPolicy();
+            case DISCARD_OLDEST:
+                return new ThreadPoolExecutor.DiscardOldestPolicy();
+            case ABORT:
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+}
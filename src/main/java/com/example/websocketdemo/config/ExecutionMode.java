@@ -0,0 +1,63 @@
+package com.example.websocketdemo.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The kind of threads that handle the inbound STOMP messages and the raw WebSocket messages (websocket.execution.mode).
+ * PLATFORM: The usual threads, in bounded pools. A handler that blocks on I/O holds one of the few pool threads while it waits.
+ * VIRTUAL: Virtual threads, which are cheap enough to have one per message, so a blocking handler doesn't hold up the others.
+ *
+ * The project is built for Java 8, so the virtual threads are created through reflection (Thread.ofVirtual()).
+ * If the JVM doesn't have virtual threads (before Java 21), VIRTUAL falls back to the platform threads with a warning.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionMode.class);
+
+    /**
+     * @param threadNamePrefix: Prefix of the names of the threads, followed by a counter.
+     * @return ThreadFactory object that creates the threads of this mode.
+     */
+    public ThreadFactory threadFactory(String threadNamePrefix) {
+        if (VIRTUAL.equals(this)) {
+            ThreadFactory virtualThreadFactory = virtualThreadFactory(threadNamePrefix);
+            if (virtualThreadFactory != null) {
+                return virtualThreadFactory;
+            }
+            logger.warn("Virtual threads are not available on Java {}, platform threads are used for {} instead.",
+                    System.getProperty("java.version"), threadNamePrefix);
+        }
+        return new CustomizableThreadFactory(threadNamePrefix);
+    }
+
+    /**
+     * @return true if the threads created by this mode are really virtual threads.
+     */
+    public boolean isVirtual() {
+        return VIRTUAL.equals(this) && virtualThreadFactory("") != null;
+    }
+
+    /**
+     * Thread.ofVirtual().name(threadNamePrefix, 0).factory(), called through reflection.
+     *
+     * @return null if the JVM doesn't have virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory(String threadNamePrefix) {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = ofVirtual.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | LinkageError exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.interceptor.KafkaBrokerRelayChannelInterceptor;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.UserRegistryMessageHandler;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class for configuring the Kafka-backed broker mode (websocket.stomp.broker.mode=kafka).
+ * In this mode, the messages sent to the simple broker are relayed through a Kafka topic, so that every node behind the load balancer
+ * delivers them to its own subscribers. See KafkaBrokerRelayChannelInterceptor for the details.
+ * The connection to Kafka itself is configured with the usual spring.kafka.* properties.
+ *
+ * The user registry is a MultiServerUserRegistry in this mode: every node broadcasts its users and their sessions
+ * to websocket.stomp.user-registry.broadcast-destination through the relay, every 10 seconds, and the other nodes
+ * keep them for 20 seconds. So a message sent to /user/{name}/queue/... on one node is resolved to the sessions of that user
+ * on all the nodes, and the relay delivers it on the node of each session.
+ */
+@Configuration
+@ConditionalOnProperty(name = "websocket.stomp.broker.mode", havingValue = "kafka")
+public class KafkaBrokerRelayConfig {
+
+    private final KafkaProperties kafkaProperties;
+
+    public KafkaBrokerRelayConfig(KafkaProperties kafkaProperties) {
+        this.kafkaProperties = kafkaProperties;
+    }
+
+    @Bean
+    public NewTopic kafkaBrokerRelayTopic(@Value("${websocket.stomp.broker.kafka.topic}") String topic,
+                                          @Value("${websocket.stomp.broker.kafka.partitions}") int partitions,
+                                          @Value("${websocket.stomp.broker.kafka.replication-factor}") short replicationFactor) {
+        return new NewTopic(topic, partitions, replicationFactor);
+    }
+
+    @Bean
+    public ProducerFactory<String, byte[]> kafkaBrokerRelayProducerFactory() {
+        Map<String, Object> producerProperties = kafkaProperties.buildProducerProperties();
+        producerProperties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerProperties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        return new DefaultKafkaProducerFactory<>(producerProperties);
+    }
+
+    @Bean
+    public KafkaTemplate<String, byte[]> kafkaBrokerRelayKafkaTemplate() {
+        return new KafkaTemplate<>(kafkaBrokerRelayProducerFactory());
+    }
+
+    /**
+     * The ConsumerFactory is not exposed as a bean on purpose, since a ConsumerFactory bean would replace the one
+     * that Spring Boot auto-configures for the default kafkaListenerContainerFactory.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> kafkaBrokerRelayListenerContainerFactory(
+            @Value("${websocket.stomp.broker.kafka.concurrency}") int concurrency) {
+        Map<String, Object> consumerProperties = kafkaProperties.buildConsumerProperties();
+        consumerProperties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        consumerProperties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        // A node that joins late has no subscribers for the messages sent before it started.
+        consumerProperties.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        ConsumerFactory<String, byte[]> consumerFactory = new DefaultKafkaConsumerFactory<>(consumerProperties);
+
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(concurrency);
+        return factory;
+    }
+
+    /**
+     * The brokerChannel bean is created by the WebSocket message broker configuration, which needs this interceptor first,
+     * so it is injected lazily.
+     */
+    @Bean
+    public KafkaBrokerRelayChannelInterceptor kafkaBrokerRelayChannelInterceptor(
+            @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel,
+            @Value("${websocket.stomp.broker.kafka.topic}") String topic,
+            @Value("${websocket.stomp.broker.kafka.group-id-prefix}") String groupIdPrefix,
+            @Value("#{'${websocket.stomp.broker.list}'.split(',')}") List<String> webSocketStompBrokerList) {
+        return new KafkaBrokerRelayChannelInterceptor(kafkaBrokerRelayKafkaTemplate(), brokerChannel, topic, groupIdPrefix, webSocketStompBrokerList);
+    }
+
+    /**
+     * Broadcasts the users of this node once the broker is available, and keeps the ones broadcast by the other nodes,
+     * which the interceptor passes to it.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "websocket.stomp.user-registry.enabled", havingValue = "true")
+    public UserRegistryMessageHandler kafkaUserRegistryMessageHandler(
+            KafkaBrokerRelayChannelInterceptor kafkaBrokerRelayChannelInterceptor,
+            SimpUserRegistryCustomizer simpUserRegistryCustomizer,
+            @Qualifier("brokerMessagingTemplate") SimpMessagingTemplate brokerMessagingTemplate,
+            @Qualifier("webSocketTaskScheduler") TaskScheduler taskScheduler,
+            @Value("${websocket.stomp.user-registry.broadcast-destination}") String userRegistryBroadcastDestination) {
+        UserRegistryMessageHandler userRegistryMessageHandler = new UserRegistryMessageHandler(
+                simpUserRegistryCustomizer.getMultiServerUserRegistry(), brokerMessagingTemplate, userRegistryBroadcastDestination, taskScheduler);
+        kafkaBrokerRelayChannelInterceptor.setUserRegistryBroadcast(userRegistryBroadcastDestination, userRegistryMessageHandler);
+        return userRegistryMessageHandler;
+    }
+}
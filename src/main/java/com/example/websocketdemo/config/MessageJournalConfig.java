@@ -0,0 +1,50 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.interceptor.MessageJournalChannelInterceptor;
+import com.example.websocketdemo.journal.MessageJournal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * A class for configuring the message journal (websocket.stomp.journal.enabled=true), which keeps the broadcast messages
+ * on the local disk, so the chat history survives a restart. See MessageJournal for the details.
+ * The history is read through MessageJournalController.
+ */
+@Configuration
+@ConditionalOnProperty(name = "websocket.stomp.journal.enabled", havingValue = "true")
+public class MessageJournalConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public MessageJournal messageJournal(@Value("${websocket.stomp.journal.directory}") String directory,
+                                         @Value("${websocket.stomp.journal.segment-size}") int segmentSize,
+                                         @Value("${websocket.stomp.journal.max-segments}") int maxSegments,
+                                         @Value("${websocket.stomp.journal.index-interval}") int indexInterval,
+                                         @Value("${websocket.stomp.journal.queue-capacity}") int queueCapacity,
+                                         @Value("${websocket.stomp.journal.max-batch-size}") int maxBatchSize,
+                                         @Value("${websocket.stomp.journal.fsync}") boolean fsync,
+                                         MeterRegistry meterRegistry) {
+        MessageJournal messageJournal = new MessageJournal(Paths.get(directory), segmentSize, maxSegments, indexInterval,
+                queueCapacity, maxBatchSize, fsync);
+        Gauge.builder("websocket.journal.queued", messageJournal, MessageJournal::getQueuedRecordCount)
+                .description("Number of messages waiting to be written to the journal.")
+                .register(meterRegistry);
+        Gauge.builder("websocket.journal.dropped", messageJournal, MessageJournal::getDroppedRecordCount)
+                .description("Number of messages not written to the journal, because its queue was full.")
+                .register(meterRegistry);
+        return messageJournal;
+    }
+
+    @Bean
+    public MessageJournalChannelInterceptor messageJournalChannelInterceptor(
+            MessageJournal messageJournal,
+            @Value("#{'${websocket.stomp.journal.destination.list}'.split(',')}") List<String> destinations) {
+        return new MessageJournalChannelInterceptor(messageJournal, destinations);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.user.ShardedSimpUserRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.messaging.simp.user.MultiServerUserRegistry;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * The SimpUserRegistry is created by the WebSocket message broker configuration, and used right away by its UserDestinationResolver,
+ * so it can't be set through WebSocketMessageBrokerConfigurer, nor customized once all the beans are created
+ * like the SimpleBrokerMessageHandler (see SimpleBrokerMessageHandlerCustomizer). So the userRegistry bean is replaced here,
+ * as it's created, by the ShardedSimpUserRegistry (websocket.stomp.user-registry.enabled=true).
+ *
+ * If websocket.stomp.broker.mode=kafka, the registry is a MultiServerUserRegistry instead, which also knows the users of the other nodes
+ * (see KafkaBrokerRelayConfig). The ShardedSimpUserRegistry is then its local registry.
+ */
+@Component
+public class SimpUserRegistryCustomizer implements BeanPostProcessor {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String USER_REGISTRY_NAME = "userRegistry";
+
+    private static final String KAFKA_BROKER_MODE = "kafka";
+
+    private final boolean enabled;
+
+    private final ShardedSimpUserRegistry userRegistry;
+
+    // Only when websocket.stomp.broker.mode=kafka.
+    private final MultiServerUserRegistry multiServerUserRegistry;
+
+    public SimpUserRegistryCustomizer(@Value("${websocket.stomp.user-registry.enabled}") boolean enabled,
+                                      @Value("${websocket.stomp.user-registry.shards}") int shards,
+                                      @Value("${websocket.stomp.broker.mode}") String brokerMode) {
+        this.enabled = enabled;
+        this.userRegistry = new ShardedSimpUserRegistry(shards);
+        this.multiServerUserRegistry = KAFKA_BROKER_MODE.equals(brokerMode) ? new MultiServerUserRegistry(userRegistry) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The local registry, which sessions are added by the UserRegistryChannelInterceptor.
+     */
+    public ShardedSimpUserRegistry getUserRegistry() {
+        return userRegistry;
+    }
+
+    /**
+     * @return The registry of the users of all the nodes, or null if websocket.stomp.broker.mode isn't kafka.
+     */
+    public MultiServerUserRegistry getMultiServerUserRegistry() {
+        return multiServerUserRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!enabled || !USER_REGISTRY_NAME.equals(beanName) || !(bean instanceof SimpUserRegistry)) {
+            return bean;
+        }
+        logger.info("The users are kept by {}{}.", userRegistry, multiServerUserRegistry != null ? ", with the users of the other nodes" : "");
+        return multiServerUserRegistry != null ? multiServerUserRegistry : userRegistry;
+    }
+}
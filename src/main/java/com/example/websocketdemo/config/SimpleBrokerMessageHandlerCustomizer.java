@@ -0,0 +1,63 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.broker.DestinationSubscriptionRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * The SimpleBrokerMessageHandler is created by the WebSocket message broker configuration, and its SubscriptionRegistry
+ * can't be set through WebSocketMessageBrokerConfigurer. So, like the StompSubProtocolHandlerCustomizer,
+ * it's looked up once all the beans are created (before it's started), and customized here.
+ *
+ * If websocket.stomp.broker.destination-registry.enabled=true, the subscriptions are kept by the DestinationSubscriptionRegistry:
+ * websocket.stomp.broker.destinations: Number of destinations with subscribers.
+ */
+@Component
+public class SimpleBrokerMessageHandlerCustomizer implements SmartInitializingSingleton {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String SIMPLE_BROKER_MESSAGE_HANDLER_NAME = "simpleBrokerMessageHandler";
+
+    private final ApplicationContext applicationContext;
+
+    private final MeterRegistry meterRegistry;
+
+    private final boolean destinationRegistryEnabled;
+
+    public SimpleBrokerMessageHandlerCustomizer(ApplicationContext applicationContext, MeterRegistry meterRegistry,
+                                                @Value("${websocket.stomp.broker.destination-registry.enabled}") boolean destinationRegistryEnabled) {
+        this.applicationContext = applicationContext;
+        this.meterRegistry = meterRegistry;
+        this.destinationRegistryEnabled = destinationRegistryEnabled;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!applicationContext.containsBean(SIMPLE_BROKER_MESSAGE_HANDLER_NAME)) {
+            return;
+        }
+        Object brokerMessageHandler = applicationContext.getBean(SIMPLE_BROKER_MESSAGE_HANDLER_NAME);
+        if (brokerMessageHandler instanceof SimpleBrokerMessageHandler) {
+            customize((SimpleBrokerMessageHandler) brokerMessageHandler);
+        }
+    }
+
+    private void customize(SimpleBrokerMessageHandler simpleBrokerMessageHandler) {
+        // Find the subscribers of a destination with a map lookup, instead of matching every subscription.
+        if (destinationRegistryEnabled) {
+            DestinationSubscriptionRegistry subscriptionRegistry = new DestinationSubscriptionRegistry();
+            simpleBrokerMessageHandler.setSubscriptionRegistry(subscriptionRegistry);
+            Gauge.builder("websocket.stomp.broker.destinations", subscriptionRegistry, DestinationSubscriptionRegistry::getDestinationCount)
+                    .description("Number of destinations with subscribers in the simple broker.")
+                    .register(meterRegistry);
+            logger.info("The subscriptions of the simple broker are kept by DestinationSubscriptionRegistry.");
+        }
+    }
+}
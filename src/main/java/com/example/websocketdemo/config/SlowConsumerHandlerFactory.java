@@ -0,0 +1,86 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.session.SlowConsumerPolicy;
+import com.example.websocketdemo.session.SlowConsumerWebSocketHandlerDecorator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+
+/**
+ * Creates the SlowConsumerWebSocketHandlerDecorators of the STOMP endpoints (websocket.slow-consumer.stomp.enabled)
+ * and of the raw endpoints (websocket.slow-consumer.raw.enabled), which share the policy and its limits.
+ */
+@Component
+public class SlowConsumerHandlerFactory {
+
+    private final boolean stompEnabled;
+
+    private final boolean rawEnabled;
+
+    private final SlowConsumerPolicy policy;
+
+    private final long maxBufferSize;
+
+    private final long maxLatencyMillis;
+
+    private final CloseStatus closeStatus;
+
+    private final ThreadPoolTaskExecutor webSocketSendExecutor;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final WebSocketMetrics webSocketMetrics;
+
+    public SlowConsumerHandlerFactory(@Value("${websocket.slow-consumer.stomp.enabled}") boolean stompEnabled,
+                                      @Value("${websocket.slow-consumer.raw.enabled}") boolean rawEnabled,
+                                      @Value("${websocket.slow-consumer.policy}") SlowConsumerPolicy policy,
+                                      @Value("${websocket.slow-consumer.max-buffer-size}") long maxBufferSize,
+                                      @Value("${websocket.slow-consumer.max-latency-millis}") long maxLatencyMillis,
+                                      @Value("${websocket.slow-consumer.close-status-code}") int closeStatusCode,
+                                      @Qualifier("webSocketSendExecutor") ThreadPoolTaskExecutor webSocketSendExecutor,
+                                      ApplicationEventPublisher applicationEventPublisher,
+                                      WebSocketMetrics webSocketMetrics) {
+        this.stompEnabled = stompEnabled;
+        this.rawEnabled = rawEnabled;
+        this.policy = policy;
+        this.maxBufferSize = maxBufferSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.closeStatus = new CloseStatus(closeStatusCode);
+        this.webSocketSendExecutor = webSocketSendExecutor;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.webSocketMetrics = webSocketMetrics;
+    }
+
+    public boolean isStompEnabled() {
+        return stompEnabled;
+    }
+
+    public boolean isRawEnabled() {
+        return rawEnabled;
+    }
+
+    /**
+     * @param handler: The STOMP WebSocket handler.
+     * @return The handler, decorated so that its sessions queue the STOMP frames.
+     */
+    public WebSocketHandler decorateStomp(WebSocketHandler handler) {
+        return webSocketMetrics.slowConsumerHandler("stomp", decorate(handler, true));
+    }
+
+    /**
+     * @param handler: The raw WebSocket handler.
+     * @return The handler, decorated so that its sessions queue the messages.
+     */
+    public WebSocketHandler decorateRaw(WebSocketHandler handler) {
+        return webSocketMetrics.slowConsumerHandler("raw", decorate(handler, false));
+    }
+
+    private SlowConsumerWebSocketHandlerDecorator decorate(WebSocketHandler handler, boolean stomp) {
+        return new SlowConsumerWebSocketHandlerDecorator(handler, webSocketSendExecutor, applicationEventPublisher,
+                policy, maxBufferSize, maxLatencyMillis, closeStatus, stomp);
+    }
+}
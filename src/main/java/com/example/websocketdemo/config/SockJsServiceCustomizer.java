@@ -0,0 +1,57 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.scheduling.HashedWheelTaskScheduler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.annotation.SockJsServiceRegistration;
+
+/**
+ * The settings of the SockJS endpoints (the STOMP ones and the raw ones), kept in one place.
+ *
+ * websocket.sockjs.stream-bytes-limit: Bytes an xhr-streaming or eventsource response sends before it's closed,
+ * so the browser doesn't keep the whole stream in memory. The client then opens a new one, which costs a round trip.
+ * websocket.sockjs.http-message-cache-size: Messages kept for a session between two requests of an HTTP transport
+ * (polling, or the next streaming response). More than that, and the session is closed.
+ * websocket.sockjs.disconnect-delay-millis: Time a session of an HTTP transport is kept without a request, before it's closed.
+ * websocket.sockjs.heartbeat-time-millis: Time without a frame sent after which a SockJS heartbeat is sent.
+ *
+ * If websocket.heartbeat.wheel.enabled=true, the heartbeats and disconnect delays are scheduled on the timer wheel
+ * (see WebSocketSchedulingConfig), instead of Spring's messageBrokerTaskScheduler.
+ */
+@Component
+public class SockJsServiceCustomizer {
+
+    private final int streamBytesLimit;
+
+    private final int httpMessageCacheSize;
+
+    private final long disconnectDelayMillis;
+
+    private final long heartbeatTimeMillis;
+
+    private final ObjectProvider<HashedWheelTaskScheduler> webSocketHeartbeatTaskScheduler;
+
+    public SockJsServiceCustomizer(@Value("${websocket.sockjs.stream-bytes-limit}") int streamBytesLimit,
+                                   @Value("${websocket.sockjs.http-message-cache-size}") int httpMessageCacheSize,
+                                   @Value("${websocket.sockjs.disconnect-delay-millis}") long disconnectDelayMillis,
+                                   @Value("${websocket.sockjs.heartbeat-time-millis}") long heartbeatTimeMillis,
+                                   ObjectProvider<HashedWheelTaskScheduler> webSocketHeartbeatTaskScheduler) {
+        this.streamBytesLimit = streamBytesLimit;
+        this.httpMessageCacheSize = httpMessageCacheSize;
+        this.disconnectDelayMillis = disconnectDelayMillis;
+        this.heartbeatTimeMillis = heartbeatTimeMillis;
+        this.webSocketHeartbeatTaskScheduler = webSocketHeartbeatTaskScheduler;
+    }
+
+    /**
+     * @param sockJsServiceRegistration: The SockJS service of an endpoint, from withSockJS().
+     */
+    public void customize(SockJsServiceRegistration sockJsServiceRegistration) {
+        sockJsServiceRegistration.setStreamBytesLimit(streamBytesLimit)
+                .setHttpMessageCacheSize(httpMessageCacheSize)
+                .setDisconnectDelay(disconnectDelayMillis)
+                .setHeartbeatTime(heartbeatTimeMillis);
+        webSocketHeartbeatTaskScheduler.ifAvailable(sockJsServiceRegistration::setTaskScheduler);
+    }
+}
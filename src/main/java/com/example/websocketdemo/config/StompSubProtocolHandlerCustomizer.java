@@ -0,0 +1,61 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.stomp.SharedPayloadStompEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * The StompSubProtocolHandler, which turns the messages into STOMP frames and back, is created by the WebSocket message broker configuration,
+ * and it can't be configured through WebSocketMessageBrokerConfigurer.
+ * So it's looked up from the subProtocolWebSocketHandler bean once all the beans are created (before the web server is started),
+ * and customized here.
+ */
+@Component
+public class StompSubProtocolHandlerCustomizer implements SmartInitializingSingleton {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String SUB_PROTOCOL_WEB_SOCKET_HANDLER_NAME = "subProtocolWebSocketHandler";
+
+    private final ApplicationContext applicationContext;
+
+    private final boolean sharedPayloadEnabled;
+
+    private final int sharedPayloadMinSize;
+
+    public StompSubProtocolHandlerCustomizer(ApplicationContext applicationContext,
+                                             @Value("${websocket.stomp.shared-payload.enabled}") boolean sharedPayloadEnabled,
+                                             @Value("${websocket.stomp.shared-payload.min-size}") int sharedPayloadMinSize) {
+        this.applicationContext = applicationContext;
+        this.sharedPayloadEnabled = sharedPayloadEnabled;
+        this.sharedPayloadMinSize = sharedPayloadMinSize;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!applicationContext.containsBean(SUB_PROTOCOL_WEB_SOCKET_HANDLER_NAME)) {
+            return;
+        }
+        SubProtocolWebSocketHandler subProtocolWebSocketHandler =
+                applicationContext.getBean(SUB_PROTOCOL_WEB_SOCKET_HANDLER_NAME, SubProtocolWebSocketHandler.class);
+        for (SubProtocolHandler subProtocolHandler : subProtocolWebSocketHandler.getProtocolHandlers()) {
+            if (subProtocolHandler instanceof StompSubProtocolHandler) {
+                customize((StompSubProtocolHandler) subProtocolHandler);
+            }
+        }
+    }
+
+    private void customize(StompSubProtocolHandler stompSubProtocolHandler) {
+        // Encode each broadcast once, instead of once per subscriber. See SharedPayloadStompEncoder.
+        if (sharedPayloadEnabled) {
+            stompSubProtocolHandler.setEncoder(new SharedPayloadStompEncoder(sharedPayloadMinSize));
+            logger.info("The STOMP frames of the broadcasts are encoded with SharedPayloadStompEncoder.");
+        }
+    }
+}
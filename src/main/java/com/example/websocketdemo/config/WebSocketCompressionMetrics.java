@@ -0,0 +1,116 @@
+package com.example.websocketdemo.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of the permessage-deflate compression, per endpoint ("stomp" or "raw"):
+ * websocket.compression.sessions: Number of sessions that negotiated permessage-deflate.
+ * websocket.compression.messages: Number of messages sent to those sessions, below or above websocket.compression.min-size.
+ * websocket.compression.sampled.bytes: Size of the sampled messages, before (stage=uncompressed) and after (stage=compressed) deflating them.
+ * The bytes saved are uncompressed - compressed, and the ratio is compressed / uncompressed.
+ * websocket.compression.deflate.time: CPU time spent deflating a sampled message.
+ * websocket.compression.session.ratio: Compression ratio of each session over its lifetime, recorded when it's closed.
+ *
+ * The web server compresses the messages itself and doesn't tell how well, so the messages are sampled and deflated again here.
+ * See CompressionStatsWebSocketSessionDecorator.
+ */
+@Component
+public class WebSocketCompressionMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EndpointMetrics> endpointMetrics = new ConcurrentHashMap<>();
+
+    public WebSocketCompressionMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @param endpoint: The name of the endpoint, used as the tag of its metrics.
+     * @return The metrics of the endpoint, created on the first call.
+     */
+    public EndpointMetrics forEndpoint(String endpoint) {
+        return endpointMetrics.computeIfAbsent(endpoint, EndpointMetrics::new);
+    }
+
+    public class EndpointMetrics {
+        private final Counter sessionCounter;
+
+        private final Counter smallMessageCounter;
+
+        private final Counter largeMessageCounter;
+
+        private final Counter uncompressedBytesCounter;
+
+        private final Counter compressedBytesCounter;
+
+        private final Timer deflateTimer;
+
+        private final DistributionSummary sessionRatioSummary;
+
+        private EndpointMetrics(String endpoint) {
+            sessionCounter = Counter.builder("websocket.compression.sessions")
+                    .description("Number of sessions that negotiated permessage-deflate.")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            smallMessageCounter = messageCounter(endpoint, "below-threshold");
+            largeMessageCounter = messageCounter(endpoint, "above-threshold");
+            uncompressedBytesCounter = sampledBytesCounter(endpoint, "uncompressed");
+            compressedBytesCounter = sampledBytesCounter(endpoint, "compressed");
+            deflateTimer = Timer.builder("websocket.compression.deflate.time")
+                    .description("CPU time spent deflating a sampled message.")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+            sessionRatioSummary = DistributionSummary.builder("websocket.compression.session.ratio")
+                    .description("Compressed / uncompressed size of the sampled messages of a session, recorded when it's closed.")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry);
+        }
+
+        public void sessionNegotiated() {
+            sessionCounter.increment();
+        }
+
+        /**
+         * @param belowThreshold: Whether the message is smaller than websocket.compression.min-size.
+         */
+        public void countMessage(boolean belowThreshold) {
+            (belowThreshold ? smallMessageCounter : largeMessageCounter).increment();
+        }
+
+        public void recordSample(int uncompressedBytes, int compressedBytes, long deflateNanos) {
+            uncompressedBytesCounter.increment(uncompressedBytes);
+            compressedBytesCounter.increment(compressedBytes);
+            deflateTimer.record(deflateNanos, TimeUnit.NANOSECONDS);
+        }
+
+        public void recordSessionRatio(double ratio) {
+            sessionRatioSummary.record(ratio);
+        }
+
+        private Counter messageCounter(String endpoint, String size) {
+            return Counter.builder("websocket.compression.messages")
+                    .description("Number of messages sent to the sessions that negotiated permessage-deflate.")
+                    .tag("endpoint", endpoint)
+                    .tag("size", size)
+                    .register(meterRegistry);
+        }
+
+        private Counter sampledBytesCounter(String endpoint, String stage) {
+            return Counter.builder("websocket.compression.sampled.bytes")
+                    .description("Size of the sampled messages, before and after deflating them.")
+                    .baseUnit("bytes")
+                    .tag("endpoint", endpoint)
+                    .tag("stage", stage)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,12 +1,17 @@
 package com.example.websocketdemo.config;
 
+import com.example.websocketdemo.buffer.DirectBufferPool;
+import com.example.websocketdemo.handshake.PerMessageDeflateHandshakeHandler;
+import com.example.websocketdemo.session.CompressionStatsWebSocketHandlerDecorator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.SockJsServiceRegistration;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
@@ -15,30 +20,134 @@ import java.util.List;
 /**
  * This is a class for create WebSocket broker that similar to WebSocketConfig class but with much simpler configurations.
  * NOTE: You can run this class same with WebSocketMessageBrokerConfigurerCustomConfig class.
- * NOTE: The paths below can't be shared with the ones in WebSocketMessageBrokerConfigurerCustomConfig class unless .
+ * NOTE: The paths below can't be shared with the ones in WebSocketMessageBrokerConfigurerCustomConfig class,
+ * otherwise the raw handler takes over the STOMP endpoints. So it has its own paths (websocket.raw.endpoint.list).
  */
 @Configuration
 @EnableWebSocket
 public class WebSocketConfigurerCustomConfig implements WebSocketConfigurer {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private final List<String> webSocketBrokerEndpointList;
+    private final List<String> webSocketRawEndpointList;
 
     private final List<String> webSocketBrokerAllowedOriginList;
 
-    public WebSocketConfigurerCustomConfig(@Value("#{'${websocket.broker.endpoint.list}'.split(',')}") List<String> webSocketBrokerEndpointList,
-                                           @Value("#{'${websocket.broker.allowed.origin.list}'.split(',')}") List<String> webSocketBrokerAllowedOriginList) {
-        this.webSocketBrokerEndpointList = webSocketBrokerEndpointList;
+    private final ExecutionMode executionMode;
+
+    private final boolean compressionEnabled;
+
+    private final boolean compressionContextTakeover;
+
+    private final int compressionMinSize;
+
+    private final int compressionStatsSampleRate;
+
+    private final WebSocketCompressionMetrics webSocketCompressionMetrics;
+
+    private final SlowConsumerHandlerFactory slowConsumerHandlerFactory;
+
+    private final boolean streamingEnabled;
+
+    private final int streamingBufferSize;
+
+    private final int streamingMaxPooledBuffers;
+
+    private final long streamingSessionBufferLimit;
+
+    private final long streamingMaxWaitMillis;
+
+    private final WebSocketMetrics webSocketMetrics;
+
+    private final String[] webSocketRawNativeEndpointList;
+
+    private final SockJsServiceCustomizer sockJsServiceCustomizer;
+
+    public WebSocketConfigurerCustomConfig(@Value("#{'${websocket.raw.endpoint.list}'.split(',')}") List<String> webSocketRawEndpointList,
+                                           @Value("#{'${websocket.broker.allowed.origin.list}'.split(',')}") List<String> webSocketBrokerAllowedOriginList,
+                                           @Value("${websocket.execution.mode}") ExecutionMode executionMode,
+                                           @Value("${websocket.compression.raw.enabled}") boolean compressionEnabled,
+                                           @Value("${websocket.compression.context-takeover}") boolean compressionContextTakeover,
+                                           @Value("${websocket.compression.min-size}") int compressionMinSize,
+                                           @Value("${websocket.compression.stats.sample-rate}") int compressionStatsSampleRate,
+                                           WebSocketCompressionMetrics webSocketCompressionMetrics,
+                                           SlowConsumerHandlerFactory slowConsumerHandlerFactory,
+                                           @Value("${websocket.raw.streaming.enabled}") boolean streamingEnabled,
+                                           @Value("${websocket.raw.streaming.buffer-size}") int streamingBufferSize,
+                                           @Value("${websocket.raw.streaming.max-pooled-buffers}") int streamingMaxPooledBuffers,
+                                           @Value("${websocket.raw.streaming.session-buffer-limit}") long streamingSessionBufferLimit,
+                                           @Value("${websocket.raw.streaming.max-wait-millis}") long streamingMaxWaitMillis,
+                                           WebSocketMetrics webSocketMetrics,
+                                           @Value("${websocket.raw.native-endpoint.list}") String[] webSocketRawNativeEndpointList,
+                                           SockJsServiceCustomizer sockJsServiceCustomizer) {
+        this.webSocketRawEndpointList = webSocketRawEndpointList;
         this.webSocketBrokerAllowedOriginList = webSocketBrokerAllowedOriginList;
+        this.executionMode = executionMode;
+        this.compressionEnabled = compressionEnabled;
+        this.compressionContextTakeover = compressionContextTakeover;
+        this.compressionMinSize = compressionMinSize;
+        this.compressionStatsSampleRate = compressionStatsSampleRate;
+        this.webSocketCompressionMetrics = webSocketCompressionMetrics;
+        this.slowConsumerHandlerFactory = slowConsumerHandlerFactory;
+        this.streamingEnabled = streamingEnabled;
+        this.streamingBufferSize = streamingBufferSize;
+        this.streamingMaxPooledBuffers = streamingMaxPooledBuffers;
+        this.streamingSessionBufferLimit = streamingSessionBufferLimit;
+        this.streamingMaxWaitMillis = streamingMaxWaitMillis;
+        this.webSocketMetrics = webSocketMetrics;
+        this.webSocketRawNativeEndpointList = webSocketRawNativeEndpointList;
+        this.sockJsServiceCustomizer = sockJsServiceCustomizer;
     }
 
+    /**
+     * The raw endpoint has its own permessage-deflate switch (websocket.compression.raw.enabled), separate from the STOMP endpoints.
+     * Likewise, its echoes are queued per session (websocket.slow-consumer.raw.enabled), so a client that doesn't read them is dealt with
+     * by the SlowConsumerPolicy.
+     * Except in the streaming mode: the handler then sends the parts of the messages itself, and keeps their size per session
+     * within websocket.raw.streaming.session-buffer-limit (see WebSocketCustomHandler).
+     * Like the STOMP endpoints, its SockJS transports are tuned by the SockJsServiceCustomizer, and it has native endpoints
+     * (websocket.raw.native-endpoint.list) that are plain WebSocket, without SockJS.
+     */
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(myHandler(), webSocketBrokerEndpointList.toArray(new String[0])).setAllowedOrigins(webSocketBrokerAllowedOriginList.toArray(new String[0])).withSockJS();
+        WebSocketHandler webSocketHandler = myHandler();
+        if (slowConsumerHandlerFactory.isRawEnabled() && streamingEnabled) {
+            logger.info("The raw endpoints are in the streaming mode, their messages are not queued by the SlowConsumerPolicy.");
+        } else if (slowConsumerHandlerFactory.isRawEnabled()) {
+            webSocketHandler = slowConsumerHandlerFactory.decorateRaw(webSocketHandler);
+        }
+        if (compressionEnabled) {
+            webSocketHandler = new CompressionStatsWebSocketHandlerDecorator(webSocketHandler,
+                    webSocketCompressionMetrics.forEndpoint("raw"), compressionMinSize, compressionStatsSampleRate);
+        }
+        SockJsServiceRegistration sockJsServiceRegistration = registry.addHandler(webSocketHandler, webSocketRawEndpointList.toArray(new String[0]))
+                .setHandshakeHandler(new PerMessageDeflateHandshakeHandler(compressionEnabled, compressionContextTakeover))
+                .setAllowedOrigins(webSocketBrokerAllowedOriginList.toArray(new String[0])).withSockJS();
+        sockJsServiceCustomizer.customize(sockJsServiceRegistration);
+        if (webSocketRawNativeEndpointList.length > 0) {
+            registry.addHandler(webSocketHandler, webSocketRawNativeEndpointList)
+                    .setHandshakeHandler(new PerMessageDeflateHandshakeHandler(compressionEnabled, compressionContextTakeover))
+                    .setAllowedOrigins(webSocketBrokerAllowedOriginList.toArray(new String[0]));
+        }
     }
 
+    /**
+     * In the VIRTUAL execution mode, every message gets its own virtual thread (there's no pool to run out of).
+     * In the PLATFORM execution mode, the messages are handled by the threads of the web server, as before.
+     * In the streaming mode, the parts handed over to the virtual threads are copied to pooled direct buffers.
+     */
     @Bean
     public WebSocketHandler myHandler() {
+        if (ExecutionMode.VIRTUAL.equals(executionMode)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(executionMode.threadFactory("webSocketCustomHandler-"));
+            if (streamingEnabled) {
+                DirectBufferPool bufferPool = webSocketMetrics.bufferPool("raw", new DirectBufferPool(streamingBufferSize, streamingMaxPooledBuffers));
+                return new WebSocketCustomHandler(executor, true, bufferPool, streamingSessionBufferLimit, streamingMaxWaitMillis);
+            }
+            return new WebSocketCustomHandler(executor);
+        }
+        if (streamingEnabled) {
+            return new WebSocketCustomHandler(null, true, null, streamingSessionBufferLimit, streamingMaxWaitMillis);
+        }
         return new WebSocketCustomHandler();
     }
 }
@@ -1,20 +1,89 @@
 package com.example.websocketdemo.config;
 
+import com.example.websocketdemo.buffer.DirectBufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * This is a class that is used to handle all override events below.
  * You may add "extends TextWebSocketHandler" after the WebSocketCustomHandler(this), although this is .
  * Reference: https://docs.spring.io/spring-framework/docs/4.1.7.RELEASE/spring-framework-reference/html/websocket.html#websocket-server-handler
+ *
+ * By default, the messages are handled by the thread of the web server that received them.
+ * If an Executor is given (websocket.execution.mode=VIRTUAL), the messages are handed over to it instead,
+ * so that a handler blocking on I/O doesn't hold up the web server threads.
+ * The messages of one session are still handled one at a time and in order, through a SessionLane per session,
+ * because a WebSocketSession can't send messages from more than one thread at once.
+ *
+ * In the streaming mode (websocket.raw.streaming.enabled), the web server hands over the messages in parts as they arrive
+ * (supportsPartialMessages()), instead of once they're complete, and each part is echoed as a partial message.
+ * So a multi-megabyte message is never held as a whole:
+ * - On the threads of the web server, a part is sent before the next one is read, so only one part per session is in memory,
+ * and a client that doesn't read its echoes is slowed down by TCP.
+ * - With an Executor, the binary parts are copied to pooled direct buffers (see DirectBufferPool), released once sent.
+ * The parts queued for a session are limited to sessionBufferLimit bytes: the web server thread waits for them to be sent,
+ * up to maxWaitMillis, then the session is closed (4500, SESSION_NOT_RELIABLE).
  */
 public class WebSocketCustomHandler implements WebSocketHandler {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private final Executor executor;
+
+    private final boolean streaming;
+
+    private final DirectBufferPool bufferPool;
+
+    private final long sessionBufferLimit;
+
+    private final long maxWaitNanos;
+
+    // Session ID -> SessionLane, only used if there's an Executor.
+    private final Map<String, SessionLane> sessionLanes = new ConcurrentHashMap<>();
+
+    public WebSocketCustomHandler() {
+        this(null);
+    }
+
+    /**
+     * @param executor: Executor that handles the messages, or null to handle them in the thread of the web server.
+     */
+    public WebSocketCustomHandler(Executor executor) {
+        this(executor, false, null, 0, 0);
+    }
+
+    /**
+     * @param executor:           Executor that handles the messages, or null to handle them in the thread of the web server.
+     * @param streaming:          Whether the messages are echoed in parts as they arrive.
+     * @param bufferPool:         The pool of the buffers the binary parts are copied to, before they're handed over to the Executor.
+     * @param sessionBufferLimit: Maximum size of the parts of a session handed over to the Executor and not sent yet, in bytes.
+     * @param maxWaitMillis:      Maximum time to wait for the parts of a session to be sent, when they're over sessionBufferLimit.
+     */
+    public WebSocketCustomHandler(Executor executor, boolean streaming, DirectBufferPool bufferPool, long sessionBufferLimit, long maxWaitMillis) {
+        if (streaming && executor != null && bufferPool == null) {
+            throw new IllegalArgumentException("The streaming mode needs a DirectBufferPool to hand over the messages to the Executor.");
+        }
+        this.executor = executor;
+        this.streaming = streaming;
+        this.bufferPool = bufferPool;
+        this.sessionBufferLimit = sessionBufferLimit;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
     /**
      * Event after the frontend client has connected the server successfully.
      *
@@ -35,7 +104,62 @@ public class WebSocketCustomHandler implements WebSocketHandler {
      */
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
-        logger.info("handleMessage()");
+        if (executor == null) {
+            echo(session, message);
+            return;
+        }
+        // The web server may still hand over the parts it had read when the session was closed.
+        if (!session.isOpen()) {
+            return;
+        }
+        SessionLane sessionLane = sessionLanes.computeIfAbsent(session.getId(), key -> new SessionLane(session));
+        if (streaming) {
+            stream(sessionLane, message);
+            return;
+        }
+        // The web server may reuse the buffer of a binary message once this method returns, so it's copied before it's handed over.
+        WebSocketMessage<?> handedOverMessage = message instanceof BinaryMessage ? copyBinaryMessage((BinaryMessage) message) : message;
+        sessionLane.submit(new QueuedMessage(handedOverMessage, null));
+    }
+
+    /**
+     * Hand over a part of a message to the lane of its session, in the streaming mode.
+     * A binary part is copied to as many pooled buffers as it takes, each one handed over as a partial message.
+     */
+    private void stream(SessionLane sessionLane, WebSocketMessage<?> message) throws Exception {
+        if (!(message instanceof BinaryMessage)) {
+            if (sessionLane.reserve(message.getPayloadLength())) {
+                sessionLane.submit(new QueuedMessage(message, null));
+            }
+            return;
+        }
+        ByteBuffer payload = ((BinaryMessage) message).getPayload().duplicate();
+        do {
+            int size = Math.min(payload.remaining(), bufferPool.getBufferSize());
+            if (!sessionLane.reserve(size)) {
+                return;
+            }
+            ByteBuffer buffer = bufferPool.acquire();
+            ByteBuffer part = payload.duplicate();
+            part.limit(part.position() + size);
+            buffer.put(part).flip();
+            payload.position(payload.position() + size);
+            sessionLane.submit(new QueuedMessage(new BinaryMessage(buffer, message.isLast() && !payload.hasRemaining()), buffer));
+        } while (payload.hasRemaining());
+    }
+
+    /**
+     * Send the message back to the session.
+     *
+     * @param session: WebSocketSession object that contains the info about the frontend client.
+     * @param message: The message retreived from the frontend clients.
+     * @throws Exception Any possible exceptions related from unable to send messages to WebSocketSession object.
+     */
+    void echo(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        // Once per message, not per part in the streaming mode.
+        if (message.isLast()) {
+            logger.info("handleMessage()");
+        }
         session.sendMessage(message); // Send back to the session.
     }
 
@@ -61,10 +185,149 @@ public class WebSocketCustomHandler implements WebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         logger.info("afterConnectionClosed()");
+        SessionLane sessionLane = sessionLanes.remove(session.getId());
+        if (sessionLane != null) {
+            sessionLane.close();
+        }
     }
 
     @Override
     public boolean supportsPartialMessages() {
-        return false;
+        return streaming;
+    }
+
+    private BinaryMessage copyBinaryMessage(BinaryMessage message) {
+        ByteBuffer payload = message.getPayload();
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate()).flip();
+        return new BinaryMessage(copy, message.isLast());
+    }
+
+    private static class QueuedMessage {
+        private final WebSocketMessage<?> message;
+
+        // The pooled buffer of the message, to be released once it's sent, or null.
+        private final ByteBuffer pooledBuffer;
+
+        private final int size;
+
+        QueuedMessage(WebSocketMessage<?> message, ByteBuffer pooledBuffer) {
+            this.message = message;
+            this.pooledBuffer = pooledBuffer;
+            this.size = message.getPayloadLength();
+        }
+    }
+
+    /**
+     * The queue of the messages of one session. At most one task per session is running on the Executor at a time,
+     * and it handles the queued messages in order until the queue is empty.
+     * In the streaming mode, it also keeps the size of the queued parts within sessionBufferLimit.
+     */
+    private class SessionLane implements Runnable {
+        private final WebSocketSession session;
+
+        private final Queue<QueuedMessage> messages = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // Size of the queued parts in the streaming mode. Guarded by this SessionLane.
+        private long bufferedSize;
+
+        private volatile boolean closed;
+
+        SessionLane(WebSocketSession session) {
+            this.session = session;
+        }
+
+        /**
+         * Wait until the queued parts leave room for size more bytes, then count them in. A single part over the limit is let through
+         * when nothing else is queued.
+         *
+         * @return false if the session is closed, or has been closed because its parts weren't sent within maxWaitNanos.
+         */
+        boolean reserve(long size) throws InterruptedException, IOException {
+            synchronized (this) {
+                long deadlineNanos = System.nanoTime() + maxWaitNanos;
+                while (!closed && bufferedSize > 0 && bufferedSize + size > sessionBufferLimit) {
+                    long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                }
+                if (!closed && (bufferedSize == 0 || bufferedSize + size <= sessionBufferLimit)) {
+                    bufferedSize += size;
+                    return true;
+                }
+            }
+            if (!closed) {
+                logger.warn("Session {} doesn't read its echoes, it's closed.", session.getId());
+                close();
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            }
+            return false;
+        }
+
+        void submit(QueuedMessage queuedMessage) {
+            messages.add(queuedMessage);
+            if (closed) {
+                // The session was closed in between, the message may not have been drained.
+                drain();
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Forget the queued messages, and wake up the thread waiting for room, once the session is closed.
+         */
+        void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            drain();
+        }
+
+        @Override
+        public void run() {
+            do {
+                QueuedMessage queuedMessage;
+                while ((queuedMessage = messages.poll()) != null) {
+                    try {
+                        if (!closed && session.isOpen()) {
+                            echo(session, queuedMessage.message);
+                        }
+                    } catch (Exception exception) {
+                        logger.warn("Unable to handle the message of session {}.", session.getId(), exception);
+                    } finally {
+                        done(queuedMessage);
+                    }
+                }
+                scheduled.set(false);
+                // A message may have been queued after the queue was found empty, but before the flag was reset.
+            } while (!messages.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private void drain() {
+            QueuedMessage queuedMessage;
+            while ((queuedMessage = messages.poll()) != null) {
+                done(queuedMessage);
+            }
+        }
+
+        private void done(QueuedMessage queuedMessage) {
+            if (queuedMessage.pooledBuffer != null) {
+                bufferPool.release(queuedMessage.pooledBuffer);
+            }
+            if (streaming) {
+                synchronized (this) {
+                    bufferedSize -= queuedMessage.size;
+                    notifyAll();
+                }
+            }
+        }
     }
 }
@@ -1,19 +1,51 @@
 package com.example.websocketdemo.config;
 
+import com.example.websocketdemo.broker.DestinationShardedTaskExecutor;
+import com.example.websocketdemo.handshake.PerMessageDeflateHandshakeHandler;
+import com.example.websocketdemo.interceptor.ChatMessageFormatChannelInterceptor;
+import com.example.websocketdemo.interceptor.InboundBackpressureChannelInterceptor;
+import com.example.websocketdemo.interceptor.KafkaBrokerRelayChannelInterceptor;
+import com.example.websocketdemo.interceptor.LoginPrincipalChannelInterceptor;
+import com.example.websocketdemo.interceptor.MessageHistoryChannelInterceptor;
+import com.example.websocketdemo.interceptor.MessageJournalChannelInterceptor;
+import com.example.websocketdemo.interceptor.RateLimitChannelInterceptor;
+import com.example.websocketdemo.interceptor.ResumableSessionChannelInterceptor;
+import com.example.websocketdemo.interceptor.StompErrorSender;
+import com.example.websocketdemo.interceptor.StompMetricsChannelInterceptor;
+import com.example.websocketdemo.interceptor.TokenAuthenticationChannelInterceptor;
+import com.example.websocketdemo.interceptor.UserRegistryChannelInterceptor;
 import com.example.websocketdemo.interceptor.WebSocketHttpHandshakeInterceptor;
+import com.example.websocketdemo.interceptor.WebsocketChannelInterceptor;
+import com.example.websocketdemo.resume.ResumableSessionRegistry;
+import com.example.websocketdemo.scheduling.HashedWheelTaskScheduler;
+import com.example.websocketdemo.session.CoalescingWebSocketHandlerDecorator;
+import com.example.websocketdemo.session.CompressionStatsWebSocketHandlerDecorator;
+import com.example.websocketdemo.session.SessionTransportWebSocketHandlerDecorator;
+import com.example.websocketdemo.stomp.ChatMessageBinaryMessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.SimpleBrokerRegistration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.SockJsServiceRegistration;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import java.util.List;
 
 /**
  * A class for configuring the WebSocket broker, with complete control.
- * TODO: Connect WebSocket with JWT Authentication reference link:
- * https://docs.spring.io/spring-framework/docs/current/reference/html/web.html#websocket-stomp-authentication-token-based
+ * The STOMP sessions are authenticated by the JWT in the Authorization header of their CONNECT frame,
+ * see TokenAuthenticationChannelInterceptor.
  */
 @Configuration
 @EnableWebSocketMessageBroker
@@ -22,6 +54,10 @@ public class WebSocketMessageBrokerConfigurerCustomConfig implements WebSocketMe
     @Value("#{'${websocket.broker.endpoint.list}'.split(',')}")
     private List<String> webSocketBrokerEndpointList;
 
+    // Empty to have none.
+    @Value("${websocket.broker.native-endpoint.list}")
+    private String[] webSocketBrokerNativeEndpointList;
+
     @Value("#{'${websocket.broker.allowed.origin.list}'.split(',')}")
     private List<String> webSocketBrokerAllowedOriginList;
 
@@ -31,6 +67,164 @@ public class WebSocketMessageBrokerConfigurerCustomConfig implements WebSocketMe
     @Value("#{'${websocket.stomp.destination.prefix.list}'.split(',')}")
     private List<String> webSocketStompDestinationPrefixList;
 
+    @Value("${websocket.stomp.channel.inbound.core-pool-size}")
+    private int inboundChannelCorePoolSize;
+
+    @Value("${websocket.stomp.channel.inbound.max-pool-size}")
+    private int inboundChannelMaxPoolSize;
+
+    @Value("${websocket.stomp.channel.inbound.queue-capacity}")
+    private int inboundChannelQueueCapacity;
+
+    @Value("${websocket.stomp.channel.inbound.keep-alive-seconds}")
+    private int inboundChannelKeepAliveSeconds;
+
+    @Value("${websocket.stomp.channel.inbound.rejection-policy}")
+    private ChannelExecutorRejectionPolicy inboundChannelRejectionPolicy;
+
+    @Value("${websocket.stomp.channel.outbound.core-pool-size}")
+    private int outboundChannelCorePoolSize;
+
+    @Value("${websocket.stomp.channel.outbound.max-pool-size}")
+    private int outboundChannelMaxPoolSize;
+
+    @Value("${websocket.stomp.channel.outbound.queue-capacity}")
+    private int outboundChannelQueueCapacity;
+
+    @Value("${websocket.stomp.channel.outbound.keep-alive-seconds}")
+    private int outboundChannelKeepAliveSeconds;
+
+    @Value("${websocket.stomp.channel.outbound.rejection-policy}")
+    private ChannelExecutorRejectionPolicy outboundChannelRejectionPolicy;
+
+    @Value("${websocket.stomp.broker.shards}")
+    private int brokerShards;
+
+    @Value("${websocket.stomp.broker.shard.queue-capacity}")
+    private int brokerShardQueueCapacity;
+
+    @Value("${websocket.stomp.broker.shard.rejection-policy}")
+    private ChannelExecutorRejectionPolicy brokerShardRejectionPolicy;
+
+    @Value("${websocket.execution.mode}")
+    private ExecutionMode executionMode;
+
+    @Value("${websocket.execution.virtual.max-concurrency}")
+    private int virtualMaxConcurrency;
+
+    @Value("${websocket.stomp.backpressure.mode}")
+    private InboundBackpressureChannelInterceptor.Mode backpressureMode;
+
+    @Value("${websocket.stomp.backpressure.high-water-mark}")
+    private int backpressureHighWaterMark;
+
+    @Value("${websocket.stomp.backpressure.max-delay-millis}")
+    private long backpressureMaxDelayMillis;
+
+    @Value("${websocket.stomp.transport.send-time-limit-millis}")
+    private int transportSendTimeLimitMillis;
+
+    @Value("${websocket.stomp.transport.send-buffer-size-limit}")
+    private int transportSendBufferSizeLimit;
+
+    @Value("${websocket.stomp.transport.message-size-limit}")
+    private int transportMessageSizeLimit;
+
+    @Value("${websocket.stomp.coalescing.enabled}")
+    private boolean coalescingEnabled;
+
+    @Value("#{'${websocket.stomp.coalescing.destination.list}'.split(',')}")
+    private List<String> coalescingDestinations;
+
+    @Value("${websocket.stomp.coalescing.window-millis}")
+    private long coalescingWindowMillis;
+
+    @Value("${websocket.stomp.coalescing.max-messages}")
+    private int coalescingMaxMessages;
+
+    @Value("${websocket.stomp.coalescing.max-size}")
+    private int coalescingMaxSize;
+
+    @Value("${websocket.compression.stomp.enabled}")
+    private boolean compressionEnabled;
+
+    @Value("${websocket.compression.context-takeover}")
+    private boolean compressionContextTakeover;
+
+    @Value("${websocket.compression.min-size}")
+    private int compressionMinSize;
+
+    @Value("${websocket.compression.stats.sample-rate}")
+    private int compressionStatsSampleRate;
+
+    @Autowired
+    private StompErrorSender stompErrorSender;
+
+    @Autowired
+    private SlowConsumerHandlerFactory slowConsumerHandlerFactory;
+
+    @Autowired
+    @Qualifier("webSocketTaskScheduler")
+    private ThreadPoolTaskScheduler webSocketTaskScheduler;
+
+    @Autowired
+    @Qualifier("webSocketSendExecutor")
+    private ThreadPoolTaskExecutor webSocketSendExecutor;
+
+    // Only available when websocket.heartbeat.wheel.enabled=true. See WebSocketSchedulingConfig.
+    @Autowired
+    private ObjectProvider<HashedWheelTaskScheduler> webSocketHeartbeatTaskScheduler;
+
+    @Autowired
+    private SockJsServiceCustomizer sockJsServiceCustomizer;
+
+    @Autowired
+    private WebSocketHttpHandshakeInterceptor webSocketHttpHandshakeInterceptor;
+
+    @Value("${websocket.stomp.heartbeat.send-millis}")
+    private long heartbeatSendMillis;
+
+    @Value("${websocket.stomp.heartbeat.receive-millis}")
+    private long heartbeatReceiveMillis;
+
+    // Only available when websocket.stomp.broker.mode=kafka. See KafkaBrokerRelayConfig.
+    @Autowired
+    private ObjectProvider<KafkaBrokerRelayChannelInterceptor> kafkaBrokerRelayChannelInterceptor;
+
+    // Only available when websocket.stomp.journal.enabled=true. See MessageJournalConfig.
+    @Autowired
+    private ObjectProvider<MessageJournalChannelInterceptor> messageJournalChannelInterceptor;
+
+    @Autowired
+    private WebsocketChannelInterceptor websocketChannelInterceptor;
+
+    @Autowired
+    private WebSocketMetrics webSocketMetrics;
+
+    @Autowired
+    private ChatMessageFormatChannelInterceptor chatMessageFormatChannelInterceptor;
+
+    @Autowired
+    private WebSocketCompressionMetrics webSocketCompressionMetrics;
+
+    @Autowired
+    private MessageHistoryChannelInterceptor messageHistoryChannelInterceptor;
+
+    @Autowired
+    private RateLimitChannelInterceptor rateLimitChannelInterceptor;
+
+    @Autowired
+    private ResumableSessionRegistry resumableSessionRegistry;
+
+    @Autowired
+    private TokenAuthenticationChannelInterceptor tokenAuthenticationChannelInterceptor;
+
+    @Autowired
+    private LoginPrincipalChannelInterceptor loginPrincipalChannelInterceptor;
+
+    @Autowired
+    private SimpUserRegistryCustomizer simpUserRegistryCustomizer;
+
     /**
      *
      * Little knowledge to remove all confusions between WebSocket, STOMP and SockJS:
@@ -125,12 +319,32 @@ public class WebSocketMessageBrokerConfigurerCustomConfig implements WebSocketMe
          * to test your WebSocket, you MUST add /websocket behind your endpoints below:
          * For example: ws:/localhost:8080/greeting becomes ws:/localhost:8080/greeting/websocket
          * Solution with explanation reference: https://stackoverflow.com/questions/51845452
+         *
+         * The handshake handler decides whether the sessions are compressed with permessage-deflate (websocket.compression.stomp.enabled).
+         *
+         * The SockJS transports are tuned by the SockJsServiceCustomizer (websocket.sockjs.*).
+         *
+         * The handshake interceptor refuses the handshakes over the connection rate or the session ceiling of the node,
+         * and while it's draining (websocket.handshake.admission.*).
+         *
+         * The native endpoints (websocket.broker.native-endpoint.list, like ws://localhost:8080/ws-native) are plain WebSocket,
+         * without SockJS: no /info request before connecting, no server/session path segments, and the STOMP frames are sent as they are,
+         * instead of being JSON-escaped into a["..."] arrays. They are for the clients that can do WebSocket (mobile apps, services),
+         * and the browsers without a fallback to HTTP.
          */
         // List<String> to String[]. Reference: https://stackoverflow.com/questions/2552420
-        registry.addEndpoint(webSocketBrokerEndpointList.toArray(new String[0]))
-                .addInterceptors(new WebSocketHttpHandshakeInterceptor())
+        SockJsServiceRegistration sockJsServiceRegistration = registry.addEndpoint(webSocketBrokerEndpointList.toArray(new String[0]))
+                .setHandshakeHandler(new PerMessageDeflateHandshakeHandler(compressionEnabled, compressionContextTakeover))
+                .addInterceptors(webSocketHttpHandshakeInterceptor)
                 .setAllowedOrigins(webSocketBrokerAllowedOriginList.toArray(new String[0]))
                 .withSockJS();
+        sockJsServiceCustomizer.customize(sockJsServiceRegistration);
+        if (webSocketBrokerNativeEndpointList.length > 0) {
+            registry.addEndpoint(webSocketBrokerNativeEndpointList)
+                    .setHandshakeHandler(new PerMessageDeflateHandshakeHandler(compressionEnabled, compressionContextTakeover))
+                    .addInterceptors(webSocketHttpHandshakeInterceptor)
+                    .setAllowedOrigins(webSocketBrokerAllowedOriginList.toArray(new String[0]));
+        }
     }
 
     @Override
@@ -149,8 +363,182 @@ public class WebSocketMessageBrokerConfigurerCustomConfig implements WebSocketMe
          *                  stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(chatMessage));
          *
          * The backend has to configure like the below Line 2 in order to differentiate the STOMP commands for sending messages.
+         *
+         * If websocket.stomp.broker.mode=kafka, the messages sent to the simple broker are relayed through Kafka first (Line 3),
+         * so that the subscribers connected to the other nodes will receive them too.
+         *
+         * The broker channel is also stamped by the metrics interceptor (Line 4), to measure the delivery latency of the @SendTo(...) replies.
+         *
+         * The messages that reach the local broker are recorded in the MessageHistory (Line 5), after the Kafka relay,
+         * so that the subscribers can ask for the ones they have missed. If websocket.stomp.journal.enabled=true,
+         * they are also queued to be written to the message journal on the disk (Line 6).
+         *
+         * If websocket.stomp.broker.shards > 0, the messages sent to the broker are handled by that many threads,
+         * each one owning the destinations (rooms) of its hash (Line 7). See DestinationShardedTaskExecutor.
+         * Otherwise, they are handled in the thread that sends them, like the @MessageMapping(...) handler's.
+         *
+         * The messages sent to /user/{name}/queue/... are delivered to the sessions of that user (the "/user/" prefix is Spring's default).
+         * If websocket.stomp.broker.mode=kafka, the nodes also broadcast their users to each other through Kafka,
+         * so a message is delivered to the sessions of the user on every node. See KafkaBrokerRelayConfig.
+         *
+         * The simple broker sends a heartbeat to the clients every websocket.stomp.heartbeat.send-millis, and expects one from them
+         * every websocket.stomp.heartbeat.receive-millis (as negotiated with the heart-beat header of their CONNECT frame, 0 disables them).
+         * They are scheduled on the timer wheel if websocket.heartbeat.wheel.enabled=true, otherwise on the webSocketTaskScheduler.
          */
-        registry.enableSimpleBroker(webSocketStompBrokerList.toArray(new String[0])); // Line 1
+        SimpleBrokerRegistration simpleBrokerRegistration = registry.enableSimpleBroker(webSocketStompBrokerList.toArray(new String[0])); // Line 1
+        if (heartbeatSendMillis > 0 || heartbeatReceiveMillis > 0) {
+            TaskScheduler heartbeatTaskScheduler = webSocketHeartbeatTaskScheduler.getIfAvailable();
+            simpleBrokerRegistration.setTaskScheduler(heartbeatTaskScheduler != null ? heartbeatTaskScheduler : webSocketTaskScheduler)
+                    .setHeartbeatValue(new long[]{heartbeatSendMillis, heartbeatReceiveMillis});
+        }
         registry.setApplicationDestinationPrefixes(webSocketStompDestinationPrefixList.toArray(new String[0])); // Line 2
+        kafkaBrokerRelayChannelInterceptor.ifAvailable(interceptor -> registry.configureBrokerChannel().interceptors(interceptor)); // Line 3
+        registry.configureBrokerChannel().interceptors(new StompMetricsChannelInterceptor(webSocketMetrics, StompMetricsChannelInterceptor.Channel.BROKER)); // Line 4
+        if (messageHistoryChannelInterceptor.isEnabled()) {
+            registry.configureBrokerChannel().interceptors(messageHistoryChannelInterceptor); // Line 5
+        }
+        messageJournalChannelInterceptor.ifAvailable(interceptor -> registry.configureBrokerChannel().interceptors(interceptor)); // Line 6
+        if (brokerShards > 0) {
+            registry.configureBrokerChannel().taskExecutor(new DestinationShardedTaskExecutor(brokerShards,
+                    brokerShardQueueCapacity, brokerShardRejectionPolicy.toRejectedExecutionHandler())); // Line 7
+        }
+    }
+
+    /**
+     * Spring's default channel executors have unbounded queues, so a burst of SEND frames would grow the heap until the JVM dies.
+     * The executors below are bounded, and the backpressure interceptor rejects or delays the SEND frames
+     * before the inbound queue is full.
+     *
+     * In the VIRTUAL execution mode, the @MessageMapping(...) handlers are called on virtual threads. A virtual thread is cheap,
+     * so the pool keeps up to websocket.execution.virtual.max-concurrency of them instead of a few platform threads,
+     * and a handler blocking on I/O doesn't hold up the other messages.
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        ThreadPoolTaskExecutor clientInboundChannelExecutor;
+        if (executionMode.isVirtual()) {
+            clientInboundChannelExecutor = createChannelExecutor("clientInboundChannel-",
+                    virtualMaxConcurrency, virtualMaxConcurrency, inboundChannelQueueCapacity,
+                    inboundChannelKeepAliveSeconds, inboundChannelRejectionPolicy);
+        } else {
+            // If the JVM doesn't have virtual threads, VIRTUAL falls back to the PLATFORM pool sizes (with a warning).
+            clientInboundChannelExecutor = createChannelExecutor("clientInboundChannel-",
+                    inboundChannelCorePoolSize, inboundChannelMaxPoolSize, inboundChannelQueueCapacity,
+                    inboundChannelKeepAliveSeconds, inboundChannelRejectionPolicy);
+        }
+        clientInboundChannelExecutor.setThreadFactory(executionMode.threadFactory("clientInboundChannel-"));
+        registration.taskExecutor(clientInboundChannelExecutor);
+        // Authenticates the session by the token of the CONNECT frame, before the other interceptors copy its user.
+        if (tokenAuthenticationChannelInterceptor.isEnabled()) {
+            registration.interceptors(tokenAuthenticationChannelInterceptor);
+        }
+        // Or, without the token authentication, names the user of the session by the login header of the CONNECT frame.
+        if (loginPrincipalChannelInterceptor.isEnabled()) {
+            registration.interceptors(loginPrincipalChannelInterceptor);
+        }
+        registration.interceptors(new InboundBackpressureChannelInterceptor(clientInboundChannelExecutor, backpressureMode,
+                backpressureHighWaterMark, backpressureMaxDelayMillis, stompErrorSender));
+        registration.interceptors(new StompMetricsChannelInterceptor(webSocketMetrics, StompMetricsChannelInterceptor.Channel.INBOUND));
+        // Drops the SEND frames of the sessions and users over their rate, before they are queued.
+        if (rateLimitChannelInterceptor.isEnabled()) {
+            registration.interceptors(rateLimitChannelInterceptor);
+        }
+        if (chatMessageFormatChannelInterceptor.isEnabled()) {
+            registration.interceptors(chatMessageFormatChannelInterceptor);
+        }
+        // Replays the history to the new subscriptions. The SEND frames of the clients are not recorded, see MessageHistoryChannelInterceptor.
+        if (messageHistoryChannelInterceptor.isEnabled()) {
+            registration.interceptors(messageHistoryChannelInterceptor);
+        }
+        // The diagnostics interceptor is only registered if it is enabled, so it costs nothing when it's disabled.
+        if (websocketChannelInterceptor.isEnabled()) {
+            registration.interceptors(websocketChannelInterceptor);
+        }
+        // Moves the frames of the resumable sessions from their connection to their session, after all the other interceptors.
+        if (resumableSessionRegistry.isEnabled()) {
+            registration.interceptors(new ResumableSessionChannelInterceptor(resumableSessionRegistry, ResumableSessionChannelInterceptor.Channel.INBOUND));
+        }
+        // Then the sessions of the users are registered by the sessionId the broker knows them by.
+        if (simpUserRegistryCustomizer.isEnabled()) {
+            registration.interceptors(new UserRegistryChannelInterceptor(webSocketMetrics.userRegistry(simpUserRegistryCustomizer.getUserRegistry())));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(createChannelExecutor("clientOutboundChannel-",
+                outboundChannelCorePoolSize, outboundChannelMaxPoolSize, outboundChannelQueueCapacity,
+                outboundChannelKeepAliveSeconds, outboundChannelRejectionPolicy));
+        // Moves the frames of the resumable sessions to their connection, before all the other interceptors.
+        if (resumableSessionRegistry.isEnabled()) {
+            registration.interceptors(new ResumableSessionChannelInterceptor(resumableSessionRegistry, ResumableSessionChannelInterceptor.Channel.OUTBOUND));
+        }
+        registration.interceptors(new StompMetricsChannelInterceptor(webSocketMetrics, StompMetricsChannelInterceptor.Channel.OUTBOUND));
+        if (chatMessageFormatChannelInterceptor.isEnabled()) {
+            registration.interceptors(chatMessageFormatChannelInterceptor);
+        }
+        if (websocketChannelInterceptor.isEnabled()) {
+            registration.interceptors(websocketChannelInterceptor);
+        }
+    }
+
+    /**
+     * Limits of each WebSocket session, so that one slow frontend client can't stall the clientOutbound executor:
+     * If sending to a client takes longer than the send time limit, or more than the send buffer size limit is waiting to be sent to it,
+     * the session is closed.
+     *
+     * If websocket.slow-consumer.stomp.enabled=true, the messages are queued per session and sent by the webSocketSendExecutor instead,
+     * so the limits above are not reached, and the slow clients are dealt with by the SlowConsumerPolicy.
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(transportSendTimeLimitMillis)
+                .setSendBufferSizeLimit(transportSendBufferSizeLimit)
+                .setMessageSizeLimit(transportMessageSizeLimit);
+        // Queue the frames per session before they are coalesced, so the policy sees each STOMP frame.
+        if (slowConsumerHandlerFactory.isStompEnabled()) {
+            registration.addDecoratorFactory(slowConsumerHandlerFactory::decorateStomp);
+        }
+        // Pack the frames to the high-fanout destinations sent to a session within a short window into one WebSocket message.
+        // The windows are timed by the webSocketTaskScheduler, and flushed by the webSocketSendExecutor. See CoalescingWebSocketSessionDecorator.
+        if (coalescingEnabled) {
+            registration.addDecoratorFactory(handler -> new CoalescingWebSocketHandlerDecorator(handler, webSocketTaskScheduler,
+                    webSocketSendExecutor, coalescingDestinations, coalescingWindowMillis, coalescingMaxMessages, coalescingMaxSize));
+        }
+        // Measures the compression of the sessions, after the coalescing, so the packed messages are measured as they are sent.
+        if (compressionEnabled) {
+            registration.addDecoratorFactory(handler -> new CompressionStatsWebSocketHandlerDecorator(handler,
+                    webSocketCompressionMetrics.forEndpoint("stomp"), compressionMinSize, compressionStatsSampleRate));
+        }
+        // Lets the binary ChatMessage format tell the SockJS sessions apart. See ChatMessageFormatChannelInterceptor.
+        if (chatMessageFormatChannelInterceptor.isEnabled()) {
+            registration.addDecoratorFactory(SessionTransportWebSocketHandlerDecorator::new);
+        }
+    }
+
+    /**
+     * The ChatMessage binary converter is added before the default ones (JSON, String, byte[]), which are kept.
+     * It only reads and writes the messages with content-type: application/octet-stream;format=chat-message,
+     * so the messages without that content type are still converted to and from JSON.
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        if (chatMessageFormatChannelInterceptor.isEnabled()) {
+            messageConverters.add(new ChatMessageBinaryMessageConverter());
+        }
+        return true;
+    }
+
+    private ThreadPoolTaskExecutor createChannelExecutor(String threadNamePrefix, int corePoolSize, int maxPoolSize, int queueCapacity,
+                                                         int keepAliveSeconds, ChannelExecutorRejectionPolicy rejectionPolicy) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setThreadNamePrefix(threadNamePrefix);
+        taskExecutor.setCorePoolSize(corePoolSize);
+        taskExecutor.setMaxPoolSize(maxPoolSize);
+        taskExecutor.setQueueCapacity(queueCapacity);
+        taskExecutor.setKeepAliveSeconds(keepAliveSeconds);
+        taskExecutor.setAllowCoreThreadTimeOut(true);
+        taskExecutor.setRejectedExecutionHandler(rejectionPolicy.toRejectedExecutionHandler());
+        return taskExecutor;
     }
 }
@@ -0,0 +1,345 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.broker.DestinationShardedTaskExecutor;
+import com.example.websocketdemo.buffer.DirectBufferPool;
+import com.example.websocketdemo.scheduling.HashedWheelTaskScheduler;
+import com.example.websocketdemo.session.SlowConsumerEvent;
+import com.example.websocketdemo.session.SlowConsumerWebSocketHandlerDecorator;
+import com.example.websocketdemo.user.ShardedSimpUserRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The metrics of the STOMP message broker, published to Micrometer (scrape them from /actuator/prometheus or /actuator/metrics):
+ * websocket.sessions.active: Number of STOMP sessions connected to this node.
+ * websocket.stomp.subscriptions: Number of subscriptions, per destination. The gauge of a destination is removed once it has no subscriptions,
+ * as the clients create destinations (the rooms), so there's no gauge left behind for each room ever used.
+ * websocket.stomp.messages: Number of frames, per direction (inbound/outbound) and STOMP command. Use rate() to get the messages per second.
+ * websocket.stomp.delivery.latency: Time from the @MessageMapping(...) handler being called to the reply being sent to each subscriber.
+ * websocket.channel.executor.queued/active: Queue depth and active threads of the clientInbound, clientOutbound and broker channel executors.
+ * If the broker channel executor is sharded, they are the totals of its shards.
+ * websocket.slow-consumer.buffered: Size of the messages waiting to be sent to the sessions of an endpoint ("stomp" or "raw").
+ * websocket.slow-consumer.evictions: Number of times a SlowConsumerPolicy was applied, per policy and trigger (buffer_size/latency).
+ * websocket.slow-consumer.evicted.messages: Number of messages dropped by those, per policy and trigger.
+ * websocket.stomp.users/websocket.stomp.user.sessions: Number of users connected to this node, and of their sessions.
+ * websocket.buffer.pool.pooled/allocated: Number of direct buffers in the pool of an endpoint, and allocated because it was empty.
+ * websocket.heartbeat.timeouts/executions: Number of tasks scheduled in the timer wheel of the heartbeats, and of their runs.
+ *
+ * The frames are fed by the StompMetricsChannelInterceptor registered in WebSocketMessageBrokerConfigurerCustomConfig.
+ */
+@Component
+public class WebSocketMetrics implements SmartInitializingSingleton {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String[] CHANNEL_EXECUTOR_NAMES = {"clientInboundChannelExecutor", "clientOutboundChannelExecutor", "brokerChannelExecutor"};
+
+    private static final StompCommand[] STOMP_COMMANDS = StompCommand.values();
+
+    // For the frames without StompCommand, such as the heartbeats.
+    private static final String OTHER_COMMAND = "OTHER";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ApplicationContext applicationContext;
+
+    private final Map<String, Boolean> activeSessions = new ConcurrentHashMap<>();
+
+    // Only updated with compute(...), so a gauge is never removed while a subscription is added to its destination.
+    private final Map<String, DestinationSubscriptions> destinationSubscriptions = new ConcurrentHashMap<>();
+
+    // Session ID -> (Subscription ID -> Destination), as UNSUBSCRIBE frames don't have the destination.
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    // One counter per StompCommand (indexed by ordinal), and the last one for the frames without StompCommand.
+    private final Counter[] inboundCounters = new Counter[STOMP_COMMANDS.length + 1];
+
+    private final Counter[] outboundCounters = new Counter[STOMP_COMMANDS.length + 1];
+
+    private final Timer deliveryLatencyTimer;
+
+    public WebSocketMetrics(MeterRegistry meterRegistry, ApplicationContext applicationContext) {
+        this.meterRegistry = meterRegistry;
+        this.applicationContext = applicationContext;
+
+        for (int i = 0; i <= STOMP_COMMANDS.length; i++) {
+            String command = i < STOMP_COMMANDS.length ? STOMP_COMMANDS[i].name() : OTHER_COMMAND;
+            inboundCounters[i] = messageCounter("inbound", command);
+            outboundCounters[i] = messageCounter("outbound", command);
+        }
+
+        Gauge.builder("websocket.sessions.active", activeSessions, Map::size)
+                .description("Number of STOMP sessions connected to this node.")
+                .register(meterRegistry);
+
+        deliveryLatencyTimer = Timer.builder("websocket.stomp.delivery.latency")
+                .description("Time from the @MessageMapping handler being called to the reply being sent to a subscriber.")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * The channel executors are created by the WebSocket message broker configuration, which needs the metrics first.
+     * So the executors are looked up after all the beans are created.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (String channelExecutorName : CHANNEL_EXECUTOR_NAMES) {
+            if (!applicationContext.containsBean(channelExecutorName)) {
+                continue;
+            }
+            ThreadPoolTaskExecutor taskExecutor = applicationContext.getBean(channelExecutorName, ThreadPoolTaskExecutor.class);
+            ThreadPoolExecutor threadPoolExecutor;
+            try {
+                threadPoolExecutor = taskExecutor.getThreadPoolExecutor();
+            } catch (IllegalStateException illegalStateException) {
+                logger.warn("{} is not initialized, its metrics will not be published.", channelExecutorName);
+                continue;
+            }
+            String channel = channelExecutorName.substring(0, channelExecutorName.length() - "Executor".length());
+            if (taskExecutor instanceof DestinationShardedTaskExecutor) {
+                DestinationShardedTaskExecutor shardedTaskExecutor = (DestinationShardedTaskExecutor) taskExecutor;
+                Gauge.builder("websocket.channel.executor.queued", shardedTaskExecutor, DestinationShardedTaskExecutor::getQueueSize)
+                        .description("Number of tasks waiting in the queue of the channel executor.")
+                        .tag("channel", channel)
+                        .register(meterRegistry);
+                Gauge.builder("websocket.channel.executor.active", shardedTaskExecutor, DestinationShardedTaskExecutor::getActiveCount)
+                        .description("Number of threads of the channel executor that are handling messages.")
+                        .tag("channel", channel)
+                        .register(meterRegistry);
+                continue;
+            }
+            Gauge.builder("websocket.channel.executor.queued", threadPoolExecutor, executor -> executor.getQueue().size())
+                    .description("Number of tasks waiting in the queue of the channel executor.")
+                    .tag("channel", channel)
+                    .register(meterRegistry);
+            Gauge.builder("websocket.channel.executor.active", threadPoolExecutor, ThreadPoolExecutor::getActiveCount)
+                    .description("Number of threads of the channel executor that are handling messages.")
+                    .tag("channel", channel)
+                    .register(meterRegistry);
+        }
+    }
+
+    @EventListener
+    public void handleSessionConnectedEvent(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            activeSessions.put(sessionId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * NOTE: SessionDisconnectEvent may be published more than once for the same session, the metrics here are updated only once.
+     */
+    @EventListener
+    public void handleSessionDisconnectEvent(SessionDisconnectEvent event) {
+        activeSessions.remove(event.getSessionId());
+        Map<String, String> subscriptions = sessionSubscriptions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            for (String destination : subscriptions.values()) {
+                removeDestinationSubscription(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void handleSlowConsumerEvent(SlowConsumerEvent event) {
+        String policy = event.getPolicy().name().toLowerCase();
+        String trigger = event.getTrigger().name().toLowerCase();
+        Counter.builder("websocket.slow-consumer.evictions")
+                .description("Number of times a slow consumer policy was applied to a session.")
+                .tag("policy", policy)
+                .tag("trigger", trigger)
+                .register(meterRegistry)
+                .increment();
+        Counter.builder("websocket.slow-consumer.evicted.messages")
+                .description("Number of messages dropped by the slow consumer policies.")
+                .tag("policy", policy)
+                .tag("trigger", trigger)
+                .register(meterRegistry)
+                .increment(event.getEvictedMessageCount());
+    }
+
+    /**
+     * Publish the size of the messages waiting to be sent by the handler.
+     *
+     * @param endpoint: The name of the endpoint, used as the tag of the metric.
+     * @return The handler.
+     */
+    public SlowConsumerWebSocketHandlerDecorator slowConsumerHandler(String endpoint, SlowConsumerWebSocketHandlerDecorator handler) {
+        Gauge.builder("websocket.slow-consumer.buffered", handler, SlowConsumerWebSocketHandlerDecorator::getBufferSize)
+                .description("Size of the messages waiting to be sent to the sessions of the endpoint.")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        return handler;
+    }
+
+    /**
+     * Publish the buffers of the pool.
+     *
+     * @param endpoint: The name of the endpoint, used as the tag of the metrics.
+     * @return The pool.
+     */
+    public DirectBufferPool bufferPool(String endpoint, DirectBufferPool bufferPool) {
+        Gauge.builder("websocket.buffer.pool.pooled", bufferPool, DirectBufferPool::getPooledCount)
+                .description("Number of direct buffers in the pool, ready to be used.")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        FunctionCounter.builder("websocket.buffer.pool.allocated", bufferPool, DirectBufferPool::getAllocatedCount)
+                .description("Number of direct buffers allocated because the pool was empty.")
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        return bufferPool;
+    }
+
+    public HashedWheelTaskScheduler timerWheel(HashedWheelTaskScheduler taskScheduler) {
+        Gauge.builder("websocket.heartbeat.timeouts", taskScheduler, HashedWheelTaskScheduler::getTimeoutCount)
+                .description("Number of tasks scheduled in the timer wheel of the heartbeats.")
+                .register(meterRegistry);
+        FunctionCounter.builder("websocket.heartbeat.executions", taskScheduler, HashedWheelTaskScheduler::getExecutedCount)
+                .description("Number of runs of the tasks of the timer wheel of the heartbeats.")
+                .register(meterRegistry);
+        return taskScheduler;
+    }
+
+    public ShardedSimpUserRegistry userRegistry(ShardedSimpUserRegistry userRegistry) {
+        Gauge.builder("websocket.stomp.users", userRegistry, ShardedSimpUserRegistry::getUserCount)
+                .description("Number of users connected to this node.")
+                .register(meterRegistry);
+        Gauge.builder("websocket.stomp.user.sessions", userRegistry, ShardedSimpUserRegistry::getSessionCount)
+                .description("Number of sessions of the users connected to this node.")
+                .register(meterRegistry);
+        return userRegistry;
+    }
+
+    /**
+     * Count a frame that is sent from a frontend client to the server.
+     *
+     * @param stompCommand: The STOMP command of the frame, or null if it doesn't have one.
+     */
+    public void countInbound(StompCommand stompCommand) {
+        inboundCounters[stompCommand != null ? stompCommand.ordinal() : STOMP_COMMANDS.length].increment();
+    }
+
+    /**
+     * Count a frame that is sent from the server to a frontend client.
+     * The frames made as STOMP frames already (like the ERROR and RECEIPT ones) are counted by their command,
+     * the messages of the broker by the frame the StompSubProtocolHandler turns them into.
+     *
+     * @param stompCommand:    The STOMP command of the outbound message, or null if it doesn't have one.
+     * @param simpMessageType: The type of the outbound message.
+     */
+    public void countOutbound(StompCommand stompCommand, SimpMessageType simpMessageType) {
+        // The broker copies the headers of a SEND frame sent straight to a broker destination, command included, into the MESSAGE frames.
+        if (stompCommand == null || StompCommand.SEND.equals(stompCommand)) {
+            if (SimpMessageType.MESSAGE.equals(simpMessageType)) {
+                stompCommand = StompCommand.MESSAGE;
+            } else if (SimpMessageType.CONNECT_ACK.equals(simpMessageType)) {
+                stompCommand = StompCommand.CONNECTED;
+            } else if (SimpMessageType.DISCONNECT_ACK.equals(simpMessageType)) {
+                stompCommand = StompCommand.ERROR;
+            } else {
+                stompCommand = null;
+            }
+        }
+        outboundCounters[stompCommand != null ? stompCommand.ordinal() : STOMP_COMMANDS.length].increment();
+    }
+
+    public void subscribed(String sessionId, String subscriptionId, String destination) {
+        String previousDestination = sessionSubscriptions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        if (previousDestination != null) {
+            removeDestinationSubscription(previousDestination);
+        }
+        addDestinationSubscription(destination);
+    }
+
+    public void unsubscribed(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+        String destination = subscriptions != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination != null) {
+            removeDestinationSubscription(destination);
+        }
+    }
+
+    /**
+     * @param handlerEntryNanos: System.nanoTime() when the @MessageMapping(...) handler that produced the message was called.
+     */
+    public void recordDeliveryLatency(long handlerEntryNanos) {
+        deliveryLatencyTimer.record(System.nanoTime() - handlerEntryNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getActiveSessionCount() {
+        return activeSessions.size();
+    }
+
+    /**
+     * @return Number of destinations with a websocket.stomp.subscriptions gauge.
+     */
+    public int getSubscribedDestinationCount() {
+        return destinationSubscriptions.size();
+    }
+
+    private Counter messageCounter(String direction, String command) {
+        return Counter.builder("websocket.stomp.messages")
+                .description("Number of STOMP frames.")
+                .tag("direction", direction)
+                .tag("command", command)
+                .register(meterRegistry);
+    }
+
+    private void addDestinationSubscription(String destination) {
+        destinationSubscriptions.compute(destination, (key, subscriptions) -> {
+            if (subscriptions == null) {
+                AtomicInteger subscriptionCounter = new AtomicInteger();
+                Gauge gauge = Gauge.builder("websocket.stomp.subscriptions", subscriptionCounter, AtomicInteger::get)
+                        .description("Number of subscriptions to the destination.")
+                        .tag("destination", key)
+                        .register(meterRegistry);
+                subscriptions = new DestinationSubscriptions(subscriptionCounter, gauge);
+            }
+            subscriptions.counter.incrementAndGet();
+            return subscriptions;
+        });
+    }
+
+    private void removeDestinationSubscription(String destination) {
+        destinationSubscriptions.computeIfPresent(destination, (key, subscriptions) -> {
+            if (subscriptions.counter.decrementAndGet() > 0) {
+                return subscriptions;
+            }
+            meterRegistry.remove(subscriptions.gauge);
+            return null;
+        });
+    }
+
+    private static final class DestinationSubscriptions {
+        private final AtomicInteger counter;
+
+        private final Gauge gauge;
+
+        private DestinationSubscriptions(AtomicInteger counter, Gauge gauge) {
+            this.counter = counter;
+            this.gauge = gauge;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.scheduling.HashedWheelTaskScheduler;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * A class for configuring the TaskScheduler of the WebSocket sessions' own timers (like the windows of the coalesced messages).
+ * It's kept apart from the messageBrokerTaskScheduler of Spring, which sends the STOMP heartbeats and the SockJS heartbeats,
+ * so that a burst of session timers can't delay the heartbeats.
+ *
+ * The webSocketSendExecutor sends the messages queued by the SlowConsumerWebSocketSessionDecorators, and the coalesced messages
+ * of the CoalescingWebSocketSessionDecorators when their window is over.
+ * A thread sending to a stalled client is blocked until the client reads or is dropped, which only holds up that client.
+ *
+ * If websocket.heartbeat.wheel.enabled=true, the STOMP heartbeats of the simple broker, and the SockJS heartbeats and disconnect delays
+ * of the endpoints are scheduled on the webSocketHeartbeatTaskScheduler, a HashedWheelTaskScheduler, as there are a few of them per session.
+ * Its tasks are run by the webSocketHeartbeatExecutor.
+ */
+@Configuration
+public class WebSocketSchedulingConfig {
+
+    @Bean
+    public ThreadPoolTaskScheduler webSocketTaskScheduler(@Value("${websocket.scheduler.pool-size}") int poolSize) {
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setThreadNamePrefix("webSocketTaskScheduler-");
+        taskScheduler.setPoolSize(poolSize);
+        taskScheduler.setRemoveOnCancelPolicy(true);
+        return taskScheduler;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor webSocketSendExecutor(@Value("${websocket.slow-consumer.send-pool-size}") int poolSize,
+                                                        @Value("${websocket.execution.mode}") ExecutionMode executionMode) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setThreadFactory(executionMode.threadFactory("webSocketSendExecutor-"));
+        taskExecutor.setCorePoolSize(poolSize);
+        taskExecutor.setMaxPoolSize(poolSize);
+        taskExecutor.setKeepAliveSeconds(60);
+        taskExecutor.setAllowCoreThreadTimeOut(true);
+        return taskExecutor;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "websocket.heartbeat.wheel.enabled", havingValue = "true")
+    public ThreadPoolTaskExecutor webSocketHeartbeatExecutor(@Value("${websocket.heartbeat.wheel.pool-size}") int poolSize,
+                                                             @Value("${websocket.execution.mode}") ExecutionMode executionMode) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setThreadFactory(executionMode.threadFactory("webSocketHeartbeatExecutor-"));
+        taskExecutor.setCorePoolSize(poolSize);
+        taskExecutor.setMaxPoolSize(poolSize);
+        return taskExecutor;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "websocket.heartbeat.wheel.enabled", havingValue = "true")
+    public HashedWheelTaskScheduler webSocketHeartbeatTaskScheduler(@Value("${websocket.heartbeat.wheel.tick-millis}") long tickMillis,
+                                                                    @Value("${websocket.heartbeat.wheel.ticks-per-wheel}") int ticksPerWheel,
+                                                                    @Value("${websocket.heartbeat.wheel.batch-size}") int batchSize,
+                                                                    @Qualifier("webSocketHeartbeatExecutor") ThreadPoolTaskExecutor executor,
+                                                                    WebSocketMetrics webSocketMetrics) {
+        return webSocketMetrics.timerWheel(new HashedWheelTaskScheduler(tickMillis, ticksPerWheel, batchSize, executor,
+                "webSocketHeartbeatTaskScheduler"));
+    }
+}
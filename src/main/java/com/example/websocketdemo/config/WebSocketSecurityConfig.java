@@ -1,5 +1,6 @@
 package com.example.websocketdemo.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.messaging.MessageSecurityMetadataSourceRegistry;
 import org.springframework.security.config.annotation.web.socket.AbstractSecurityWebSocketMessageBrokerConfigurer;
@@ -10,12 +11,26 @@ import static org.springframework.messaging.simp.SimpMessageType.*;
 // https://docs.spring.io/spring-security/site/docs/4.2.x/reference/html/websocket.html#websocket-authorization
 @Configuration
 public class WebSocketSecurityConfig extends AbstractSecurityWebSocketMessageBrokerConfigurer {
+    @Value("${websocket.stomp.user-registry.broadcast-destination}")
+    private String userRegistryBroadcastDestination;
+
+    @Value("${websocket.stomp.token-auth.required}")
+    private boolean tokenAuthRequired;
+
     @Override
     protected void configureInbound(MessageSecurityMetadataSourceRegistry messages) {
         // This is within Spring Boot Security for WebSocket.
         messages
                 .nullDestMatcher().permitAll()
+                // The CONNECT frames are authenticated by TokenAuthenticationChannelInterceptor.
                 .simpTypeMatchers(CONNECT).permitAll()
+                // The users of the nodes, see KafkaBrokerRelayConfig.
+                .simpDestMatchers(userRegistryBroadcastDestination).denyAll();
+        if (tokenAuthRequired) {
+            // Only the sessions authenticated by their token may subscribe and send.
+            messages.simpTypeMatchers(SUBSCRIBE, MESSAGE).authenticated();
+        }
+        messages
                 .simpTypeMatchers(SUBSCRIBE, MESSAGE, UNSUBSCRIBE, DISCONNECT).permitAll()
                 .simpDestMatchers("/secured/**").permitAll()
                 .anyMessage().permitAll();
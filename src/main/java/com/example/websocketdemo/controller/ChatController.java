@@ -1,21 +1,56 @@
 package com.example.websocketdemo.controller;
 
 import com.example.websocketdemo.model.ChatMessage;
+import com.example.websocketdemo.presence.PresenceService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 // Tutorial link: https://www.callicoder.com/spring-boot-websocket-chat-example/
 // NOTE: @SendTo("TOPIC_NAME") will send the returning object to TOPIC_NAME in STOMP. Any frontend clients that subscribed to the TOPIC_NAME will get the JSON String of the message.
+// NOTE: The rooms work the same way: a message sent to /app/chat.{room}.sendMessage goes to the subscribers of /topic/room.{room}.
+// NOTE: A private message sent to /app/chat.sendPrivateMessage goes to /user/queue/messages of all the sessions of its recipient (and of its sender),
+// the user of a session being the subject of the token of its CONNECT frame (see TokenAuthenticationChannelInterceptor),
+// or its login header if the token authentication is disabled and the login is trusted (see LoginPrincipalChannelInterceptor).
+// NOTE: Who is online is broadcast by the PresenceService, so the JOIN messages are only sent with websocket.presence.join-leave-messages=true.
 @Controller
 public class ChatController {
+    public static final String ROOM_DESTINATION_PREFIX = "/topic/room.";
+
+    // Session attribute with the rooms the user has joined, so the LEAVE is sent to each of them.
+    public static final String ROOMS_SESSION_ATTRIBUTE = "rooms";
+
+    public static final String PRIVATE_MESSAGE_DESTINATION = "/queue/messages";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final PresenceService presenceService;
+
+    private final boolean joinLeaveMessages;
+
+    public ChatController(SimpMessageSendingOperations messagingTemplate, PresenceService presenceService,
+                          @Value("${websocket.presence.join-leave-messages}") boolean joinLeaveMessages) {
+        this.messagingTemplate = messagingTemplate;
+        this.presenceService = presenceService;
+        this.joinLeaveMessages = joinLeaveMessages;
+    }
+
     @MessageMapping("/chat.sendMessage")
     @SendTo("/topic/public")
     public ChatMessage sendMessage(@Payload ChatMessage chatMessage) {
@@ -27,7 +62,46 @@ public class ChatController {
     public ChatMessage addUser(@Payload ChatMessage chatMessage,
                                SimpMessageHeaderAccessor headerAccessor) {
         // Add username in web socket session
-        headerAccessor.getSessionAttributes().put("username", chatMessage.getSender());
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        sessionAttributes.put("username", chatMessage.getSender());
+        presenceService.join(PresenceService.PUBLIC_ROOM, chatMessage.getSender(), sessionAttributes);
+        // Nothing is broadcast when null is returned.
+        return joinLeaveMessages ? chatMessage : null;
+    }
+
+    @MessageMapping("/chat.{room:[a-zA-Z0-9_-]+}.sendMessage")
+    @SendTo(ROOM_DESTINATION_PREFIX + "{room}")
+    public ChatMessage sendRoomMessage(@DestinationVariable String room, @Payload ChatMessage chatMessage) {
         return chatMessage;
     }
+
+    @MessageMapping("/chat.{room:[a-zA-Z0-9_-]+}.addUser")
+    @SendTo(ROOM_DESTINATION_PREFIX + "{room}")
+    @SuppressWarnings("unchecked")
+    public ChatMessage addRoomUser(@DestinationVariable String room, @Payload ChatMessage chatMessage,
+                                   SimpMessageHeaderAccessor headerAccessor) {
+        // Add username and the room in web socket session
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        sessionAttributes.put("username", chatMessage.getSender());
+        ((Set<String>) sessionAttributes.computeIfAbsent(ROOMS_SESSION_ATTRIBUTE, key -> ConcurrentHashMap.newKeySet())).add(room);
+        presenceService.join(room, chatMessage.getSender(), sessionAttributes);
+        return joinLeaveMessages ? chatMessage : null;
+    }
+
+    @MessageMapping("/chat.sendPrivateMessage")
+    public void sendPrivateMessage(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
+        Principal user = headerAccessor.getUser();
+        if (user == null || !StringUtils.hasText(chatMessage.getRecipient())) {
+            logger.debug("Dropping a private message without a user or a recipient.");
+            return;
+        }
+        // The sender is the user of the session, whatever the client says.
+        chatMessage.setSender(user.getName());
+        chatMessage.setType(ChatMessage.MessageType.CHAT);
+        messagingTemplate.convertAndSendToUser(chatMessage.getRecipient(), PRIVATE_MESSAGE_DESTINATION, chatMessage);
+        // So the other sessions of the sender see it too.
+        if (!user.getName().equals(chatMessage.getRecipient())) {
+            messagingTemplate.convertAndSendToUser(user.getName(), PRIVATE_MESSAGE_DESTINATION, chatMessage);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package com.example.websocketdemo.controller;
+
+import com.example.websocketdemo.journal.JournalRecord;
+import com.example.websocketdemo.journal.MessageJournal;
+import com.example.websocketdemo.model.JournalMessagePage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the messages kept by the message journal, per destination. For example:
+ * GET /journal/messages?destination=/topic/public&afterSequence=0&limit=50
+ * GET /journal/messages?destination=/topic/public&since=1606836349023 (the messages since that time, in milliseconds since the epoch)
+ */
+@RestController
+@ConditionalOnProperty(name = "websocket.stomp.journal.enabled", havingValue = "true")
+public class MessageJournalController {
+
+    private final MessageJournal messageJournal;
+
+    private final int maxPageSize;
+
+    public MessageJournalController(MessageJournal messageJournal,
+                                    @Value("${websocket.stomp.journal.max-page-size}") int maxPageSize) {
+        this.messageJournal = messageJournal;
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * @param destination:   The destination the messages were broadcast to.
+     * @param afterSequence: The messages up to this sequence number are skipped.
+     * @param since:         If given, the messages written before this time are skipped instead.
+     * @param limit:         Maximum number of messages, up to websocket.stomp.journal.max-page-size.
+     */
+    @GetMapping("/journal/messages")
+    public JournalMessagePage getMessages(@RequestParam String destination,
+                                          @RequestParam(defaultValue = "0") long afterSequence,
+                                          @RequestParam(required = false) Long since,
+                                          @RequestParam(defaultValue = "50") int limit) {
+        if (since != null) {
+            afterSequence = messageJournal.findSequence(since) - 1;
+        }
+        List<JournalRecord> records = messageJournal.read(destination, afterSequence, Math.max(1, Math.min(limit, maxPageSize)));
+        List<JournalMessagePage.JournalMessage> messages = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            messages.add(new JournalMessagePage.JournalMessage(record.getSequence(), record.getTimestampMillis(),
+                    new String(record.getPayload(), StandardCharsets.UTF_8)));
+        }
+        long nextAfterSequence = records.isEmpty() ? afterSequence : records.get(records.size() - 1).getSequence();
+        return new JournalMessagePage(messages, nextAfterSequence);
+    }
+}
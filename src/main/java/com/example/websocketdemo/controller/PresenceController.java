@@ -0,0 +1,38 @@
+package com.example.websocketdemo.controller;
+
+import com.example.websocketdemo.model.PresenceSnapshot;
+import com.example.websocketdemo.presence.PresenceService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * The users online in a room, as a PresenceSnapshot. The changes are then broadcast to /topic/presence.{room}.
+ * STOMP: SUBSCRIBE to /app/presence.{room}, the snapshot is sent back to that subscription only.
+ * REST: GET /presence/{room}
+ */
+@Controller
+@ConditionalOnProperty(name = "websocket.presence.enabled", havingValue = "true")
+public class PresenceController {
+
+    private final PresenceService presenceService;
+
+    public PresenceController(PresenceService presenceService) {
+        this.presenceService = presenceService;
+    }
+
+    @SubscribeMapping("/presence.{room:[a-zA-Z0-9_-]+}")
+    public PresenceSnapshot subscribePresence(@DestinationVariable String room) {
+        return presenceService.snapshot(room);
+    }
+
+    @GetMapping("/presence/{room:[a-zA-Z0-9_-]+}")
+    @ResponseBody
+    public PresenceSnapshot getPresence(@PathVariable String room) {
+        return presenceService.snapshot(room);
+    }
+}
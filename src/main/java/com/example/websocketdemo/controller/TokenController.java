@@ -0,0 +1,51 @@
+package com.example.websocketdemo.controller;
+
+import com.example.websocketdemo.interceptor.TokenAuthenticationChannelInterceptor;
+import com.example.websocketdemo.model.AccessToken;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues the tokens that authenticate the STOMP CONNECT frames (see TokenAuthenticationChannelInterceptor).
+ * REST: POST /auth/token with the username form parameter.
+ * NOTE: This demo has no user store, so a token is issued for any username, which would make the token authentication pointless.
+ * So it's only enabled by the dev profile (application-dev.properties). A real deployment gets its tokens from its identity provider,
+ * signed with websocket.stomp.token-auth.secret.
+ */
+@RestController
+@ConditionalOnProperty(name = "websocket.stomp.token-auth.issuer.enabled", havingValue = "true")
+public class TokenController {
+
+    private final TokenAuthenticationChannelInterceptor tokenAuthenticationChannelInterceptor;
+
+    private final long ttlMillis;
+
+    private final int maxUsernameLength;
+
+    public TokenController(TokenAuthenticationChannelInterceptor tokenAuthenticationChannelInterceptor,
+                           @Value("${websocket.stomp.token-auth.issuer.ttl-seconds}") long ttlSeconds,
+                           @Value("${websocket.stomp.login-principal.max-length}") int maxUsernameLength) {
+        this.tokenAuthenticationChannelInterceptor = tokenAuthenticationChannelInterceptor;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.maxUsernameLength = maxUsernameLength;
+    }
+
+    @PostMapping("/auth/token")
+    public ResponseEntity<AccessToken> issueToken(@RequestParam String username) {
+        String trimmedUsername = StringUtils.trimWhitespace(username);
+        if (!StringUtils.hasText(trimmedUsername) || trimmedUsername.length() > maxUsernameLength) {
+            return ResponseEntity.badRequest().build();
+        }
+        // The token expiry has a precision of a second.
+        long expiresAt = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + ttlMillis));
+        String token = tokenAuthenticationChannelInterceptor.getTokenVerifier().sign(trimmedUsername, expiresAt);
+        return ResponseEntity.ok(new AccessToken(token, expiresAt));
+    }
+}
@@ -1,30 +1,36 @@
 package com.example.websocketdemo.controller;
 
-import com.example.websocketdemo.model.ChatMessage;
+import com.example.websocketdemo.event.SessionEventPipeline;
+import com.example.websocketdemo.resume.ResumableSessionExpiredEvent;
+import com.example.websocketdemo.resume.ResumableSessionRegistry;
+import com.example.websocketdemo.session.SlowConsumerEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.broker.BrokerAvailabilityEvent;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 import org.springframework.web.socket.messaging.*;
 
 /**
  * This is a listener that hears events from WebSocket system in the application.
  * https://docs.spring.io/spring-framework/docs/4.1.7.RELEASE/spring-framework-reference/html/websocket.html#websocket-stomp-appplication-context-events
+ * The session lifecycle events are passed on to the SessionEventPipeline, which handles them off the channel threads.
  */
 @Component
 public class WebSocketEventListener {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private final SimpMessageSendingOperations messagingTemplate;
+    private final ResumableSessionRegistry resumableSessionRegistry;
+
+    private final SessionEventPipeline sessionEventPipeline;
 
     @Autowired
-    public WebSocketEventListener(SimpMessageSendingOperations messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    public WebSocketEventListener(ResumableSessionRegistry resumableSessionRegistry, SessionEventPipeline sessionEventPipeline) {
+        this.resumableSessionRegistry = resumableSessionRegistry;
+        this.sessionEventPipeline = sessionEventPipeline;
     }
 
     /**
@@ -55,7 +61,7 @@ public class WebSocketEventListener {
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
         logger.info("A WebSocket client has connected to the server.");
-        messagingTemplate.convertAndSend("/topic/public", "Test reply.");
+        sessionEventPipeline.connected(SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()));
     }
 
     /**
@@ -65,13 +71,8 @@ public class WebSocketEventListener {
      */
     @EventListener
     public void handleWebSocketSubscribeListener(SessionSubscribeEvent event) {
-        logger.info("A WebSocket client has subscribed to a STOMP topic in the server.");
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
-        if (StringUtils.hasText(username)) {
-            logger.info("The user that has subscribed to the topic : {}", username);
-        }
+        sessionEventPipeline.subscribed(headerAccessor.getSessionId(), headerAccessor.getSessionAttributes());
     }
 
 
@@ -82,34 +83,49 @@ public class WebSocketEventListener {
      */
     @EventListener
     public void handleWebSocketUnsubscribeListener(SessionUnsubscribeEvent event) {
-        logger.info("A WebSocket client has unsubscribed a STOMP topic from the server.");
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
-
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
-        if (StringUtils.hasText(username)) {
-            logger.info("The user that has unsubscribed from the topic : {}", username);
-        }
+        sessionEventPipeline.unsubscribed(headerAccessor.getSessionId(), headerAccessor.getSessionAttributes());
     }
 
     /**
      * Detects a user has disconnected from the server.
+     * If the user's session is resumable, it's kept for a while instead, and the user only goes offline if it expires.
+     * The session must be suspended right away, before its DISCONNECT message reaches the broker (see ResumableSessionRegistry).
      *
      * @param event: SessionDisconnectEvent object that contains details about the event.
      */
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
-        logger.info("A WebSocket client has disconnected from the server.");
         StompHeaderAccessor headerAccessor = StompHeaderAccessor.wrap(event.getMessage());
+        boolean suspended = resumableSessionRegistry.suspend(event.getSessionId());
+        if (suspended) {
+            logger.info("A WebSocket client has lost its connection, its session is kept to be resumed.");
+        } else {
+            logger.info("A WebSocket client has disconnected from the server.");
+        }
+        sessionEventPipeline.disconnected(event.getSessionId(), headerAccessor.getSessionAttributes(), suspended);
+    }
 
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
-        if (StringUtils.hasText(username)) {
-            logger.info("User that has disconnected from the server: {}", username);
-
-            ChatMessage chatMessage = new ChatMessage();
-            chatMessage.setType(ChatMessage.MessageType.LEAVE);
-            chatMessage.setSender(username);
+    /**
+     * Detects a resumable session has not been resumed in time after its connection was lost.
+     *
+     * @param event: ResumableSessionExpiredEvent object that contains the attributes of the session.
+     */
+    @EventListener
+    public void handleResumableSessionExpiredListener(ResumableSessionExpiredEvent event) {
+        logger.info("A resumable session has expired.");
+        sessionEventPipeline.expired(event.getSessionId(), event.getSessionAttributes());
+    }
 
-            messagingTemplate.convertAndSend("/topic/public", chatMessage);
-        }
+    /**
+     * Detects a client that doesn't keep up with the messages sent to it, and has had some of them dropped or has been disconnected.
+     *
+     * @param event: SlowConsumerEvent object that contains the policy that was applied.
+     */
+    @EventListener
+    public void handleSlowConsumerListener(SlowConsumerEvent event) {
+        logger.warn("WebSocket session {} is a slow consumer ({} over the limit, {} bytes waiting, oldest {} ms): {} dropped {} messages.",
+                event.getSessionId(), event.getTrigger(), event.getBufferSize(), event.getLatencyMillis(),
+                event.getPolicy(), event.getEvictedMessageCount());
     }
 }
@@ -0,0 +1,84 @@
+package com.example.websocketdemo.event;
+
+import com.example.websocketdemo.model.SessionActivity;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The sessions connected and disconnected during one window of the SessionEventPipeline, coalesced into a single SessionActivity.
+ *
+ * The sessions are the WebSocket sessions (connections): a resumable session that is suspended counts as disconnected,
+ * and counts as connected again when it's resumed by a new connection.
+ * A session that connects and disconnects within the same window (like a client that fails right after its CONNECT)
+ * is not counted at all, nor is one that disconnects without having been connected (like a CONNECT that's been rejected).
+ * It's only used by the consumer of the pipeline, so it's not thread-safe.
+ */
+class SessionActivityWindow {
+
+    // The sessions connected before this window, and the ones connected during it.
+    private final Set<String> sessionIds = new HashSet<>();
+
+    private final Set<String> connectedSessionIds = new HashSet<>();
+
+    private int disconnectedCount;
+
+    private int subscriptionCount;
+
+    /**
+     * @param event: An event of the window.
+     */
+    void add(SessionLifecycleEvent event) {
+        switch (event.getType()) {
+            case CONNECTED:
+                connectedSessionIds.add(event.getSessionId());
+                break;
+            case SUBSCRIBED:
+                subscriptionCount++;
+                break;
+            case UNSUBSCRIBED:
+                subscriptionCount--;
+                break;
+            case SUSPENDED:
+            case DISCONNECTED:
+                if (!connectedSessionIds.remove(event.getSessionId()) && sessionIds.remove(event.getSessionId())) {
+                    disconnectedCount++;
+                }
+                break;
+            case EXPIRED:
+                // Its connection has already been counted as disconnected.
+                break;
+        }
+    }
+
+    /**
+     * @param timestamp: The end of the window.
+     * @return The activity of the window, or null if no session has connected or disconnected.
+     */
+    SessionActivity flush(long timestamp) {
+        int connectedCount = connectedSessionIds.size();
+        SessionActivity sessionActivity = null;
+        if (connectedCount > 0 || disconnectedCount > 0) {
+            sessionIds.addAll(connectedSessionIds);
+            sessionActivity = new SessionActivity(connectedCount, disconnectedCount, sessionIds.size(), timestamp);
+        }
+        connectedSessionIds.clear();
+        disconnectedCount = 0;
+        subscriptionCount = 0;
+        return sessionActivity;
+    }
+
+    /**
+     * @return Net number of subscriptions added during the window.
+     */
+    int getSubscriptionCount() {
+        return subscriptionCount;
+    }
+
+    /**
+     * @return Number of sessions connected, including the ones of the current window.
+     */
+    int getSessionCount() {
+        return sessionIds.size() + connectedSessionIds.size();
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.websocketdemo.event;
+
+import com.example.websocketdemo.controller.ChatController;
+import com.example.websocketdemo.model.ChatMessage;
+import com.example.websocketdemo.model.SessionActivity;
+import com.example.websocketdemo.presence.PresenceService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Handles the session lifecycle events off the threads of the channels, so connecting a session doesn't depend on the number of sessions.
+ *
+ * WebSocketEventListener queues the events (from the clientInbound and clientOutbound threads, so there are many producers)
+ * in a queue of websocket.events.queue-capacity events. A single consumer, run by the webSocketTaskScheduler every
+ * websocket.events.window-millis, takes all the queued events at once: the users of the sessions that have disconnected
+ * leave their rooms (and the LEAVE messages are sent, see websocket.presence.join-leave-messages), and the sessions
+ * connected and disconnected during the window are broadcast to websocket.events.activity-destination as one SessionActivity
+ * (see SessionActivityWindow). So a reconnect storm of N clients sends a few broadcasts, instead of one per client to every client.
+ * When the queue is full, the event is handled by the thread that publishes it (like the CallerRunsPolicy of the executors),
+ * so a LEAVE is never lost. With websocket.events.enabled=false, every event is handled by the thread that publishes it.
+ *
+ * websocket.events.queued: Number of events waiting for the consumer.
+ * websocket.events.overflows: Number of events handled by their publisher as the queue was full.
+ * websocket.events.activities: Number of SessionActivity broadcast.
+ */
+@Component
+public class SessionEventPipeline implements InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final boolean enabled;
+
+    private final String activityDestination;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final PresenceService presenceService;
+
+    private final boolean joinLeaveMessages;
+
+    private final long windowMillis;
+
+    private final TaskScheduler taskScheduler;
+
+    private final BlockingQueue<SessionLifecycleEvent> queue;
+
+    // Only used with the lock of the window, by the consumer, or by a publisher when the queue is full.
+    private final SessionActivityWindow sessionActivityWindow = new SessionActivityWindow();
+
+    private final List<SessionLifecycleEvent> batch = new ArrayList<>();
+
+    private final Counter overflowCounter;
+
+    private final Counter activityCounter;
+
+    private ScheduledFuture<?> scheduledConsumer;
+
+    public SessionEventPipeline(@Value("${websocket.events.enabled}") boolean enabled,
+                                @Value("${websocket.events.queue-capacity}") int queueCapacity,
+                                @Value("${websocket.events.window-millis}") long windowMillis,
+                                @Value("${websocket.events.activity-destination}") String activityDestination,
+                                SimpMessageSendingOperations messagingTemplate,
+                                PresenceService presenceService,
+                                @Value("${websocket.presence.join-leave-messages}") boolean joinLeaveMessages,
+                                @Qualifier("webSocketTaskScheduler") TaskScheduler taskScheduler,
+                                MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.activityDestination = activityDestination;
+        this.messagingTemplate = messagingTemplate;
+        this.presenceService = presenceService;
+        this.joinLeaveMessages = joinLeaveMessages;
+        this.windowMillis = windowMillis;
+        this.taskScheduler = taskScheduler;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("websocket.events.queued", queue, Collection::size)
+                .description("Number of session lifecycle events waiting for the consumer.")
+                .register(meterRegistry);
+        overflowCounter = Counter.builder("websocket.events.overflows")
+                .description("Number of session lifecycle events handled by their publisher as the queue was full.")
+                .register(meterRegistry);
+        activityCounter = Counter.builder("websocket.events.activities")
+                .description("Number of session activities broadcast.")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            // A task with a fixed delay never overlaps itself, so there's a single consumer.
+            scheduledConsumer = taskScheduler.scheduleWithFixedDelay(this::consume, windowMillis);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduledConsumer != null) {
+            scheduledConsumer.cancel(false);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param sessionId: ID of the WebSocket session that has got its CONNECTED frame.
+     */
+    public void connected(String sessionId) {
+        publish(new SessionLifecycleEvent(SessionLifecycleEvent.Type.CONNECTED, sessionId, null));
+    }
+
+    /**
+     * @param sessionId:         ID of the WebSocket session.
+     * @param sessionAttributes: The attributes of the session.
+     */
+    public void subscribed(String sessionId, Map<String, Object> sessionAttributes) {
+        publish(new SessionLifecycleEvent(SessionLifecycleEvent.Type.SUBSCRIBED, sessionId, sessionAttributes));
+    }
+
+    /**
+     * @param sessionId:         ID of the WebSocket session.
+     * @param sessionAttributes: The attributes of the session.
+     */
+    public void unsubscribed(String sessionId, Map<String, Object> sessionAttributes) {
+        publish(new SessionLifecycleEvent(SessionLifecycleEvent.Type.UNSUBSCRIBED, sessionId, sessionAttributes));
+    }
+
+    /**
+     * @param sessionId:         ID of the WebSocket session that has ended.
+     * @param sessionAttributes: The attributes of the session.
+     * @param suspended:         true if its resumable session is kept, so its user stays online.
+     */
+    public void disconnected(String sessionId, Map<String, Object> sessionAttributes, boolean suspended) {
+        publish(new SessionLifecycleEvent(suspended ? SessionLifecycleEvent.Type.SUSPENDED : SessionLifecycleEvent.Type.DISCONNECTED,
+                sessionId, sessionAttributes));
+    }
+
+    /**
+     * @param sessionId:         ID of the resumable session that has expired.
+     * @param sessionAttributes: The attributes of the session.
+     */
+    public void expired(String sessionId, Map<String, Object> sessionAttributes) {
+        publish(new SessionLifecycleEvent(SessionLifecycleEvent.Type.EXPIRED, sessionId, sessionAttributes));
+    }
+
+    private void publish(SessionLifecycleEvent event) {
+        if (enabled && queue.offer(event)) {
+            return;
+        }
+        if (enabled) {
+            overflowCounter.increment();
+        }
+        // The queued events are handled first, so the events of a session stay in order,
+        // and the SessionActivity is broadcast right away, without waiting for the end of the window.
+        SessionActivity sessionActivity;
+        synchronized (sessionActivityWindow) {
+            handleQueued();
+            handle(event);
+            sessionActivity = sessionActivityWindow.flush(System.currentTimeMillis());
+        }
+        broadcast(sessionActivity);
+    }
+
+    private void consume() {
+        SessionActivity sessionActivity;
+        synchronized (sessionActivityWindow) {
+            handleQueued();
+            sessionActivity = sessionActivityWindow.flush(System.currentTimeMillis());
+        }
+        broadcast(sessionActivity);
+    }
+
+    private void handleQueued() {
+        queue.drainTo(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (SessionLifecycleEvent event : batch) {
+            try {
+                handle(event);
+            } catch (RuntimeException e) {
+                logger.error("Failed to handle the {} event of session {}.", event.getType(), event.getSessionId(), e);
+            }
+        }
+        logger.debug("{} session events: {} subscriptions, {} sessions.", batch.size(),
+                sessionActivityWindow.getSubscriptionCount(), sessionActivityWindow.getSessionCount());
+        batch.clear();
+    }
+
+    private void handle(SessionLifecycleEvent event) {
+        sessionActivityWindow.add(event);
+        String username = event.getUsername();
+        switch (event.getType()) {
+            case SUBSCRIBED:
+                if (StringUtils.hasText(username)) {
+                    logger.info("The user that has subscribed to the topic : {}", username);
+                }
+                break;
+            case UNSUBSCRIBED:
+                if (StringUtils.hasText(username)) {
+                    logger.info("The user that has unsubscribed from the topic : {}", username);
+                }
+                break;
+            default:
+                if (event.isLeave()) {
+                    sendLeave(username, event.getSessionAttributes());
+                }
+                break;
+        }
+    }
+
+    private void broadcast(SessionActivity sessionActivity) {
+        if (sessionActivity == null) {
+            return;
+        }
+        activityCounter.increment();
+        messagingTemplate.convertAndSend(activityDestination, sessionActivity);
+    }
+
+    private void sendLeave(String username, Map<String, Object> sessionAttributes) {
+        presenceService.leaveAll(sessionAttributes);
+        if (StringUtils.hasText(username)) {
+            logger.info("User that has disconnected from the server: {}", username);
+
+            if (!joinLeaveMessages) {
+                return;
+            }
+
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.setType(ChatMessage.MessageType.LEAVE);
+            chatMessage.setSender(username);
+
+            messagingTemplate.convertAndSend("/topic/public", chatMessage);
+            // And to the rooms the user has joined.
+            Object rooms = sessionAttributes.get(ChatController.ROOMS_SESSION_ATTRIBUTE);
+            if (rooms instanceof Set) {
+                for (Object room : (Set<?>) rooms) {
+                    messagingTemplate.convertAndSend(ChatController.ROOM_DESTINATION_PREFIX + room, chatMessage);
+                }
+            }
+        }
+    }
+}
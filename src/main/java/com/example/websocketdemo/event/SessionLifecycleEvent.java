@@ -0,0 +1,54 @@
+package com.example.websocketdemo.event;
+
+import java.util.Map;
+
+/**
+ * A change of a session's state, queued by the SessionEventPipeline.
+ * The sessionId is the one of the WebSocket session (connection), but for EXPIRED, which has the one of the resumable session.
+ */
+class SessionLifecycleEvent {
+
+    enum Type {
+        CONNECTED,
+        SUBSCRIBED,
+        UNSUBSCRIBED,
+        // The connection is closed, but the session may be resumed, so its user stays online.
+        SUSPENDED,
+        // The connection is closed with its session, so its user leaves the rooms.
+        DISCONNECTED,
+        // A suspended session has not been resumed in time, so its user leaves the rooms.
+        EXPIRED
+    }
+
+    private final Type type;
+
+    private final String sessionId;
+
+    private final Map<String, Object> sessionAttributes;
+
+    SessionLifecycleEvent(Type type, String sessionId, Map<String, Object> sessionAttributes) {
+        this.type = type;
+        this.sessionId = sessionId;
+        this.sessionAttributes = sessionAttributes;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    Map<String, Object> getSessionAttributes() {
+        return sessionAttributes;
+    }
+
+    boolean isLeave() {
+        return type == Type.DISCONNECTED || type == Type.EXPIRED;
+    }
+
+    String getUsername() {
+        return sessionAttributes == null ? null : (String) sessionAttributes.get("username");
+    }
+}
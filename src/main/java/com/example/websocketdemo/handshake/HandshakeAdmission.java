@@ -0,0 +1,119 @@
+package com.example.websocketdemo.handshake;
+
+import com.example.websocketdemo.ratelimit.GcraRateLimiter;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a WebSocket handshake is admitted on this node, before the connection is upgraded.
+ *
+ * A handshake is refused, in this order:
+ * DRAINING: The node is shutting down (or has been told to drain), so the client should connect to another node.
+ * AT_CAPACITY: The node already has maxSessions sessions.
+ * ADDRESS_RATE_LIMITED: The client address is over its connection rate (one token bucket per address, see GcraRateLimiter).
+ * RATE_LIMITED: The node is over its connection rate (one token bucket for all the addresses).
+ *
+ * The client of a refused handshake is told to retry after retryAfterSeconds, plus a random jitter of up to retryAfterJitterSeconds,
+ * so that the clients of a restarted node don't all come back in the same second.
+ */
+public class HandshakeAdmission {
+
+    public enum Decision {
+        ADMITTED,
+        DRAINING,
+        AT_CAPACITY,
+        ADDRESS_RATE_LIMITED,
+        RATE_LIMITED
+    }
+
+    // The key of the bucket of the node, in nodeRateLimiter.
+    private static final String NODE_KEY = "node";
+
+    private final GcraRateLimiter nodeRateLimiter;
+
+    private final GcraRateLimiter addressRateLimiter;
+
+    private final int maxSessions;
+
+    private final long retryAfterSeconds;
+
+    private final long retryAfterJitterSeconds;
+
+    private volatile boolean draining;
+
+    /**
+     * @param connectionsPerSecond:        Sustained handshake rate allowed on the node.
+     * @param burst:                       Number of handshakes the node allows at once, after being idle.
+     * @param addressConnectionsPerSecond: Sustained handshake rate allowed per client address.
+     * @param addressBurst:                Number of handshakes a client address may do at once, after being idle.
+     * @param maxSessions:                 Number of sessions above which the handshakes are refused.
+     * @param retryAfterSeconds:           Minimum delay the client of a refused handshake is told to wait.
+     * @param retryAfterJitterSeconds:     Maximum random delay added to retryAfterSeconds.
+     */
+    public HandshakeAdmission(double connectionsPerSecond, int burst, double addressConnectionsPerSecond, int addressBurst,
+                              int maxSessions, long retryAfterSeconds, long retryAfterJitterSeconds) {
+        this.nodeRateLimiter = new GcraRateLimiter(connectionsPerSecond, burst);
+        this.addressRateLimiter = new GcraRateLimiter(addressConnectionsPerSecond, addressBurst);
+        this.maxSessions = maxSessions;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.retryAfterJitterSeconds = retryAfterJitterSeconds;
+    }
+
+    /**
+     * @param address:        The address of the client.
+     * @param activeSessions: Number of sessions on the node.
+     * @param nowNanos:       System.nanoTime().
+     * @return ADMITTED, or the reason the handshake is refused.
+     */
+    public Decision admit(String address, int activeSessions, long nowNanos) {
+        if (draining) {
+            return Decision.DRAINING;
+        }
+        if (activeSessions >= maxSessions) {
+            return Decision.AT_CAPACITY;
+        }
+        // The address is checked first, so a single client over its rate doesn't use up the rate of the node.
+        if (!addressRateLimiter.tryAcquire(address, nowNanos)) {
+            return Decision.ADDRESS_RATE_LIMITED;
+        }
+        if (!nodeRateLimiter.tryAcquire(NODE_KEY, nowNanos)) {
+            return Decision.RATE_LIMITED;
+        }
+        return Decision.ADMITTED;
+    }
+
+    /**
+     * @return The value of the Retry-After header of a refused handshake, in seconds.
+     */
+    public long retryAfterSeconds() {
+        return retryAfterSeconds + ThreadLocalRandom.current().nextLong(retryAfterJitterSeconds + 1);
+    }
+
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * @param draining: true to refuse the new handshakes, the sessions already connected are kept.
+     */
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    /**
+     * Forget the addresses whose bucket is full again (see GcraRateLimiter.evictIdle).
+     *
+     * @param nowNanos: System.nanoTime().
+     */
+    public void evictIdle(long nowNanos) {
+        addressRateLimiter.evictIdle(nowNanos);
+        nodeRateLimiter.evictIdle(nowNanos);
+    }
+
+    /**
+     * @return Number of client addresses with a bucket.
+     */
+    public int getAddressCount() {
+        return addressRateLimiter.size();
+    }
+}
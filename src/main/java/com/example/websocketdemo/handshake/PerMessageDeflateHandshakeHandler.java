@@ -0,0 +1,129 @@
+package com.example.websocketdemo.handshake;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.context.ServletContextAware;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A HandshakeHandler that controls the permessage-deflate compression (RFC 7692) of the WebSocket sessions of one endpoint.
+ *
+ * Tomcat negotiates permessage-deflate by itself, whenever the client offers it (browsers always do), and it reads the offer
+ * from the HTTP request, not from the extensions selected by Spring. So the offer is rewritten before the handshake:
+ * enabled=false: The permessage-deflate offers are removed, so the session is not compressed.
+ * contextTakeover=false: server_no_context_takeover is added to the offers, so the server compresses each message on its own,
+ * instead of keeping a sliding window (the dictionary of the previously sent messages) for each session.
+ * That saves about 64KB of memory per session, but the repeated JSON keys of the chat messages compress less.
+ *
+ * The handshake itself is done by a DefaultHandshakeHandler, whose doHandshake(...) can't be overridden.
+ */
+public class PerMessageDeflateHandshakeHandler implements HandshakeHandler, ServletContextAware {
+    public static final String PER_MESSAGE_DEFLATE = "permessage-deflate";
+
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    private final boolean enabled;
+
+    private final boolean contextTakeover;
+
+    private final DefaultHandshakeHandler defaultHandshakeHandler = new DefaultHandshakeHandler();
+
+    /**
+     * @param enabled:         Whether the sessions of the endpoint may be compressed.
+     * @param contextTakeover: Whether the server keeps the compression dictionary of a session from one message to the next.
+     */
+    public PerMessageDeflateHandshakeHandler(boolean enabled, boolean contextTakeover) {
+        this.enabled = enabled;
+        this.contextTakeover = contextTakeover;
+    }
+
+    @Override
+    public boolean doHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Map<String, Object> attributes) throws HandshakeFailureException {
+        if ((!enabled || !contextTakeover) && request instanceof ServletServerHttpRequest
+                && request.getHeaders().containsKey(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS)) {
+            request = new ServletServerHttpRequest(new ExtensionOfferRequestWrapper(((ServletServerHttpRequest) request).getServletRequest()));
+        }
+        return defaultHandshakeHandler.doHandshake(request, response, wsHandler, attributes);
+    }
+
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        defaultHandshakeHandler.setServletContext(servletContext);
+    }
+
+    /**
+     * @param extensionOffers: A Sec-WebSocket-Extensions header value, a comma-separated list of offers like: permessage-deflate; client_max_window_bits
+     * @return The offers that this endpoint accepts, rewritten as described above. Empty if there are none left.
+     */
+    String rewriteExtensionOffers(String extensionOffers) {
+        StringBuilder rewrittenOffers = new StringBuilder(extensionOffers.length() + SERVER_NO_CONTEXT_TAKEOVER.length() + 2);
+        for (String offer : extensionOffers.split(",")) {
+            String trimmedOffer = offer.trim();
+            int parametersStart = trimmedOffer.indexOf(';');
+            String name = (parametersStart < 0 ? trimmedOffer : trimmedOffer.substring(0, parametersStart)).trim();
+            if (PER_MESSAGE_DEFLATE.equalsIgnoreCase(name)) {
+                if (!enabled) {
+                    continue;
+                }
+                if (!contextTakeover && !trimmedOffer.contains(SERVER_NO_CONTEXT_TAKEOVER)) {
+                    trimmedOffer = trimmedOffer + "; " + SERVER_NO_CONTEXT_TAKEOVER;
+                }
+            }
+            if (trimmedOffer.isEmpty()) {
+                continue;
+            }
+            if (rewrittenOffers.length() > 0) {
+                rewrittenOffers.append(", ");
+            }
+            rewrittenOffers.append(trimmedOffer);
+        }
+        return rewrittenOffers.toString();
+    }
+
+    private class ExtensionOfferRequestWrapper extends HttpServletRequestWrapper {
+
+        ExtensionOfferRequestWrapper(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (!WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name)) {
+                return super.getHeader(name);
+            }
+            Enumeration<String> headers = getHeaders(name);
+            return headers.hasMoreElements() ? headers.nextElement() : null;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+            List<String> rewrittenHeaders = new ArrayList<>();
+            Enumeration<String> headers = super.getHeaders(name);
+            while (headers.hasMoreElements()) {
+                String rewrittenOffers = rewriteExtensionOffers(headers.nextElement());
+                if (!rewrittenOffers.isEmpty()) {
+                    rewrittenHeaders.add(rewrittenOffers);
+                }
+            }
+            return Collections.enumeration(rewrittenHeaders);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.websocketdemo.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ring buffer of the last messages broadcast to one destination.
+ * Every message gets the next sequence number (starting from 1), and the message with sequence N is kept in slot (N - 1) % capacity,
+ * so an appended message replaces the oldest one once the buffer is full.
+ */
+class DestinationHistory {
+    private final HistoryEntry[] entries;
+
+    private long lastSequence;
+
+    DestinationHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the history must be positive.");
+        }
+        this.entries = new HistoryEntry[capacity];
+    }
+
+    synchronized HistoryEntry append(byte[] payload, long timestampMillis) {
+        lastSequence++;
+        HistoryEntry historyEntry = new HistoryEntry(lastSequence, timestampMillis, payload);
+        entries[(int) ((lastSequence - 1) % entries.length)] = historyEntry;
+        return historyEntry;
+    }
+
+    /**
+     * @param sequence:           The sequence number of the last message that the client has.
+     * @param minTimestampMillis: The messages older than this are left out, even if they are still in the buffer.
+     * @return The messages after the sequence number, oldest first.
+     */
+    synchronized List<HistoryEntry> since(long sequence, long minTimestampMillis) {
+        long firstSequence = Math.max(Math.max(sequence, 0) + 1, lastSequence - entries.length + 1);
+        if (firstSequence > lastSequence) {
+            return Collections.emptyList();
+        }
+        List<HistoryEntry> historyEntries = new ArrayList<>((int) (lastSequence - firstSequence + 1));
+        for (long i = firstSequence; i <= lastSequence; i++) {
+            HistoryEntry historyEntry = entries[(int) ((i - 1) % entries.length)];
+            if (historyEntry.getTimestampMillis() >= minTimestampMillis) {
+                historyEntries.add(historyEntry);
+            }
+        }
+        return historyEntries;
+    }
+}
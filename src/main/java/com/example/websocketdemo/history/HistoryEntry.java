@@ -0,0 +1,31 @@
+package com.example.websocketdemo.history;
+
+/**
+ * A message kept in the history of a destination, as the serialized payload that was broadcast (JSON), not as a ChatMessage object.
+ * So replaying it costs no serialization, and it takes about the size of its JSON on the heap.
+ */
+public class HistoryEntry {
+    private final long sequence;
+
+    private final long timestampMillis;
+
+    private final byte[] payload;
+
+    public HistoryEntry(long sequence, long timestampMillis, byte[] payload) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.payload = payload;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
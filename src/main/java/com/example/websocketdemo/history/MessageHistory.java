@@ -0,0 +1,82 @@
+package com.example.websocketdemo.history;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The recent messages of the destinations in websocket.stomp.history.destination.list, so that a client that (re)subscribes
+ * can get the messages it has missed. Each destination keeps its last websocket.stomp.history.size messages,
+ * and the ones older than websocket.stomp.history.max-age-seconds are not replayed.
+ *
+ * The messages are recorded by the MessageHistoryChannelInterceptor, as they are handed to the local broker.
+ * NOTE: The sequence numbers are per node. With websocket.stomp.broker.mode=kafka, every node numbers the relayed messages by itself.
+ */
+@Component
+public class MessageHistory {
+
+    private final boolean enabled;
+
+    private final Set<String> destinations;
+
+    private final int size;
+
+    private final long maxAgeMillis;
+
+    private final Map<String, DestinationHistory> destinationHistories = new ConcurrentHashMap<>();
+
+    public MessageHistory(@Value("${websocket.stomp.history.enabled}") boolean enabled,
+                          @Value("#{'${websocket.stomp.history.destination.list}'.split(',')}") List<String> destinations,
+                          @Value("${websocket.stomp.history.size}") int size,
+                          @Value("${websocket.stomp.history.max-age-seconds}") long maxAgeSeconds) {
+        // Checked here rather than on the first message of a destination, so a wrong size fails the startup.
+        if (enabled && size <= 0) {
+            throw new IllegalArgumentException("websocket.stomp.history.size must be positive, set websocket.stomp.history.enabled=false to keep no history.");
+        }
+        this.enabled = enabled;
+        this.destinations = new HashSet<>(destinations);
+        this.size = size;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param destination: A STOMP destination, or null.
+     * @return true if the messages of the destination are kept.
+     */
+    public boolean isRecorded(String destination) {
+        return destination != null && destinations.contains(destination);
+    }
+
+    /**
+     * @param destination: One of the destinations in websocket.stomp.history.destination.list.
+     * @param payload:     The serialized payload of the message. It's kept as it is, so it must not be modified afterwards.
+     * @return The new entry, with its sequence number.
+     */
+    public HistoryEntry append(String destination, byte[] payload) {
+        return destinationHistories.computeIfAbsent(destination, key -> new DestinationHistory(size))
+                .append(payload, System.currentTimeMillis());
+    }
+
+    /**
+     * @param destination: A STOMP destination.
+     * @param sequence:    The sequence number of the last message that the client has, 0 to get all the kept messages.
+     * @return The kept messages after the sequence number, oldest first.
+     */
+    public List<HistoryEntry> since(String destination, long sequence) {
+        DestinationHistory destinationHistory = destinationHistories.get(destination);
+        if (destinationHistory == null) {
+            return Collections.emptyList();
+        }
+        return destinationHistory.since(sequence, System.currentTimeMillis() - maxAgeMillis);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.model.ChatMessage;
+import com.example.websocketdemo.session.SessionTransportWebSocketHandlerDecorator;
+import com.example.websocketdemo.stomp.ChatMessageBinaryCodec;
+import com.example.websocketdemo.stomp.ChatMessageBinaryMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Negotiates the ChatMessage wire format per session, registered to the clientInbound and clientOutbound channels.
+ *
+ * A frontend client asks for the binary format with the header of its CONNECT frame:
+ * content-type:application/octet-stream;format=chat-message
+ * From then on, the ChatMessage JSON broadcasts to the destinations in websocket.stomp.binary-format.destination.list
+ * are sent to it in the binary format of ChatMessageBinaryCodec. The client may also SEND in the binary format,
+ * which is read by the ChatMessageBinaryMessageConverter.
+ *
+ * SockJS can only carry text frames, so the SockJS sessions always get JSON, whatever they ask for.
+ * The broker sends the same payload to every subscriber, so it is transcoded once per broadcast, not once per session.
+ */
+@Component
+public class ChatMessageFormatChannelInterceptor implements ChannelInterceptor {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final int TRANSCODED_PAYLOAD_CACHE_SIZE = 64;
+
+    // Cached for the payloads that are not a ChatMessage, so they are parsed only once too.
+    private static final byte[] NOT_CHAT_MESSAGE = new byte[0];
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+
+    private final Set<String> destinations;
+
+    // The IDs of the sessions that asked for the binary format.
+    private final Map<String, Boolean> binarySessions = new ConcurrentHashMap<>();
+
+    // Indexed by the identity hash code of the JSON payload.
+    private final AtomicReferenceArray<TranscodedPayload> transcodedPayloads = new AtomicReferenceArray<>(TRANSCODED_PAYLOAD_CACHE_SIZE);
+
+    @Autowired
+    public ChatMessageFormatChannelInterceptor(ObjectMapper objectMapper,
+                                               @Value("${websocket.stomp.binary-format.enabled}") boolean enabled,
+                                               @Value("#{'${websocket.stomp.binary-format.destination.list}'.split(',')}") List<String> destinations) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.destinations = new HashSet<>(destinations);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (SimpMessageType.CONNECT.equals(messageType)) {
+            negotiate(message);
+        } else if (SimpMessageType.DISCONNECT.equals(messageType)) {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+            if (sessionId != null) {
+                binarySessions.remove(sessionId);
+            }
+        } else if (SimpMessageType.MESSAGE.equals(messageType) && !binarySessions.isEmpty()) {
+            return transcode(message);
+        }
+        return message;
+    }
+
+    private void negotiate(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        MimeType contentType = MessageContentTypes.getContentType(headers);
+        if (sessionId == null || !ChatMessageBinaryMessageConverter.isChatMessageBinary(contentType)) {
+            return;
+        }
+        if (SessionTransportWebSocketHandlerDecorator.isBinaryCapable(SimpMessageHeaderAccessor.getSessionAttributes(headers))) {
+            binarySessions.put(sessionId, Boolean.TRUE);
+        } else {
+            logger.debug("Session {} asked for the binary format over SockJS, it will get JSON.", sessionId);
+        }
+    }
+
+    private Message<?> transcode(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null || !binarySessions.containsKey(sessionId)
+                || !destinations.contains(SimpMessageHeaderAccessor.getDestination(headers))
+                || !(message.getPayload() instanceof byte[])) {
+            return message;
+        }
+        if (!MessageContentTypes.isJson(headers)) {
+            return message;
+        }
+
+        byte[] encoded = transcode((byte[]) message.getPayload());
+        if (encoded == NOT_CHAT_MESSAGE) {
+            return message;
+        }
+        MessageHeaderAccessor headerAccessor = MessageHeaderAccessor.getMutableAccessor(message);
+        headerAccessor.setContentType(ChatMessageBinaryMessageConverter.CHAT_MESSAGE_BINARY_MIME_TYPE);
+        return MessageBuilder.createMessage(encoded, headerAccessor.getMessageHeaders());
+    }
+
+    private byte[] transcode(byte[] json) {
+        int slot = System.identityHashCode(json) & (TRANSCODED_PAYLOAD_CACHE_SIZE - 1);
+        TranscodedPayload transcodedPayload = transcodedPayloads.get(slot);
+        if (transcodedPayload != null && transcodedPayload.json == json) {
+            return transcodedPayload.encoded;
+        }
+        byte[] encoded;
+        try {
+            encoded = ChatMessageBinaryCodec.encode(objectMapper.readValue(json, ChatMessage.class));
+        } catch (IOException ioException) {
+            encoded = NOT_CHAT_MESSAGE;
+        }
+        transcodedPayloads.set(slot, new TranscodedPayload(json, encoded));
+        return encoded;
+    }
+
+    private static class TranscodedPayload {
+        final byte[] json;
+        final byte[] encoded;
+
+        TranscodedPayload(byte[] json, byte[] encoded) {
+            this.json = json;
+            this.encoded = encoded;
+        }
+    }
+}
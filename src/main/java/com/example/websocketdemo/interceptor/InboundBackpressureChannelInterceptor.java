@@ -0,0 +1,84 @@
+package com.example.websocketdemo.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Applies backpressure to the SEND frames of the frontend clients, once the queue of the clientInbound channel executor
+ * has grown past the high-water mark (websocket.stomp.backpressure.high-water-mark):
+ * REJECT: The frame is dropped, and the client gets a STOMP ERROR frame (which also closes its session).
+ * DELAY: The WebSocket container thread that read the frame waits (up to websocket.stomp.backpressure.max-delay-millis)
+ * for the queue to drain, so that the clients are slowed down by TCP flow control instead of growing the queue.
+ * If the queue is still above the high-water mark after the delay, the frame is rejected like REJECT.
+ *
+ * Only SEND frames are affected, so that the clients can still connect, subscribe and disconnect while the server is busy.
+ */
+public class InboundBackpressureChannelInterceptor implements ChannelInterceptor {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final long DELAY_STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public enum Mode {
+        NONE,
+        REJECT,
+        DELAY
+    }
+
+    private final ThreadPoolTaskExecutor clientInboundChannelExecutor;
+
+    private final Mode mode;
+
+    private final int highWaterMark;
+
+    private final long maxDelayNanos;
+
+    private final StompErrorSender stompErrorSender;
+
+    public InboundBackpressureChannelInterceptor(ThreadPoolTaskExecutor clientInboundChannelExecutor, Mode mode, int highWaterMark,
+                                                 long maxDelayMillis, StompErrorSender stompErrorSender) {
+        this.clientInboundChannelExecutor = clientInboundChannelExecutor;
+        this.mode = mode;
+        this.highWaterMark = highWaterMark;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.stompErrorSender = stompErrorSender;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (Mode.NONE.equals(mode)
+                || !SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))
+                || !isAboveHighWaterMark()) {
+            return message;
+        }
+
+        if (Mode.DELAY.equals(mode)) {
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (System.nanoTime() < deadline && isAboveHighWaterMark()) {
+                LockSupport.parkNanos(DELAY_STEP_NANOS);
+            }
+            if (!isAboveHighWaterMark()) {
+                return message;
+            }
+        }
+
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        logger.debug("The clientInbound channel is above its high-water mark, rejecting a SEND frame from session {}.", sessionId);
+        if (sessionId != null) {
+            stompErrorSender.sendError(sessionId, "Server is busy, please retry later.");
+        }
+        return null;
+    }
+
+    private boolean isAboveHighWaterMark() {
+        return clientInboundChannelExecutor.getThreadPoolExecutor().getQueue().size() >= highWaterMark;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.websocketdemo.interceptor;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A broker channel interceptor that relays the messages sent to the simple broker through Kafka, so that a message sent to
+ * /topic/public on one node reaches the subscribers connected to every other node as well.
+ *
+ * Messages that are about to be handled by the local broker are published to a Kafka topic (keyed by destination, so that one
+ * destination always lands on the same partition and keeps its order) instead of being delivered locally.
+ * Every node consumes that topic with its own consumer group, and sends the records back into the broker channel, where the
+ * local SimpleBrokerMessageHandler delivers them to the sessions connected to this JVM only.
+ *
+ * The user registry broadcasts of the nodes are relayed the same way, but they are passed to the userRegistryMessageHandler
+ * instead of the local broker, so no client can subscribe to them.
+ *
+ * NOTE: Only the messages sent by the server (@SendTo(...), SimpMessagingTemplate) go through the broker channel.
+ * STOMP SEND frames that the frontend clients send directly to a broker destination are still delivered locally.
+ */
+public class KafkaBrokerRelayChannelInterceptor implements ExecutorChannelInterceptor {
+    /**
+     * Message header that marks a message that has already been relayed through Kafka, and must be delivered locally.
+     */
+    public static final String RELAYED_HEADER = "kafkaBrokerRelayed";
+
+    private static final String CONTENT_TYPE_HEADER = "content-type";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private final MessageChannel brokerChannel;
+
+    private final String topic;
+
+    private final String groupId;
+
+    private final List<String> webSocketStompBrokerList;
+
+    private String userRegistryBroadcastDestination;
+
+    private MessageHandler userRegistryMessageHandler;
+
+    public KafkaBrokerRelayChannelInterceptor(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                              MessageChannel brokerChannel,
+                                              String topic,
+                                              String groupIdPrefix,
+                                              List<String> webSocketStompBrokerList) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.brokerChannel = brokerChannel;
+        this.topic = topic;
+        // Every node needs its own consumer group, so that every node receives every message of the topic.
+        this.groupId = groupIdPrefix + "-" + UUID.randomUUID().toString();
+        this.webSocketStompBrokerList = webSocketStompBrokerList;
+    }
+
+    /**
+     * Publish the message to Kafka instead of letting the local broker handle it.
+     *
+     * @param message: Message<?> object that is going to be handled by the MessageHandler.
+     * @param channel: The broker channel.
+     * @param handler: The MessageHandler that is going to handle the message. Only the broker handler is intercepted,
+     *                 the other subscribers of the broker channel (such as the user destination handler) are not affected.
+     * @return The same message if it must be handled locally, or null if it has been published to Kafka.
+     */
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        if (!(handler instanceof AbstractBrokerMessageHandler) || !isRelayable(message)) {
+            return message;
+        }
+
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        ProducerRecord<String, byte[]> producerRecord = new ProducerRecord<>(topic, destination, (byte[]) message.getPayload());
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            producerRecord.headers().add(CONTENT_TYPE_HEADER, contentType.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        kafkaTemplate.send(producerRecord);
+        return null;
+    }
+
+    /**
+     * Deliver a message consumed from Kafka to the subscribers connected to this node.
+     *
+     * @param consumerRecord: ConsumerRecord object, which key is the destination and value is the serialized payload.
+     */
+    @KafkaListener(id = "kafkaBrokerRelay",
+            topics = "${websocket.stomp.broker.kafka.topic}",
+            groupId = "#{__listener.groupId}",
+            containerFactory = "kafkaBrokerRelayListenerContainerFactory")
+    public void relay(ConsumerRecord<String, byte[]> consumerRecord) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(consumerRecord.key());
+        Header contentType = consumerRecord.headers().lastHeader(CONTENT_TYPE_HEADER);
+        if (contentType != null) {
+            headerAccessor.setContentType(MimeType.valueOf(new String(contentType.value(), StandardCharsets.UTF_8)));
+        }
+        headerAccessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+
+        if (userRegistryMessageHandler != null && consumerRecord.key().equals(userRegistryBroadcastDestination)) {
+            userRegistryMessageHandler.handleMessage(MessageBuilder.createMessage(consumerRecord.value(), headerAccessor.getMessageHeaders()));
+            return;
+        }
+        if (!brokerChannel.send(MessageBuilder.createMessage(consumerRecord.value(), headerAccessor.getMessageHeaders()))) {
+            logger.warn("Unable to deliver the message relayed from Kafka to destination {}.", consumerRecord.key());
+        }
+    }
+
+    /**
+     * @param destination: The destination the nodes broadcast their users to.
+     * @param handler:     The handler that keeps the users of the other nodes in the MultiServerUserRegistry.
+     */
+    public void setUserRegistryBroadcast(String destination, MessageHandler handler) {
+        this.userRegistryBroadcastDestination = destination;
+        this.userRegistryMessageHandler = handler;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    private boolean isRelayable(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        if (headers.containsKey(RELAYED_HEADER)
+                || !SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(headers))
+                || !(message.getPayload() instanceof byte[])) {
+            return false;
+        }
+
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null) {
+            return false;
+        }
+        for (String prefix : webSocketStompBrokerList) {
+            if (destination.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
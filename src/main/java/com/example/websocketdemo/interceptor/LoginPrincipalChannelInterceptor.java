@@ -0,0 +1,63 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.user.ChatUserPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * The HTTP requests are not authenticated (see SecurityConfiguration), so the WebSocket sessions have no Principal,
+ * and the messages can't be sent to a user with SimpMessagingTemplate.convertAndSendToUser(...).
+ * This interceptor names the user of a session by the login header of its CONNECT frame:
+ * CONNECT
+ * login:alice
+ *
+ * The StompSubProtocolHandler keeps the Principal set on the CONNECT message for all the frames of the session,
+ * so the client may then subscribe to /user/queue/messages, to get the messages sent to alice on all of its sessions.
+ * NOTE: The login is trusted as it is, so any client can take the name of any user. That's why it's disabled by default,
+ * and it's never used with the token authentication (websocket.stomp.token-auth.enabled=true), where a client without a token
+ * would otherwise get the user it claims. A session that already has a Principal (e.g. from an authenticated handshake) keeps it.
+ */
+@Component
+public class LoginPrincipalChannelInterceptor implements ChannelInterceptor {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final boolean enabled;
+
+    private final int maxLoginLength;
+
+    public LoginPrincipalChannelInterceptor(@Value("${websocket.stomp.login-principal.enabled}") boolean enabled,
+                                            @Value("${websocket.stomp.login-principal.max-length}") int maxLoginLength,
+                                            @Value("${websocket.stomp.token-auth.enabled}") boolean tokenAuthEnabled) {
+        if (enabled && tokenAuthEnabled) {
+            logger.warn("websocket.stomp.login-principal.enabled is ignored, as the sessions are authenticated by their token.");
+        }
+        this.enabled = enabled && !tokenAuthEnabled;
+        this.maxLoginLength = maxLoginLength;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor headerAccessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (headerAccessor == null || !StompCommand.CONNECT.equals(headerAccessor.getCommand()) || headerAccessor.getUser() != null) {
+            return message;
+        }
+        String login = StringUtils.trimWhitespace(headerAccessor.getLogin());
+        if (StringUtils.hasText(login) && login.length() <= maxLoginLength) {
+            headerAccessor.setUser(new ChatUserPrincipal(login));
+        }
+        return message;
+    }
+}
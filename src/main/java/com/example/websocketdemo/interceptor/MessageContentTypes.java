@@ -0,0 +1,35 @@
+package com.example.websocketdemo.interceptor;
+
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * The content type of the messages, for the interceptors that only handle some payloads (like the JSON ones).
+ */
+final class MessageContentTypes {
+
+    private MessageContentTypes() {
+    }
+
+    /**
+     * @param headers: The headers of a message.
+     * @return The content type of the message (which may be set as a String), or null.
+     */
+    static MimeType getContentType(MessageHeaders headers) {
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType instanceof String) {
+            return MimeTypeUtils.parseMimeType((String) contentType);
+        }
+        return contentType instanceof MimeType ? (MimeType) contentType : null;
+    }
+
+    /**
+     * @param headers: The headers of a message.
+     * @return true if the payload of the message is JSON.
+     */
+    static boolean isJson(MessageHeaders headers) {
+        MimeType contentType = getContentType(headers);
+        return contentType != null && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType);
+    }
+}
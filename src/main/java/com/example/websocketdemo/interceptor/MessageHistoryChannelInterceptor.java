@@ -0,0 +1,150 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.history.HistoryEntry;
+import com.example.websocketdemo.history.MessageHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.List;
+
+/**
+ * Records the messages of the MessageHistory, and replays them to the clients that ask for them.
+ * It's registered to the clientInbound and broker channels, and only intercepts the local broker (the SimpleBrokerMessageHandler):
+ *
+ * MESSAGE: A JSON message to one of the recorded destinations is appended to the history, right before the broker delivers it.
+ * The message gets the header history-sequence:N, so the subscribers know the sequence number of the last message they have.
+ * With websocket.stomp.broker.mode=kafka, it runs after the relay, so the messages are recorded when they come back from Kafka.
+ * Only the messages made by the server are recorded: the SEND frames of the clients straight to a broker destination
+ * (which have a STOMP command) are delivered as they are, but their payloads are not checked, and a malformed one
+ * would break the JSON array of every replay after it.
+ *
+ * SUBSCRIBE: A subscription with the header replay-since:N gets the messages after N (0 for all of them) in one MESSAGE frame,
+ * right after the broker has added the subscription. The frame has the headers history-replay:<number of messages>
+ * and history-sequence:<sequence of the last one>, and its body is the JSON array of the messages.
+ * A live message may be delivered before or in both the replay and the live frames, so the clients drop the ones
+ * with a sequence number they already have.
+ */
+@Component
+public class MessageHistoryChannelInterceptor implements ExecutorChannelInterceptor {
+    public static final String HISTORY_SEQUENCE_HEADER = "history-sequence";
+
+    public static final String HISTORY_REPLAY_HEADER = "history-replay";
+
+    public static final String REPLAY_SINCE_HEADER = "replay-since";
+
+    private static final byte[] EMPTY_ARRAY = {'[', ']'};
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final MessageHistory messageHistory;
+
+    private final MessageChannel clientOutboundChannel;
+
+    /**
+     * The clientOutboundChannel bean is created by the WebSocket message broker configuration, which needs the interceptors first,
+     * so it is injected lazily.
+     */
+    public MessageHistoryChannelInterceptor(MessageHistory messageHistory,
+                                            @Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+        this.messageHistory = messageHistory;
+        this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    public boolean isEnabled() {
+        return messageHistory.isEnabled();
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        MessageHeaders headers = message.getHeaders();
+        if (!(handler instanceof AbstractBrokerMessageHandler)
+                || !SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(headers))
+                || StompHeaderAccessor.getCommand(headers) != null
+                || !messageHistory.isRecorded(SimpMessageHeaderAccessor.getDestination(headers))
+                || !(message.getPayload() instanceof byte[])
+                || !MessageContentTypes.isJson(headers)) {
+            return message;
+        }
+        HistoryEntry historyEntry = messageHistory.append(SimpMessageHeaderAccessor.getDestination(headers), (byte[]) message.getPayload());
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+        headerAccessor.setNativeHeader(HISTORY_SEQUENCE_HEADER, Long.toString(historyEntry.getSequence()));
+        return MessageBuilder.createMessage(message.getPayload(), headerAccessor.getMessageHeaders());
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        MessageHeaders headers = message.getHeaders();
+        if (ex != null || !(handler instanceof AbstractBrokerMessageHandler)
+                || !SimpMessageType.SUBSCRIBE.equals(SimpMessageHeaderAccessor.getMessageType(headers))) {
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        String replaySince = NativeMessageHeaderAccessor.getFirstNativeHeader(REPLAY_SINCE_HEADER, headers);
+        if (replaySince == null || !messageHistory.isRecorded(destination)) {
+            return;
+        }
+        long sequence;
+        try {
+            sequence = Long.parseLong(replaySince.trim());
+        } catch (NumberFormatException numberFormatException) {
+            logger.debug("Ignoring the invalid {} header: {}", REPLAY_SINCE_HEADER, replaySince);
+            return;
+        }
+        replay(SimpMessageHeaderAccessor.getSessionId(headers), SimpMessageHeaderAccessor.getSubscriptionId(headers),
+                destination, messageHistory.since(destination, sequence), sequence);
+    }
+
+    private void replay(String sessionId, String subscriptionId, String destination, List<HistoryEntry> historyEntries, long sequence) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        headerAccessor.setDestination(destination);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headerAccessor.setNativeHeader(HISTORY_REPLAY_HEADER, Integer.toString(historyEntries.size()));
+        long lastSequence = historyEntries.isEmpty() ? sequence : historyEntries.get(historyEntries.size() - 1).getSequence();
+        headerAccessor.setNativeHeader(HISTORY_SEQUENCE_HEADER, Long.toString(lastSequence));
+        clientOutboundChannel.send(MessageBuilder.createMessage(toJsonArray(historyEntries), headerAccessor.getMessageHeaders()));
+    }
+
+    /**
+     * The payloads are JSON already (serialized by the server), so the array is made by copying them between brackets and commas.
+     */
+    static byte[] toJsonArray(List<HistoryEntry> historyEntries) {
+        if (historyEntries.isEmpty()) {
+            return EMPTY_ARRAY;
+        }
+        int length = historyEntries.size() + 1;
+        for (HistoryEntry historyEntry : historyEntries) {
+            length += historyEntry.getPayload().length;
+        }
+        byte[] jsonArray = new byte[length];
+        jsonArray[0] = '[';
+        int position = 0;
+        for (HistoryEntry historyEntry : historyEntries) {
+            if (position > 0) {
+                jsonArray[position] = ',';
+            }
+            position++;
+            byte[] payload = historyEntry.getPayload();
+            System.arraycopy(payload, 0, jsonArray, position, payload.length);
+            position += payload.length;
+        }
+        jsonArray[position] = ']';
+        return jsonArray;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.journal.MessageJournal;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queues the JSON messages to the journaled destinations into the MessageJournal, right before the local broker delivers them.
+ * Registered to the broker channel (the @SendTo(...) replies, after the Kafka relay), so only the messages made by the server
+ * are journaled: the payloads are written as they are into the JSON of GET /journal/messages, so the SEND frames of the clients
+ * straight to a broker destination (which have a STOMP command) are not, like in the MessageHistoryChannelInterceptor.
+ * MessageJournal.append(...) doesn't wait for the disk, so the delivery is not delayed.
+ */
+public class MessageJournalChannelInterceptor implements ExecutorChannelInterceptor {
+
+    private final MessageJournal messageJournal;
+
+    private final Set<String> destinations;
+
+    public MessageJournalChannelInterceptor(MessageJournal messageJournal, List<String> destinations) {
+        this.messageJournal = messageJournal;
+        this.destinations = new HashSet<>(destinations);
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        MessageHeaders headers = message.getHeaders();
+        if (handler instanceof AbstractBrokerMessageHandler
+                && SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(headers))
+                && StompHeaderAccessor.getCommand(headers) == null
+                && message.getPayload() instanceof byte[]
+                && destinations.contains(SimpMessageHeaderAccessor.getDestination(headers))
+                && MessageContentTypes.isJson(headers)) {
+            messageJournal.append(SimpMessageHeaderAccessor.getDestination(headers), (byte[]) message.getPayload());
+        }
+        return message;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.ratelimit.GcraRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of the SEND frames of each session, and of each user (the Principal of the session),
+ * before they are queued to the clientInbound channel executor and dispatched to the @MessageMapping(...) handlers.
+ * So one abusive or buggy client can't fill the executor, nor a user with many tabs open.
+ * The user is never taken from what the client sends (like the username session attribute set by ChatController.addUser),
+ * as a client could then use up the bucket of another user. A session without a Principal is its own user,
+ * so only its session bucket applies.
+ *
+ * Each session and each user has a token bucket (see GcraRateLimiter). A frame over the rate is:
+ * ERROR: Dropped, and the client gets a STOMP ERROR frame (which also closes its session).
+ * DROP: Dropped silently, the client may send again once its bucket has refilled.
+ *
+ * websocket.stomp.rate-limit.rejected: Number of frames over the rate, per scope (session/user).
+ * websocket.stomp.rate-limit.buckets: Number of buckets kept, per scope.
+ */
+@Component
+public class RateLimitChannelInterceptor implements ChannelInterceptor, InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public enum Mode {
+        ERROR,
+        DROP
+    }
+
+    private final boolean enabled;
+
+    private final Mode mode;
+
+    private final GcraRateLimiter sessionRateLimiter;
+
+    private final GcraRateLimiter userRateLimiter;
+
+    private final StompErrorSender stompErrorSender;
+
+    private final TaskScheduler taskScheduler;
+
+    private final long evictionIntervalMillis;
+
+    private final Counter sessionRejectedCounter;
+
+    private final Counter userRejectedCounter;
+
+    private ScheduledFuture<?> scheduledEviction;
+
+    public RateLimitChannelInterceptor(@Value("${websocket.stomp.rate-limit.enabled}") boolean enabled,
+                                       @Value("${websocket.stomp.rate-limit.mode}") Mode mode,
+                                       @Value("${websocket.stomp.rate-limit.session.messages-per-second}") double sessionMessagesPerSecond,
+                                       @Value("${websocket.stomp.rate-limit.session.burst}") int sessionBurst,
+                                       @Value("${websocket.stomp.rate-limit.user.messages-per-second}") double userMessagesPerSecond,
+                                       @Value("${websocket.stomp.rate-limit.user.burst}") int userBurst,
+                                       @Value("${websocket.stomp.rate-limit.eviction-interval-seconds}") long evictionIntervalSeconds,
+                                       StompErrorSender stompErrorSender,
+                                       @Qualifier("webSocketTaskScheduler") TaskScheduler taskScheduler,
+                                       MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.mode = mode;
+        this.sessionRateLimiter = new GcraRateLimiter(sessionMessagesPerSecond, sessionBurst);
+        this.userRateLimiter = new GcraRateLimiter(userMessagesPerSecond, userBurst);
+        this.stompErrorSender = stompErrorSender;
+        this.taskScheduler = taskScheduler;
+        this.evictionIntervalMillis = TimeUnit.SECONDS.toMillis(evictionIntervalSeconds);
+
+        sessionRejectedCounter = rejectedCounter(meterRegistry, "session");
+        userRejectedCounter = rejectedCounter(meterRegistry, "user");
+        Gauge.builder("websocket.stomp.rate-limit.buckets", sessionRateLimiter, GcraRateLimiter::size)
+                .description("Number of rate limit buckets kept.")
+                .tag("scope", "session")
+                .register(meterRegistry);
+        Gauge.builder("websocket.stomp.rate-limit.buckets", userRateLimiter, GcraRateLimiter::size)
+                .description("Number of rate limit buckets kept.")
+                .tag("scope", "user")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            scheduledEviction = taskScheduler.scheduleWithFixedDelay(this::evictIdle, evictionIntervalMillis);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduledEviction != null) {
+            scheduledEviction.cancel(false);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        if (!SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(headers))) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId == null) {
+            return message;
+        }
+        long nowNanos = System.nanoTime();
+        if (!sessionRateLimiter.tryAcquire(sessionId, nowNanos)) {
+            sessionRejectedCounter.increment();
+            return reject(sessionId, "Too many messages from this session, please slow down.");
+        }
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (user != null && !userRateLimiter.tryAcquire(user.getName(), nowNanos)) {
+            userRejectedCounter.increment();
+            return reject(sessionId, "Too many messages from this user, please slow down.");
+        }
+        return message;
+    }
+
+    /**
+     * The bucket of a session is not needed anymore once it's closed. The bucket of its user is kept,
+     * as the user may have other sessions, until it's full again.
+     */
+    @EventListener
+    public void handleSessionDisconnectEvent(SessionDisconnectEvent event) {
+        sessionRateLimiter.remove(event.getSessionId());
+    }
+
+    private Message<?> reject(String sessionId, String errorMessage) {
+        logger.debug("Rejecting a SEND frame from session {}: {}", sessionId, errorMessage);
+        if (Mode.ERROR.equals(mode)) {
+            stompErrorSender.sendError(sessionId, errorMessage);
+        }
+        return null;
+    }
+
+    private void evictIdle() {
+        long nowNanos = System.nanoTime();
+        sessionRateLimiter.evictIdle(nowNanos);
+        userRateLimiter.evictIdle(nowNanos);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String scope) {
+        return Counter.builder("websocket.stomp.rate-limit.rejected")
+                .description("Number of SEND frames over the rate limit.")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.resume.ResumableSession;
+import com.example.websocketdemo.resume.ResumableSessionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Routes the frames between the connections (WebSocket sessions) and the resumable sessions of the ResumableSessionRegistry.
+ * One instance is registered to each of the channels:
+ *
+ * INBOUND (clientInboundChannel): A CONNECT frame with the header resume:true opens a new resumable session.
+ * One with the headers resume-token:<token> and resume-sequence:<sequence of the last message the client has> resumes the session
+ * of the token, if it has not expired and the CONNECT has the same user as the one that opened it (otherwise a new one is opened). Every frame of the connection then gets the sessionId of
+ * its session, so the broker and the @MessageMapping(...) handlers see the same session across the connections.
+ * A resumed session is still subscribed, so a client that has to register its callbacks again subscribes with the same subscription IDs,
+ * which the broker takes as the subscriptions it already has.
+ * An ACK frame with the header session-sequence:N acknowledges the messages up to N, so they are not kept anymore.
+ *
+ * OUTBOUND (clientOutboundChannel): Every MESSAGE to a resumable session gets the header session-sequence:N and is kept,
+ * then it's sent to the connection of the session, if it has one. The CONNECTED frame has the headers resume-token:<token>
+ * and resumed:true|false. A resumed one also has resume-sequence:N, and the kept messages after N are sent again right after it.
+ * If N is more than the sequence the client has sent, the messages in between are lost (the client can get them from the history).
+ * The messages sent again and the new ones may interleave, so the clients order them by session-sequence and drop the ones they have.
+ *
+ * The INBOUND instance is registered after the other interceptors, and the OUTBOUND one before them,
+ * so the other interceptors always see the ID of the connection.
+ */
+public class ResumableSessionChannelInterceptor implements ExecutorChannelInterceptor {
+    public static final String RESUME_HEADER = "resume";
+
+    public static final String RESUME_TOKEN_HEADER = "resume-token";
+
+    public static final String RESUME_SEQUENCE_HEADER = "resume-sequence";
+
+    public static final String RESUMED_HEADER = "resumed";
+
+    public static final String SESSION_SEQUENCE_HEADER = "session-sequence";
+
+    private static final String[] SUPPORTED_VERSIONS = {"1.2", "1.1"};
+
+    public enum Channel {
+        INBOUND,
+        OUTBOUND
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ResumableSessionRegistry resumableSessionRegistry;
+
+    private final Channel channel;
+
+    public ResumableSessionChannelInterceptor(ResumableSessionRegistry resumableSessionRegistry, Channel channel) {
+        this.resumableSessionRegistry = resumableSessionRegistry;
+        this.channel = channel;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel messageChannel) {
+        return Channel.INBOUND.equals(channel) ? preSendInbound(message) : preSendOutbound(message);
+    }
+
+    /**
+     * Once the CONNECTED frame has been sent to a connection, the messages are sent to it too,
+     * starting with the kept ones that its client has missed.
+     */
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel messageChannel, MessageHandler handler, Exception ex) {
+        if (!Channel.OUTBOUND.equals(channel) || ex != null
+                || !SimpMessageType.CONNECT_ACK.equals(SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))) {
+            return;
+        }
+        String connectionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        ResumableSession resumableSession = resumableSessionRegistry.getByConnectionId(connectionId);
+        if (resumableSession == null) {
+            return;
+        }
+        for (Message<?> missedMessage : resumableSession.startReceiving(connectionId)) {
+            messageChannel.send(withoutHandlerEntryNanos(missedMessage));
+        }
+    }
+
+    private Message<?> preSendInbound(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        String connectionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (SimpMessageType.CONNECT.equals(messageType)) {
+            return connect(message, connectionId);
+        }
+        ResumableSession resumableSession = resumableSessionRegistry.getByConnectionId(connectionId);
+        if (resumableSession == null) {
+            // The DISCONNECT of a connection that has ended while its session is kept would unsubscribe the session from the broker.
+            return SimpMessageType.DISCONNECT.equals(messageType) && resumableSessionRegistry.isEnded(connectionId) ? null : message;
+        }
+        if (!connectionId.equals(resumableSession.getConnectionId())) {
+            // The session has been resumed by another connection, this one is being closed.
+            return null;
+        }
+        if (SimpMessageType.DISCONNECT.equals(messageType)) {
+            // The connection is still open, so it's the DISCONNECT frame of the client, which ends the session.
+            resumableSessionRegistry.close(resumableSession);
+        } else if (StompCommand.ACK.equals(StompHeaderAccessor.getCommand(headers))) {
+            Long sequence = parseSequence(NativeMessageHeaderAccessor.getFirstNativeHeader(SESSION_SEQUENCE_HEADER, headers));
+            if (sequence != null) {
+                resumableSession.acknowledge(sequence);
+            }
+        }
+        return withSessionId(message, resumableSession.getSessionId());
+    }
+
+    private Message<?> connect(Message<?> message, String connectionId) {
+        MessageHeaders headers = message.getHeaders();
+        String token = NativeMessageHeaderAccessor.getFirstNativeHeader(RESUME_TOKEN_HEADER, headers);
+        if (token == null && !Boolean.parseBoolean(NativeMessageHeaderAccessor.getFirstNativeHeader(RESUME_HEADER, headers))) {
+            return message;
+        }
+        Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (sessionAttributes == null) {
+            sessionAttributes = new ConcurrentHashMap<>();
+        }
+        // The authentication interceptors run before this one, so the CONNECT has its Principal already.
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        String userName = user != null ? user.getName() : null;
+        ResumableSession resumableSession = null;
+        if (token != null) {
+            Long sequence = parseSequence(NativeMessageHeaderAccessor.getFirstNativeHeader(RESUME_SEQUENCE_HEADER, headers));
+            resumableSession = resumableSessionRegistry.resume(token, userName, sequence != null ? sequence : 0, connectionId, sessionAttributes);
+            if (resumableSession == null) {
+                logger.debug("The session of the resume token has expired or belongs to another user, a new one is opened.");
+            }
+        }
+        if (resumableSession == null) {
+            resumableSession = resumableSessionRegistry.open(connectionId, userName, sessionAttributes);
+        }
+        return withSessionId(message, resumableSession.getSessionId());
+    }
+
+    private Message<?> preSendOutbound(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        ResumableSession resumableSession = resumableSessionRegistry.getBySessionId(SimpMessageHeaderAccessor.getSessionId(headers));
+        if (resumableSession == null) {
+            return message;
+        }
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (SimpMessageType.MESSAGE.equals(messageType)) {
+            // The kept messages that are sent again already have their sequence number.
+            if (NativeMessageHeaderAccessor.getFirstNativeHeader(SESSION_SEQUENCE_HEADER, headers) == null) {
+                message = resumableSession.sequence(message, SESSION_SEQUENCE_HEADER);
+            }
+            String connectionId = resumableSession.getReceivingConnectionId();
+            return connectionId != null ? withSessionId(message, connectionId) : null;
+        }
+        String connectionId = resumableSession.getConnectionId();
+        if (connectionId == null) {
+            return null;
+        }
+        if (SimpMessageType.CONNECT_ACK.equals(messageType)) {
+            return toConnected(message, resumableSession, connectionId);
+        }
+        return withSessionId(message, connectionId);
+    }
+
+    /**
+     * The StompSubProtocolHandler turns a CONNECT_ACK into a CONNECTED frame with the version and heart-beat headers only,
+     * but it sends a CONNECTED frame that is already made as it is. So the frame is made here, the same way, with the resume headers.
+     */
+    private Message<?> toConnected(Message<?> connectAck, ResumableSession resumableSession, String connectionId) {
+        MessageHeaders headers = connectAck.getHeaders();
+        StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        connected.setHeader(SimpMessageHeaderAccessor.MESSAGE_TYPE_HEADER, SimpMessageType.CONNECT_ACK);
+        connected.setSessionId(connectionId);
+        connected.setSessionAttributes(SimpMessageHeaderAccessor.getSessionAttributes(headers));
+        connected.setUser(SimpMessageHeaderAccessor.getUser(headers));
+
+        Message<?> connect = (Message<?>) headers.get(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER);
+        Set<String> acceptVersions = connect != null ? StompHeaderAccessor.wrap(connect).getAcceptVersion() : null;
+        if (acceptVersions != null) {
+            for (String version : SUPPORTED_VERSIONS) {
+                if (acceptVersions.contains(version)) {
+                    connected.setVersion(version);
+                    break;
+                }
+            }
+        }
+        long[] heartbeat = SimpMessageHeaderAccessor.getHeartbeat(headers);
+        if (heartbeat != null) {
+            connected.setHeartbeat(heartbeat[0], heartbeat[1]);
+        } else {
+            connected.setHeartbeat(0, 0);
+        }
+
+        connected.setNativeHeader(RESUME_TOKEN_HEADER, resumableSession.getToken());
+        connected.setNativeHeader(RESUMED_HEADER, Boolean.toString(resumableSession.isResumed()));
+        if (resumableSession.isResumed()) {
+            connected.setNativeHeader(RESUME_SEQUENCE_HEADER, Long.toString(resumableSession.getReplaySequence()));
+        }
+        // Left mutable, so the StompSubProtocolHandler finds the StompHeaderAccessor of the frame.
+        connected.setLeaveMutable(true);
+        return MessageBuilder.createMessage(connectAck.getPayload(), connected.getMessageHeaders());
+    }
+
+    private static Message<?> withSessionId(Message<?> message, String sessionId) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+        headerAccessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(message.getPayload(), headerAccessor.getMessageHeaders());
+    }
+
+    /**
+     * The kept messages were stamped for the delivery latency when they were first sent, which doesn't apply to them anymore.
+     */
+    private static Message<?> withoutHandlerEntryNanos(Message<?> message) {
+        if (!message.getHeaders().containsKey(StompMetricsChannelInterceptor.HANDLER_ENTRY_NANOS_HEADER)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+        headerAccessor.removeHeader(StompMetricsChannelInterceptor.HANDLER_ENTRY_NANOS_HEADER);
+        return MessageBuilder.createMessage(message.getPayload(), headerAccessor.getMessageHeaders());
+    }
+
+    private static Long parseSequence(String sequence) {
+        if (sequence == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(sequence.trim());
+        } catch (NumberFormatException numberFormatException) {
+            return null;
+        }
+    }
+}
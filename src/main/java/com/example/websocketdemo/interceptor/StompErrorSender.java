@@ -0,0 +1,39 @@
+package com.example.websocketdemo.interceptor;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends a STOMP ERROR frame to a frontend client, for the channel interceptors that reject a frame from the client.
+ * NOTE: The StompSubProtocolHandler closes the WebSocket session after sending an ERROR frame, as required by the STOMP protocol.
+ */
+@Component
+public class StompErrorSender {
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final MessageChannel clientOutboundChannel;
+
+    /**
+     * The clientOutboundChannel bean is created by the WebSocket message broker configuration, which needs the interceptors first,
+     * so it is injected lazily.
+     */
+    public StompErrorSender(@Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel) {
+        this.clientOutboundChannel = clientOutboundChannel;
+    }
+
+    /**
+     * @param sessionId:    ID of the WebSocket session to send the ERROR frame to.
+     * @param errorMessage: Short description of the error, sent in the "message" header of the ERROR frame.
+     */
+    public void sendError(String sessionId, String errorMessage) {
+        StompHeaderAccessor stompHeaderAccessor = StompHeaderAccessor.create(StompCommand.ERROR);
+        stompHeaderAccessor.setMessage(errorMessage);
+        stompHeaderAccessor.setSessionId(sessionId);
+        clientOutboundChannel.send(MessageBuilder.createMessage(EMPTY_PAYLOAD, stompHeaderAccessor.getMessageHeaders()));
+    }
+}
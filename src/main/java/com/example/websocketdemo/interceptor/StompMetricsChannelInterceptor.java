@@ -0,0 +1,116 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.config.WebSocketMetrics;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+/**
+ * A channel interceptor that feeds WebSocketMetrics. One instance is registered to each of the channels:
+ * INBOUND (clientInboundChannel): Count the frames, track the subscriptions, and remember when the @MessageMapping(...) handler is called.
+ * BROKER (brokerChannel): Stamp the messages sent by the @MessageMapping(...) handler with the time the handler was called.
+ * OUTBOUND (clientOutboundChannel): Count the frames, and record the delivery latency of the stamped messages once they are sent to the session.
+ *
+ * The @MessageMapping(...) handler sends its reply to the broker channel from the same thread that it is called from,
+ * so the time is passed from the INBOUND to the BROKER interceptor through a ThreadLocal.
+ */
+public class StompMetricsChannelInterceptor implements ExecutorChannelInterceptor {
+    /**
+     * Message header with the System.nanoTime() of the @MessageMapping(...) handler call that produced the message.
+     * It's not a native header, so it's never sent to the frontend clients.
+     */
+    public static final String HANDLER_ENTRY_NANOS_HEADER = "simpHandlerEntryNanos";
+
+    private static final ThreadLocal<long[]> HANDLER_ENTRY_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    public enum Channel {
+        INBOUND,
+        BROKER,
+        OUTBOUND
+    }
+
+    private final WebSocketMetrics webSocketMetrics;
+
+    private final Channel channel;
+
+    public StompMetricsChannelInterceptor(WebSocketMetrics webSocketMetrics, Channel channel) {
+        this.webSocketMetrics = webSocketMetrics;
+        this.channel = channel;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel messageChannel) {
+        switch (channel) {
+            case INBOUND:
+                countInbound(message);
+                return message;
+            case BROKER:
+                return stampHandlerEntryNanos(message);
+            case OUTBOUND:
+                webSocketMetrics.countOutbound(StompHeaderAccessor.getCommand(message.getHeaders()),
+                        SimpMessageHeaderAccessor.getMessageType(message.getHeaders()));
+                return message;
+            default:
+                return message;
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel messageChannel, MessageHandler handler) {
+        if (Channel.INBOUND.equals(channel)) {
+            HANDLER_ENTRY_NANOS.get()[0] = System.nanoTime();
+        }
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel messageChannel, MessageHandler handler, Exception ex) {
+        if (Channel.INBOUND.equals(channel)) {
+            HANDLER_ENTRY_NANOS.get()[0] = 0;
+        } else if (Channel.OUTBOUND.equals(channel) && ex == null) {
+            Object handlerEntryNanos = message.getHeaders().get(HANDLER_ENTRY_NANOS_HEADER);
+            if (handlerEntryNanos instanceof Long) {
+                webSocketMetrics.recordDeliveryLatency((Long) handlerEntryNanos);
+            }
+        }
+    }
+
+    private void countInbound(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        StompHeaderAccessor stompHeaderAccessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        webSocketMetrics.countInbound(stompHeaderAccessor != null ? stompHeaderAccessor.getCommand() : null);
+
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        if (SimpMessageType.SUBSCRIBE.equals(messageType)) {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            String destination = SimpMessageHeaderAccessor.getDestination(headers);
+            if (sessionId != null && subscriptionId != null && destination != null) {
+                webSocketMetrics.subscribed(sessionId, subscriptionId, destination);
+            }
+        } else if (SimpMessageType.UNSUBSCRIBE.equals(messageType)) {
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+            String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+            if (sessionId != null && subscriptionId != null) {
+                webSocketMetrics.unsubscribed(sessionId, subscriptionId);
+            }
+        }
+    }
+
+    private Message<?> stampHandlerEntryNanos(Message<?> message) {
+        long handlerEntryNanos = HANDLER_ENTRY_NANOS.get()[0];
+        if (handlerEntryNanos == 0 || !SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))) {
+            return message;
+        }
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+        headerAccessor.setHeader(HANDLER_ENTRY_NANOS_HEADER, handlerEntryNanos);
+        return MessageBuilder.createMessage(message.getPayload(), headerAccessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.user.ShardedSimpUserRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.security.Principal;
+
+/**
+ * Keeps the ShardedSimpUserRegistry up to date with the frames of the clientInbound channel:
+ * CONNECT: The session is added to its user, if it has one.
+ * SUBSCRIBE/UNSUBSCRIBE: The subscription is added to/removed from the session.
+ * DISCONNECT: The session is removed, and its user with its last session.
+ *
+ * It's registered after all the other interceptors, so it sees the sessions the way the broker does:
+ * a resumable session is known by the sessionId of its resumable session, and it stays registered while it's suspended,
+ * since the DISCONNECT of its lost connection is dropped. It's removed by the DISCONNECT sent when it expires.
+ */
+public class UserRegistryChannelInterceptor implements ChannelInterceptor {
+
+    private final ShardedSimpUserRegistry userRegistry;
+
+    public UserRegistryChannelInterceptor(ShardedSimpUserRegistry userRegistry) {
+        this.userRegistry = userRegistry;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (messageType == null || sessionId == null) {
+            return message;
+        }
+        switch (messageType) {
+            case CONNECT:
+                Principal user = SimpMessageHeaderAccessor.getUser(headers);
+                if (user != null) {
+                    userRegistry.addSession(user.getName(), sessionId);
+                }
+                break;
+            case SUBSCRIBE:
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                String destination = SimpMessageHeaderAccessor.getDestination(headers);
+                if (subscriptionId != null && destination != null) {
+                    userRegistry.addSubscription(sessionId, subscriptionId, destination);
+                }
+                break;
+            case UNSUBSCRIBE:
+                userRegistry.removeSubscription(sessionId, SimpMessageHeaderAccessor.getSubscriptionId(headers));
+                break;
+            case DISCONNECT:
+                userRegistry.removeSession(sessionId);
+                break;
+            default:
+                break;
+        }
+        return message;
+    }
+}
@@ -1,25 +1,187 @@
 package com.example.websocketdemo.interceptor;
 
+import com.example.websocketdemo.config.WebSocketMetrics;
+import com.example.websocketdemo.handshake.HandshakeAdmission;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.server.HandshakeInterceptor;
 
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-public class WebSocketHttpHandshakeInterceptor implements HandshakeInterceptor {
+/**
+ * Admission control of the STOMP endpoints, at the handshake: a client that would connect to a node
+ * that is draining, full, or already accepting connections as fast as it may, gets a 503 Service Unavailable
+ * with a Retry-After header (see HandshakeAdmission) instead of the upgrade. So when a node restarts,
+ * the reconnect storm is spread over time, and the load balancer can send the refused clients to the other nodes,
+ * instead of the handshakes starving the message traffic.
+ *
+ * For the SockJS endpoints, the handshake is the request that creates the SockJS session (whatever its transport),
+ * the /info requests and the next requests of a session are not counted.
+ * The client address is the remote address of the request, so behind a proxy, server.use-forward-headers=true
+ * has to be set for it to be the one of the client.
+ *
+ * The node drains when its application context is closed (so during the shutdown, until the web server is stopped),
+ * or when setDraining(true) is called.
+ *
+ * websocket.handshake.admitted: Number of handshakes admitted.
+ * websocket.handshake.rejected: Number of handshakes refused, per reason (draining/at-capacity/address-rate-limited/rate-limited).
+ * websocket.handshake.addresses: Number of client addresses with a rate limit bucket.
+ * websocket.handshake.draining: 1 if the node is draining, 0 otherwise.
+ */
+@Component
+public class WebSocketHttpHandshakeInterceptor implements HandshakeInterceptor, InitializingBean, DisposableBean {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private static final String UNKNOWN_ADDRESS = "unknown";
+
+    private final boolean enabled;
+
+    private final HandshakeAdmission handshakeAdmission;
+
+    private final WebSocketMetrics webSocketMetrics;
+
+    private final TaskScheduler taskScheduler;
+
+    private final long evictionIntervalMillis;
+
+    private final Counter admittedCounter;
+
+    private final Map<HandshakeAdmission.Decision, Counter> rejectedCounters = new EnumMap<>(HandshakeAdmission.Decision.class);
+
+    private ScheduledFuture<?> scheduledEviction;
+
+    public WebSocketHttpHandshakeInterceptor(@Value("${websocket.handshake.admission.enabled}") boolean enabled,
+                                             @Value("${websocket.handshake.admission.connections-per-second}") double connectionsPerSecond,
+                                             @Value("${websocket.handshake.admission.burst}") int burst,
+                                             @Value("${websocket.handshake.admission.address.connections-per-second}") double addressConnectionsPerSecond,
+                                             @Value("${websocket.handshake.admission.address.burst}") int addressBurst,
+                                             @Value("${websocket.handshake.admission.max-sessions}") int maxSessions,
+                                             @Value("${websocket.handshake.admission.retry-after-seconds}") long retryAfterSeconds,
+                                             @Value("${websocket.handshake.admission.retry-after-jitter-seconds}") long retryAfterJitterSeconds,
+                                             @Value("${websocket.handshake.admission.eviction-interval-seconds}") long evictionIntervalSeconds,
+                                             WebSocketMetrics webSocketMetrics,
+                                             @Qualifier("webSocketTaskScheduler") TaskScheduler taskScheduler,
+                                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.handshakeAdmission = new HandshakeAdmission(connectionsPerSecond, burst, addressConnectionsPerSecond, addressBurst,
+                maxSessions, retryAfterSeconds, retryAfterJitterSeconds);
+        this.webSocketMetrics = webSocketMetrics;
+        this.taskScheduler = taskScheduler;
+        this.evictionIntervalMillis = TimeUnit.SECONDS.toMillis(evictionIntervalSeconds);
+
+        admittedCounter = Counter.builder("websocket.handshake.admitted")
+                .description("Number of WebSocket handshakes admitted.")
+                .register(meterRegistry);
+        for (HandshakeAdmission.Decision decision : HandshakeAdmission.Decision.values()) {
+            if (decision != HandshakeAdmission.Decision.ADMITTED) {
+                rejectedCounters.put(decision, Counter.builder("websocket.handshake.rejected")
+                        .description("Number of WebSocket handshakes refused.")
+                        .tag("reason", decision.name().toLowerCase().replace('_', '-'))
+                        .register(meterRegistry));
+            }
+        }
+        Gauge.builder("websocket.handshake.addresses", handshakeAdmission, HandshakeAdmission::getAddressCount)
+                .description("Number of client addresses with a handshake rate limit bucket.")
+                .register(meterRegistry);
+        Gauge.builder("websocket.handshake.draining", handshakeAdmission, admission -> admission.isDraining() ? 1 : 0)
+                .description("1 if the node refuses the new WebSocket handshakes as it's draining.")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled) {
+            scheduledEviction = taskScheduler.scheduleWithFixedDelay(this::evictIdle, evictionIntervalMillis);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduledEviction != null) {
+            scheduledEviction.cancel(false);
+        }
+    }
+
+    public boolean isDraining() {
+        return handshakeAdmission.isDraining();
+    }
+
+    /**
+     * @param draining: true to refuse the new handshakes (even with websocket.handshake.admission.enabled=false),
+     *                  false to admit them again.
+     */
+    public void setDraining(boolean draining) {
+        logger.info(draining ? "Draining, the new WebSocket handshakes are refused." : "The new WebSocket handshakes are admitted again.");
+        handshakeAdmission.setDraining(draining);
+    }
+
+    @EventListener
+    public void handleContextClosedEvent(ContextClosedEvent event) {
+        setDraining(true);
+    }
+
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
-        logger.info("WebSocketHttpHandshakeInterceptor.java beforeHandshake()");
-        return true;
+        String address = getAddress(request);
+        HandshakeAdmission.Decision decision;
+        if (enabled) {
+            decision = handshakeAdmission.admit(address, webSocketMetrics.getActiveSessionCount(), System.nanoTime());
+        } else {
+            decision = handshakeAdmission.isDraining() ? HandshakeAdmission.Decision.DRAINING : HandshakeAdmission.Decision.ADMITTED;
+        }
+        if (decision == HandshakeAdmission.Decision.ADMITTED) {
+            admittedCounter.increment();
+            logger.debug("Handshake of {} admitted.", address);
+            return true;
+        }
+        rejectedCounters.get(decision).increment();
+        long retryAfterSeconds = handshakeAdmission.retryAfterSeconds();
+        logger.debug("Handshake of {} refused ({}), retry after {} seconds.", address, decision, retryAfterSeconds);
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return false;
     }
 
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
-        logger.info("WebSocketHttpHandshakeInterceptor.java afterHandshake()");
+        if (exception != null) {
+            logger.info("Handshake of {} failed: {}", getAddress(request), exception.getMessage());
+        }
+    }
+
+    private void evictIdle() {
+        handshakeAdmission.evictIdle(System.nanoTime());
+    }
+
+    private static String getAddress(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null || remoteAddress.getAddress() == null) {
+            return UNKNOWN_ADDRESS;
+        }
+        return remoteAddress.getAddress().getHostAddress();
     }
 }
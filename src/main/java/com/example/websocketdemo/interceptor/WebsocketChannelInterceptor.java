@@ -5,38 +5,96 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Service;
-import org.springframework.util.ObjectUtils;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A diagnostics interceptor for the clientInbound and clientOutbound channels, that is cheap enough to be kept enabled under load.
+ *
+ * It is only registered to the channels if websocket.stomp.diagnostics.enabled=true, so it costs nothing when disabled.
+ * When enabled, it does the following for every frame:
+ * 1. Count the frame by its STOMP command, using LongAdder counters (striped, so the channel threads don't contend on one counter).
+ * 2. Pick 1 in websocket.stomp.diagnostics.sample-rate frames, and put them into a bounded ring buffer.
+ * The sampled frames are converted into JSON strings and logged by a background thread, not by the channel threads.
+ * If the ring buffer is full, the sample is dropped instead of blocking the channel thread.
+ */
 @Service
 public class WebsocketChannelInterceptor implements ChannelInterceptor {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private static final StompCommand[] STOMP_COMMANDS = StompCommand.values();
+
     private final ObjectMapper objectMapper;
 
+    private final boolean enabled;
+
+    private final int sampleRate;
+
+    // One counter per StompCommand (indexed by ordinal), and the last one for the messages that are not STOMP frames.
+    private final LongAdder[] commandCounters = new LongAdder[STOMP_COMMANDS.length + 1];
+
+    private final LongAdder droppedSampleCounter = new LongAdder();
+
+    private final BlockingQueue<FrameSample> frameSamples;
+
+    private Thread frameSampleWriter;
+
     @Autowired
-    public WebsocketChannelInterceptor(ObjectMapper objectMapper) {
+    public WebsocketChannelInterceptor(ObjectMapper objectMapper,
+                                       @Value("${websocket.stomp.diagnostics.enabled}") boolean enabled,
+                                       @Value("${websocket.stomp.diagnostics.sample-rate}") int sampleRate,
+                                       @Value("${websocket.stomp.diagnostics.buffer-size}") int bufferSize) {
         this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.frameSamples = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        for (int i = 0; i < commandCounters.length; i++) {
+            commandCounters[i] = new LongAdder();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled && sampleRate > 0) {
+            frameSampleWriter = new Thread(this::writeFrameSamples, "websocket-frame-sample-writer");
+            frameSampleWriter.setDaemon(true);
+            frameSampleWriter.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (frameSampleWriter != null) {
+            frameSampleWriter.interrupt();
+        }
     }
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
-        logger.info("WebsocketChannelInterceptor.java preSend()");
         StompHeaderAccessor stompHeaderAccessor =
                 MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
 
-        readStompHeaderAccessor(stompHeaderAccessor);
-
         identifySTOMPCommand(stompHeaderAccessor);
 
-        readMessage(message);
-
-        readMessageChannel(channel);
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            if (!frameSamples.offer(new FrameSample(message, channel))) {
+                droppedSampleCounter.increment();
+            }
+        }
 
         return message;
     }
@@ -51,88 +109,79 @@ public class WebsocketChannelInterceptor implements ChannelInterceptor {
      */
     @Override
     public boolean preReceive(MessageChannel channel) {
-        logger.info("WebsocketChannelInterceptor.java preReceive()");
         return true;
     }
 
+    public boolean isEnabled() {
+        return enabled;
+    }
+
     /**
-     * Read the content of the StompHeaderAccessor object directly by convert it into JSON string.
-     *
-     * @param stompHeaderAccessor: StompHeaderAccessor object, which is the header of the message, if the client is using STOMP command.
+     * @param stompCommand: The STOMP command to read the counter of.
+     * @return Number of frames with the STOMP command that went through this interceptor.
      */
-    void readStompHeaderAccessor(StompHeaderAccessor stompHeaderAccessor) {
-        try {
-            String stompHeaderAccessorString = objectMapper.writeValueAsString(stompHeaderAccessor);
-            logger.info("stompHeaderAccessorString: {}", stompHeaderAccessorString);
-        } catch (JsonProcessingException jsonProcessingException) {
-            logger.warn("Unable to convert StompHeaderAccessor object to JSON string.");
-        }
+    public long getCommandCount(StompCommand stompCommand) {
+        return commandCounters[stompCommand.ordinal()].sum();
+    }
+
+    /**
+     * @return Number of messages without STOMP command (the client doesn't use STOMP) that went through this interceptor.
+     */
+    public long getNonStompCount() {
+        return commandCounters[STOMP_COMMANDS.length].sum();
+    }
+
+    /**
+     * @return Number of sampled frames that were dropped because the ring buffer was full.
+     */
+    public long getDroppedSampleCount() {
+        return droppedSampleCounter.sum();
     }
 
     /**
-     * Self made method to check the STOMP command of the message(Message<?> object).
+     * Count the message(Message<?> object) by its STOMP command.
      *
      * @param stompHeaderAccessor: StompHeaderAccessor object, which is the header of the message, if the client is using STOMP command.
      */
     void identifySTOMPCommand(StompHeaderAccessor stompHeaderAccessor) {
-        if (!ObjectUtils.isEmpty(stompHeaderAccessor)) {
-            if (!ObjectUtils.isEmpty(stompHeaderAccessor.getCommand())) {
-                switch (stompHeaderAccessor.getCommand()) {
-                    case CONNECT:
-                        logger.info("StompCommand.CONNECT");
-                        break;
-                    case DISCONNECT:
-                        logger.info("StompCommand.DISCONNECT");
-                        break;
-                    case STOMP:
-                        logger.info("StompCommand.STOMP");
-                        break;
-                    case SUBSCRIBE:
-                        logger.info("StompCommand.SUBSCRIBE");
-                        break;
-                    case UNSUBSCRIBE:
-                        logger.info("StompCommand.UNSUBSCRIBE");
-                        break;
-                    case SEND:
-                        logger.info("StompCommand.SEND");
-                        break;
-                    case ACK:
-                        logger.info("StompCommand.ACK");
-                        break;
-                    case NACK:
-                        logger.info("StompCommand.NACK");
-                        break;
-                    case BEGIN:
-                        logger.info("StompCommand.BEGIN");
-                        break;
-                    case COMMIT:
-                        logger.info("StompCommand.COMMIT");
-                        break;
-                    case ABORT:
-                        logger.info("StompCommand.ABORT");
-                        break;
-                    case CONNECTED:
-                        logger.info("StompCommand.CONNECTED");
-                        break;
-                    case RECEIPT:
-                        logger.info("StompCommand.RECEIPT");
-                        break;
-                    case MESSAGE:
-                        logger.info("StompCommand.MESSAGE");
-                        break;
-                    case ERROR:
-                        logger.info("StompCommand.ERROR");
-                        break;
-                    default:
-                        logger.info("No StompCommand detected.");
-                        break;
+        StompCommand stompCommand = stompHeaderAccessor != null ? stompHeaderAccessor.getCommand() : null;
+        commandCounters[stompCommand != null ? stompCommand.ordinal() : STOMP_COMMANDS.length].increment();
+    }
+
+    /**
+     * Take the sampled frames from the ring buffer and log them, until the interceptor is stopped.
+     */
+    void writeFrameSamples() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                FrameSample frameSample = frameSamples.poll(1, TimeUnit.SECONDS);
+                if (frameSample != null) {
+                    readStompHeaderAccessor(StompHeaderAccessor.wrap(frameSample.message));
+                    readMessage(frameSample.message);
+                    readMessageChannel(frameSample.channel);
                 }
-            } else {
-                logger.info("Client doesn't use STOMP to connect WebSocket.");
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException runtimeException) {
+                logger.warn("Unable to write the sampled frame.", runtimeException);
             }
         }
     }
 
+    /**
+     * Read the content of the StompHeaderAccessor object directly by convert it into JSON string.
+     *
+     * @param stompHeaderAccessor: StompHeaderAccessor object, which is the header of the message, if the client is using STOMP command.
+     */
+    void readStompHeaderAccessor(StompHeaderAccessor stompHeaderAccessor) {
+        try {
+            String stompHeaderAccessorString = objectMapper.writeValueAsString(stompHeaderAccessor);
+            logger.info("stompHeaderAccessorString: {}", stompHeaderAccessorString);
+        } catch (JsonProcessingException jsonProcessingException) {
+            logger.warn("Unable to convert StompHeaderAccessor object to JSON string.");
+        }
+    }
+
     /**
      * Read the Message<?> object directly by convert it into JSON string.
      *
@@ -160,4 +209,18 @@ public class WebsocketChannelInterceptor implements ChannelInterceptor {
             logger.warn("Unable to convert MessageChannel object to JSON string.");
         }
     }
+
+    /**
+     * A sampled frame, waiting in the ring buffer to be logged.
+     */
+    private static class FrameSample {
+        private final Message<?> message;
+
+        private final MessageChannel channel;
+
+        FrameSample(Message<?> message, MessageChannel channel) {
+            this.message = message;
+            this.channel = channel;
+        }
+    }
 }
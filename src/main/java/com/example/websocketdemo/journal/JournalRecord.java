@@ -0,0 +1,37 @@
+package com.example.websocketdemo.journal;
+
+/**
+ * A message read back from the MessageJournal.
+ */
+public class JournalRecord {
+    private final long sequence;
+
+    private final long timestampMillis;
+
+    private final String destination;
+
+    private final byte[] payload;
+
+    public JournalRecord(long sequence, long timestampMillis, String destination, byte[] payload) {
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.destination = destination;
+        this.payload = payload;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
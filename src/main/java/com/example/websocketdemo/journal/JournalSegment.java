@@ -0,0 +1,252 @@
+package com.example.websocketdemo.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the MessageJournal, mapped into memory as a whole. The file is named after the sequence number of its first record.
+ *
+ * A record is: int length (of the rest of the record), int CRC32 (of the rest of the record), long sequence, long timestamp,
+ * short destination length, the destination (UTF-8) and the payload. A length of 0 is the end of the records,
+ * as the mapped file starts zeroed.
+ *
+ * Only the writer thread of the journal appends to a segment. The readers read the records before the committed position,
+ * which is published by the writer after each batch.
+ * The sparse index keeps the sequence, timestamp and position of 1 in indexInterval records, so a read starts close to
+ * the record it looks for, instead of at the start of the segment. It's rebuilt when the segment is opened.
+ */
+class JournalSegment {
+    static final String FILE_SUFFIX = ".journal";
+
+    // length, CRC32, sequence, timestamp, destination length.
+    static final int RECORD_HEADER_SIZE = 4 + 4 + 8 + 8 + 2;
+
+    private static final int CRC_OFFSET = 4;
+
+    private static final int ZERO_CHUNK_SIZE = 4096;
+
+    private final Path path;
+
+    private final long firstSequence;
+
+    private final MappedByteBuffer buffer;
+
+    private final int indexInterval;
+
+    // Guarded by itself. Each entry is {sequence, timestamp, position}.
+    private final List<long[]> sparseIndex = new ArrayList<>();
+
+    // Only used by the writer thread.
+    private int writePosition;
+
+    private long recordCount;
+
+    // Written by the writer thread, read by the REST threads through MessageJournal.findSequence(...) and getLastSequence().
+    private volatile long lastSequence;
+
+    private volatile long lastTimestampMillis;
+
+    private volatile int committedPosition;
+
+    private JournalSegment(Path path, long firstSequence, MappedByteBuffer buffer, int indexInterval) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.buffer = buffer;
+        this.indexInterval = indexInterval;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    static Path path(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%020d%s", firstSequence, FILE_SUFFIX));
+    }
+
+    static long firstSequence(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()));
+    }
+
+    static JournalSegment create(Path directory, long firstSequence, int size, int indexInterval) throws IOException {
+        Path path = path(directory, firstSequence);
+        return new JournalSegment(path, firstSequence, map(path, size), indexInterval);
+    }
+
+    /**
+     * Opens an existing segment, and finds its last valid record. A record that was being written when the process stopped
+     * (too short, or with a wrong CRC32) is the end of the segment, and it's zeroed so the next record is written over it.
+     */
+    static JournalSegment recover(Path path, int indexInterval) throws IOException {
+        JournalSegment segment = new JournalSegment(path, firstSequence(path), map(path, (int) Files.size(path)), indexInterval);
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_HEADER_SIZE - 4 || position + 4 + length > buffer.capacity()
+                    || buffer.getInt(position + CRC_OFFSET) != crc(buffer, position, length)) {
+                break;
+            }
+            segment.indexRecord(buffer.getLong(position + 8), buffer.getLong(position + 16), position);
+            position += 4 + length;
+        }
+        if (position + 4 <= buffer.capacity() && buffer.getInt(position) != 0) {
+            byte[] zeros = new byte[ZERO_CHUNK_SIZE];
+            ByteBuffer zeroed = buffer.duplicate();
+            zeroed.position(position);
+            while (zeroed.hasRemaining()) {
+                zeroed.put(zeros, 0, Math.min(zeros.length, zeroed.remaining()));
+            }
+            segment.buffer.force();
+        }
+        segment.writePosition = position;
+        segment.committedPosition = position;
+        return segment;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * @return false if the record doesn't fit in the rest of the segment.
+     */
+    boolean append(long sequence, long timestampMillis, byte[] destination, byte[] payload) {
+        int length = RECORD_HEADER_SIZE - 4 + destination.length + payload.length;
+        if (writePosition + 4 + length > buffer.capacity()) {
+            return false;
+        }
+        ByteBuffer record = buffer.duplicate();
+        record.position(writePosition + 8);
+        record.putLong(sequence).putLong(timestampMillis).putShort((short) destination.length).put(destination).put(payload);
+        buffer.putInt(writePosition + CRC_OFFSET, crc(buffer, writePosition, length));
+        // The length is written last, so a record is never seen before it's complete.
+        buffer.putInt(writePosition, length);
+        indexRecord(sequence, timestampMillis, writePosition);
+        writePosition += 4 + length;
+        return true;
+    }
+
+    /**
+     * Publishes the records appended so far to the readers, and writes them to the disk if fsync is true.
+     */
+    void commit(boolean fsync) {
+        if (fsync) {
+            buffer.force();
+        }
+        committedPosition = writePosition;
+    }
+
+    /**
+     * @param afterSequence: The records up to this sequence number are skipped.
+     * @param destination:   Only the records of this destination are returned.
+     * @param limit:         Maximum number of records to add.
+     * @param records:       The records are added to it.
+     */
+    void read(long afterSequence, String destination, int limit, List<JournalRecord> records) {
+        int end = committedPosition;
+        ByteBuffer reader = buffer.duplicate();
+        int position = floorPosition(0, afterSequence + 1);
+        while (position < end && records.size() < limit) {
+            int length = reader.getInt(position);
+            long sequence = reader.getLong(position + 8);
+            if (sequence > afterSequence) {
+                int destinationLength = reader.getShort(position + 24);
+                reader.limit(position + 4 + length).position(position + RECORD_HEADER_SIZE);
+                byte[] destinationBytes = new byte[destinationLength];
+                reader.get(destinationBytes);
+                String recordDestination = new String(destinationBytes, StandardCharsets.UTF_8);
+                if (recordDestination.equals(destination)) {
+                    byte[] payload = new byte[reader.remaining()];
+                    reader.get(payload);
+                    records.add(new JournalRecord(sequence, reader.getLong(position + 16), recordDestination, payload));
+                }
+                reader.clear();
+            }
+            position += 4 + length;
+        }
+    }
+
+    /**
+     * @return The sequence number of the first record at or after the timestamp, or -1 if there is none in this segment.
+     */
+    long findSequence(long timestampMillis) {
+        int end = committedPosition;
+        // The timestamps are never decreasing (see MessageJournal), so the index is sorted by them too.
+        int position = floorPosition(1, timestampMillis - 1);
+        while (position < end) {
+            if (buffer.getLong(position + 16) >= timestampMillis) {
+                return buffer.getLong(position + 8);
+            }
+            position += 4 + buffer.getInt(position);
+        }
+        return -1;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    long getLastTimestampMillis() {
+        return lastTimestampMillis;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @param field: 0 to search by sequence, 1 to search by timestamp.
+     * @param value: The sequence or timestamp to search.
+     * @return The position of the last indexed record with a sequence or timestamp not greater than the value,
+     * or 0 (the first record) if there is none.
+     */
+    private int floorPosition(int field, long value) {
+        synchronized (sparseIndex) {
+            int low = 0;
+            int high = sparseIndex.size() - 1;
+            int position = 0;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long[] indexEntry = sparseIndex.get(middle);
+                if (indexEntry[field] <= value) {
+                    position = (int) indexEntry[2];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return position;
+        }
+    }
+
+    private void indexRecord(long sequence, long timestampMillis, int position) {
+        if (recordCount++ % indexInterval == 0) {
+            synchronized (sparseIndex) {
+                sparseIndex.add(new long[]{sequence, timestampMillis, position});
+            }
+        }
+        lastSequence = sequence;
+        lastTimestampMillis = timestampMillis;
+    }
+
+    private static int crc(ByteBuffer buffer, int position, int length) {
+        ByteBuffer record = buffer.duplicate();
+        record.limit(position + 4 + length).position(position + CRC_OFFSET + 4);
+        CRC32 crc32 = new CRC32();
+        crc32.update(record);
+        return (int) crc32.getValue();
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.websocketdemo.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An append-only journal of the broadcast messages on the local disk, so the chat history survives a restart.
+ *
+ * The journal is a directory of segments (JournalSegment), memory-mapped files of segmentSize bytes each.
+ * When a segment is full, the next one is created, and the oldest ones are deleted beyond maxSegments.
+ * Every record gets the next sequence number of the journal (for all destinations) and the time it was written.
+ *
+ * append(...) only puts the message into a bounded queue, so the broadcast never waits for the disk.
+ * One writer thread takes the queued messages in batches, appends them to the segment, and then syncs the segment once per batch
+ * (group commit), so one fsync covers all the messages that arrived while the previous one was running.
+ * If the queue is full, the message is dropped (and counted) instead of blocking the broadcast.
+ *
+ * When the journal is started, the segments are read back, and a record that was being written when the process stopped
+ * (cut short, or with a wrong CRC32) is discarded. The sequence numbers continue after the last valid record.
+ */
+public class MessageJournal {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    private final int indexInterval;
+
+    private final int maxBatchSize;
+
+    private final boolean fsync;
+
+    private final BlockingQueue<PendingRecord> pendingRecords;
+
+    // Oldest first. Only modified by the writer thread (and start()).
+    private final List<JournalSegment> segments = new CopyOnWriteArrayList<>();
+
+    private final LongAdder droppedRecordCounter = new LongAdder();
+
+    private long lastSequence;
+
+    private long lastTimestampMillis;
+
+    private volatile boolean running;
+
+    private Thread writer;
+
+    /**
+     * @param directory:     The directory of the segments. It's created if it doesn't exist.
+     * @param segmentSize:   Size of a segment file, in bytes. It's also the limit of the size of one record.
+     * @param maxSegments:   Number of segments kept. The oldest one is deleted when a new one is created beyond that.
+     * @param indexInterval: One in indexInterval records is kept in the sparse index of the segment.
+     * @param queueCapacity: Number of messages that may wait for the writer thread.
+     * @param maxBatchSize:  Maximum number of messages appended between two commits.
+     * @param fsync:         Whether a commit waits for the records to be written to the disk, or only publishes them to the readers.
+     */
+    public MessageJournal(Path directory, int segmentSize, int maxSegments, int indexInterval,
+                          int queueCapacity, int maxBatchSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.indexInterval = Math.max(1, indexInterval);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.fsync = fsync;
+        this.pendingRecords = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Opens the existing segments, and starts the writer thread.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> segmentPaths = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, "*" + JournalSegment.FILE_SUFFIX)) {
+            directoryStream.forEach(segmentPaths::add);
+        }
+        segmentPaths.sort((path, otherPath) -> Long.compare(JournalSegment.firstSequence(path), JournalSegment.firstSequence(otherPath)));
+        for (Path segmentPath : segmentPaths) {
+            JournalSegment segment = JournalSegment.recover(segmentPath, indexInterval);
+            segments.add(segment);
+            lastSequence = Math.max(lastSequence, segment.getLastSequence());
+            lastTimestampMillis = Math.max(lastTimestampMillis, segment.getLastTimestampMillis());
+        }
+        if (segments.isEmpty()) {
+            segments.add(JournalSegment.create(directory, lastSequence + 1, segmentSize, indexInterval));
+        }
+        logger.info("Message journal opened in {}: {} segments, last sequence {}.", directory, segments.size(), lastSequence);
+
+        running = true;
+        writer = new Thread(this::write, "message-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes the queued messages, and stops the writer thread.
+     */
+    public synchronized void close() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join();
+    }
+
+    /**
+     * Queues a message to be written. It never blocks.
+     *
+     * @param destination: The destination the message was broadcast to.
+     * @param payload:     The serialized payload of the message. It's written as it is, so it must not be modified afterwards.
+     * @return false if the message was dropped, because the queue is full or the journal is not started.
+     */
+    public boolean append(String destination, byte[] payload) {
+        if (running && pendingRecords.offer(new PendingRecord(destination, payload))) {
+            return true;
+        }
+        droppedRecordCounter.increment();
+        return false;
+    }
+
+    /**
+     * Reads the messages of a destination, in the order they were written. Only the committed messages are read.
+     *
+     * @param destination:   The destination of the messages.
+     * @param afterSequence: The messages up to this sequence number are skipped, 0 to start from the oldest one.
+     * @param limit:         Maximum number of messages to return.
+     * @return The messages, oldest first. To read the next page, call it again with the sequence number of the last one.
+     */
+    public List<JournalRecord> read(String destination, long afterSequence, int limit) {
+        List<JournalRecord> records = new ArrayList<>(Math.min(limit, 256));
+        List<JournalSegment> currentSegments = new ArrayList<>(segments);
+        for (int i = 0; i < currentSegments.size() && records.size() < limit; i++) {
+            // The segments that only have records up to afterSequence are skipped, without reading them.
+            if (i + 1 < currentSegments.size() && currentSegments.get(i + 1).getFirstSequence() <= afterSequence + 1) {
+                continue;
+            }
+            currentSegments.get(i).read(afterSequence, destination, limit, records);
+        }
+        return records;
+    }
+
+    /**
+     * @param timestampMillis: A time, in milliseconds since the epoch.
+     * @return The sequence number of the first message written at or after the time, or the next sequence number if there is none.
+     */
+    public long findSequence(long timestampMillis) {
+        for (JournalSegment segment : segments) {
+            long sequence = segment.findSequence(timestampMillis);
+            if (sequence >= 0) {
+                return sequence;
+            }
+        }
+        return getLastSequence() + 1;
+    }
+
+    public long getLastSequence() {
+        List<JournalSegment> currentSegments = segments;
+        return currentSegments.isEmpty() ? 0 : currentSegments.get(currentSegments.size() - 1).getLastSequence();
+    }
+
+    public long getDroppedRecordCount() {
+        return droppedRecordCounter.sum();
+    }
+
+    public int getQueuedRecordCount() {
+        return pendingRecords.size();
+    }
+
+    private void write() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+        while (running || !pendingRecords.isEmpty()) {
+            try {
+                PendingRecord pendingRecord = pendingRecords.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (pendingRecord == null) {
+                    continue;
+                }
+                batch.add(pendingRecord);
+                pendingRecords.drainTo(batch, maxBatchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException exception) {
+                logger.error("Unable to write {} messages to the journal.", batch.size(), exception);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingRecord> batch) throws IOException {
+        JournalSegment segment = segments.get(segments.size() - 1);
+        for (PendingRecord pendingRecord : batch) {
+            byte[] destination = pendingRecord.destination.getBytes(StandardCharsets.UTF_8);
+            if (destination.length > Short.MAX_VALUE
+                    || JournalSegment.RECORD_HEADER_SIZE + destination.length + pendingRecord.payload.length > segmentSize) {
+                logger.warn("A message of {} bytes to {} is larger than a journal segment, it's not written.",
+                        pendingRecord.payload.length, pendingRecord.destination);
+                droppedRecordCounter.increment();
+                continue;
+            }
+            // The timestamps never go backwards, even if the clock does, so the segments can be searched by time.
+            long timestampMillis = Math.max(lastTimestampMillis, System.currentTimeMillis());
+            if (!segment.append(lastSequence + 1, timestampMillis, destination, pendingRecord.payload)) {
+                segment.commit(fsync);
+                segment = rollSegment();
+                segment.append(lastSequence + 1, timestampMillis, destination, pendingRecord.payload);
+            }
+            lastSequence++;
+            lastTimestampMillis = timestampMillis;
+        }
+        segment.commit(fsync);
+    }
+
+    private JournalSegment rollSegment() throws IOException {
+        JournalSegment segment = JournalSegment.create(directory, lastSequence + 1, segmentSize, indexInterval);
+        segments.add(segment);
+        while (segments.size() > maxSegments) {
+            JournalSegment oldestSegment = segments.remove(0);
+            // On Linux the readers of the deleted segment can still read it, as it stays mapped until it's garbage collected.
+            Files.deleteIfExists(oldestSegment.getPath());
+        }
+        return segment;
+    }
+
+    private static class PendingRecord {
+        final String destination;
+        final byte[] payload;
+
+        PendingRecord(String destination, byte[] payload) {
+            this.destination = destination;
+            this.payload = payload;
+        }
+    }
+}
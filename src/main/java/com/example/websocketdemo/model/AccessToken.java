@@ -0,0 +1,26 @@
+package com.example.websocketdemo.model;
+
+/**
+ * A token issued by TokenController, to be sent in the Authorization header of the STOMP CONNECT frame.
+ */
+public class AccessToken {
+    private final String token;
+
+    private final long expiresAt;
+
+    public AccessToken(String token, long expiresAt) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return The expiry of the token, in milliseconds since the epoch.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -1,9 +1,14 @@
 package com.example.websocketdemo.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class ChatMessage {
     private MessageType type;
     private String content;
     private String sender;
+    // Only set on the private messages, which are not broadcast (so it's not in the binary format either).
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String recipient;
 
     public enum MessageType {
         CHAT,
@@ -34,4 +39,12 @@ public class ChatMessage {
     public void setSender(String sender) {
         this.sender = sender;
     }
-}
\ No newline at end of file
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.websocketdemo.model;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.util.List;
+
+/**
+ * A page of the messages read from the message journal, returned by MessageJournalController.
+ * To read the next page, pass nextAfterSequence as the afterSequence parameter.
+ */
+public class JournalMessagePage {
+    private final List<JournalMessage> messages;
+
+    private final long nextAfterSequence;
+
+    public JournalMessagePage(List<JournalMessage> messages, long nextAfterSequence) {
+        this.messages = messages;
+        this.nextAfterSequence = nextAfterSequence;
+    }
+
+    public List<JournalMessage> getMessages() {
+        return messages;
+    }
+
+    public long getNextAfterSequence() {
+        return nextAfterSequence;
+    }
+
+    public static class JournalMessage {
+        private final long sequence;
+
+        private final long timestamp;
+
+        private final String payload;
+
+        public JournalMessage(long sequence, long timestamp, String payload) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.payload = payload;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        // The payload is the JSON of the message as the server broadcast it (see MessageJournalChannelInterceptor), so it's written as it is.
+        @JsonRawValue
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
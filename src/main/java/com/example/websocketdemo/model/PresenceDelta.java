@@ -0,0 +1,47 @@
+package com.example.websocketdemo.model;
+
+import java.util.List;
+
+/**
+ * The users who have come online and gone offline in a room since the previous delta, broadcast to /topic/presence.{room}
+ * by the PresenceService. A client applies the deltas with a version greater than the one of its PresenceSnapshot.
+ */
+public class PresenceDelta {
+    private final String room;
+
+    private final long version;
+
+    private final List<String> joined;
+
+    private final List<String> left;
+
+    private final int count;
+
+    public PresenceDelta(String room, long version, List<String> joined, List<String> left, int count) {
+        this.room = room;
+        this.version = version;
+        this.joined = joined;
+        this.left = left;
+        this.count = count;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getJoined() {
+        return joined;
+    }
+
+    public List<String> getLeft() {
+        return left;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.websocketdemo.model;
+
+import java.util.List;
+
+/**
+ * The users online in a room, returned by PresenceController. The version is the one of the last PresenceDelta
+ * broadcast for the room, so the deltas up to it are already included.
+ */
+public class PresenceSnapshot {
+    private final String room;
+
+    private final long version;
+
+    private final List<String> users;
+
+    public PresenceSnapshot(String room, long version, List<String> users) {
+        this.room = room;
+        this.version = version;
+        this.users = users;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getUsers() {
+        return users;
+    }
+
+    public int getCount() {
+        return users.size();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.websocketdemo.model;
+
+/**
+ * The sessions connected and disconnected during a window of the SessionEventPipeline, broadcast to websocket.events.activity-destination
+ * once per window instead of a message per session.
+ */
+public class SessionActivity {
+    private final int connected;
+
+    private final int disconnected;
+
+    private final int sessions;
+
+    private final long timestamp;
+
+    public SessionActivity(int connected, int disconnected, int sessions, long timestamp) {
+        this.connected = connected;
+        this.disconnected = disconnected;
+        this.sessions = sessions;
+        this.timestamp = timestamp;
+    }
+
+    public int getConnected() {
+        return connected;
+    }
+
+    public int getDisconnected() {
+        return disconnected;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.websocketdemo.presence;
+
+import com.example.websocketdemo.model.PresenceDelta;
+import com.example.websocketdemo.model.PresenceSnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the users online in each room, instead of the clients piecing it together from the JOIN and LEAVE messages.
+ *
+ * ChatController joins a session to the public room and to the rooms it adds its user to, and WebSocketEventListener
+ * makes it leave them all when it's closed (or when its resumable session expires).
+ * The changes are broadcast to /topic/presence.{room} as a PresenceDelta, at most once per websocket.presence.delta-interval-millis
+ * per room, so a mass reconnect only sends a few deltas instead of a JOIN and a LEAVE per user to every client.
+ * A client gets the users already online from PresenceController, then applies the deltas newer than that snapshot.
+ *
+ * websocket.presence.rooms: Number of rooms with users online or changes not broadcast yet.
+ */
+@Component
+public class PresenceService {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public static final String PRESENCE_DESTINATION_PREFIX = "/topic/presence.";
+
+    public static final String PUBLIC_ROOM = "public";
+
+    // Session attribute with the rooms the session is counted in, so it's counted once per room, and leaves them all.
+    public static final String PRESENCE_ROOMS_SESSION_ATTRIBUTE = "presenceRooms";
+
+    // Session attribute with the user the session is counted as, which is not the username attribute if the client has changed its name.
+    public static final String PRESENCE_USERNAME_SESSION_ATTRIBUTE = "presenceUsername";
+
+    private final boolean enabled;
+
+    private final long deltaIntervalMillis;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+
+    private final TaskScheduler taskScheduler;
+
+    private final ConcurrentMap<String, RoomPresence> rooms = new ConcurrentHashMap<>();
+
+    // The versions are shared by all the rooms, so they keep increasing when a room is forgotten and joined again.
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    public PresenceService(@Value("${websocket.presence.enabled}") boolean enabled,
+                           @Value("${websocket.presence.delta-interval-millis}") long deltaIntervalMillis,
+                           SimpMessageSendingOperations messagingTemplate,
+                           @Qualifier("webSocketTaskScheduler") TaskScheduler taskScheduler,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.deltaIntervalMillis = deltaIntervalMillis;
+        this.messagingTemplate = messagingTemplate;
+        this.taskScheduler = taskScheduler;
+
+        Gauge.builder("websocket.presence.rooms", rooms, Map::size)
+                .description("Number of rooms with users online.")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * If the session was counted as another user (its client has sent another name), it leaves its rooms as that user,
+     * and joins them again as the new one.
+     *
+     * @param room:              The room joined.
+     * @param username:          The user of the session.
+     * @param sessionAttributes: The attributes of the session.
+     */
+    @SuppressWarnings("unchecked")
+    public void join(String room, String username, Map<String, Object> sessionAttributes) {
+        if (!enabled) {
+            return;
+        }
+        Set<String> presenceRooms = (Set<String>) sessionAttributes.computeIfAbsent(PRESENCE_ROOMS_SESSION_ATTRIBUTE,
+                key -> ConcurrentHashMap.newKeySet());
+        // The frames of a session may be handled by several threads at once.
+        synchronized (presenceRooms) {
+            Object previousUsername = sessionAttributes.put(PRESENCE_USERNAME_SESSION_ATTRIBUTE, username);
+            if (previousUsername != null && !previousUsername.equals(username)) {
+                for (String joinedRoom : presenceRooms) {
+                    leaveRoom(joinedRoom, (String) previousUsername);
+                    joinRoom(joinedRoom, username);
+                }
+            }
+            if (presenceRooms.add(room)) {
+                joinRoom(room, username);
+            }
+        }
+    }
+
+    /**
+     * Leave all the rooms the session has joined, as the user it is counted as.
+     *
+     * @param sessionAttributes: The attributes of the session.
+     */
+    public void leaveAll(Map<String, Object> sessionAttributes) {
+        Object presenceRooms = sessionAttributes.remove(PRESENCE_ROOMS_SESSION_ATTRIBUTE);
+        if (!(presenceRooms instanceof Set)) {
+            return;
+        }
+        synchronized (presenceRooms) {
+            Object username = sessionAttributes.remove(PRESENCE_USERNAME_SESSION_ATTRIBUTE);
+            for (Object room : (Set<?>) presenceRooms) {
+                leaveRoom((String) room, (String) username);
+            }
+        }
+    }
+
+    /**
+     * @param room: The room.
+     * @return The users online in the room.
+     */
+    public PresenceSnapshot snapshot(String room) {
+        RoomPresence roomPresence = rooms.get(room);
+        if (roomPresence == null) {
+            return new PresenceSnapshot(room, lastVersion.get(), Collections.emptyList());
+        }
+        return roomPresence.snapshot();
+    }
+
+    private void joinRoom(String room, String username) {
+        boolean[] scheduleFlush = new boolean[1];
+        rooms.compute(room, (key, roomPresence) -> {
+            if (roomPresence == null) {
+                roomPresence = new RoomPresence(room);
+            }
+            scheduleFlush[0] = roomPresence.join(username);
+            return roomPresence;
+        });
+        if (scheduleFlush[0]) {
+            scheduleFlush(room);
+        }
+    }
+
+    private void leaveRoom(String room, String username) {
+        boolean[] scheduleFlush = new boolean[1];
+        rooms.computeIfPresent(room, (key, roomPresence) -> {
+            scheduleFlush[0] = roomPresence.leave(username);
+            return roomPresence.isIdle() ? null : roomPresence;
+        });
+        if (scheduleFlush[0]) {
+            scheduleFlush(room);
+        }
+    }
+
+    private void scheduleFlush(String room) {
+        RoomPresence roomPresence = rooms.get(room);
+        if (roomPresence == null) {
+            return;
+        }
+        long nowMillis = System.currentTimeMillis();
+        taskScheduler.schedule(() -> flush(room), new Date(nowMillis + roomPresence.flushDelayMillis(nowMillis, deltaIntervalMillis)));
+    }
+
+    private void flush(String room) {
+        PresenceDelta[] presenceDelta = new PresenceDelta[1];
+        rooms.computeIfPresent(room, (key, roomPresence) -> {
+            presenceDelta[0] = roomPresence.flush(lastVersion.incrementAndGet(), System.currentTimeMillis());
+            return roomPresence.isIdle() ? null : roomPresence;
+        });
+        if (presenceDelta[0] != null) {
+            logger.debug("Room {}: {} joined, {} left, {} online.", room, presenceDelta[0].getJoined().size(),
+                    presenceDelta[0].getLeft().size(), presenceDelta[0].getCount());
+            messagingTemplate.convertAndSend(PRESENCE_DESTINATION_PREFIX + room, presenceDelta[0]);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.websocketdemo.presence;
+
+import com.example.websocketdemo.model.PresenceDelta;
+import com.example.websocketdemo.model.PresenceSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The users online in one room, and the changes not broadcast yet.
+ *
+ * A user is online while at least one of its sessions has joined the room, so the sessions are counted per user.
+ * The changes are kept per user until the next delta: a user who goes offline and comes back before it
+ * (like every user reconnecting after a deploy) is not in the delta at all.
+ */
+class RoomPresence {
+
+    private final String room;
+
+    // Number of sessions per online user.
+    private final Map<String, Integer> sessionCounts = new HashMap<>();
+
+    // The changes since the previous delta: true if the user has come online, false if it has gone offline.
+    private final Map<String, Boolean> pendingChanges = new LinkedHashMap<>();
+
+    private long version;
+
+    private long lastFlushMillis;
+
+    // Whether a flush of the pending changes is scheduled.
+    private boolean flushScheduled;
+
+    RoomPresence(String room) {
+        this.room = room;
+    }
+
+    /**
+     * @param username: The user of a session that has joined the room.
+     * @return true if a flush has to be scheduled for the change.
+     */
+    synchronized boolean join(String username) {
+        if (sessionCounts.merge(username, 1, Integer::sum) == 1) {
+            change(username, true);
+        }
+        return scheduleFlush();
+    }
+
+    /**
+     * @param username: The user of a session that has left the room.
+     * @return true if a flush has to be scheduled for the change.
+     */
+    synchronized boolean leave(String username) {
+        Integer sessionCount = sessionCounts.get(username);
+        if (sessionCount == null) {
+            return false;
+        }
+        if (sessionCount > 1) {
+            sessionCounts.put(username, sessionCount - 1);
+            return false;
+        }
+        sessionCounts.remove(username);
+        change(username, false);
+        return scheduleFlush();
+    }
+
+    /**
+     * @param nowMillis: Current time.
+     * @return Milliseconds to wait before the next flush, so the deltas are at least intervalMillis apart.
+     */
+    synchronized long flushDelayMillis(long nowMillis, long intervalMillis) {
+        return Math.max(0, lastFlushMillis + intervalMillis - nowMillis);
+    }
+
+    /**
+     * Take the pending changes as a delta.
+     *
+     * @param nextVersion: Version of the delta.
+     * @param nowMillis:   Current time.
+     * @return The delta, or null if the changes have cancelled each other out.
+     */
+    synchronized PresenceDelta flush(long nextVersion, long nowMillis) {
+        flushScheduled = false;
+        lastFlushMillis = nowMillis;
+        if (pendingChanges.isEmpty()) {
+            return null;
+        }
+        List<String> joined = new ArrayList<>();
+        List<String> left = new ArrayList<>();
+        for (Map.Entry<String, Boolean> pendingChange : pendingChanges.entrySet()) {
+            (pendingChange.getValue() ? joined : left).add(pendingChange.getKey());
+        }
+        pendingChanges.clear();
+        version = nextVersion;
+        return new PresenceDelta(room, version, joined, left, sessionCounts.size());
+    }
+
+    synchronized PresenceSnapshot snapshot() {
+        List<String> users = new ArrayList<>(sessionCounts.keySet());
+        Collections.sort(users);
+        return new PresenceSnapshot(room, version, users);
+    }
+
+    synchronized int size() {
+        return sessionCounts.size();
+    }
+
+    /**
+     * @return true if nobody is online and there is nothing left to broadcast, so the room may be forgotten.
+     */
+    synchronized boolean isIdle() {
+        return sessionCounts.isEmpty() && pendingChanges.isEmpty() && !flushScheduled;
+    }
+
+    private void change(String username, boolean online) {
+        // The opposite change is not broadcast yet, so both are dropped.
+        if (pendingChanges.remove(username) == null) {
+            pendingChanges.put(username, online);
+        }
+    }
+
+    private boolean scheduleFlush() {
+        if (flushScheduled || pendingChanges.isEmpty()) {
+            return false;
+        }
+        flushScheduled = true;
+        return true;
+    }
+}
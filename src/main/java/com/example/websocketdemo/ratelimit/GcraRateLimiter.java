@@ -0,0 +1,70 @@
+package com.example.websocketdemo.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket rate limiter per key, implemented with the Generic Cell Rate Algorithm (GCRA).
+ *
+ * Instead of a token count and a refill time, each key only has its theoretical arrival time (TAT):
+ * the time at which its bucket would be full again. Each message pushes the TAT by one emission interval (1 / rate),
+ * and a message is allowed if the TAT it would set is no further than the burst size of intervals ahead of now.
+ * So the bucket of a key is one AtomicLong, updated with a compare-and-set, and no lock is ever taken.
+ *
+ * The keys whose bucket is full again are forgotten by evictIdle(), which is called periodically.
+ */
+public class GcraRateLimiter {
+    private final long emissionIntervalNanos;
+
+    // How far ahead of now the TAT may be: burst intervals.
+    private final long maxAheadNanos;
+
+    private final Map<String, AtomicLong> theoreticalArrivalTimes = new ConcurrentHashMap<>();
+
+    /**
+     * @param messagesPerSecond: Sustained rate allowed per key.
+     * @param burst:             Number of messages a key may send at once, after being idle.
+     */
+    public GcraRateLimiter(double messagesPerSecond, int burst) {
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecond);
+        this.maxAheadNanos = emissionIntervalNanos * Math.max(burst, 1);
+    }
+
+    /**
+     * @param key:      The key of the bucket.
+     * @param nowNanos: System.nanoTime().
+     * @return true if the message is allowed, false if the key is over its rate.
+     */
+    public boolean tryAcquire(String key, long nowNanos) {
+        AtomicLong theoreticalArrivalTime = theoreticalArrivalTimes.computeIfAbsent(key, k -> new AtomicLong(nowNanos));
+        while (true) {
+            long current = theoreticalArrivalTime.get();
+            long next = Math.max(current, nowNanos) + emissionIntervalNanos;
+            if (next - nowNanos > maxAheadNanos) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public void remove(String key) {
+        theoreticalArrivalTimes.remove(key);
+    }
+
+    /**
+     * Forget the keys whose bucket is full again, which would allow the same burst if they were kept.
+     *
+     * @param nowNanos: System.nanoTime().
+     */
+    public void evictIdle(long nowNanos) {
+        theoreticalArrivalTimes.entrySet().removeIf(entry -> entry.getValue().get() - nowNanos <= 0);
+    }
+
+    public int size() {
+        return theoreticalArrivalTimes.size();
+    }
+}
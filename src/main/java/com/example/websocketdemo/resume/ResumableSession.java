@@ -0,0 +1,210 @@
+package com.example.websocketdemo.resume;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A STOMP session that outlives its WebSocket connections.
+ *
+ * The broker and the @MessageMapping(...) handlers only know the session by its sessionId, which is not the ID of any connection.
+ * The connectionId is the WebSocket session it's currently using, or null while it's suspended (its connection was lost,
+ * and the client has until the grace period ends to come back with the token). The userName is the name of the Principal
+ * that opened it (null if it was anonymous), which a connection resuming it must have too.
+ *
+ * Every MESSAGE sent to the session gets the next sequence number, and is kept until the client acknowledges it,
+ * or until more than maxUnacknowledged messages are kept. The sequence numbers start at 1 and have no gaps,
+ * so the kept messages are the ones from (lastSequence - size + 1) to lastSequence.
+ *
+ * The methods are synchronized, as the frames of the session are handled by several clientInbound and clientOutbound threads.
+ */
+public class ResumableSession {
+    private final String token;
+
+    private final String sessionId;
+
+    private final String userName;
+
+    private final int maxUnacknowledged;
+
+    private final ArrayDeque<Message<?>> unacknowledgedMessages = new ArrayDeque<>();
+
+    private long lastSequence;
+
+    private Map<String, Object> sessionAttributes;
+
+    private String connectionId;
+
+    // Whether the MESSAGE frames are sent to the connection. It's false until the CONNECTED frame has been sent to it.
+    private boolean receiving;
+
+    // Whether the current connection has resumed the session, instead of opening it.
+    private boolean resumed;
+
+    // The last sequence number the client of the current connection had, the messages after it are sent again.
+    private long resumeSequence;
+
+    private ScheduledFuture<?> expiry;
+
+    private boolean closed;
+
+    ResumableSession(String token, String sessionId, String userName, int maxUnacknowledged, String connectionId,
+                     Map<String, Object> sessionAttributes) {
+        this.token = token;
+        this.sessionId = sessionId;
+        this.userName = userName;
+        this.maxUnacknowledged = maxUnacknowledged;
+        this.connectionId = connectionId;
+        this.sessionAttributes = sessionAttributes;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public synchronized String getConnectionId() {
+        return connectionId;
+    }
+
+    /**
+     * @return The connection that the MESSAGE frames are sent to, or null if they are only kept for now.
+     */
+    public synchronized String getReceivingConnectionId() {
+        return receiving ? connectionId : null;
+    }
+
+    public synchronized Map<String, Object> getSessionAttributes() {
+        return sessionAttributes;
+    }
+
+    public synchronized boolean isResumed() {
+        return resumed;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return Whether the session has lost its connection, and is waiting to be resumed.
+     */
+    public synchronized boolean isSuspended() {
+        return connectionId == null && !closed;
+    }
+
+    /**
+     * @return The sequence number the replay starts after. It's more than the one the client asked for,
+     * if some of the messages after that are not kept anymore.
+     */
+    public synchronized long getReplaySequence() {
+        return Math.max(resumeSequence, lastSequence - unacknowledgedMessages.size());
+    }
+
+    /**
+     * Give the message the next sequence number, in the header sequenceHeader, and keep it until it's acknowledged.
+     *
+     * @param message:        A MESSAGE sent to the session.
+     * @param sequenceHeader: Name of the native header of the sequence number.
+     * @return The message with the sequence number.
+     */
+    public synchronized Message<?> sequence(Message<?> message, String sequenceHeader) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(message);
+        headerAccessor.setNativeHeader(sequenceHeader, Long.toString(++lastSequence));
+        Message<?> sequencedMessage = MessageBuilder.createMessage(message.getPayload(), headerAccessor.getMessageHeaders());
+        if (closed) {
+            return sequencedMessage;
+        }
+        unacknowledgedMessages.addLast(sequencedMessage);
+        if (unacknowledgedMessages.size() > maxUnacknowledged) {
+            unacknowledgedMessages.removeFirst();
+        }
+        return sequencedMessage;
+    }
+
+    /**
+     * Drop the kept messages up to the sequence number (included).
+     */
+    public synchronized void acknowledge(long sequence) {
+        long firstSequence = lastSequence - unacknowledgedMessages.size() + 1;
+        for (; firstSequence <= sequence && !unacknowledgedMessages.isEmpty(); firstSequence++) {
+            unacknowledgedMessages.removeFirst();
+        }
+    }
+
+    /**
+     * Start sending the MESSAGE frames to the connection, once the CONNECTED frame has been sent to it.
+     *
+     * @return The kept messages that the client of the connection doesn't have yet, to be sent again.
+     */
+    public synchronized List<Message<?>> startReceiving(String connectionId) {
+        if (closed || receiving || !connectionId.equals(this.connectionId)) {
+            return new ArrayList<>();
+        }
+        receiving = true;
+        acknowledge(resumeSequence);
+        return new ArrayList<>(unacknowledgedMessages);
+    }
+
+    synchronized void attach(String connectionId, Map<String, Object> sessionAttributes, boolean resumed, long resumeSequence) {
+        if (sessionAttributes != this.sessionAttributes) {
+            sessionAttributes.putAll(this.sessionAttributes);
+            this.sessionAttributes = sessionAttributes;
+        }
+        this.connectionId = connectionId;
+        this.receiving = false;
+        this.resumed = resumed;
+        this.resumeSequence = resumeSequence;
+        cancelExpiry();
+    }
+
+    synchronized void suspend(ScheduledFuture<?> expiry) {
+        this.connectionId = null;
+        this.receiving = false;
+        cancelExpiry();
+        this.expiry = expiry;
+    }
+
+    /**
+     * @return Whether the session is closed by this call. It's not, if a connection has resumed it in the meantime.
+     */
+    synchronized boolean expire() {
+        return connectionId == null && close();
+    }
+
+    /**
+     * Stop keeping and sending the MESSAGE frames. The connection is kept, for the frames that answer its DISCONNECT.
+     *
+     * @return Whether the session is closed by this call.
+     */
+    synchronized boolean close() {
+        if (closed) {
+            return false;
+        }
+        closed = true;
+        receiving = false;
+        unacknowledgedMessages.clear();
+        cancelExpiry();
+        return true;
+    }
+
+    private void cancelExpiry() {
+        if (expiry != null) {
+            expiry.cancel(false);
+            expiry = null;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.websocketdemo.resume;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Map;
+
+/**
+ * Published when a suspended resumable session has not been resumed within the grace period.
+ * It's the SessionDisconnectEvent that was held back when its connection was lost.
+ */
+public class ResumableSessionExpiredEvent extends ApplicationEvent {
+    private static final long serialVersionUID = 1L;
+
+    private final String sessionId;
+
+    private final Map<String, Object> sessionAttributes;
+
+    public ResumableSessionExpiredEvent(Object source, String sessionId, Map<String, Object> sessionAttributes) {
+        super(source);
+        this.sessionId = sessionId;
+        this.sessionAttributes = sessionAttributes;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public Map<String, Object> getSessionAttributes() {
+        return sessionAttributes;
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.websocketdemo.resume;
+
+import com.example.websocketdemo.interceptor.StompErrorSender;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The resumable sessions, by token, by sessionId and by the ID of the connection (WebSocket session) they are using.
+ *
+ * A client asks for a resumable session in its CONNECT frame, and gets a token in the CONNECTED frame.
+ * When its connection is lost, the session is suspended: it stays subscribed, the messages sent to it are kept,
+ * and no LEAVE is broadcast. If the client connects again with the token within websocket.stomp.resume.grace-period-seconds,
+ * as the same user, it gets the messages it has missed and carries on. Otherwise the session expires: it's disconnected from the broker,
+ * and a ResumableSessionExpiredEvent is published, so the LEAVE is broadcast then.
+ *
+ * The simple broker disconnects a session it hasn't heard from in 3 heart-beat intervals (30 seconds with the default
+ * websocket.stomp.heartbeat.*), which would drop the subscriptions of a session suspended for longer. So while a session is suspended,
+ * a HEARTBEAT is sent to the broker for it every websocket.stomp.heartbeat.receive-millis, as its client would.
+ *
+ * The frames are routed between the connections and the sessions by the ResumableSessionChannelInterceptor.
+ * NOTE: The sessions are kept in memory, so a client can only resume its session on the node it was connected to.
+ */
+@Component
+public class ResumableSessionRegistry implements InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String SESSION_ID_PREFIX = "resumable-";
+
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    private final boolean enabled;
+
+    private final long gracePeriodMillis;
+
+    private final int maxUnacknowledged;
+
+    private final long keepAliveIntervalMillis;
+
+    private final TaskScheduler taskScheduler;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final StompErrorSender stompErrorSender;
+
+    private final MessageChannel clientInboundChannel;
+
+    private final Map<String, ResumableSession> sessionsByToken = new ConcurrentHashMap<>();
+
+    private final Map<String, ResumableSession> sessionsBySessionId = new ConcurrentHashMap<>();
+
+    private final Map<String, ResumableSession> sessionsByConnectionId = new ConcurrentHashMap<>();
+
+    // The connections that have ended while their session is suspended, until their DISCONNECT message is dropped.
+    private final Set<String> endedConnectionIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger suspendedSessionCount = new AtomicInteger();
+
+    private final Counter resumedCounter;
+
+    private final Counter expiredCounter;
+
+    private ScheduledFuture<?> scheduledKeepAlive;
+
+    /**
+     * The clientInboundChannel bean is created by the WebSocket message broker configuration, which needs the interceptors first,
+     * so it is injected lazily.
+     */
+    public ResumableSessionRegistry(@Value("${websocket.stomp.resume.enabled}") boolean enabled,
+                                    @Value("${websocket.stomp.resume.grace-period-seconds}") long gracePeriodSeconds,
+                                    @Value("${websocket.stomp.resume.max-unacknowledged}") int maxUnacknowledged,
+                                    @Value("${websocket.stomp.heartbeat.receive-millis}") long heartbeatReceiveMillis,
+                                    @Qualifier("webSocketTaskScheduler") TaskScheduler taskScheduler,
+                                    ApplicationEventPublisher applicationEventPublisher,
+                                    StompErrorSender stompErrorSender,
+                                    @Lazy @Qualifier("clientInboundChannel") MessageChannel clientInboundChannel,
+                                    MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.gracePeriodMillis = gracePeriodSeconds * 1000;
+        this.maxUnacknowledged = maxUnacknowledged;
+        this.keepAliveIntervalMillis = heartbeatReceiveMillis;
+        this.taskScheduler = taskScheduler;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.stompErrorSender = stompErrorSender;
+        this.clientInboundChannel = clientInboundChannel;
+
+        Gauge.builder("websocket.sessions.resumable", sessionsBySessionId, Map::size)
+                .description("Number of resumable STOMP sessions: all of them, or only the suspended ones.")
+                .tag("state", "all")
+                .register(meterRegistry);
+        Gauge.builder("websocket.sessions.resumable", suspendedSessionCount, AtomicInteger::get)
+                .description("Number of resumable STOMP sessions: all of them, or only the suspended ones.")
+                .tag("state", "suspended")
+                .register(meterRegistry);
+        resumedCounter = Counter.builder("websocket.sessions.resumed")
+                .description("Number of resumable STOMP sessions resumed by a new connection.")
+                .register(meterRegistry);
+        expiredCounter = Counter.builder("websocket.sessions.resume.expired")
+                .description("Number of resumable STOMP sessions that were not resumed within the grace period.")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Without heart-beats from the clients (websocket.stomp.heartbeat.receive-millis=0), the broker keeps the sessions anyway.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (enabled && keepAliveIntervalMillis > 0) {
+            scheduledKeepAlive = taskScheduler.scheduleWithFixedDelay(this::keepAlive, keepAliveIntervalMillis);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduledKeepAlive != null) {
+            scheduledKeepAlive.cancel(false);
+        }
+    }
+
+    /**
+     * @param connectionId:      ID of the WebSocket session that sent the CONNECT frame.
+     * @param userName:          Name of the Principal of the CONNECT frame, or null if it's anonymous.
+     * @param sessionAttributes: The attributes of the WebSocket session, which become the attributes of the resumable session.
+     * @return A new resumable session, using the connection.
+     */
+    public ResumableSession open(String connectionId, String userName, Map<String, Object> sessionAttributes) {
+        String token = UUID.randomUUID().toString();
+        ResumableSession resumableSession = new ResumableSession(token, SESSION_ID_PREFIX + UUID.randomUUID(), userName,
+                maxUnacknowledged, connectionId, sessionAttributes);
+        sessionsByToken.put(token, resumableSession);
+        sessionsBySessionId.put(resumableSession.getSessionId(), resumableSession);
+        sessionsByConnectionId.put(connectionId, resumableSession);
+        return resumableSession;
+    }
+
+    /**
+     * Move the session of the token to the connection. If the session is still using another connection
+     * (its client has not noticed yet that it's lost), that connection is closed with an ERROR frame.
+     *
+     * @param token:             The token from the CONNECT frame.
+     * @param userName:          Name of the Principal of the CONNECT frame, or null if it's anonymous.
+     * @param sequence:          The sequence number of the last message the client has.
+     * @param connectionId:      ID of the WebSocket session that sent the CONNECT frame.
+     * @param sessionAttributes: The attributes of the WebSocket session, which get the ones of the resumable session.
+     * @return The resumed session, or null if there's no session with the token (anymore), or if it was opened by another user
+     * (the token alone doesn't give the subscriptions and the private messages of a session to whoever has it).
+     */
+    public ResumableSession resume(String token, String userName, long sequence, String connectionId, Map<String, Object> sessionAttributes) {
+        ResumableSession resumableSession = sessionsByToken.get(token);
+        if (resumableSession == null) {
+            return null;
+        }
+        if (!Objects.equals(userName, resumableSession.getUserName())) {
+            logger.warn("Resumable session {} was opened by another user, it's not resumed.", resumableSession.getSessionId());
+            return null;
+        }
+        String previousConnectionId;
+        synchronized (resumableSession) {
+            if (resumableSession.isClosed()) {
+                return null;
+            }
+            previousConnectionId = resumableSession.getConnectionId();
+            if (previousConnectionId == null) {
+                suspendedSessionCount.decrementAndGet();
+            }
+            resumableSession.attach(connectionId, sessionAttributes, true, sequence);
+            sessionsByConnectionId.put(connectionId, resumableSession);
+        }
+        resumedCounter.increment();
+        if (previousConnectionId != null) {
+            // Its frames are dropped from now on, see ResumableSessionChannelInterceptor.
+            stompErrorSender.sendError(previousConnectionId, "The session has been resumed by another connection.");
+        }
+        return resumableSession;
+    }
+
+    /**
+     * @param connectionId: ID of a WebSocket session.
+     * @return The session using the connection, or that used it before another connection resumed it. Null if there's none.
+     */
+    public ResumableSession getByConnectionId(String connectionId) {
+        return connectionId != null ? sessionsByConnectionId.get(connectionId) : null;
+    }
+
+    /**
+     * @param sessionId: The sessionId the broker knows the session by.
+     */
+    public ResumableSession getBySessionId(String sessionId) {
+        return sessionId != null && sessionId.startsWith(SESSION_ID_PREFIX) ? sessionsBySessionId.get(sessionId) : null;
+    }
+
+    /**
+     * Called when a connection has ended. If it was used by a resumable session, the session is suspended until
+     * the grace period ends, and the DISCONNECT message of the connection is dropped (see isEnded(...)),
+     * so the broker keeps its subscriptions.
+     *
+     * @param connectionId: ID of the WebSocket session that has ended.
+     * @return true if the connection was used by a resumable session, which hasn't ended with it.
+     */
+    public boolean suspend(String connectionId) {
+        ResumableSession resumableSession = connectionId != null ? sessionsByConnectionId.remove(connectionId) : null;
+        if (resumableSession == null) {
+            return false;
+        }
+        synchronized (resumableSession) {
+            if (resumableSession.isClosed()) {
+                sessionsBySessionId.remove(resumableSession.getSessionId());
+                return false;
+            }
+            endedConnectionIds.add(connectionId);
+            if (connectionId.equals(resumableSession.getConnectionId())) {
+                resumableSession.suspend(taskScheduler.schedule(() -> expire(resumableSession),
+                        new Date(System.currentTimeMillis() + gracePeriodMillis)));
+                suspendedSessionCount.incrementAndGet();
+                logger.debug("Resumable session {} is suspended.", resumableSession.getSessionId());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param connectionId: ID of the WebSocket session of a DISCONNECT message.
+     * @return true (once) if the connection has ended while its session is kept, so its DISCONNECT must not reach the broker.
+     */
+    public boolean isEnded(String connectionId) {
+        return connectionId != null && endedConnectionIds.remove(connectionId);
+    }
+
+    /**
+     * Close the session, as its client has sent a DISCONNECT frame. The DISCONNECT is passed on to the broker,
+     * and the session is removed when its connection ends, once the broker has answered.
+     */
+    public void close(ResumableSession resumableSession) {
+        if (resumableSession.close()) {
+            sessionsByToken.remove(resumableSession.getToken());
+        }
+    }
+
+    private void keepAlive() {
+        for (ResumableSession resumableSession : sessionsBySessionId.values()) {
+            if (!resumableSession.isSuspended()) {
+                continue;
+            }
+            StompHeaderAccessor headerAccessor = StompHeaderAccessor.createForHeartbeat();
+            headerAccessor.setSessionId(resumableSession.getSessionId());
+            headerAccessor.setSessionAttributes(resumableSession.getSessionAttributes());
+            clientInboundChannel.send(MessageBuilder.createMessage(EMPTY_PAYLOAD, headerAccessor.getMessageHeaders()));
+        }
+    }
+
+    private void expire(ResumableSession resumableSession) {
+        if (!resumableSession.expire()) {
+            return;
+        }
+        suspendedSessionCount.decrementAndGet();
+        sessionsByToken.remove(resumableSession.getToken());
+        sessionsBySessionId.remove(resumableSession.getSessionId());
+        expiredCounter.increment();
+        logger.debug("Resumable session {} has expired.", resumableSession.getSessionId());
+
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        headerAccessor.setSessionId(resumableSession.getSessionId());
+        headerAccessor.setSessionAttributes(resumableSession.getSessionAttributes());
+        clientInboundChannel.send(MessageBuilder.createMessage(EMPTY_PAYLOAD, headerAccessor.getMessageHeaders()));
+        applicationEventPublisher.publishEvent(new ResumableSessionExpiredEvent(this, resumableSession.getSessionId(),
+                resumableSession.getSessionAttributes()));
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.websocketdemo.scheduling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.Trigger;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A TaskScheduler for the many timers of the sessions (the STOMP heartbeats, the SockJS heartbeats and disconnect delays),
+ * on a hashed timer wheel (see TimerWheel) instead of the heap of a ThreadPoolTaskScheduler.
+ *
+ * Every SockJS session schedules its next heartbeat each time a frame is sent to it, and cancels the previous one.
+ * With a heap, each of those is O(log n) under the lock of the queue, and a cancelled task stays in it until it's due.
+ * Here, scheduling and cancelling only add the task to a queue (there are many producers, and a single consumer).
+ * The tick thread wakes up every tickMillis, moves the new tasks to their bucket, removes the cancelled ones,
+ * and hands the tasks due to the executor, batchSize tasks at a time, so that a thousand heartbeats due in the same tick
+ * are a few executor tasks, and a send blocked on a stalled client doesn't hold up the tick thread.
+ * A task runs up to a tick late.
+ *
+ * The periodic tasks (at a fixed rate or with a fixed delay) and the ones of a Trigger are scheduled again once they have run.
+ * An exception thrown by a task is logged, and doesn't stop a periodic task.
+ */
+public class HashedWheelTaskScheduler implements TaskScheduler, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // The tasks to add to the wheel, and the ones to remove from it.
+    private final Queue<WheelTimeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final TimerWheel timerWheel;
+
+    private final Executor executor;
+
+    private final int batchSize;
+
+    private final Thread tickThread;
+
+    private volatile boolean running = true;
+
+    private volatile long timeoutCount;
+
+    private final AtomicLong executedCount = new AtomicLong();
+
+    /**
+     * @param tickMillis:    Duration of a tick, which is the precision of the scheduler, in milliseconds.
+     * @param ticksPerWheel: Number of buckets of the wheel (rounded up to a power of 2). The timeouts due in more than
+     *                       tickMillis * ticksPerWheel go around the wheel, so it should cover the usual heartbeat interval.
+     * @param batchSize:     Maximum number of tasks handed to the executor as one.
+     * @param executor:      Executor that runs the tasks.
+     * @param threadName:    Name of the tick thread.
+     */
+    public HashedWheelTaskScheduler(long tickMillis, int ticksPerWheel, int batchSize, Executor executor, String threadName) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive.");
+        }
+        this.timerWheel = new TimerWheel(ticksPerWheel, tickMillis, clockMillis());
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.tickThread = new Thread(this::tick, threadName);
+        tickThread.setDaemon(true);
+        tickThread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Trigger trigger) {
+        WheelTimeout timeout = new WheelTimeout(this, task, 0, 0, trigger);
+        Date nextExecutionTime = trigger.nextExecutionTime(timeout.triggerContext);
+        if (nextExecutionTime == null) {
+            return null;
+        }
+        timeout.deadlineMillis = toClockMillis(nextExecutionTime);
+        return schedule(timeout);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, Date startTime) {
+        return schedule(new WheelTimeout(this, task, toClockMillis(startTime), 0, null));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, Date startTime, long period) {
+        return schedule(new WheelTimeout(this, task, toClockMillis(startTime), checkPeriod(period), null));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long period) {
+        return schedule(new WheelTimeout(this, task, clockMillis(), checkPeriod(period), null));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, Date startTime, long delay) {
+        return schedule(new WheelTimeout(this, task, toClockMillis(startTime), -checkPeriod(delay), null));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delay) {
+        return schedule(new WheelTimeout(this, task, clockMillis(), -checkPeriod(delay), null));
+    }
+
+    /**
+     * @return Number of tasks scheduled (in the wheel), as of the last tick.
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * @return Number of task runs since the scheduler was created.
+     */
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        tickThread.interrupt();
+    }
+
+    void cancelled(WheelTimeout timeout) {
+        cancelledTimeouts.add(timeout);
+    }
+
+    static long clockMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static long toClockMillis(Date date) {
+        return clockMillis() + date.getTime() - System.currentTimeMillis();
+    }
+
+    private static long checkPeriod(long period) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("The period must be positive.");
+        }
+        return period;
+    }
+
+    private ScheduledFuture<?> schedule(WheelTimeout timeout) {
+        if (!running) {
+            throw new RejectedExecutionException("The scheduler has been shut down.");
+        }
+        scheduledTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void tick() {
+        List<WheelTimeout> expired = new ArrayList<>();
+        long tick = timerWheel.tickAt(clockMillis());
+        while (running) {
+            long sleepMillis = timerWheel.endOfTick(tick) - clockMillis();
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            WheelTimeout timeout;
+            while ((timeout = cancelledTimeouts.poll()) != null) {
+                timerWheel.remove(timeout);
+            }
+            while ((timeout = scheduledTimeouts.poll()) != null) {
+                // A task cancelled before it reached the wheel is not added to it.
+                if (timeout.isScheduled()) {
+                    timerWheel.add(timeout, tick);
+                }
+            }
+            timerWheel.expire(tick, expired);
+            timeoutCount = timerWheel.size();
+            tick++;
+            for (int i = 0; i < expired.size(); i += batchSize) {
+                List<WheelTimeout> batch = new ArrayList<>(expired.subList(i, Math.min(i + batchSize, expired.size())));
+                try {
+                    executor.execute(() -> run(batch));
+                } catch (RejectedExecutionException e) {
+                    logger.warn("{} scheduled tasks have been rejected by the executor.", batch.size());
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    private void run(List<WheelTimeout> batch) {
+        for (WheelTimeout timeout : batch) {
+            if (!timeout.isScheduled()) {
+                continue;
+            }
+            long startMillis = System.currentTimeMillis();
+            try {
+                executedCount.incrementAndGet();
+                timeout.task.run();
+            } catch (Throwable e) {
+                logger.error("Unexpected error occurred in scheduled task.", e);
+            }
+            long nextDeadlineMillis;
+            if (timeout.periodMillis > 0) {
+                nextDeadlineMillis = timeout.deadlineMillis + timeout.periodMillis;
+            } else if (timeout.periodMillis < 0) {
+                nextDeadlineMillis = clockMillis() - timeout.periodMillis;
+            } else if (timeout.trigger != null) {
+                Date scheduledTime = new Date(startMillis - (clockMillis() - timeout.deadlineMillis));
+                timeout.triggerContext.update(scheduledTime, new Date(startMillis), new Date());
+                Date nextExecutionTime = timeout.trigger.nextExecutionTime(timeout.triggerContext);
+                if (nextExecutionTime == null) {
+                    timeout.done();
+                    continue;
+                }
+                nextDeadlineMillis = toClockMillis(nextExecutionTime);
+            } else {
+                timeout.done();
+                continue;
+            }
+            if (timeout.isScheduled() && running) {
+                timeout.deadlineMillis = nextDeadlineMillis;
+                scheduledTimeouts.add(timeout);
+            }
+        }
+    }
+}
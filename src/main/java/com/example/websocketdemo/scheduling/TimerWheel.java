@@ -0,0 +1,154 @@
+package com.example.websocketdemo.scheduling;
+
+import java.util.List;
+
+/**
+ * The buckets of the HashedWheelTaskScheduler: an array of ticksPerWheel lists of timeouts, one per tick of tickMillis.
+ *
+ * A timeout due in N ticks goes into the bucket (tick + N) % ticksPerWheel, with the number of times the wheel has to turn
+ * before it's due (remainingRounds). Adding and removing a timeout is O(1), whatever the number of timeouts,
+ * where a heap (like the queue of a ScheduledThreadPoolExecutor) is O(log n) and has to be locked.
+ * In exchange, a timeout is late by up to a tick, which doesn't matter to a heartbeat of a few seconds.
+ *
+ * It's only used by the tick thread, so it's not thread-safe.
+ */
+class TimerWheel {
+
+    static final class Bucket {
+        private WheelTimeout head;
+
+        private WheelTimeout tail;
+
+        private void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        private WheelTimeout remove(WheelTimeout timeout) {
+            WheelTimeout next = timeout.next;
+            if (timeout.previous != null) {
+                timeout.previous.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+
+    private final Bucket[] buckets;
+
+    private final int mask;
+
+    private final long tickMillis;
+
+    private final long startMillis;
+
+    private long size;
+
+    /**
+     * @param ticksPerWheel: Number of buckets, rounded up to a power of 2.
+     * @param tickMillis:    Duration of a tick, in milliseconds.
+     * @param startMillis:   Start of the tick 0, on the clock of the deadlines.
+     */
+    TimerWheel(int ticksPerWheel, long tickMillis, long startMillis) {
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30) || tickMillis <= 0) {
+            throw new IllegalArgumentException("The ticks per wheel and the tick duration must be positive.");
+        }
+        int bucketCount = Integer.highestOneBit(ticksPerWheel - 1) << 1;
+        this.buckets = new Bucket[Math.max(bucketCount, 1)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = buckets.length - 1;
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * @param timeout: A timeout not in the wheel.
+     * @param tick:    The tick that is not expired yet.
+     */
+    void add(WheelTimeout timeout, long tick) {
+        // The tick at the end of which the deadline has passed.
+        long deadlineTick = Math.max(0, (timeout.deadlineMillis - startMillis + tickMillis - 1) / tickMillis - 1);
+        timeout.remainingRounds = (deadlineTick - tick) / buckets.length;
+        // A deadline already passed is expired at the end of the current tick.
+        buckets[(int) (Math.max(deadlineTick, tick) & mask)].add(timeout);
+        size++;
+    }
+
+    /**
+     * @param timeout: A timeout, removed from the wheel if it's in it.
+     */
+    void remove(WheelTimeout timeout) {
+        if (timeout.bucket != null) {
+            timeout.bucket.remove(timeout);
+            size--;
+        }
+    }
+
+    /**
+     * Remove the timeouts due by the end of the tick.
+     *
+     * @param tick:    The tick that has ended.
+     * @param expired: The list the timeouts due are added to.
+     */
+    void expire(long tick, List<WheelTimeout> expired) {
+        Bucket bucket = buckets[(int) (tick & mask)];
+        WheelTimeout timeout = bucket.head;
+        while (timeout != null) {
+            if (timeout.remainingRounds <= 0) {
+                WheelTimeout next = bucket.remove(timeout);
+                size--;
+                expired.add(timeout);
+                timeout = next;
+            } else {
+                timeout.remainingRounds--;
+                timeout = timeout.next;
+            }
+        }
+    }
+
+    /**
+     * @param nowMillis: The time, on the clock of the deadlines.
+     * @return The tick that nowMillis is in.
+     */
+    long tickAt(long nowMillis) {
+        return (nowMillis - startMillis) / tickMillis;
+    }
+
+    /**
+     * @param tick: A tick.
+     * @return The end of the tick, on the clock of the deadlines.
+     */
+    long endOfTick(long tick) {
+        return startMillis + (tick + 1) * tickMillis;
+    }
+
+    int getBucketCount() {
+        return buckets.length;
+    }
+
+    /**
+     * @return Number of timeouts in the wheel.
+     */
+    long size() {
+        return size;
+    }
+}
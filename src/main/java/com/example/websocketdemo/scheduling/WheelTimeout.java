@@ -0,0 +1,132 @@
+package com.example.websocketdemo.scheduling;
+
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A task scheduled in the HashedWheelTaskScheduler, and its future.
+ *
+ * It's linked in the bucket of the TimerWheel it's due in, which only the tick thread uses.
+ * A periodic task keeps the same WheelTimeout across its runs, so cancelling the future stops it.
+ */
+class WheelTimeout implements ScheduledFuture<Object> {
+
+    private static final int SCHEDULED = 0;
+
+    private static final int CANCELLED = 1;
+
+    private static final int DONE = 2;
+
+    private final HashedWheelTaskScheduler scheduler;
+
+    final Runnable task;
+
+    // > 0: at a fixed rate, < 0: with a fixed delay, 0: once (or as the trigger says).
+    final long periodMillis;
+
+    final Trigger trigger;
+
+    final SimpleTriggerContext triggerContext;
+
+    // A field updater rather than an AtomicInteger, as there's a WheelTimeout per heartbeat scheduled.
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE = AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+    private volatile int state = SCHEDULED;
+
+    // On the clock of the HashedWheelTaskScheduler.
+    volatile long deadlineMillis;
+
+    // Used by the tick thread only.
+    long remainingRounds;
+
+    TimerWheel.Bucket bucket;
+
+    WheelTimeout previous;
+
+    WheelTimeout next;
+
+    WheelTimeout(HashedWheelTaskScheduler scheduler, Runnable task, long deadlineMillis, long periodMillis, Trigger trigger) {
+        this.scheduler = scheduler;
+        this.task = task;
+        this.deadlineMillis = deadlineMillis;
+        this.periodMillis = periodMillis;
+        this.trigger = trigger;
+        this.triggerContext = trigger != null ? new SimpleTriggerContext() : null;
+    }
+
+    boolean isScheduled() {
+        return state == SCHEDULED;
+    }
+
+    /**
+     * @return true if it was scheduled, and is done now.
+     */
+    boolean done() {
+        if (STATE.compareAndSet(this, SCHEDULED, DONE)) {
+            synchronized (this) {
+                notifyAll();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!STATE.compareAndSet(this, SCHEDULED, CANCELLED)) {
+            return false;
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+        scheduler.cancelled(this);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state != SCHEDULED;
+    }
+
+    @Override
+    public synchronized Object get() throws InterruptedException {
+        while (isScheduled()) {
+            wait();
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long waitUntilMillis = HashedWheelTaskScheduler.clockMillis() + unit.toMillis(timeout);
+        while (isScheduled()) {
+            long waitMillis = waitUntilMillis - HashedWheelTaskScheduler.clockMillis();
+            if (waitMillis <= 0) {
+                throw new TimeoutException();
+            }
+            wait(waitMillis);
+        }
+        return null;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(deadlineMillis - HashedWheelTaskScheduler.clockMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+}
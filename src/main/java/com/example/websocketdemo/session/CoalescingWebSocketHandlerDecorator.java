@@ -0,0 +1,64 @@
+package com.example.websocketdemo.session;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Decorates the STOMP WebSocket handler, so that every session it sends to is a CoalescingWebSocketSessionDecorator.
+ * Registered in WebSocketMessageBrokerConfigurerCustomConfig.configureWebSocketTransport(...) when websocket.stomp.coalescing.enabled=true.
+ */
+public class CoalescingWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final TaskScheduler taskScheduler;
+
+    private final Executor flushExecutor;
+
+    private final Set<String> destinations;
+
+    private final long windowMillis;
+
+    private final int maxMessages;
+
+    private final int maxSize;
+
+    private final Map<String, CoalescingWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    public CoalescingWebSocketHandlerDecorator(WebSocketHandler delegate, TaskScheduler taskScheduler, Executor flushExecutor,
+                                               List<String> destinations, long windowMillis, int maxMessages, int maxSize) {
+        super(delegate);
+        this.taskScheduler = taskScheduler;
+        this.flushExecutor = flushExecutor;
+        this.destinations = new HashSet<>(destinations);
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        CoalescingWebSocketSessionDecorator coalescingSession =
+                new CoalescingWebSocketSessionDecorator(session, taskScheduler, flushExecutor, destinations,
+                        windowMillis, maxMessages, maxSize);
+        sessions.put(session.getId(), coalescingSession);
+        super.afterConnectionEstablished(coalescingSession);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        CoalescingWebSocketSessionDecorator coalescingSession = sessions.remove(session.getId());
+        if (coalescingSession != null) {
+            coalescingSession.dispose();
+        }
+        super.afterConnectionClosed(session, closeStatus);
+    }
+}
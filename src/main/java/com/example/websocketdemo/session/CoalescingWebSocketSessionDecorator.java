@@ -0,0 +1,171 @@
+package com.example.websocketdemo.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A WebSocketSession that packs the text messages sent within a short window into one WebSocket message.
+ *
+ * The STOMP frames end with a NULL octet, so several of them can be sent back to back in one WebSocket message,
+ * and both stomp.js and Spring's StompDecoder read them one by one. Over SockJS, the packed message is sent as one a[...] frame.
+ * So a burst of @SendTo(...) replies costs one write (and one SockJS frame) per session, instead of one per reply.
+ *
+ * Only the MESSAGE frames to the high-fanout destinations (websocket.stomp.coalescing.destination.list) are packed.
+ * The first pending message starts the window. The pending messages are sent when the window is over,
+ * or at once if there are maxMessages of them, or if one more would make them longer than maxSize characters.
+ * Anything else (the other frames, binary messages, closing the session) sends the pending messages first, so the order is preserved.
+ *
+ * The TaskScheduler only tells when the window is over: the pending messages are sent by the flushExecutor,
+ * so a client that is slow to read holds up a thread of that executor, not the timers of the other sessions.
+ */
+public class CoalescingWebSocketSessionDecorator extends WebSocketSessionDecorator {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String STOMP_MESSAGE_COMMAND = "MESSAGE\n";
+
+    private static final String DESTINATION_HEADER = "\ndestination:";
+
+    private final TaskScheduler taskScheduler;
+
+    private final Executor flushExecutor;
+
+    private final Set<String> destinations;
+
+    private final long windowMillis;
+
+    private final int maxMessages;
+
+    private final int maxSize;
+
+    // Guards the fields below, and the sending to the delegate session.
+    private final Object lock = new Object();
+
+    private final StringBuilder pendingMessages = new StringBuilder();
+
+    private int pendingMessageCount;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param delegate:      The session to send the packed messages to.
+     * @param taskScheduler: TaskScheduler object that tells when the window is over.
+     * @param flushExecutor: Executor object that sends the pending messages when the window is over.
+     * @param destinations:  The destinations whose MESSAGE frames are packed.
+     * @param windowMillis:  How long a message may wait for the next ones.
+     * @param maxMessages:   Maximum number of messages packed together.
+     * @param maxSize:       Maximum length of the packed messages, in characters.
+     */
+    public CoalescingWebSocketSessionDecorator(WebSocketSession delegate, TaskScheduler taskScheduler, Executor flushExecutor,
+                                               Set<String> destinations, long windowMillis, int maxMessages, int maxSize) {
+        super(delegate);
+        this.taskScheduler = taskScheduler;
+        this.flushExecutor = flushExecutor;
+        this.destinations = destinations;
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        synchronized (lock) {
+            String payload = message instanceof TextMessage && message.isLast() ? ((TextMessage) message).getPayload() : null;
+            if (payload == null || !destinations.contains(destination(payload))) {
+                flushPendingMessages();
+                getDelegate().sendMessage(message);
+                return;
+            }
+            if (pendingMessageCount > 0 && pendingMessages.length() + payload.length() > maxSize) {
+                flushPendingMessages();
+            }
+            pendingMessages.append(payload);
+            pendingMessageCount++;
+            if (pendingMessageCount >= maxMessages || pendingMessages.length() >= maxSize) {
+                flushPendingMessages();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = taskScheduler.schedule(() -> flushExecutor.execute(this::flush),
+                        new Date(System.currentTimeMillis() + windowMillis));
+            }
+        }
+    }
+
+    /**
+     * Send the pending messages now. Run by the flushExecutor when the window is over.
+     */
+    public void flush() {
+        synchronized (lock) {
+            try {
+                flushPendingMessages();
+            } catch (IOException ioException) {
+                // The session is broken, the transport reports it to the handler.
+                logger.debug("Unable to send the pending messages of session {}.", getId(), ioException);
+            }
+        }
+    }
+
+    /**
+     * Forget the pending messages, when the session is closed by the frontend client.
+     */
+    public void dispose() {
+        synchronized (lock) {
+            cancelScheduledFlush();
+            pendingMessages.setLength(0);
+            pendingMessageCount = 0;
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        flush();
+        dispose();
+        super.close(status);
+    }
+
+    private void flushPendingMessages() throws IOException {
+        cancelScheduledFlush();
+        if (pendingMessageCount == 0) {
+            return;
+        }
+        TextMessage packedMessage = new TextMessage(pendingMessages.toString());
+        pendingMessages.setLength(0);
+        pendingMessageCount = 0;
+        if (getDelegate().isOpen()) {
+            getDelegate().sendMessage(packedMessage);
+        }
+    }
+
+    /**
+     * @return The destination header of a STOMP MESSAGE frame, or null for the other frames.
+     */
+    private static String destination(String frame) {
+        if (!frame.startsWith(STOMP_MESSAGE_COMMAND)) {
+            return null;
+        }
+        int headersEnd = frame.indexOf("\n\n");
+        int start = frame.indexOf(DESTINATION_HEADER);
+        if (headersEnd < 0 || start < 0 || start > headersEnd) {
+            return null;
+        }
+        start += DESTINATION_HEADER.length();
+        return frame.substring(start, frame.indexOf('\n', start));
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+}
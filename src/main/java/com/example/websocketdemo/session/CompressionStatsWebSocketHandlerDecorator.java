@@ -0,0 +1,69 @@
+package com.example.websocketdemo.session;
+
+import com.example.websocketdemo.config.WebSocketCompressionMetrics;
+import com.example.websocketdemo.handshake.PerMessageDeflateHandshakeHandler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decorates a WebSocket handler, so that every session that negotiated permessage-deflate is a CompressionStatsWebSocketSessionDecorator.
+ * The other sessions are passed as they are.
+ */
+public class CompressionStatsWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final WebSocketCompressionMetrics.EndpointMetrics endpointMetrics;
+
+    private final int minSize;
+
+    private final int sampleRate;
+
+    private final Map<String, CompressionStatsWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    public CompressionStatsWebSocketHandlerDecorator(WebSocketHandler delegate, WebSocketCompressionMetrics.EndpointMetrics endpointMetrics,
+                                                     int minSize, int sampleRate) {
+        super(delegate);
+        this.endpointMetrics = endpointMetrics;
+        this.minSize = minSize;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        if (!isCompressed(session)) {
+            super.afterConnectionEstablished(session);
+            return;
+        }
+        endpointMetrics.sessionNegotiated();
+        CompressionStatsWebSocketSessionDecorator compressionStatsSession =
+                new CompressionStatsWebSocketSessionDecorator(session, endpointMetrics, minSize, sampleRate);
+        sessions.put(session.getId(), compressionStatsSession);
+        super.afterConnectionEstablished(compressionStatsSession);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        CompressionStatsWebSocketSessionDecorator compressionStatsSession = sessions.remove(session.getId());
+        if (compressionStatsSession != null) {
+            double compressionRatio = compressionStatsSession.getCompressionRatio();
+            if (compressionRatio >= 0) {
+                endpointMetrics.recordSessionRatio(compressionRatio);
+            }
+        }
+        super.afterConnectionClosed(session, closeStatus);
+    }
+
+    private static boolean isCompressed(WebSocketSession session) {
+        for (WebSocketExtension extension : session.getExtensions()) {
+            if (PerMessageDeflateHandshakeHandler.PER_MESSAGE_DEFLATE.equalsIgnoreCase(extension.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
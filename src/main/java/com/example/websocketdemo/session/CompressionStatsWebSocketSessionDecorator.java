@@ -0,0 +1,109 @@
+package com.example.websocketdemo.session;
+
+import com.example.websocketdemo.config.WebSocketCompressionMetrics;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * A WebSocketSession that measures how well the messages sent to it are compressed by permessage-deflate.
+ *
+ * The web server deflates every message of the session, and doesn't tell how many bytes it saved.
+ * So 1 in sampleRate of the messages that are at least minSize long are deflated again here, the same way (raw deflate, sync flush),
+ * to measure the bytes saved and the CPU time it costs. The messages below minSize are only counted:
+ * for those, the deflate overhead (a few bytes and a flush) is about as large as what it saves.
+ *
+ * The samples are deflated without the sliding window of the previous messages, so the bytes saved are a lower bound
+ * when the server keeps it (websocket.compression.context-takeover=true).
+ */
+public class CompressionStatsWebSocketSessionDecorator extends WebSocketSessionDecorator {
+    // The 0x00 0x00 0xff 0xff that ends a sync flush, which permessage-deflate doesn't send.
+    private static final int SYNC_FLUSH_TRAILER_LENGTH = 4;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private static final ThreadLocal<byte[]> DEFLATE_BUFFER = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final WebSocketCompressionMetrics.EndpointMetrics endpointMetrics;
+
+    private final int minSize;
+
+    private final int sampleRate;
+
+    private final AtomicLong messageCount = new AtomicLong();
+
+    private final AtomicLong sampledUncompressedBytes = new AtomicLong();
+
+    private final AtomicLong sampledCompressedBytes = new AtomicLong();
+
+    /**
+     * @param delegate:        The session to send the messages to.
+     * @param endpointMetrics: The compression metrics of the endpoint of the session.
+     * @param minSize:         The messages shorter than this are not sampled.
+     * @param sampleRate:      1 in sampleRate of the other messages are sampled, 0 to sample none.
+     */
+    public CompressionStatsWebSocketSessionDecorator(WebSocketSession delegate, WebSocketCompressionMetrics.EndpointMetrics endpointMetrics,
+                                                     int minSize, int sampleRate) {
+        super(delegate);
+        this.endpointMetrics = endpointMetrics;
+        this.minSize = minSize;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (message instanceof TextMessage || message instanceof BinaryMessage) {
+            // For the text messages, the length is in characters. It's the same as the bytes for the JSON of the chat messages.
+            boolean belowThreshold = message.getPayloadLength() < minSize;
+            endpointMetrics.countMessage(belowThreshold);
+            if (!belowThreshold && sampleRate > 0 && messageCount.getAndIncrement() % sampleRate == 0) {
+                sample(message);
+            }
+        }
+        super.sendMessage(message);
+    }
+
+    /**
+     * @return The compressed / uncompressed size of the sampled messages, or -1 if no message was sampled.
+     */
+    public double getCompressionRatio() {
+        long uncompressedBytes = sampledUncompressedBytes.get();
+        return uncompressedBytes > 0 ? (double) sampledCompressedBytes.get() / uncompressedBytes : -1;
+    }
+
+    private void sample(WebSocketMessage<?> message) {
+        byte[] payload;
+        if (message instanceof TextMessage) {
+            payload = ((TextMessage) message).asBytes();
+        } else {
+            ByteBuffer byteBuffer = ((BinaryMessage) message).getPayload().duplicate();
+            payload = new byte[byteBuffer.remaining()];
+            byteBuffer.get(payload);
+        }
+
+        long startNanos = System.nanoTime();
+        Deflater deflater = DEFLATER.get();
+        byte[] deflateBuffer = DEFLATE_BUFFER.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        int compressedBytes = 0;
+        int deflatedBytes;
+        do {
+            deflatedBytes = deflater.deflate(deflateBuffer, 0, deflateBuffer.length, Deflater.SYNC_FLUSH);
+            compressedBytes += deflatedBytes;
+        } while (deflatedBytes == deflateBuffer.length);
+        compressedBytes -= SYNC_FLUSH_TRAILER_LENGTH;
+        long deflateNanos = System.nanoTime() - startNanos;
+
+        sampledUncompressedBytes.addAndGet(payload.length);
+        sampledCompressedBytes.addAndGet(compressedBytes);
+        endpointMetrics.recordSample(payload.length, compressedBytes, deflateNanos);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.websocketdemo.session;
+
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.util.Map;
+
+/**
+ * Decorates the STOMP WebSocket handler, to record in the session attributes whether the session is a SockJS one.
+ * The session attributes are copied into every STOMP message of the session (simpSessionAttributes),
+ * so the channel interceptors can tell it without the WebSocketSession itself.
+ */
+public class SessionTransportWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
+    /**
+     * Session attribute, Boolean.TRUE if the session is SockJS (which can only carry text frames).
+     */
+    public static final String SOCK_JS_SESSION_ATTRIBUTE = "websocket.transport.sockJs";
+
+    public SessionTransportWebSocketHandlerDecorator(WebSocketHandler delegate) {
+        super(delegate);
+    }
+
+    /**
+     * @param sessionAttributes: The attributes of a session, or null.
+     * @return true if the session is a plain WebSocket one, that can receive binary frames.
+     */
+    public static boolean isBinaryCapable(Map<String, Object> sessionAttributes) {
+        return sessionAttributes != null && Boolean.FALSE.equals(sessionAttributes.get(SOCK_JS_SESSION_ATTRIBUTE));
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        session.getAttributes().put(SOCK_JS_SESSION_ATTRIBUTE, WebSocketSessionDecorator.unwrap(session) instanceof SockJsSession);
+        super.afterConnectionEstablished(session);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.websocketdemo.session;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when the SlowConsumerWebSocketSessionDecorator applies its policy to a session that doesn't keep up
+ * with the messages sent to it.
+ */
+public class SlowConsumerEvent extends ApplicationEvent {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The limit that the waiting messages were over.
+     */
+    public enum Trigger {
+        BUFFER_SIZE,
+        LATENCY
+    }
+
+    private final String sessionId;
+
+    private final SlowConsumerPolicy policy;
+
+    private final Trigger trigger;
+
+    private final int evictedMessageCount;
+
+    private final long bufferSize;
+
+    private final long latencyMillis;
+
+    /**
+     * @param source:              The SlowConsumerWebSocketSessionDecorator.
+     * @param sessionId:           ID of the WebSocket session.
+     * @param policy:              The policy that was applied.
+     * @param trigger:             The limit that the waiting messages were over.
+     * @param evictedMessageCount: Number of messages that were dropped.
+     * @param bufferSize:          Size of the waiting messages before the policy was applied.
+     * @param latencyMillis:       How long the oldest waiting message had waited.
+     */
+    public SlowConsumerEvent(Object source, String sessionId, SlowConsumerPolicy policy, Trigger trigger,
+                             int evictedMessageCount, long bufferSize, long latencyMillis) {
+        super(source);
+        this.sessionId = sessionId;
+        this.policy = policy;
+        this.trigger = trigger;
+        this.evictedMessageCount = evictedMessageCount;
+        this.bufferSize = bufferSize;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public SlowConsumerPolicy getPolicy() {
+        return policy;
+    }
+
+    public Trigger getTrigger() {
+        return trigger;
+    }
+
+    public int getEvictedMessageCount() {
+        return evictedMessageCount;
+    }
+
+    public long getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+}
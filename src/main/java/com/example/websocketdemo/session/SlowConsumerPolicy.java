@@ -0,0 +1,17 @@
+package com.example.websocketdemo.session;
+
+/**
+ * What the SlowConsumerWebSocketSessionDecorator does when the messages waiting to be sent to a session
+ * are over the size limit, or the oldest one has waited longer than the latency limit (websocket.slow-consumer.policy).
+ */
+public enum SlowConsumerPolicy {
+    // Drop the oldest waiting messages until the others are within the limits.
+    DROP_OLDEST,
+    // Drop the new message, the waiting ones are sent.
+    DROP_NEWEST,
+    // Drop the waiting messages to the same destination (and subscription) as the new one, which replaces them.
+    // The messages that can't be coalesced are dropped from the oldest, like DROP_OLDEST.
+    COALESCE_LATEST,
+    // Drop all the waiting messages, and close the session with websocket.slow-consumer.close-status-code.
+    DISCONNECT
+}
@@ -0,0 +1,90 @@
+package com.example.websocketdemo.session;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Decorates a WebSocket handler, so that every session it sends to is a SlowConsumerWebSocketSessionDecorator.
+ * Registered for the STOMP endpoints in WebSocketMessageBrokerConfigurerCustomConfig.configureWebSocketTransport(...)
+ * when websocket.slow-consumer.stomp.enabled=true, and for the raw endpoints in WebSocketConfigurerCustomConfig
+ * when websocket.slow-consumer.raw.enabled=true.
+ */
+public class SlowConsumerWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final Executor executor;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final SlowConsumerPolicy policy;
+
+    private final long maxBufferSize;
+
+    private final long maxLatencyMillis;
+
+    private final CloseStatus closeStatus;
+
+    private final boolean stomp;
+
+    private final Map<String, SlowConsumerWebSocketSessionDecorator> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * See SlowConsumerWebSocketSessionDecorator for the parameters.
+     */
+    public SlowConsumerWebSocketHandlerDecorator(WebSocketHandler delegate, Executor executor, ApplicationEventPublisher eventPublisher,
+                                                 SlowConsumerPolicy policy, long maxBufferSize, long maxLatencyMillis,
+                                                 CloseStatus closeStatus, boolean stomp) {
+        super(delegate);
+        this.executor = executor;
+        this.eventPublisher = eventPublisher;
+        this.policy = policy;
+        this.maxBufferSize = maxBufferSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.closeStatus = closeStatus;
+        this.stomp = stomp;
+    }
+
+    /**
+     * @return Size of the messages waiting to be sent to all the sessions.
+     */
+    public long getBufferSize() {
+        long bufferSize = 0;
+        for (SlowConsumerWebSocketSessionDecorator session : sessions.values()) {
+            bufferSize += session.getBufferSize();
+        }
+        return bufferSize;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        SlowConsumerWebSocketSessionDecorator slowConsumerSession = new SlowConsumerWebSocketSessionDecorator(session, executor, eventPublisher,
+                policy, maxBufferSize, maxLatencyMillis, closeStatus, stomp);
+        sessions.put(session.getId(), slowConsumerSession);
+        super.afterConnectionEstablished(slowConsumerSession);
+    }
+
+    /**
+     * The messages are handled with the decorated session, so the replies sent to it are queued too.
+     */
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        WebSocketSession slowConsumerSession = sessions.get(session.getId());
+        super.handleMessage(slowConsumerSession != null ? slowConsumerSession : session, message);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        SlowConsumerWebSocketSessionDecorator slowConsumerSession = sessions.remove(session.getId());
+        if (slowConsumerSession != null) {
+            slowConsumerSession.dispose();
+        }
+        super.afterConnectionClosed(slowConsumerSession != null ? slowConsumerSession : session, closeStatus);
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.websocketdemo.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A WebSocketSession with its own queue of the messages waiting to be sent, so that a client that doesn't read them
+ * (a stalled browser tab, a bad network) is noticed and dealt with, instead of holding up the threads that send to it.
+ *
+ * sendMessage(...) only queues the message, and they are sent one at a time by a task on the Executor.
+ * When the waiting messages are over maxBufferSize (in bytes, or characters for the text messages),
+ * or the oldest one has waited longer than maxLatencyMillis, the SlowConsumerPolicy is applied,
+ * and a SlowConsumerEvent is published (see WebSocketMetrics and WebSocketEventListener).
+ *
+ * On the STOMP endpoints, only the MESSAGE frames are dropped: the CONNECTED, RECEIPT and ERROR frames and the heartbeats are always sent.
+ * The frames are coalesced by their destination and subscription headers.
+ */
+public class SlowConsumerWebSocketSessionDecorator extends WebSocketSessionDecorator {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String STOMP_MESSAGE_COMMAND = "MESSAGE\n";
+
+    // The headers of a STOMP frame are read from this many bytes at most, to find the coalescing key.
+    private static final int MAX_HEADERS_SIZE = 1024;
+
+    private final Executor executor;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final SlowConsumerPolicy policy;
+
+    private final long maxBufferSize;
+
+    private final long maxLatencyNanos;
+
+    private final CloseStatus closeStatus;
+
+    private final boolean stomp;
+
+    // Guards the fields below.
+    private final Object lock = new Object();
+
+    private final ArrayDeque<QueuedMessage> queuedMessages = new ArrayDeque<>();
+
+    private long bufferSize;
+
+    // Whether a task is sending the queued messages.
+    private boolean sending;
+
+    private boolean closing;
+
+    /**
+     * @param delegate:         The session to send the messages to.
+     * @param executor:         Executor that sends the queued messages.
+     * @param eventPublisher:   ApplicationEventPublisher object that publishes the SlowConsumerEvents.
+     * @param policy:           What to do when the queued messages are over the limits.
+     * @param maxBufferSize:    Maximum size of the queued messages.
+     * @param maxLatencyMillis: Maximum time a queued message may wait.
+     * @param closeStatus:      CloseStatus of the sessions closed by the DISCONNECT policy.
+     * @param stomp:            Whether the messages are STOMP frames, and only the MESSAGE frames may be dropped.
+     */
+    public SlowConsumerWebSocketSessionDecorator(WebSocketSession delegate, Executor executor, ApplicationEventPublisher eventPublisher,
+                                                 SlowConsumerPolicy policy, long maxBufferSize, long maxLatencyMillis,
+                                                 CloseStatus closeStatus, boolean stomp) {
+        super(delegate);
+        this.executor = executor;
+        this.eventPublisher = eventPublisher;
+        this.policy = policy;
+        this.maxBufferSize = maxBufferSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.closeStatus = closeStatus;
+        this.stomp = stomp;
+    }
+
+    /**
+     * @return Size of the messages waiting to be sent.
+     */
+    public long getBufferSize() {
+        synchronized (lock) {
+            return bufferSize;
+        }
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        QueuedMessage queuedMessage = new QueuedMessage(message, System.nanoTime(), droppable(message));
+        SlowConsumerEvent slowConsumerEvent;
+        boolean startSending = false;
+        synchronized (lock) {
+            if (closing) {
+                return;
+            }
+            slowConsumerEvent = queue(queuedMessage);
+            if (!sending && !queuedMessages.isEmpty()) {
+                sending = true;
+                startSending = true;
+            }
+        }
+        if (slowConsumerEvent != null) {
+            eventPublisher.publishEvent(slowConsumerEvent);
+            if (SlowConsumerPolicy.DISCONNECT.equals(policy)) {
+                logger.warn("Session {} doesn't keep up with its messages, it's closed with {}.", getId(), closeStatus);
+                executeOrRun(this::closeSlowConsumer);
+                return;
+            }
+        }
+        if (startSending) {
+            executeOrRun(this::sendQueuedMessages);
+        }
+    }
+
+    /**
+     * Forget the queued messages, once the session is closed.
+     */
+    public void dispose() {
+        synchronized (lock) {
+            closing = true;
+            queuedMessages.clear();
+            bufferSize = 0;
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        dispose();
+        super.close(status);
+    }
+
+    /**
+     * Queue the message, applying the policy if the queued messages are over the limits. Called with the lock held.
+     *
+     * @return The SlowConsumerEvent to publish, or null if the queued messages were within the limits.
+     */
+    private SlowConsumerEvent queue(QueuedMessage queuedMessage) {
+        SlowConsumerEvent.Trigger trigger = null;
+        if (bufferSize + queuedMessage.size > maxBufferSize) {
+            trigger = SlowConsumerEvent.Trigger.BUFFER_SIZE;
+        } else if (!queuedMessages.isEmpty() && queuedMessage.queuedNanos - queuedMessages.peekFirst().queuedNanos > maxLatencyNanos) {
+            trigger = SlowConsumerEvent.Trigger.LATENCY;
+        }
+        if (trigger == null || !queuedMessage.droppable && !SlowConsumerPolicy.DISCONNECT.equals(policy)) {
+            add(queuedMessage);
+            return null;
+        }
+        long previousBufferSize = bufferSize;
+        long latencyMillis = queuedMessages.isEmpty() ? 0
+                : TimeUnit.NANOSECONDS.toMillis(queuedMessage.queuedNanos - queuedMessages.peekFirst().queuedNanos);
+        int evictedMessageCount = 0;
+        switch (policy) {
+            case DROP_NEWEST:
+                evictedMessageCount = 1;
+                break;
+            case COALESCE_LATEST:
+                evictedMessageCount = removeSameKey(queuedMessage.coalescingKey(stomp));
+                add(queuedMessage);
+                evictedMessageCount += removeOldest(queuedMessage.queuedNanos);
+                break;
+            case DROP_OLDEST:
+                add(queuedMessage);
+                evictedMessageCount = removeOldest(queuedMessage.queuedNanos);
+                break;
+            case DISCONNECT:
+            default:
+                evictedMessageCount = queuedMessages.size() + 1;
+                queuedMessages.clear();
+                bufferSize = 0;
+                closing = true;
+                break;
+        }
+        return new SlowConsumerEvent(this, getId(), policy, trigger, evictedMessageCount, previousBufferSize, latencyMillis);
+    }
+
+    private void add(QueuedMessage queuedMessage) {
+        queuedMessages.addLast(queuedMessage);
+        bufferSize += queuedMessage.size;
+    }
+
+    /**
+     * Remove the droppable messages with the coalescing key. Called with the lock held.
+     *
+     * @return Number of messages removed.
+     */
+    private int removeSameKey(String coalescingKey) {
+        if (coalescingKey == null) {
+            return 0;
+        }
+        int removedMessageCount = 0;
+        for (Iterator<QueuedMessage> iterator = queuedMessages.iterator(); iterator.hasNext(); ) {
+            QueuedMessage queuedMessage = iterator.next();
+            if (queuedMessage.droppable && coalescingKey.equals(queuedMessage.coalescingKey(stomp))) {
+                iterator.remove();
+                bufferSize -= queuedMessage.size;
+                removedMessageCount++;
+            }
+        }
+        return removedMessageCount;
+    }
+
+    /**
+     * Remove the oldest droppable messages, until the queued messages are within the limits (or only the newest one is left).
+     * Called with the lock held.
+     *
+     * @return Number of messages removed.
+     */
+    private int removeOldest(long nowNanos) {
+        int removedMessageCount = 0;
+        for (Iterator<QueuedMessage> iterator = queuedMessages.iterator(); iterator.hasNext() && queuedMessages.size() > 1; ) {
+            QueuedMessage queuedMessage = iterator.next();
+            if (bufferSize <= maxBufferSize && nowNanos - queuedMessage.queuedNanos <= maxLatencyNanos) {
+                break;
+            }
+            if (queuedMessage.droppable) {
+                iterator.remove();
+                bufferSize -= queuedMessage.size;
+                removedMessageCount++;
+            }
+        }
+        return removedMessageCount;
+    }
+
+    /**
+     * Send the queued messages in order, until there are none. At most one of these runs at a time per session.
+     */
+    private void sendQueuedMessages() {
+        while (true) {
+            QueuedMessage queuedMessage;
+            synchronized (lock) {
+                queuedMessage = queuedMessages.pollFirst();
+                if (queuedMessage == null) {
+                    sending = false;
+                    return;
+                }
+                bufferSize -= queuedMessage.size;
+            }
+            try {
+                if (getDelegate().isOpen()) {
+                    getDelegate().sendMessage(queuedMessage.message);
+                }
+            } catch (IOException | RuntimeException exception) {
+                // The session is broken, the transport reports it to the handler.
+                logger.debug("Unable to send a message to session {}.", getId(), exception);
+            }
+        }
+    }
+
+    private void closeSlowConsumer() {
+        try {
+            getDelegate().close(closeStatus);
+        } catch (IOException ioException) {
+            logger.debug("Unable to close session {}.", getId(), ioException);
+        }
+    }
+
+    private void executeOrRun(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException rejectedExecutionException) {
+            task.run();
+        }
+    }
+
+    /**
+     * @return true if the message may be dropped by the policy.
+     */
+    private boolean droppable(WebSocketMessage<?> message) {
+        if (!message.isLast()) {
+            return false;
+        }
+        return !stomp || STOMP_MESSAGE_COMMAND.equals(headers(message, STOMP_MESSAGE_COMMAND.length()));
+    }
+
+    /**
+     * @return The start of the message as text, at most maxLength characters, or null if it's not a text or binary message.
+     */
+    private static String headers(WebSocketMessage<?> message, int maxLength) {
+        if (message instanceof TextMessage) {
+            String payload = ((TextMessage) message).getPayload();
+            return payload.substring(0, Math.min(maxLength, payload.length()));
+        }
+        if (message instanceof BinaryMessage) {
+            ByteBuffer payload = ((BinaryMessage) message).getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(maxLength, payload.remaining())];
+            payload.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private static class QueuedMessage {
+        private final WebSocketMessage<?> message;
+
+        private final long queuedNanos;
+
+        private final boolean droppable;
+
+        private final int size;
+
+        private String coalescingKey;
+
+        QueuedMessage(WebSocketMessage<?> message, long queuedNanos, boolean droppable) {
+            this.message = message;
+            this.queuedNanos = queuedNanos;
+            this.droppable = droppable;
+            this.size = message.getPayloadLength();
+        }
+
+        /**
+         * @return The subscription and destination headers of a STOMP MESSAGE frame, or null for the other messages,
+         * which are not coalesced (COALESCE_LATEST drops them from the oldest instead).
+         */
+        String coalescingKey(boolean stomp) {
+            if (coalescingKey != null || !droppable) {
+                return coalescingKey;
+            }
+            String headers = stomp ? headers(message, MAX_HEADERS_SIZE) : null;
+            if (headers == null) {
+                return null;
+            }
+            String destination = null;
+            String subscription = null;
+            for (String header : headers.split("\n")) {
+                if (header.isEmpty()) {
+                    break;
+                }
+                if (destination == null && header.startsWith("destination:")) {
+                    destination = header.substring("destination:".length());
+                } else if (subscription == null && header.startsWith("subscription:")) {
+                    subscription = header.substring("subscription:".length());
+                }
+            }
+            if (destination != null) {
+                coalescingKey = Objects.toString(subscription, "") + '\n' + destination;
+            }
+            return coalescingKey;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.websocketdemo.stomp;
+
+import com.example.websocketdemo.model.ChatMessage;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A compact binary encoding of ChatMessage, for the clients that don't want to parse JSON (like the mobile clients):
+ *
+ * byte 0:  Version of the format (1).
+ * byte 1:  MessageType, as 1 + its ordinal (0 if null).
+ * Then the sender and the content, each as: Length + 1 in unsigned LEB128 varint (0 if null), followed by the UTF-8 bytes.
+ *
+ * For example, a JOIN of "bob" with no content is 7 bytes: 01 02 04 'b' 'o' 'b' 00, instead of 44 bytes of JSON.
+ *
+ * The senders are few and repeat a lot, so their encoded and decoded forms are interned in small caches,
+ * instead of being encoded and decoded again for every message.
+ */
+public final class ChatMessageBinaryCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final ChatMessage.MessageType[] MESSAGE_TYPES = ChatMessage.MessageType.values();
+
+    private static final int SENDER_CACHE_SIZE = 256;
+
+    // Indexed by the hash code of the sender String.
+    private static final AtomicReferenceArray<InternedSender> encodedSenders = new AtomicReferenceArray<>(SENDER_CACHE_SIZE);
+
+    // Indexed by the hash of the UTF-8 bytes of the sender.
+    private static final AtomicReferenceArray<InternedSender> decodedSenders = new AtomicReferenceArray<>(SENDER_CACHE_SIZE);
+
+    private ChatMessageBinaryCodec() {
+    }
+
+    public static byte[] encode(ChatMessage chatMessage) {
+        byte[] sender = chatMessage.getSender() != null ? internSender(chatMessage.getSender()).bytes : null;
+        byte[] content = chatMessage.getContent() != null ? chatMessage.getContent().getBytes(StandardCharsets.UTF_8) : null;
+        byte[] encoded = new byte[2 + encodedLength(sender) + encodedLength(content)];
+        encoded[0] = VERSION;
+        encoded[1] = (byte) (chatMessage.getType() != null ? chatMessage.getType().ordinal() + 1 : 0);
+        int position = writeBytes(encoded, 2, sender);
+        writeBytes(encoded, position, content);
+        return encoded;
+    }
+
+    /**
+     * @throws MessageConversionException If the bytes are not a ChatMessage in this format.
+     */
+    public static ChatMessage decode(byte[] encoded) {
+        if (encoded.length < 4 || encoded[0] != VERSION) {
+            throw new MessageConversionException("Not a binary ChatMessage of version " + VERSION);
+        }
+        int type = encoded[1] & 0xFF;
+        if (type > MESSAGE_TYPES.length) {
+            throw new MessageConversionException("Unknown ChatMessage type: " + type);
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setType(type > 0 ? MESSAGE_TYPES[type - 1] : null);
+
+        int[] position = {2};
+        int senderLength = readLength(encoded, position);
+        if (senderLength >= 0) {
+            chatMessage.setSender(internSender(encoded, position[0], senderLength));
+            position[0] += senderLength;
+        }
+        int contentLength = readLength(encoded, position);
+        if (contentLength >= 0) {
+            chatMessage.setContent(new String(encoded, position[0], contentLength, StandardCharsets.UTF_8));
+            position[0] += contentLength;
+        }
+        if (position[0] != encoded.length) {
+            throw new MessageConversionException("Unexpected bytes after the binary ChatMessage");
+        }
+        return chatMessage;
+    }
+
+    private static int encodedLength(byte[] bytes) {
+        int value = bytes != null ? bytes.length + 1 : 0;
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length + (bytes != null ? bytes.length : 0);
+    }
+
+    private static int writeBytes(byte[] target, int position, byte[] bytes) {
+        int value = bytes != null ? bytes.length + 1 : 0;
+        while ((value & ~0x7F) != 0) {
+            target[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        if (bytes != null) {
+            System.arraycopy(bytes, 0, target, position, bytes.length);
+            position += bytes.length;
+        }
+        return position;
+    }
+
+    /**
+     * @return The length of the next field, or -1 if it's null. position[0] is moved to the first byte of the field.
+     */
+    private static int readLength(byte[] encoded, int[] position) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= encoded.length) {
+                throw new MessageConversionException("Truncated binary ChatMessage");
+            }
+            byte b = encoded[position[0]++];
+            // The 5th byte only has the 4 high bits of the 32-bit value left, and is the last one.
+            if (shift == 28 && (b & 0xFF) > 0x0F) {
+                throw new MessageConversionException("Malformed length in binary ChatMessage");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                int length = value - 1;
+                if (length < -1) {
+                    throw new MessageConversionException("Malformed length in binary ChatMessage");
+                }
+                if (length > encoded.length - position[0]) {
+                    throw new MessageConversionException("Truncated binary ChatMessage");
+                }
+                return length;
+            }
+        }
+        throw new MessageConversionException("Malformed length in binary ChatMessage");
+    }
+
+    private static InternedSender internSender(String sender) {
+        int slot = sender.hashCode() & (SENDER_CACHE_SIZE - 1);
+        InternedSender internedSender = encodedSenders.get(slot);
+        if (internedSender == null || !internedSender.value.equals(sender)) {
+            internedSender = new InternedSender(sender, sender.getBytes(StandardCharsets.UTF_8));
+            encodedSenders.set(slot, internedSender);
+        }
+        return internedSender;
+    }
+
+    private static String internSender(byte[] encoded, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + encoded[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SENDER_CACHE_SIZE - 1);
+        InternedSender internedSender = decodedSenders.get(slot);
+        if (internedSender != null && internedSender.matches(encoded, offset, length)) {
+            return internedSender.value;
+        }
+        String sender = new String(encoded, offset, length, StandardCharsets.UTF_8);
+        decodedSenders.set(slot, new InternedSender(sender, Arrays.copyOfRange(encoded, offset, offset + length)));
+        return sender;
+    }
+
+    private static class InternedSender {
+        private final String value;
+
+        private final byte[] bytes;
+
+        InternedSender(String value, byte[] bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+
+        boolean matches(byte[] encoded, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != encoded[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
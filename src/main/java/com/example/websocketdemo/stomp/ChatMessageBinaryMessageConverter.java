@@ -0,0 +1,61 @@
+package com.example.websocketdemo.stomp;
+
+import com.example.websocketdemo.model.ChatMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+import java.util.Collections;
+
+/**
+ * A MessageConverter between ChatMessage and its binary encoding (ChatMessageBinaryCodec),
+ * for the frames with content-type: application/octet-stream;format=chat-message
+ *
+ * The octet-stream type is what makes the StompSubProtocolHandler send the frame as a binary WebSocket message,
+ * instead of a text one (which would break the bytes that are not UTF-8).
+ * The content type must be given (strict match), so the frames without content-type are left to the JSON converter.
+ */
+public class ChatMessageBinaryMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType CHAT_MESSAGE_BINARY_MIME_TYPE =
+            new MimeType("application", "octet-stream", Collections.singletonMap("format", "chat-message"));
+
+    public ChatMessageBinaryMessageConverter() {
+        super(CHAT_MESSAGE_BINARY_MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    /**
+     * @param mimeType: The content type of a frame, or null.
+     * @return true if the frame is a ChatMessage in the binary encoding.
+     */
+    public static boolean isChatMessageBinary(MimeType mimeType) {
+        return mimeType != null && CHAT_MESSAGE_BINARY_MIME_TYPE.getType().equals(mimeType.getType())
+                && CHAT_MESSAGE_BINARY_MIME_TYPE.getSubtype().equals(mimeType.getSubtype())
+                && CHAT_MESSAGE_BINARY_MIME_TYPE.getParameter("format").equals(mimeType.getParameter("format"));
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ChatMessage.class.equals(clazz);
+    }
+
+    /**
+     * Plain application/octet-stream frames are left to the ByteArrayMessageConverter, only the ones with format=chat-message are read.
+     */
+    @Override
+    protected boolean canConvertFrom(Message<?> message, Class<?> targetClass) {
+        return super.canConvertFrom(message, targetClass) && isChatMessageBinary(getMimeType(message.getHeaders()));
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        return ChatMessageBinaryCodec.decode((byte[]) message.getPayload());
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return ChatMessageBinaryCodec.encode((ChatMessage) payload);
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.websocketdemo.stomp;
+
+import com.example.websocketdemo.interceptor.ResumableSessionChannelInterceptor;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A StompEncoder for the broadcasts: The MESSAGE frames of one broadcast only differ in their subscription and message-id headers,
+ * and in the session-sequence header for the resumable sessions (see ResumableSessionChannelInterceptor).
+ *
+ * The SimpleBrokerMessageHandler gives the same payload (byte[]) object to the message of every subscriber.
+ * So the first MESSAGE frame of a payload is encoded once, without the per-subscriber headers, into a FrameTemplate,
+ * which is kept in a small cache keyed by the identity of the payload.
+ * The frame of every other subscriber is the FrameTemplate with the headers inserted: one exact-size byte[] and a few array copies,
+ * instead of encoding the command, every header and the body again through a growing ByteArrayOutputStream.
+ * The headers are inserted where StompEncoder writes them, in the order of the native headers, so the frames are the same bytes.
+ *
+ * A FrameTemplate is only used if the other headers of the message are the same as the ones it was encoded with, in the same order.
+ * The frames with a payload shorter than minPayloadSize, and all the other commands, are encoded by StompEncoder as usual.
+ */
+public class SharedPayloadStompEncoder extends StompEncoder {
+
+    private static final int CACHE_SIZE = 64;
+
+    private static final Set<String> PER_SUBSCRIBER_HEADERS = new HashSet<>(Arrays.asList(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER,
+            StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER, ResumableSessionChannelInterceptor.SESSION_SEQUENCE_HEADER));
+
+    private static final byte LF = '\n';
+
+    private final int minPayloadSize;
+
+    // Indexed by the identity hash code of the payload. A slot is replaced by the FrameTemplate of the next payload that falls in it.
+    private final AtomicReferenceArray<FrameTemplate> frameTemplates = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    /**
+     * @param minPayloadSize: Size of the smallest payload that is worth a FrameTemplate, in bytes.
+     */
+    public SharedPayloadStompEncoder(int minPayloadSize) {
+        this.minPayloadSize = minPayloadSize;
+    }
+
+    @Override
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (payload.length < minPayloadSize
+                || !SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(headers))
+                || !StompCommand.MESSAGE.equals(StompHeaderAccessor.getCommand(headers))) {
+            return super.encode(headers, payload);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (nativeHeaders == null || !nativeHeaders.containsKey(StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER)
+                || !nativeHeaders.containsKey(StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER)) {
+            return super.encode(headers, payload);
+        }
+        // The per-subscriber header lines, in the order StompEncoder writes them. The session-sequence one is only in the frames of the resumable sessions.
+        List<byte[]> perSubscriberHeaders = new ArrayList<>(3);
+        for (Map.Entry<String, List<String>> nativeHeader : nativeHeaders.entrySet()) {
+            if (PER_SUBSCRIBER_HEADERS.contains(nativeHeader.getKey())) {
+                if (nativeHeader.getValue().size() != 1) {
+                    return super.encode(headers, payload);
+                }
+                perSubscriberHeaders.add((nativeHeader.getKey() + ":" + escape(nativeHeader.getValue().get(0))).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int slot = System.identityHashCode(payload) & (CACHE_SIZE - 1);
+        FrameTemplate frameTemplate = frameTemplates.get(slot);
+        if (frameTemplate == null || !frameTemplate.matches(payload, nativeHeaders)) {
+            frameTemplate = createFrameTemplate(headers, nativeHeaders, payload, perSubscriberHeaders.size());
+            frameTemplates.set(slot, frameTemplate);
+        }
+        return frameTemplate.toFrame(perSubscriberHeaders);
+    }
+
+    private FrameTemplate createFrameTemplate(Map<String, Object> headers, Map<String, List<String>> nativeHeaders, byte[] payload,
+                                              int perSubscriberHeaderCount) {
+        Map<String, List<String>> sharedNativeHeaders = new LinkedHashMap<>();
+        // For each per-subscriber header, the number of shared header lines StompEncoder writes before it.
+        int[] lineIndexes = new int[perSubscriberHeaderCount];
+        int lines = 0;
+        int perSubscriberHeader = 0;
+        for (Map.Entry<String, List<String>> nativeHeader : nativeHeaders.entrySet()) {
+            if (PER_SUBSCRIBER_HEADERS.contains(nativeHeader.getKey())) {
+                lineIndexes[perSubscriberHeader++] = lines;
+            } else {
+                sharedNativeHeaders.put(nativeHeader.getKey(), nativeHeader.getValue());
+                // StompEncoder writes its own content-length header, after all the native ones.
+                if (!StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(nativeHeader.getKey())) {
+                    lines += nativeHeader.getValue().size();
+                }
+            }
+        }
+        Map<String, Object> sharedHeaders = new LinkedHashMap<>(headers);
+        sharedHeaders.put(NativeMessageHeaderAccessor.NATIVE_HEADERS, sharedNativeHeaders);
+        // The frame without the per-subscriber headers: "MESSAGE\n", the shared headers, "\n", the body and the NULL octet.
+        // The header values are escaped, so every LF before the body ends a line.
+        byte[] frame = super.encode(sharedHeaders, payload);
+        int[] insertAt = new int[perSubscriberHeaderCount];
+        int position = indexOfLf(frame, 0) + 1;
+        int line = 0;
+        for (int i = 0; i < perSubscriberHeaderCount; i++) {
+            for (; line < lineIndexes[i]; line++) {
+                position = indexOfLf(frame, position) + 1;
+            }
+            insertAt[i] = position;
+        }
+        return new FrameTemplate(payload, new ArrayList<>(nativeHeaders.keySet()), sharedNativeHeaders, frame, insertAt);
+    }
+
+    private static int indexOfLf(byte[] frame, int from) {
+        for (int i = from; i < frame.length; i++) {
+            if (frame[i] == LF) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a STOMP frame");
+    }
+
+    /**
+     * The escaping of the STOMP 1.2 header values, same as StompEncoder does for the MESSAGE frames.
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '\\' ? "\\\\" : c == ':' ? "\\c" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : null;
+            if (replacement != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 8).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (replacement != null) {
+                    escaped.append(replacement);
+                } else {
+                    escaped.append(c);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    /**
+     * The encoded frame of a payload without the per-subscriber headers, shared by all the subscribers of the broadcast.
+     * It's never modified once created, so it can be used by many clientOutbound threads at once.
+     */
+    private static class FrameTemplate {
+        private final byte[] payload;
+
+        // All the native header names, in the order they were encoded.
+        private final List<String> headerNames;
+
+        private final Map<String, List<String>> sharedNativeHeaders;
+
+        private final byte[] frame;
+
+        // Indexes in the frame where the per-subscriber header lines are inserted, in order.
+        private final int[] insertAt;
+
+        FrameTemplate(byte[] payload, List<String> headerNames, Map<String, List<String>> sharedNativeHeaders, byte[] frame, int[] insertAt) {
+            this.payload = payload;
+            this.headerNames = headerNames;
+            this.sharedNativeHeaders = sharedNativeHeaders;
+            this.frame = frame;
+            this.insertAt = insertAt;
+        }
+
+        boolean matches(byte[] otherPayload, Map<String, List<String>> nativeHeaders) {
+            if (payload != otherPayload || nativeHeaders.size() != headerNames.size()) {
+                return false;
+            }
+            int i = 0;
+            for (Map.Entry<String, List<String>> nativeHeader : nativeHeaders.entrySet()) {
+                if (!headerNames.get(i++).equals(nativeHeader.getKey())) {
+                    return false;
+                }
+                List<String> sharedValues = sharedNativeHeaders.get(nativeHeader.getKey());
+                if (sharedValues != null && !sharedValues.equals(nativeHeader.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param perSubscriberHeaders: The per-subscriber header lines without their LF, one for each index of insertAt.
+         */
+        byte[] toFrame(List<byte[]> perSubscriberHeaders) {
+            int length = frame.length;
+            for (byte[] perSubscriberHeader : perSubscriberHeaders) {
+                length += perSubscriberHeader.length + 1;
+            }
+            byte[] result = new byte[length];
+            int from = 0;
+            int position = 0;
+            for (int i = 0; i < insertAt.length; i++) {
+                System.arraycopy(frame, from, result, position, insertAt[i] - from);
+                position += insertAt[i] - from;
+                from = insertAt[i];
+                byte[] perSubscriberHeader = perSubscriberHeaders.get(i);
+                System.arraycopy(perSubscriberHeader, 0, result, position, perSubscriberHeader.length);
+                position += perSubscriberHeader.length;
+                result[position++] = LF;
+            }
+            System.arraycopy(frame, from, result, position, frame.length - from);
+            return result;
+        }
+    }
+}
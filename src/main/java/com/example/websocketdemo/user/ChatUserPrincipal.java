@@ -0,0 +1,37 @@
+package com.example.websocketdemo.user;
+
+import java.security.Principal;
+import java.util.Objects;
+
+/**
+ * The user of a STOMP session, named by the login header of its CONNECT frame (see LoginPrincipalChannelInterceptor).
+ * The messages sent to /user/{name}/queue/... are delivered to all the sessions of the user with that name.
+ */
+public class ChatUserPrincipal implements Principal {
+
+    private final String name;
+
+    public ChatUserPrincipal(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ChatUserPrincipal && name.equals(((ChatUserPrincipal) other).name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name);
+    }
+
+    @Override
+    public String toString() {
+        return "ChatUserPrincipal[" + name + "]";
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.websocketdemo.user;
+
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpSubscription;
+import org.springframework.messaging.simp.user.SimpSubscriptionMatcher;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The users connected to this node and their sessions (one per device or browser tab), looked up by the
+ * UserDestinationResolver when a message is sent to /user/{name}/queue/..., to find the sessions to deliver it to.
+ *
+ * Spring's DefaultSimpUserRegistry updates all the users under one lock, so every CONNECT and DISCONNECT of a mass reconnect
+ * waits for the others. Here, the users are split into shards by the hash of their name, each one with its own lock,
+ * so only the sessions of the users of the same shard wait for each other. The lookups take no lock at all:
+ * resolving a user destination costs a map lookup, whatever the number of users connected.
+ *
+ * The sessions are added and removed by the UserRegistryChannelInterceptor, with the sessionId the broker knows them by
+ * (the one of their resumable session, if they have one). See SimpUserRegistryCustomizer for how it replaces Spring's registry.
+ */
+public class ShardedSimpUserRegistry implements SimpUserRegistry {
+
+    private final Shard[] shards;
+
+    private final int shardMask;
+
+    private final Map<String, LocalSimpSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * @param shards: Number of shards, rounded up to a power of two.
+     */
+    public ShardedSimpUserRegistry(int shards) {
+        this.shards = new Shard[shards > 1 ? Integer.highestOneBit(shards - 1) << 1 : 1];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.shardMask = this.shards.length - 1;
+    }
+
+    /**
+     * @param userName:  The name of the principal of the session.
+     * @param sessionId: ID of the session that has connected.
+     */
+    public void addSession(String userName, String sessionId) {
+        Shard shard = shard(userName);
+        synchronized (shard) {
+            LocalSimpUser user = shard.users.computeIfAbsent(userName, LocalSimpUser::new);
+            LocalSimpSession session = user.sessions.get(sessionId);
+            if (session == null) {
+                session = new LocalSimpSession(sessionId, user);
+                user.sessions.put(sessionId, session);
+            }
+            sessions.put(sessionId, session);
+        }
+    }
+
+    /**
+     * @param sessionId: ID of the session that has disconnected. Its user is removed with its last session.
+     */
+    public void removeSession(String sessionId) {
+        LocalSimpSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return;
+        }
+        LocalSimpUser user = session.user;
+        Shard shard = shard(user.name);
+        synchronized (shard) {
+            user.sessions.remove(sessionId);
+            if (user.sessions.isEmpty()) {
+                shard.users.remove(user.name, user);
+            }
+        }
+    }
+
+    public void addSubscription(String sessionId, String subscriptionId, String destination) {
+        LocalSimpSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.subscriptions.put(subscriptionId, new LocalSimpSubscription(subscriptionId, destination, session));
+        }
+    }
+
+    public void removeSubscription(String sessionId, String subscriptionId) {
+        LocalSimpSession session = sessions.get(sessionId);
+        if (session != null && subscriptionId != null) {
+            session.subscriptions.remove(subscriptionId);
+        }
+    }
+
+    /**
+     * @return Number of sessions of all the users.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    @Override
+    public SimpUser getUser(String userName) {
+        return shard(userName).users.get(userName);
+    }
+
+    @Override
+    public Set<SimpUser> getUsers() {
+        Set<SimpUser> users = new HashSet<>();
+        for (Shard shard : shards) {
+            users.addAll(shard.users.values());
+        }
+        return users;
+    }
+
+    @Override
+    public int getUserCount() {
+        int userCount = 0;
+        for (Shard shard : shards) {
+            userCount += shard.users.size();
+        }
+        return userCount;
+    }
+
+    @Override
+    public Set<SimpSubscription> findSubscriptions(SimpSubscriptionMatcher matcher) {
+        Set<SimpSubscription> subscriptions = new HashSet<>();
+        for (LocalSimpSession session : sessions.values()) {
+            for (SimpSubscription subscription : session.subscriptions.values()) {
+                if (matcher.match(subscription)) {
+                    subscriptions.add(subscription);
+                }
+            }
+        }
+        return subscriptions;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedSimpUserRegistry[shards=" + shards.length + ", users=" + getUserCount() + ", sessions=" + getSessionCount() + "]";
+    }
+
+    private Shard shard(String userName) {
+        int hash = userName.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & shardMask];
+    }
+
+    /**
+     * The users of a shard. It's locked to add and remove the sessions, not to read them.
+     */
+    private static class Shard {
+        private final Map<String, LocalSimpUser> users = new ConcurrentHashMap<>();
+    }
+
+    private static class LocalSimpUser implements SimpUser {
+        private final String name;
+
+        private final Map<String, LocalSimpSession> sessions = new ConcurrentHashMap<>(2);
+
+        LocalSimpUser(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean hasSessions() {
+            return !sessions.isEmpty();
+        }
+
+        @Override
+        public SimpSession getSession(String sessionId) {
+            return sessionId != null ? sessions.get(sessionId) : null;
+        }
+
+        @Override
+        public Set<SimpSession> getSessions() {
+            return new HashSet<SimpSession>(sessions.values());
+        }
+
+        @Override
+        public String toString() {
+            return "name=" + name + ", sessions=" + sessions.keySet();
+        }
+    }
+
+    private static class LocalSimpSession implements SimpSession {
+        private final String id;
+
+        private final LocalSimpUser user;
+
+        private final Map<String, SimpSubscription> subscriptions = new ConcurrentHashMap<>(4);
+
+        LocalSimpSession(String id, LocalSimpUser user) {
+            this.id = id;
+            this.user = user;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public SimpUser getUser() {
+            return user;
+        }
+
+        @Override
+        public Set<SimpSubscription> getSubscriptions() {
+            return Collections.unmodifiableSet(new HashSet<>(subscriptions.values()));
+        }
+
+        @Override
+        public String toString() {
+            return "id=" + id + ", subscriptions=" + subscriptions.keySet();
+        }
+    }
+
+    private static class LocalSimpSubscription implements SimpSubscription {
+        private final String id;
+
+        private final String destination;
+
+        private final LocalSimpSession session;
+
+        LocalSimpSubscription(String id, String destination, LocalSimpSession session) {
+            this.id = id;
+            this.destination = destination;
+            this.session = session;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public SimpSession getSession() {
+            return session;
+        }
+
+        @Override
+        public String getDestination() {
+            return destination;
+        }
+
+        @Override
+        public String toString() {
+            return "id=" + id + ", destination=" + destination;
+        }
+    }
+}
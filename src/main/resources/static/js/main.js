@@ -7,10 +7,32 @@ var messageForm = document.querySelector('#messageForm');
 var messageInput = document.querySelector('#message');
 var messageArea = document.querySelector('#messageArea');
 var connectingElement = document.querySelector('.connecting');
+var onlineUsersElement = document.querySelector('#onlineUsers');
 
 var stompClient = null;
 var username = null;
 
+// The session is resumable: if the connection is lost, the client reconnects with the token,
+// and gets the messages it has missed, without leaving and joining the room again.
+var resumeToken = null;
+var lastSequence = 0;
+var receivedSequences = {};
+var unacknowledgedCount = 0;
+var reconnectAttempts = 0;
+var maxReconnectAttempts = 10;
+var reconnectDelayMillis = 2000;
+
+// The CONNECT frame is authenticated by a token issued for the username, renewed when it's about to expire.
+var accessToken = null;
+var accessTokenExpiresAt = 0;
+var accessTokenRenewalMillis = 60000;
+
+// The users online in the public room: a snapshot, then the deltas newer than it.
+// The deltas received before the snapshot are kept until it comes.
+var onlineUsers = null;
+var presenceVersion = 0;
+var pendingPresenceDeltas = [];
+
 var colors = [
     '#2196F3', '#32c787', '#00BCD4', '#ff5652',
     '#ffc107', '#ff85af', '#FF9800', '#39bbb0'
@@ -23,35 +45,129 @@ function connect(event) {
         usernamePage.classList.add('hidden');
         chatPage.classList.remove('hidden');
 
+        // The token names the user, so the private messages to it reach all of its sessions.
+        // The login only does if the server trusts it (websocket.stomp.login-principal.enabled).
+        openConnection({resume: 'true', login: username});
+    }
+    event.preventDefault();
+}
+
+
+function openConnection(headers) {
+    withAccessToken(function () {
+        if (accessToken) {
+            headers['Authorization'] = 'Bearer ' + accessToken;
+        }
         var socket = new SockJS('/ws');
         stompClient = Stomp.over(socket);
 
-        stompClient.connect({}, onConnected, onError);
+        stompClient.connect(headers, onConnected, onError);
+    });
+}
+
+
+// Without a token (the server only issues them with the dev profile), the client connects with its login only.
+function withAccessToken(callback) {
+    if (accessToken && Date.now() < accessTokenExpiresAt - accessTokenRenewalMillis) {
+        callback();
+        return;
     }
-    event.preventDefault();
+    var request = new XMLHttpRequest();
+    request.open('POST', '/auth/token');
+    request.setRequestHeader('Content-Type', 'application/x-www-form-urlencoded');
+    request.onload = function () {
+        if (request.status === 200) {
+            var response = JSON.parse(request.responseText);
+            accessToken = response.token;
+            accessTokenExpiresAt = response.expiresAt;
+        }
+        callback();
+    };
+    request.onerror = callback;
+    request.send('username=' + encodeURIComponent(username));
 }
 
 
-function onConnected() {
-    // Subscribe to the Public Topic
-    stompClient.subscribe('/topic/public', onMessageReceived);
+function onConnected(frame) {
+    var resumed = frame.headers['resumed'] === 'true';
+    resumeToken = frame.headers['resume-token'] || null;
+    reconnectAttempts = 0;
+
+    // Subscribe to the Public Topic. A resumed session is still subscribed, this only registers the callback again.
+    stompClient.subscribe('/topic/public', onMessageReceived, {id: 'public'});
+    stompClient.subscribe('/topic/presence.public', onPresenceDeltaReceived, {id: 'presence'});
+    stompClient.subscribe('/user/queue/messages', onMessageReceived, {id: 'private'});
 
-    // Tell your username to the server
-    stompClient.send("/app/chat.addUser",
-        {},
-        JSON.stringify({sender: username, type: 'JOIN'})
-    )
+    if (!resumed) {
+        lastSequence = 0;
+        receivedSequences = {};
+        onlineUsers = null;
+        pendingPresenceDeltas = [];
+
+        // Tell your username to the server
+        stompClient.send("/app/chat.addUser",
+            {},
+            JSON.stringify({sender: username, type: 'JOIN'})
+        )
+    }
+
+    // The snapshot is sent back once, to this subscription only. A resumed session may have lost it with the connection.
+    if (onlineUsers === null) {
+        var snapshotSubscription = stompClient.subscribe('/app/presence.public', function (payload) {
+            snapshotSubscription.unsubscribe();
+            onPresenceSnapshotReceived(payload);
+        }, {id: 'presence-snapshot'});
+    }
 
     connectingElement.classList.add('hidden');
 }
 
 
 function onError(error) {
+    if (resumeToken && reconnectAttempts < maxReconnectAttempts) {
+        reconnectAttempts++;
+        connectingElement.textContent = 'Connection lost, reconnecting...';
+        connectingElement.classList.remove('hidden');
+        setTimeout(function () {
+            openConnection({'resume-token': resumeToken, 'resume-sequence': String(lastSequence), login: username});
+        }, reconnectDelayMillis);
+        return;
+    }
     connectingElement.textContent = 'Could not connect to WebSocket server. Please refresh this page to try again!';
     connectingElement.style.color = 'red';
 }
 
 
+/**
+ * The messages sent again after a reconnection may come in between the new ones,
+ * so they are ordered by their session-sequence, and the ones already received are dropped.
+ * lastSequence is the last one received without a gap before it.
+ */
+function isNewMessage(payload) {
+    var sequence = parseInt(payload.headers['session-sequence'], 10);
+    if (isNaN(sequence)) {
+        return true;
+    }
+    if (sequence <= lastSequence || receivedSequences[sequence]) {
+        return false;
+    }
+    receivedSequences[sequence] = true;
+    while (receivedSequences[lastSequence + 1]) {
+        delete receivedSequences[lastSequence + 1];
+        lastSequence++;
+    }
+    // Let the server drop the messages it keeps for a reconnection, once in a while.
+    if (++unacknowledgedCount >= 16) {
+        unacknowledgedCount = 0;
+        stompClient.ack(payload.headers['message-id'], payload.headers['subscription'], {'session-sequence': String(lastSequence)});
+    }
+    return true;
+}
+
+
+/**
+ * A message that starts with @name is sent to that user only.
+ */
 function sendMessage(event) {
     var messageContent = messageInput.value.trim();
     if(messageContent && stompClient) {
@@ -60,7 +176,14 @@ function sendMessage(event) {
             content: messageInput.value,
             type: 'CHAT'
         };
-        stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(chatMessage));
+        var privateMessage = /^@(\S+)\s+([\s\S]+)$/.exec(messageContent);
+        if (privateMessage) {
+            chatMessage.recipient = privateMessage[1];
+            chatMessage.content = privateMessage[2];
+            stompClient.send("/app/chat.sendPrivateMessage", {}, JSON.stringify(chatMessage));
+        } else {
+            stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(chatMessage));
+        }
         messageInput.value = '';
     }
     event.preventDefault();
@@ -68,6 +191,9 @@ function sendMessage(event) {
 
 
 function onMessageReceived(payload) {
+    if (!isNewMessage(payload)) {
+        return;
+    }
     var message = JSON.parse(payload.body);
 
     var messageElement = document.createElement('li');
@@ -80,6 +206,10 @@ function onMessageReceived(payload) {
         message.content = message.sender + ' left!';
     } else {
         messageElement.classList.add('chat-message');
+        if (message.recipient) {
+            messageElement.classList.add('private-message');
+            message.content = (message.sender === username ? 'to ' + message.recipient : 'privately') + ': ' + message.content;
+        }
 
         var avatarElement = document.createElement('i');
         var avatarText = document.createTextNode(message.sender[0]);
@@ -105,6 +235,73 @@ function onMessageReceived(payload) {
 }
 
 
+function onPresenceSnapshotReceived(payload) {
+    if (!isNewMessage(payload)) {
+        return;
+    }
+    var snapshot = JSON.parse(payload.body);
+    onlineUsers = {};
+    snapshot.users.forEach(function (user) {
+        onlineUsers[user] = true;
+    });
+    presenceVersion = snapshot.version;
+    var presenceDeltas = pendingPresenceDeltas;
+    pendingPresenceDeltas = [];
+    presenceDeltas.forEach(applyPresenceDelta);
+    showOnlineUsers();
+}
+
+
+function onPresenceDeltaReceived(payload) {
+    if (!isNewMessage(payload)) {
+        return;
+    }
+    var delta = JSON.parse(payload.body);
+    if (onlineUsers === null) {
+        pendingPresenceDeltas.push(delta);
+        return;
+    }
+    applyPresenceDelta(delta);
+    showOnlineUsers();
+}
+
+
+function applyPresenceDelta(delta) {
+    // Already in the snapshot.
+    if (delta.version <= presenceVersion) {
+        return;
+    }
+    presenceVersion = delta.version;
+    delta.joined.forEach(function (user) {
+        onlineUsers[user] = true;
+        showEventMessage(user + ' joined!');
+    });
+    delta.left.forEach(function (user) {
+        delete onlineUsers[user];
+        showEventMessage(user + ' left!');
+    });
+}
+
+
+function showOnlineUsers() {
+    var users = Object.keys(onlineUsers).sort();
+    onlineUsersElement.textContent = users.length + ' online: ' + users.join(', ');
+}
+
+
+function showEventMessage(content) {
+    var messageElement = document.createElement('li');
+    messageElement.classList.add('event-message');
+
+    var textElement = document.createElement('p');
+    textElement.appendChild(document.createTextNode(content));
+    messageElement.appendChild(textElement);
+
+    messageArea.appendChild(messageElement);
+    messageArea.scrollTop = messageArea.scrollHeight;
+}
+
+
 function getAvatarColor(messageSender) {
     var hash = 0;
     for (var i = 0; i < messageSender.length; i++) {
@@ -0,0 +1,60 @@
+package com.example.websocketdemo.auth;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HmacTokenVerifierTests {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private static final long NOW = 1_571_234_567_000L;
+
+    private final HmacTokenVerifier tokenVerifier = new HmacTokenVerifier(SECRET, new ObjectMapper());
+
+    @Test
+    public void verifiesTheTokensItSigns() {
+        String token = tokenVerifier.sign("alice", NOW + 60_000);
+        VerifiedToken verifiedToken = tokenVerifier.verify(token, NOW);
+        assertEquals("alice", verifiedToken.getAuthentication().getName());
+        assertTrue(verifiedToken.getAuthentication().isAuthenticated());
+        assertEquals(NOW + 60_000, verifiedToken.getExpiresAtMillis());
+    }
+
+    @Test
+    public void rejectsTheInvalidTokens() {
+        String token = tokenVerifier.sign("alice", NOW + 60_000);
+        String[] parts = token.split("\\.");
+        String otherClaims = encode("{\"sub\":\"mallory\",\"exp\":" + (NOW / 1000 + 60) + "}");
+        String unsignedHeader = encode("{\"alg\":\"none\",\"typ\":\"JWT\"}");
+
+        assertRejected(tokenVerifier.sign("alice", NOW - 1000));
+        assertRejected(parts[0] + "." + otherClaims + "." + parts[2]);
+        assertRejected(unsignedHeader + "." + parts[1] + ".");
+        assertRejected(new HmacTokenVerifier("another secret, also 32 bytes long".getBytes(StandardCharsets.UTF_8), new ObjectMapper())
+                .sign("alice", NOW + 60_000));
+        assertRejected(parts[0] + "." + parts[1]);
+        assertRejected(token + ".");
+        assertRejected("not a token");
+    }
+
+    private void assertRejected(String token) {
+        try {
+            tokenVerifier.verify(token, NOW);
+            fail("The token should be rejected: " + token);
+        } catch (BadCredentialsException e) {
+            // Expected.
+        }
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
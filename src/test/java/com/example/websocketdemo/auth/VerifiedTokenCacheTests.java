@@ -0,0 +1,51 @@
+package com.example.websocketdemo.auth;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class VerifiedTokenCacheTests {
+
+    private static final long NOW = 1_571_234_567_000L;
+
+    private final VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(2);
+
+    @Test
+    public void cachesTheTokensUntilTheyExpire() {
+        VerifiedToken alice = verifiedToken("alice", NOW + 60_000);
+        verifiedTokenCache.put("alice", alice, NOW);
+        assertSame(alice, verifiedTokenCache.get("alice", NOW + 59_999));
+        assertNull(verifiedTokenCache.get("alice", NOW + 60_000));
+        assertEquals(0, verifiedTokenCache.size());
+    }
+
+    @Test
+    public void evictsTheTokensThatExpireFirstWhenFull() {
+        VerifiedToken alice = verifiedToken("alice", NOW + 60_000);
+        VerifiedToken bob = verifiedToken("bob", NOW + 10_000);
+        VerifiedToken carol = verifiedToken("carol", NOW + 30_000);
+        verifiedTokenCache.put("alice", alice, NOW);
+        verifiedTokenCache.put("bob", bob, NOW);
+        verifiedTokenCache.put("carol", carol, NOW);
+        assertEquals(2, verifiedTokenCache.size());
+        assertSame(alice, verifiedTokenCache.get("alice", NOW));
+        assertNull(verifiedTokenCache.get("bob", NOW));
+        assertSame(carol, verifiedTokenCache.get("carol", NOW));
+
+        // Once carol's token has expired, it's evicted first, and alice's is kept.
+        VerifiedToken dave = verifiedToken("dave", NOW + 90_000);
+        verifiedTokenCache.put("dave", dave, NOW + 40_000);
+        assertSame(alice, verifiedTokenCache.get("alice", NOW + 40_000));
+        assertSame(dave, verifiedTokenCache.get("dave", NOW + 40_000));
+        assertEquals(2, verifiedTokenCache.getEvictionCount());
+    }
+
+    private static VerifiedToken verifiedToken(String subject, long expiresAtMillis) {
+        return new VerifiedToken(new UsernamePasswordAuthenticationToken(subject, null, Collections.emptyList()), expiresAtMillis);
+    }
+}
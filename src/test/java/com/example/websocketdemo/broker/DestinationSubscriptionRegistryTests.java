@@ -0,0 +1,98 @@
+package com.example.websocketdemo.broker;
+
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DestinationSubscriptionRegistryTests {
+
+    private static final String RED_ROOM = "/topic/room.red";
+
+    private static final String BLUE_ROOM = "/topic/room.blue";
+
+    private final DestinationSubscriptionRegistry subscriptionRegistry = new DestinationSubscriptionRegistry();
+
+    @Test
+    public void findsOnlyTheSubscribersOfTheDestination() {
+        subscriptionRegistry.registerSubscription(subscribe("session-1", "sub-1", RED_ROOM));
+        subscriptionRegistry.registerSubscription(subscribe("session-2", "sub-1", RED_ROOM));
+        subscriptionRegistry.registerSubscription(subscribe("session-2", "sub-2", BLUE_ROOM));
+
+        MultiValueMap<String, String> subscriptions = subscriptionRegistry.findSubscriptions(message(RED_ROOM));
+        assertEquals(2, subscriptions.size());
+        assertEquals(Collections.singletonList("sub-1"), subscriptions.get("session-1"));
+        assertEquals(Collections.singletonList("sub-1"), subscriptions.get("session-2"));
+        assertEquals(Collections.singletonList("sub-2"), subscriptionRegistry.findSubscriptions(message(BLUE_ROOM)).get("session-2"));
+        assertTrue(subscriptionRegistry.findSubscriptions(message("/topic/room.green")).isEmpty());
+    }
+
+    @Test
+    public void removesTheDestinationWithItsLastSubscription() {
+        subscriptionRegistry.registerSubscription(subscribe("session-1", "sub-1", RED_ROOM));
+        subscriptionRegistry.registerSubscription(subscribe("session-2", "sub-1", RED_ROOM));
+        subscriptionRegistry.registerSubscription(subscribe("session-2", "sub-2", BLUE_ROOM));
+
+        subscriptionRegistry.unregisterSubscription(unsubscribe("session-1", "sub-1"));
+        assertEquals(Collections.singleton("session-2"), subscriptionRegistry.findSubscriptions(message(RED_ROOM)).keySet());
+
+        subscriptionRegistry.unregisterAllSubscriptions("session-2");
+        assertTrue(subscriptionRegistry.findSubscriptions(message(RED_ROOM)).isEmpty());
+        assertTrue(subscriptionRegistry.findSubscriptions(message(BLUE_ROOM)).isEmpty());
+        assertEquals(0, subscriptionRegistry.getDestinationCount());
+    }
+
+    @Test
+    public void subscribingAgainWithTheSameIdReplacesTheSubscription() {
+        subscriptionRegistry.registerSubscription(subscribe("session-1", "sub-1", RED_ROOM));
+        subscriptionRegistry.registerSubscription(subscribe("session-1", "sub-1", RED_ROOM));
+        assertEquals(Collections.singletonList("sub-1"), subscriptionRegistry.findSubscriptions(message(RED_ROOM)).get("session-1"));
+
+        subscriptionRegistry.registerSubscription(subscribe("session-1", "sub-1", BLUE_ROOM));
+        assertTrue(subscriptionRegistry.findSubscriptions(message(RED_ROOM)).isEmpty());
+        assertEquals(1, subscriptionRegistry.findSubscriptions(message(BLUE_ROOM)).size());
+    }
+
+    @Test
+    public void mergesThePatternSubscriptions() {
+        subscriptionRegistry.registerSubscription(subscribe("session-1", "sub-1", RED_ROOM));
+        subscriptionRegistry.registerSubscription(subscribe("session-2", "all-rooms", "/topic/room.*"));
+
+        MultiValueMap<String, String> subscriptions = subscriptionRegistry.findSubscriptions(message(RED_ROOM));
+        assertEquals(Arrays.asList("session-1", "session-2"), Arrays.asList(subscriptions.keySet().toArray()));
+        assertEquals(Collections.singletonList("all-rooms"), subscriptionRegistry.findSubscriptions(message(BLUE_ROOM)).get("session-2"));
+
+        subscriptionRegistry.unregisterSubscription(unsubscribe("session-2", "all-rooms"));
+        assertTrue(subscriptionRegistry.findSubscriptions(message(BLUE_ROOM)).isEmpty());
+        assertEquals(Collections.singleton("session-1"), subscriptionRegistry.findSubscriptions(message(RED_ROOM)).keySet());
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        headerAccessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String destination) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+}
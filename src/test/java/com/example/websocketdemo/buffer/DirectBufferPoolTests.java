@@ -0,0 +1,50 @@
+package com.example.websocketdemo.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectBufferPoolTests {
+
+    private final DirectBufferPool bufferPool = new DirectBufferPool(1024, 2);
+
+    @Test
+    public void recyclesTheReleasedBuffers() {
+        ByteBuffer buffer = bufferPool.acquire();
+        assertTrue(buffer.isDirect());
+        assertEquals(1024, buffer.remaining());
+        buffer.put(new byte[100]).flip();
+        bufferPool.release(buffer);
+        assertEquals(1, bufferPool.getPooledCount());
+
+        ByteBuffer recycledBuffer = bufferPool.acquire();
+        assertSame(buffer, recycledBuffer);
+        assertEquals(0, recycledBuffer.position());
+        assertEquals(1024, recycledBuffer.limit());
+        assertEquals(1, bufferPool.getAllocatedCount());
+    }
+
+    @Test
+    public void keepsAtMostMaxPooledBuffers() {
+        ByteBuffer first = bufferPool.acquire();
+        ByteBuffer second = bufferPool.acquire();
+        ByteBuffer third = bufferPool.acquire();
+        assertNotSame(first, second);
+        assertEquals(3, bufferPool.getAllocatedCount());
+        bufferPool.release(first);
+        bufferPool.release(second);
+        bufferPool.release(third);
+        assertEquals(2, bufferPool.getPooledCount());
+
+        // The buffers that aren't from the pool are left to the GC.
+        bufferPool.acquire();
+        bufferPool.release(ByteBuffer.allocate(1024));
+        bufferPool.release(ByteBuffer.allocateDirect(512));
+        assertEquals(1, bufferPool.getPooledCount());
+    }
+}
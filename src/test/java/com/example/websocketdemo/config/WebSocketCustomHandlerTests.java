@@ -0,0 +1,122 @@
+package com.example.websocketdemo.config;
+
+import com.example.websocketdemo.buffer.DirectBufferPool;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WebSocketCustomHandlerTests {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final long MAX_WAIT_MILLIS = 200;
+
+    // Large enough to keep all the buffers released, so they're all released if they're all pooled again.
+    private final DirectBufferPool bufferPool = new DirectBufferPool(BUFFER_SIZE, 100);
+
+    // The tasks of the session lanes only run when the test runs them.
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // Two parts may be queued per session.
+    private final WebSocketCustomHandler handler = new WebSocketCustomHandler(tasks::add, true, bufferPool, 2 * BUFFER_SIZE, MAX_WAIT_MILLIS);
+
+    private final WebSocketSession session = mock(WebSocketSession.class);
+
+    @Before
+    public void setUp() {
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+    }
+
+    @Test
+    public void aPartOverTheLimitWaitsThenClosesTheSession() throws Exception {
+        handler.handleMessage(session, binaryMessage(2 * BUFFER_SIZE, false));
+
+        long startNanos = System.nanoTime();
+        handler.handleMessage(session, binaryMessage(BUFFER_SIZE, true));
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS));
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+        // The queued parts are dropped, and their buffers released.
+        assertEquals(2, bufferPool.getAllocatedCount());
+        assertEquals(2, bufferPool.getPooledCount());
+        runTasks();
+        verify(session, never()).sendMessage(any());
+
+        handler.afterConnectionClosed(session, CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(bufferPool.getAllocatedCount(), bufferPool.getPooledCount());
+    }
+
+    @Test
+    public void aPartWaitsForTheQueuedPartsToBeSent() throws Exception {
+        handler.handleMessage(session, binaryMessage(2 * BUFFER_SIZE, false));
+
+        Thread sender = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(MAX_WAIT_MILLIS / 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            runTasks();
+        });
+        sender.start();
+        handler.handleMessage(session, binaryMessage(BUFFER_SIZE, true));
+        sender.join();
+        runTasks();
+
+        verify(session, never()).close(any());
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, times(3)).sendMessage(sent.capture());
+        assertFalse(sent.getAllValues().get(0).isLast());
+        assertFalse(sent.getAllValues().get(1).isLast());
+        assertTrue(sent.getAllValues().get(2).isLast());
+        assertEquals(bufferPool.getAllocatedCount(), bufferPool.getPooledCount());
+    }
+
+    @Test
+    public void theBuffersAreReleasedOnceTheSessionIsClosed() throws Exception {
+        handler.handleMessage(session, binaryMessage(BUFFER_SIZE + 1, true));
+        assertEquals(2, bufferPool.getAllocatedCount());
+        assertEquals(0, bufferPool.getPooledCount());
+
+        handler.afterConnectionClosed(session, CloseStatus.GOING_AWAY);
+        assertEquals(2, bufferPool.getPooledCount());
+
+        // The parts the web server had read before the session was closed are dropped.
+        when(session.isOpen()).thenReturn(false);
+        handler.handleMessage(session, binaryMessage(BUFFER_SIZE, true));
+        runTasks();
+        verify(session, never()).sendMessage(any());
+        assertEquals(bufferPool.getAllocatedCount(), bufferPool.getPooledCount());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static BinaryMessage binaryMessage(int size, boolean last) {
+        return new BinaryMessage(ByteBuffer.wrap(new byte[size]), last);
+    }
+}
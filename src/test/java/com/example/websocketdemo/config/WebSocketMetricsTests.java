@@ -0,0 +1,72 @@
+package com.example.websocketdemo.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WebSocketMetricsTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // The application context is only used once all the beans are created.
+    private final WebSocketMetrics webSocketMetrics = new WebSocketMetrics(meterRegistry, null);
+
+    @Test
+    public void removesTheGaugeOfADestinationWithoutSubscriptions() {
+        webSocketMetrics.subscribed("session-1", "sub-0", "/topic/room.a");
+        webSocketMetrics.subscribed("session-2", "sub-0", "/topic/room.a");
+        assertEquals(2, subscriptions("/topic/room.a").value(), 0);
+
+        webSocketMetrics.unsubscribed("session-1", "sub-0");
+        assertEquals(1, subscriptions("/topic/room.a").value(), 0);
+        webSocketMetrics.unsubscribed("session-2", "sub-0");
+        assertNull(meterRegistry.find("websocket.stomp.subscriptions").tag("destination", "/topic/room.a").gauge());
+        assertEquals(0, webSocketMetrics.getSubscribedDestinationCount());
+
+        // And it's registered again by the next subscription.
+        webSocketMetrics.subscribed("session-1", "sub-1", "/topic/room.a");
+        assertEquals(1, subscriptions("/topic/room.a").value(), 0);
+    }
+
+    @Test
+    public void resubscribingMovesTheSubscription() {
+        webSocketMetrics.subscribed("session-1", "sub-0", "/topic/room.a");
+        webSocketMetrics.subscribed("session-1", "sub-0", "/topic/room.b");
+        assertNull(meterRegistry.find("websocket.stomp.subscriptions").tag("destination", "/topic/room.a").gauge());
+        assertEquals(1, subscriptions("/topic/room.b").value(), 0);
+        assertEquals(1, webSocketMetrics.getSubscribedDestinationCount());
+    }
+
+    @Test
+    public void countsTheOutboundFramesByTheirCommand() {
+        webSocketMetrics.countOutbound(StompCommand.ERROR, SimpMessageType.OTHER);
+        webSocketMetrics.countOutbound(StompCommand.RECEIPT, SimpMessageType.OTHER);
+        webSocketMetrics.countOutbound(StompCommand.CONNECTED, SimpMessageType.CONNECT_ACK);
+        // The messages of the broker, including the ones with the headers of a SEND frame.
+        webSocketMetrics.countOutbound(null, SimpMessageType.MESSAGE);
+        webSocketMetrics.countOutbound(StompCommand.SEND, SimpMessageType.MESSAGE);
+        webSocketMetrics.countOutbound(null, SimpMessageType.CONNECT_ACK);
+        webSocketMetrics.countOutbound(null, SimpMessageType.HEARTBEAT);
+
+        assertEquals(1, outbound("ERROR"), 0);
+        assertEquals(1, outbound("RECEIPT"), 0);
+        assertEquals(2, outbound("CONNECTED"), 0);
+        assertEquals(2, outbound("MESSAGE"), 0);
+        assertEquals(0, outbound("SEND"), 0);
+        assertEquals(1, outbound("OTHER"), 0);
+    }
+
+    private double outbound(String command) {
+        return meterRegistry.get("websocket.stomp.messages").tag("direction", "outbound").tag("command", command).counter().count();
+    }
+
+    private Gauge subscriptions(String destination) {
+        return meterRegistry.get("websocket.stomp.subscriptions").tag("destination", destination).gauge();
+    }
+}
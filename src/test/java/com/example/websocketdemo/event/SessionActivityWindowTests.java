@@ -0,0 +1,59 @@
+package com.example.websocketdemo.event;
+
+import com.example.websocketdemo.model.SessionActivity;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SessionActivityWindowTests {
+
+    private final SessionActivityWindow sessionActivityWindow = new SessionActivityWindow();
+
+    @Test
+    public void coalescesTheSessionsOfAWindow() {
+        for (int i = 0; i < 100; i++) {
+            sessionActivityWindow.add(event(SessionLifecycleEvent.Type.CONNECTED, "s" + i));
+            sessionActivityWindow.add(event(SessionLifecycleEvent.Type.SUBSCRIBED, "s" + i));
+        }
+        // Connected and disconnected within the window.
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.DISCONNECTED, "s99"));
+        // Rejected before it was connected.
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.DISCONNECTED, "rejected"));
+
+        assertEquals(100, sessionActivityWindow.getSubscriptionCount());
+        SessionActivity sessionActivity = sessionActivityWindow.flush(1000);
+        assertEquals(99, sessionActivity.getConnected());
+        assertEquals(0, sessionActivity.getDisconnected());
+        assertEquals(99, sessionActivity.getSessions());
+        assertEquals(1000, sessionActivity.getTimestamp());
+        assertNull(sessionActivityWindow.flush(2000));
+    }
+
+    @Test
+    public void countsTheSuspendedSessionsAsDisconnectedOnce() {
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.CONNECTED, "s1"));
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.CONNECTED, "s2"));
+        sessionActivityWindow.flush(1000);
+
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.SUSPENDED, "s1"));
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.DISCONNECTED, "s2"));
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.DISCONNECTED, "s2"));
+        // Resumed by a new connection.
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.CONNECTED, "s3"));
+        SessionActivity sessionActivity = sessionActivityWindow.flush(2000);
+        assertEquals(1, sessionActivity.getConnected());
+        assertEquals(2, sessionActivity.getDisconnected());
+        assertEquals(1, sessionActivity.getSessions());
+
+        // The expiry of the resumable session doesn't count, its connection already has.
+        sessionActivityWindow.add(event(SessionLifecycleEvent.Type.EXPIRED, "resumable-1"));
+        assertNull(sessionActivityWindow.flush(3000));
+    }
+
+    private static SessionLifecycleEvent event(SessionLifecycleEvent.Type type, String sessionId) {
+        return new SessionLifecycleEvent(type, sessionId, Collections.emptyMap());
+    }
+}
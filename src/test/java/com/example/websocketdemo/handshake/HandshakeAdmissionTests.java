@@ -0,0 +1,63 @@
+package com.example.websocketdemo.handshake;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HandshakeAdmissionTests {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // 10 handshakes per second on the node, up to 6 at once; 2 per second per address, up to 3 at once; 100 sessions.
+    private final HandshakeAdmission handshakeAdmission = new HandshakeAdmission(10, 6, 2, 3, 100, 2, 8);
+
+    @Test
+    public void limitsTheRateOfEachAddressThenOfTheNode() {
+        long now = ONE_SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HandshakeAdmission.Decision.ADMITTED, handshakeAdmission.admit("10.0.0.1", 0, now));
+        }
+        assertEquals(HandshakeAdmission.Decision.ADDRESS_RATE_LIMITED, handshakeAdmission.admit("10.0.0.1", 0, now));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HandshakeAdmission.Decision.ADMITTED, handshakeAdmission.admit("10.0.0.2", 0, now));
+        }
+        // The burst of the node is used up, by two addresses.
+        assertEquals(HandshakeAdmission.Decision.RATE_LIMITED, handshakeAdmission.admit("10.0.0.3", 0, now));
+
+        assertEquals(HandshakeAdmission.Decision.ADMITTED, handshakeAdmission.admit("10.0.0.3", 0, now + ONE_SECOND / 10));
+        assertEquals(HandshakeAdmission.Decision.ADMITTED, handshakeAdmission.admit("10.0.0.1", 0, now + ONE_SECOND));
+    }
+
+    @Test
+    public void refusesOverTheSessionCeilingAndWhileDraining() {
+        long now = ONE_SECOND;
+        assertEquals(HandshakeAdmission.Decision.AT_CAPACITY, handshakeAdmission.admit("10.0.0.1", 100, now));
+        assertEquals(HandshakeAdmission.Decision.ADMITTED, handshakeAdmission.admit("10.0.0.1", 99, now));
+
+        handshakeAdmission.setDraining(true);
+        assertEquals(HandshakeAdmission.Decision.DRAINING, handshakeAdmission.admit("10.0.0.2", 0, now));
+        handshakeAdmission.setDraining(false);
+        assertEquals(HandshakeAdmission.Decision.ADMITTED, handshakeAdmission.admit("10.0.0.2", 0, now));
+    }
+
+    @Test
+    public void retryAfterIsJittered() {
+        for (int i = 0; i < 1000; i++) {
+            long retryAfterSeconds = handshakeAdmission.retryAfterSeconds();
+            assertTrue(retryAfterSeconds >= 2 && retryAfterSeconds <= 10);
+        }
+    }
+
+    @Test
+    public void evictsTheIdleAddresses() {
+        long now = ONE_SECOND;
+        handshakeAdmission.admit("10.0.0.1", 0, now);
+        handshakeAdmission.admit("10.0.0.2", 0, now);
+        assertEquals(2, handshakeAdmission.getAddressCount());
+        handshakeAdmission.evictIdle(now + ONE_SECOND);
+        assertEquals(0, handshakeAdmission.getAddressCount());
+    }
+}
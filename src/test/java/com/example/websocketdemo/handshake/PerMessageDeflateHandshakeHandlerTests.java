@@ -0,0 +1,46 @@
+package com.example.websocketdemo.handshake;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PerMessageDeflateHandshakeHandlerTests {
+
+    @Test
+    public void theOffersAreKeptWithContextTakeover() {
+        PerMessageDeflateHandshakeHandler handshakeHandler = new PerMessageDeflateHandshakeHandler(true, true);
+        assertEquals("permessage-deflate; client_max_window_bits",
+                handshakeHandler.rewriteExtensionOffers("permessage-deflate; client_max_window_bits"));
+        assertEquals("permessage-deflate, x-webkit-deflate-frame",
+                handshakeHandler.rewriteExtensionOffers(" permessage-deflate ,x-webkit-deflate-frame"));
+    }
+
+    @Test
+    public void serverNoContextTakeoverIsAddedToTheDeflateOffers() {
+        PerMessageDeflateHandshakeHandler handshakeHandler = new PerMessageDeflateHandshakeHandler(true, false);
+        assertEquals("permessage-deflate; server_no_context_takeover",
+                handshakeHandler.rewriteExtensionOffers("permessage-deflate"));
+        assertEquals("permessage-deflate; client_no_context_takeover; server_max_window_bits=10; server_no_context_takeover",
+                handshakeHandler.rewriteExtensionOffers("permessage-deflate; client_no_context_takeover; server_max_window_bits=10"));
+        // Once per offer, and not to an offer that has it already.
+        assertEquals("permessage-deflate; server_no_context_takeover, permessage-deflate; client_max_window_bits; server_no_context_takeover",
+                handshakeHandler.rewriteExtensionOffers("permessage-deflate; server_no_context_takeover, permessage-deflate; client_max_window_bits"));
+        assertEquals("PerMessage-Deflate; server_no_context_takeover", handshakeHandler.rewriteExtensionOffers("PerMessage-Deflate"));
+    }
+
+    @Test
+    public void theOtherExtensionsAreLeftAlone() {
+        PerMessageDeflateHandshakeHandler handshakeHandler = new PerMessageDeflateHandshakeHandler(true, false);
+        assertEquals("x-webkit-deflate-frame; no_context_takeover, permessage-deflate; server_no_context_takeover",
+                handshakeHandler.rewriteExtensionOffers("x-webkit-deflate-frame; no_context_takeover, permessage-deflate"));
+        assertEquals("x-permessage-deflate-extra", handshakeHandler.rewriteExtensionOffers("x-permessage-deflate-extra"));
+    }
+
+    @Test
+    public void theDeflateOffersAreRemovedWhenDisabled() {
+        PerMessageDeflateHandshakeHandler handshakeHandler = new PerMessageDeflateHandshakeHandler(false, true);
+        assertEquals("", handshakeHandler.rewriteExtensionOffers("permessage-deflate; client_max_window_bits, permessage-deflate"));
+        assertEquals("x-webkit-deflate-frame", handshakeHandler.rewriteExtensionOffers("permessage-deflate; server_max_window_bits=10, x-webkit-deflate-frame"));
+        assertEquals("", handshakeHandler.rewriteExtensionOffers(" , "));
+    }
+}
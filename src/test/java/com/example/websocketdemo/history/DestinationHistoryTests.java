@@ -0,0 +1,28 @@
+package com.example.websocketdemo.history;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DestinationHistoryTests {
+
+    @Test
+    public void keepsTheLastMessages() {
+        DestinationHistory destinationHistory = new DestinationHistory(2);
+        for (int i = 1; i <= 3; i++) {
+            destinationHistory.append(new byte[]{(byte) i}, i);
+        }
+        List<HistoryEntry> historyEntries = destinationHistory.since(0, 0);
+        assertEquals(2, historyEntries.size());
+        assertEquals(2, historyEntries.get(0).getSequence());
+        assertEquals(3, historyEntries.get(1).getSequence());
+        assertEquals(1, destinationHistory.since(2, 0).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyCapacity() {
+        new DestinationHistory(0);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.websocketdemo.interceptor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InboundBackpressureChannelInterceptorTests {
+
+    private static final int HIGH_WATER_MARK = 3;
+
+    private final StompErrorSender stompErrorSender = mock(StompErrorSender.class);
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    // The queue of the clientInbound channel executor, filled by the tests. Its threads are never started.
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+    private final ThreadPoolTaskExecutor clientInboundChannelExecutor = mock(ThreadPoolTaskExecutor.class);
+
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor();
+
+    @Before
+    public void setUp() {
+        when(clientInboundChannelExecutor.getThreadPoolExecutor()).thenReturn(new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, queue));
+    }
+
+    @After
+    public void tearDown() {
+        drainer.shutdownNow();
+    }
+
+    @Test
+    public void rejectPassesTheFramesBelowTheHighWaterMark() {
+        InboundBackpressureChannelInterceptor interceptor = interceptor(InboundBackpressureChannelInterceptor.Mode.REJECT, 0);
+        fill(HIGH_WATER_MARK - 1);
+        Message<?> send = send();
+        assertSame(send, interceptor.preSend(send, channel));
+        verify(stompErrorSender, never()).sendError(anyString(), anyString());
+    }
+
+    @Test
+    public void rejectDropsTheFramesAtAndAboveTheHighWaterMark() {
+        InboundBackpressureChannelInterceptor interceptor = interceptor(InboundBackpressureChannelInterceptor.Mode.REJECT, 0);
+        fill(HIGH_WATER_MARK);
+        assertNull(interceptor.preSend(send(), channel));
+        fill(1);
+        assertNull(interceptor.preSend(send(), channel));
+        verify(stompErrorSender, times(2)).sendError(eq("session-1"), anyString());
+
+        // The other frames still go through.
+        Message<?> subscribe = message(StompCommand.SUBSCRIBE);
+        assertSame(subscribe, interceptor.preSend(subscribe, channel));
+    }
+
+    @Test
+    public void delayPassesTheFrameOnceTheQueueHasDrained() {
+        InboundBackpressureChannelInterceptor interceptor = interceptor(InboundBackpressureChannelInterceptor.Mode.DELAY, 5000);
+        fill(HIGH_WATER_MARK + 1);
+        drainer.schedule(() -> queue.drainTo(new ArrayList<>(), 2), 50, TimeUnit.MILLISECONDS);
+
+        // The frame waits for the drain, and is then passed on instead of being dropped.
+        Message<?> send = send();
+        assertSame(send, interceptor.preSend(send, channel));
+        verify(stompErrorSender, never()).sendError(anyString(), anyString());
+        assertEquals(HIGH_WATER_MARK - 1, queue.size());
+    }
+
+    @Test
+    public void delayRejectsTheFrameIfTheQueueIsStillFullAfterTheDelay() {
+        InboundBackpressureChannelInterceptor interceptor = interceptor(InboundBackpressureChannelInterceptor.Mode.DELAY, 50);
+        fill(HIGH_WATER_MARK);
+
+        long start = System.nanoTime();
+        assertNull(interceptor.preSend(send(), channel));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        verify(stompErrorSender).sendError(eq("session-1"), anyString());
+        assertEquals(HIGH_WATER_MARK, queue.size());
+    }
+
+    private InboundBackpressureChannelInterceptor interceptor(InboundBackpressureChannelInterceptor.Mode mode, long maxDelayMillis) {
+        return new InboundBackpressureChannelInterceptor(clientInboundChannelExecutor, mode, HIGH_WATER_MARK, maxDelayMillis, stompErrorSender);
+    }
+
+    private void fill(int count) {
+        for (int i = 0; i < count; i++) {
+            queue.add(() -> {
+            });
+        }
+    }
+
+    private static Message<?> send() {
+        return message(StompCommand.SEND);
+    }
+
+    private static Message<?> message(StompCommand stompCommand) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(stompCommand);
+        headerAccessor.setSessionId("session-1");
+        headerAccessor.setDestination("/app/chat.sendMessage");
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.model.ChatMessage;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "websocket.stomp.broker.mode=kafka",
+        "websocket.stomp.broker.kafka.topic=websocket-broker-relay-test",
+        "websocket.stomp.broker.kafka.partitions=1",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}"})
+@EmbeddedKafka(partitions = 1, topics = "websocket-broker-relay-test")
+public class KafkaBrokerRelayChannelInterceptorTests {
+
+    private static final String SESSION_ID = "session-1";
+
+    @Autowired
+    private SimpMessagingTemplate brokerMessagingTemplate;
+
+    @Autowired
+    private SimpleBrokerMessageHandler simpleBrokerMessageHandler;
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private SubscribableChannel clientOutboundChannel;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    @Test
+    public void broadcastIsRelayedThroughKafkaToLocalSubscribers() throws Exception {
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            ContainerTestUtils.waitForAssignment(container, 1);
+        }
+
+        BlockingQueue<Message<?>> outboundMessages = new LinkedBlockingQueue<>();
+        MessageHandler outboundHandler = outboundMessages::add;
+        clientOutboundChannel.subscribe(outboundHandler);
+        try {
+            simpleBrokerMessageHandler.handleMessage(createMessage(SimpMessageType.CONNECT, null));
+            simpleBrokerMessageHandler.handleMessage(createMessage(SimpMessageType.SUBSCRIBE, "/topic/public"));
+
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.setType(ChatMessage.MessageType.CHAT);
+            chatMessage.setSender("kafka");
+            chatMessage.setContent("Hello from another node.");
+            brokerMessagingTemplate.convertAndSend("/topic/public", chatMessage);
+
+            Message<?> delivered = pollMessage(outboundMessages);
+            assertNotNull("The message relayed through Kafka was not delivered.", delivered);
+            assertEquals("sub-1", SimpMessageHeaderAccessor.getSubscriptionId(delivered.getHeaders()));
+            assertEquals(Boolean.TRUE, delivered.getHeaders().get(KafkaBrokerRelayChannelInterceptor.RELAYED_HEADER));
+            assertTrue(new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8).contains("Hello from another node."));
+        } finally {
+            clientOutboundChannel.unsubscribe(outboundHandler);
+        }
+    }
+
+    private Message<byte[]> createMessage(SimpMessageType messageType, String destination) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(messageType);
+        headerAccessor.setSessionId(SESSION_ID);
+        headerAccessor.setSubscriptionId("sub-1");
+        headerAccessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private Message<?> pollMessage(BlockingQueue<Message<?>> outboundMessages) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (System.currentTimeMillis() < deadline) {
+            Message<?> message = outboundMessages.poll(1, TimeUnit.SECONDS);
+            if (message != null && SimpMessageType.MESSAGE.equals(SimpMessageHeaderAccessor.getMessageType(message.getHeaders()))) {
+                return message;
+            }
+        }
+        return null;
+    }
+}
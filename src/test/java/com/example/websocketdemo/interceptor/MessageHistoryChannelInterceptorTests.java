@@ -0,0 +1,153 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.history.HistoryEntry;
+import com.example.websocketdemo.history.MessageHistory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MessageHistoryChannelInterceptorTests {
+
+    private static final String DESTINATION = "/topic/public";
+
+    private final MessageHistory messageHistory = new MessageHistory(true, Collections.singletonList(DESTINATION), 10, 60);
+
+    private final MessageChannel clientOutboundChannel = mock(MessageChannel.class);
+
+    private final MessageHistoryChannelInterceptor interceptor = new MessageHistoryChannelInterceptor(messageHistory, clientOutboundChannel);
+
+    private final MessageHandler broker = mock(SimpleBrokerMessageHandler.class);
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void recordsTheMessagesOfTheServer() {
+        Message<?> recorded = interceptor.beforeHandle(message(DESTINATION, "{\"content\":\"hello\"}"), channel, broker);
+        assertEquals("1", sequenceOf(recorded));
+
+        // Not the ones to other destinations, nor the ones handled by the @MessageMapping(...) handlers.
+        Message<?> otherDestination = message("/topic/other", "{}");
+        assertSame(otherDestination, interceptor.beforeHandle(otherDestination, channel, broker));
+        Message<?> notBroker = message(DESTINATION, "{}");
+        assertSame(notBroker, interceptor.beforeHandle(notBroker, channel, mock(MessageHandler.class)));
+
+        List<HistoryEntry> historyEntries = messageHistory.since(DESTINATION, 0);
+        assertEquals(1, historyEntries.size());
+        assertEquals("{\"content\":\"hello\"}", new String(historyEntries.get(0).getPayload(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void theSendFramesOfTheClientsAreNotRecorded() throws Exception {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        headerAccessor.setSessionId("session-1");
+        headerAccessor.setDestination(DESTINATION);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        Message<?> send = MessageBuilder.createMessage("{\"content\":".getBytes(StandardCharsets.UTF_8), headerAccessor.getMessageHeaders());
+        assertSame(send, interceptor.beforeHandle(send, channel, broker));
+        assertTrue(messageHistory.since(DESTINATION, 0).isEmpty());
+
+        // So the replays stay valid JSON.
+        interceptor.beforeHandle(message(DESTINATION, "{\"content\":\"hello\"}"), channel, broker);
+        assertEquals(1, objectMapper.readTree(replay("0").getPayload()).size());
+    }
+
+    @Test
+    public void aSubscriptionGetsTheMessagesSinceItsReplaySequence() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            interceptor.beforeHandle(message(DESTINATION, "{\"content\":\"message " + i + "\"}"), channel, broker);
+        }
+
+        Message<byte[]> replay = replay("1");
+        assertEquals("session-1", SimpMessageHeaderAccessor.getSessionId(replay.getHeaders()));
+        assertEquals("sub-0", SimpMessageHeaderAccessor.getSubscriptionId(replay.getHeaders()));
+        assertEquals("2", NativeMessageHeaderAccessor.getFirstNativeHeader(MessageHistoryChannelInterceptor.HISTORY_REPLAY_HEADER, replay.getHeaders()));
+        assertEquals("3", sequenceOf(replay));
+        JsonNode messages = objectMapper.readTree(replay.getPayload());
+        assertEquals(2, messages.size());
+        assertEquals("message 2", messages.get(0).get("content").asText());
+        assertEquals("message 3", messages.get(1).get("content").asText());
+    }
+
+    @Test
+    public void aSubscriptionWithoutReplaySequenceGetsNothing() {
+        interceptor.beforeHandle(message(DESTINATION, "{}"), channel, broker);
+        interceptor.afterMessageHandled(subscribe(null), channel, broker, null);
+        interceptor.afterMessageHandled(subscribe("invalid"), channel, broker, null);
+        verify(clientOutboundChannel, never()).send(any());
+    }
+
+    @Test
+    public void theJsonArrayJoinsThePayloads() {
+        assertEquals("[]", toJsonArray());
+        assertEquals("[{\"a\":1}]", toJsonArray("{\"a\":1}"));
+        assertEquals("[{\"a\":1},\"b\",[]]", toJsonArray("{\"a\":1}", "\"b\"", "[]"));
+    }
+
+    private Message<byte[]> replay(String replaySince) {
+        interceptor.afterMessageHandled(subscribe(replaySince), channel, broker, null);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> replay = ArgumentCaptor.forClass(Message.class);
+        verify(clientOutboundChannel).send(replay.capture());
+        return replay.getValue();
+    }
+
+    private static String toJsonArray(String... payloads) {
+        HistoryEntry[] historyEntries = new HistoryEntry[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            historyEntries[i] = new HistoryEntry(i + 1, 0, payloads[i].getBytes(StandardCharsets.UTF_8));
+        }
+        return new String(MessageHistoryChannelInterceptor.toJsonArray(Arrays.asList(historyEntries)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A message sent to the broker channel by the server, like a @SendTo(...) reply.
+     */
+    private static Message<?> message(String destination, String payload) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(destination);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(payload.getBytes(StandardCharsets.UTF_8), headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<?> subscribe(String replaySince) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        headerAccessor.setSessionId("session-1");
+        headerAccessor.setSubscriptionId("sub-0");
+        headerAccessor.setDestination(DESTINATION);
+        if (replaySince != null) {
+            headerAccessor.setNativeHeader(MessageHistoryChannelInterceptor.REPLAY_SINCE_HEADER, replaySince);
+        }
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static String sequenceOf(Message<?> message) {
+        return NativeMessageHeaderAccessor.getFirstNativeHeader(MessageHistoryChannelInterceptor.HISTORY_SEQUENCE_HEADER, message.getHeaders());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.journal.MessageJournal;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MessageJournalChannelInterceptorTests {
+
+    private static final String DESTINATION = "/topic/public";
+
+    private final MessageJournal messageJournal = mock(MessageJournal.class);
+
+    private final MessageJournalChannelInterceptor interceptor =
+            new MessageJournalChannelInterceptor(messageJournal, Collections.singletonList(DESTINATION));
+
+    private final MessageHandler broker = mock(SimpleBrokerMessageHandler.class);
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @Test
+    public void journalsTheMessagesOfTheServer() {
+        byte[] payload = "{\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(DESTINATION);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        interceptor.beforeHandle(MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders()), channel, broker);
+        verify(messageJournal).append(eq(DESTINATION), eq(payload));
+    }
+
+    @Test
+    public void theSendFramesOfTheClientsAreNotJournaled() {
+        // Its payload would be written as it is into the JSON of GET /journal/messages.
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        headerAccessor.setSessionId("session-1");
+        headerAccessor.setDestination(DESTINATION);
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        Message<?> send = MessageBuilder.createMessage("{},{\"injected\":true}".getBytes(StandardCharsets.UTF_8),
+                headerAccessor.getMessageHeaders());
+        interceptor.beforeHandle(send, channel, broker);
+        verify(messageJournal, never()).append(anyString(), any());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.websocketdemo.interceptor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class RateLimitChannelInterceptorTests {
+
+    private final StompErrorSender stompErrorSender = mock(StompErrorSender.class);
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    // Bursts of 3 SEND frames per session and 4 per user, refilled too slowly to matter here.
+    private final RateLimitChannelInterceptor rateLimitChannelInterceptor = new RateLimitChannelInterceptor(true,
+            RateLimitChannelInterceptor.Mode.ERROR, 0.001, 3, 0.001, 4, 60,
+            stompErrorSender, mock(TaskScheduler.class), new SimpleMeterRegistry());
+
+    @Test
+    public void theSessionsOfAUserShareItsBucket() {
+        Principal alice = () -> "alice";
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(rateLimitChannelInterceptor.preSend(send("session-1", alice, null), channel));
+        }
+        assertNotNull(rateLimitChannelInterceptor.preSend(send("session-2", alice, null), channel));
+        assertNull(rateLimitChannelInterceptor.preSend(send("session-2", alice, null), channel));
+        verify(stompErrorSender).sendError(eq("session-2"), anyString());
+    }
+
+    @Test
+    public void theUsernameSetByTheClientIsNotAUser() {
+        // Another client claiming the name doesn't use up the bucket of the user.
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(rateLimitChannelInterceptor.preSend(send("session-1", null, "alice"), channel));
+            assertNotNull(rateLimitChannelInterceptor.preSend(send("session-2", null, "alice"), channel));
+        }
+        assertNotNull(rateLimitChannelInterceptor.preSend(send("session-3", () -> "alice", "alice"), channel));
+        verify(stompErrorSender, never()).sendError(anyString(), anyString());
+
+        // Without a Principal, the session bucket still applies.
+        assertNull(rateLimitChannelInterceptor.preSend(send("session-1", null, "alice"), channel));
+        verify(stompErrorSender).sendError(eq("session-1"), anyString());
+    }
+
+    private static Message<?> send(String sessionId, Principal user, String username) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setUser(user);
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        if (username != null) {
+            sessionAttributes.put("username", username);
+        }
+        headerAccessor.setSessionAttributes(sessionAttributes);
+        headerAccessor.setDestination("/app/chat.sendMessage");
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.websocketdemo.interceptor;
+
+import com.example.websocketdemo.resume.ResumableSession;
+import com.example.websocketdemo.resume.ResumableSessionRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResumableSessionChannelInterceptorTests {
+
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+
+    private final StompErrorSender stompErrorSender = mock(StompErrorSender.class);
+
+    private final ResumableSessionRegistry resumableSessionRegistry = new ResumableSessionRegistry(true, 30, 256, 10000, taskScheduler,
+            mock(ApplicationEventPublisher.class), stompErrorSender, mock(MessageChannel.class), new SimpleMeterRegistry());
+
+    private final ResumableSessionChannelInterceptor inbound =
+            new ResumableSessionChannelInterceptor(resumableSessionRegistry, ResumableSessionChannelInterceptor.Channel.INBOUND);
+
+    private final ResumableSessionChannelInterceptor outbound =
+            new ResumableSessionChannelInterceptor(resumableSessionRegistry, ResumableSessionChannelInterceptor.Channel.OUTBOUND);
+
+    private final MessageChannel clientInboundChannel = mock(MessageChannel.class);
+
+    private final MessageChannel clientOutboundChannel = mock(MessageChannel.class);
+
+    @Before
+    public void setUp() {
+        doReturn(mock(ScheduledFuture.class)).when(taskScheduler).schedule(any(Runnable.class), any(Date.class));
+    }
+
+    @Test
+    public void theConnectedFrameKeepsTheNegotiatedVersionAndHeartbeat() throws Exception {
+        Message<?> connect = inbound.preSend(connect("connection-1", null, null), clientInboundChannel);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(connect.getHeaders());
+        assertTrue(sessionId.startsWith("resumable-"));
+
+        // The frame is sent as it is by the StompSubProtocolHandler, so it has to be a complete CONNECTED frame.
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        when(webSocketSession.getId()).thenReturn("connection-1");
+        new StompSubProtocolHandler().handleMessageToClient(webSocketSession,
+                outbound.preSend(connectAck(sessionId, connect), clientOutboundChannel));
+        ArgumentCaptor<TextMessage> textMessage = ArgumentCaptor.forClass(TextMessage.class);
+        verify(webSocketSession).sendMessage(textMessage.capture());
+        String frame = textMessage.getValue().getPayload();
+        assertTrue(frame, frame.startsWith("CONNECTED\n"));
+        assertTrue(frame, frame.contains("\nversion:1.2\n"));
+        assertTrue(frame, frame.contains("\nheart-beat:10000,10000\n"));
+        assertTrue(frame, frame.contains("\nresumed:false\n"));
+        assertTrue(frame, frame.contains("\nresume-token:" + resumableSessionRegistry.getBySessionId(sessionId).getToken() + "\n"));
+    }
+
+    @Test
+    public void aResumedSessionGetsTheMessagesItHasMissed() {
+        String sessionId = connected("connection-1", null, null);
+        ResumableSession resumableSession = resumableSessionRegistry.getBySessionId(sessionId);
+        for (int i = 1; i <= 3; i++) {
+            Message<?> delivered = outbound.preSend(message(sessionId), clientOutboundChannel);
+            assertEquals("connection-1", SimpMessageHeaderAccessor.getSessionId(delivered.getHeaders()));
+            assertEquals(Long.toString(i), sequenceOf(delivered));
+        }
+        Message<?> ack = inbound.preSend(ack("connection-1", "3"), clientInboundChannel);
+        assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(ack.getHeaders()));
+
+        // The connection is lost: its DISCONNECT doesn't reach the broker, and the messages are only kept.
+        assertTrue(resumableSessionRegistry.suspend("connection-1"));
+        assertNull(inbound.preSend(disconnect("connection-1"), clientInboundChannel));
+        assertNull(outbound.preSend(message(sessionId), clientOutboundChannel));
+        assertNull(outbound.preSend(message(sessionId), clientOutboundChannel));
+
+        // The client only has the first message, but it has acknowledged the third one.
+        Message<?> connect = inbound.preSend(connect("connection-2", resumableSession.getToken(), "1"), clientInboundChannel);
+        assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(connect.getHeaders()));
+        Message<?> connected = outbound.preSend(connectAck(sessionId, connect), clientOutboundChannel);
+        assertEquals("connection-2", SimpMessageHeaderAccessor.getSessionId(connected.getHeaders()));
+        assertEquals("true", NativeMessageHeaderAccessor.getFirstNativeHeader(ResumableSessionChannelInterceptor.RESUMED_HEADER, connected.getHeaders()));
+        assertEquals("3", NativeMessageHeaderAccessor.getFirstNativeHeader(ResumableSessionChannelInterceptor.RESUME_SEQUENCE_HEADER, connected.getHeaders()));
+
+        outbound.afterMessageHandled(connected, clientOutboundChannel, null, null);
+        ArgumentCaptor<Message<?>> replayed = ArgumentCaptor.forClass(Message.class);
+        verify(clientOutboundChannel, times(2)).send(replayed.capture());
+        List<Message<?>> delivered = replayed.getAllValues().stream()
+                .map(message -> outbound.preSend(message, clientOutboundChannel))
+                .collect(Collectors.toList());
+        assertEquals("connection-2", SimpMessageHeaderAccessor.getSessionId(delivered.get(0).getHeaders()));
+        assertEquals("4", sequenceOf(delivered.get(0)));
+        assertEquals("5", sequenceOf(delivered.get(1)));
+        assertEquals("6", sequenceOf(outbound.preSend(message(sessionId), clientOutboundChannel)));
+    }
+
+    @Test
+    public void theFramesOfATakenOverConnectionAreDropped() {
+        String sessionId = connected("connection-1", null, null);
+        ResumableSession resumableSession = resumableSessionRegistry.getBySessionId(sessionId);
+
+        Message<?> connect = inbound.preSend(connect("connection-2", resumableSession.getToken(), "0"), clientInboundChannel);
+        assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(connect.getHeaders()));
+        verify(stompErrorSender).sendError(eq("connection-1"), anyString());
+
+        assertNull(inbound.preSend(send("connection-1"), clientInboundChannel));
+        // Nor does its DISCONNECT close the session.
+        assertNull(inbound.preSend(disconnect("connection-1"), clientInboundChannel));
+        assertFalse(resumableSession.isClosed());
+        // The messages wait for the CONNECTED frame of the new connection.
+        assertNull(outbound.preSend(message(sessionId), clientOutboundChannel));
+
+        Message<?> send = inbound.preSend(send("connection-2"), clientInboundChannel);
+        assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(send.getHeaders()));
+    }
+
+    @Test
+    public void theTokenOfAnotherUserOpensANewSession() {
+        String sessionId = connected(connect("connection-1", null, null, "alice"));
+        ResumableSession resumableSession = resumableSessionRegistry.getBySessionId(sessionId);
+
+        Message<?> connect = inbound.preSend(connect("connection-2", resumableSession.getToken(), "0", "bob"), clientInboundChannel);
+        String newSessionId = SimpMessageHeaderAccessor.getSessionId(connect.getHeaders());
+        assertFalse(sessionId.equals(newSessionId));
+        assertEquals("bob", resumableSessionRegistry.getBySessionId(newSessionId).getUserName());
+        // The session of alice is left alone, and its messages are not sent to the connection of bob.
+        verify(stompErrorSender, never()).sendError(anyString(), anyString());
+        assertEquals("connection-1", resumableSession.getConnectionId());
+        Message<?> delivered = outbound.preSend(message(sessionId), clientOutboundChannel);
+        assertEquals("connection-1", SimpMessageHeaderAccessor.getSessionId(delivered.getHeaders()));
+    }
+
+    @Test
+    public void theDisconnectOfTheClientClosesTheSession() {
+        String sessionId = connected("connection-1", null, null);
+        ResumableSession resumableSession = resumableSessionRegistry.getBySessionId(sessionId);
+
+        Message<?> disconnect = inbound.preSend(disconnect("connection-1"), clientInboundChannel);
+        assertNotNull(disconnect);
+        assertEquals(sessionId, SimpMessageHeaderAccessor.getSessionId(disconnect.getHeaders()));
+        assertTrue(resumableSession.isClosed());
+
+        // So the connection ending doesn't suspend it, and the token opens a new session.
+        assertFalse(resumableSessionRegistry.suspend("connection-1"));
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Date.class));
+        Message<?> connect = inbound.preSend(connect("connection-2", resumableSession.getToken(), "0"), clientInboundChannel);
+        assertFalse(sessionId.equals(SimpMessageHeaderAccessor.getSessionId(connect.getHeaders())));
+    }
+
+    @Test
+    public void theOtherConnectionsAreLeftAlone() {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        headerAccessor.setSessionId("connection-1");
+        Message<?> connect = MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+        assertEquals("connection-1", SimpMessageHeaderAccessor.getSessionId(inbound.preSend(connect, clientInboundChannel).getHeaders()));
+        assertNull(resumableSessionRegistry.getByConnectionId("connection-1"));
+        assertFalse(resumableSessionRegistry.suspend("connection-1"));
+        assertNotNull(inbound.preSend(disconnect("connection-1"), clientInboundChannel));
+    }
+
+    /**
+     * @return The sessionId of the resumable session, once its CONNECTED frame has been sent to the connection.
+     */
+    private String connected(String connectionId, String token, String sequence) {
+        return connected(connect(connectionId, token, sequence, null));
+    }
+
+    private String connected(Message<?> connectFrame) {
+        Message<?> connect = inbound.preSend(connectFrame, clientInboundChannel);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(connect.getHeaders());
+        Message<?> connected = outbound.preSend(connectAck(sessionId, connect), clientOutboundChannel);
+        outbound.afterMessageHandled(connected, clientOutboundChannel, null, null);
+        return sessionId;
+    }
+
+    private static Message<?> connect(String connectionId, String token, String sequence) {
+        return connect(connectionId, token, sequence, null);
+    }
+
+    /**
+     * @param userName: Name of the Principal the authentication interceptors have set, or null if the CONNECT is anonymous.
+     */
+    private static Message<?> connect(String connectionId, String token, String sequence, String userName) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        headerAccessor.setSessionId(connectionId);
+        if (userName != null) {
+            headerAccessor.setUser(new UsernamePasswordAuthenticationToken(userName, null));
+        }
+        headerAccessor.setSessionAttributes(new ConcurrentHashMap<>());
+        headerAccessor.setAcceptVersion("1.1,1.2");
+        headerAccessor.setHeartbeat(10000, 10000);
+        if (token != null) {
+            headerAccessor.setNativeHeader(ResumableSessionChannelInterceptor.RESUME_TOKEN_HEADER, token);
+            headerAccessor.setNativeHeader(ResumableSessionChannelInterceptor.RESUME_SEQUENCE_HEADER, sequence);
+        } else {
+            headerAccessor.setNativeHeader(ResumableSessionChannelInterceptor.RESUME_HEADER, "true");
+        }
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    /**
+     * The CONNECT_ACK the SimpleBrokerMessageHandler answers the CONNECT with.
+     */
+    private static Message<?> connectAck(String sessionId, Message<?> connect) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSessionAttributes(SimpMessageHeaderAccessor.getSessionAttributes(connect.getHeaders()));
+        headerAccessor.setHeader(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER, connect);
+        headerAccessor.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, new long[]{10000, 10000});
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<?> message(String sessionId) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId("sub-0");
+        headerAccessor.setDestination("/topic/public");
+        return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<?> ack(String connectionId, String sequence) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.ACK);
+        headerAccessor.setSessionId(connectionId);
+        headerAccessor.setNativeHeader(ResumableSessionChannelInterceptor.SESSION_SEQUENCE_HEADER, sequence);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<?> send(String connectionId) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.SEND);
+        headerAccessor.setSessionId(connectionId);
+        headerAccessor.setDestination("/app/chat.sendMessage");
+        return MessageBuilder.createMessage("{}".getBytes(StandardCharsets.UTF_8), headerAccessor.getMessageHeaders());
+    }
+
+    private static Message<?> disconnect(String connectionId) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        headerAccessor.setSessionId(connectionId);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static String sequenceOf(Message<?> message) {
+        return NativeMessageHeaderAccessor.getFirstNativeHeader(ResumableSessionChannelInterceptor.SESSION_SEQUENCE_HEADER, message.getHeaders());
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.websocketdemo.interceptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TokenAuthenticationChannelInterceptorTests {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private final StompErrorSender stompErrorSender = mock(StompErrorSender.class);
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void anInvalidTokenGetsAnErrorFrame() {
+        TokenAuthenticationChannelInterceptor interceptor = interceptor(false);
+        String token = sign(interceptor, "alice");
+        String forgedToken = token.substring(0, token.length() - 3) + "AAA";
+
+        assertNull(interceptor.preSend(connect("session-1", forgedToken), channel));
+        verify(stompErrorSender).sendError(eq("session-1"), anyString());
+        assertEquals(1, connects("rejected"), 0);
+    }
+
+    @Test
+    public void aCachedTokenIsNotVerifiedAgain() {
+        TokenAuthenticationChannelInterceptor interceptor = interceptor(false);
+        String token = sign(interceptor, "alice");
+
+        Principal first = user(interceptor.preSend(connect("session-1", token), channel));
+        assertEquals("alice", first.getName());
+        Principal second = user(interceptor.preSend(connect("session-2", token), channel));
+        // The Authentication made by the verification of the token is reused as it is.
+        assertSame(first, second);
+        assertEquals(1, connects("verified"), 0);
+        assertEquals(1, connects("cached"), 0);
+        verify(stompErrorSender, never()).sendError(anyString(), anyString());
+    }
+
+    @Test
+    public void aConnectWithoutATokenIsAnonymousUnlessATokenIsRequired() {
+        Message<?> connect = interceptor(false).preSend(connect("session-1", null), channel);
+        assertNotNull(connect);
+        assertNull(SimpMessageHeaderAccessor.getUser(connect.getHeaders()));
+        assertEquals(1, connects("anonymous"), 0);
+
+        assertNull(interceptor(true).preSend(connect("session-2", null), channel));
+        verify(stompErrorSender).sendError(eq("session-2"), anyString());
+        assertEquals(1, connects("rejected"), 0);
+    }
+
+    private TokenAuthenticationChannelInterceptor interceptor(boolean required) {
+        return new TokenAuthenticationChannelInterceptor(true, required, SECRET, 100, new ObjectMapper(), stompErrorSender, meterRegistry);
+    }
+
+    private static String sign(TokenAuthenticationChannelInterceptor interceptor, String subject) {
+        // The token expiry has a precision of a second.
+        return interceptor.getTokenVerifier().sign(subject, TimeUnit.SECONDS.toMillis(
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600));
+    }
+
+    private static Message<?> connect(String sessionId, String token) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        headerAccessor.setSessionId(sessionId);
+        if (token != null) {
+            headerAccessor.setNativeHeader(TokenAuthenticationChannelInterceptor.AUTHORIZATION_HEADER, "Bearer " + token);
+        }
+        // Left mutable, like the CONNECT messages of the StompSubProtocolHandler, so the user can be set on them.
+        headerAccessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static Principal user(Message<?> message) {
+        return SimpMessageHeaderAccessor.getUser(message.getHeaders());
+    }
+
+    private double connects(String result) {
+        return meterRegistry.get("websocket.stomp.token-auth.connects").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.websocketdemo.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageJournalTests {
+
+    private static final String DESTINATION = "/topic/public";
+
+    private static final String OTHER_DESTINATION = "/topic/other";
+
+    // Small segments, so the messages below are spread over several of them.
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+
+    private MessageJournal messageJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("journal").toPath();
+        messageJournal = openJournal();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        messageJournal.close();
+    }
+
+    @Test
+    public void messagesArePagedByDestinationAcrossSegments() throws Exception {
+        appendMessages(0, 200);
+        messageJournal.close();
+        assertTrue(listSegments().size() > 1);
+
+        messageJournal = openJournal();
+        List<JournalRecord> firstPage = messageJournal.read(DESTINATION, 0, 30);
+        assertEquals(30, firstPage.size());
+        assertEquals("{\"content\":\"message-0\"}", payload(firstPage.get(0)));
+        List<JournalRecord> secondPage = messageJournal.read(DESTINATION, firstPage.get(29).getSequence(), 1000);
+        assertEquals(70, secondPage.size());
+        assertEquals("{\"content\":\"message-198\"}", payload(secondPage.get(69)));
+
+        long sequence = messageJournal.findSequence(firstPage.get(10).getTimestampMillis());
+        assertTrue(sequence <= firstPage.get(10).getSequence());
+    }
+
+    /**
+     * The process stopped while a record was being written: its header is there, but the rest of it is not.
+     */
+    @Test
+    public void tornRecordIsDiscardedOnRecovery() throws Exception {
+        appendMessages(0, 50);
+        messageJournal.close();
+        long lastSequence = messageJournal.getLastSequence();
+
+        Path lastSegment = lastSegment();
+        int end = endOfRecords(lastSegment);
+        try (FileChannel fileChannel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+            ByteBuffer tornRecord = ByteBuffer.allocate(12);
+            tornRecord.putInt(200).putInt(0x12345678).putInt((int) lastSequence + 1).flip();
+            fileChannel.write(tornRecord, end);
+        }
+
+        messageJournal = openJournal();
+        assertEquals(lastSequence, messageJournal.getLastSequence());
+        assertEquals(25, messageJournal.read(DESTINATION, 0, 1000).size());
+
+        // The next message is written over the torn record, and survives the next restart.
+        messageJournal.append(DESTINATION, "{\"content\":\"after-crash\"}".getBytes(StandardCharsets.UTF_8));
+        messageJournal.close();
+        messageJournal = openJournal();
+        List<JournalRecord> records = messageJournal.read(DESTINATION, 0, 1000);
+        assertEquals(26, records.size());
+        assertEquals(lastSequence + 1, records.get(25).getSequence());
+        assertEquals("{\"content\":\"after-crash\"}", payload(records.get(25)));
+    }
+
+    /**
+     * The last record is complete in length, but its bytes were not all written to the disk, so its CRC32 doesn't match.
+     */
+    @Test
+    public void corruptedLastRecordIsDiscardedOnRecovery() throws Exception {
+        appendMessages(0, 50);
+        messageJournal.close();
+        long lastSequence = messageJournal.getLastSequence();
+
+        Path lastSegment = lastSegment();
+        int end = endOfRecords(lastSegment);
+        try (FileChannel fileChannel = FileChannel.open(lastSegment, StandardOpenOption.WRITE)) {
+            fileChannel.write(ByteBuffer.wrap(new byte[]{'#'}), end - 3);
+        }
+
+        messageJournal = openJournal();
+        assertEquals(lastSequence - 1, messageJournal.getLastSequence());
+        messageJournal.append(OTHER_DESTINATION, "{\"content\":\"after-crash\"}".getBytes(StandardCharsets.UTF_8));
+        messageJournal.close();
+        messageJournal = openJournal();
+        assertEquals(lastSequence, messageJournal.getLastSequence());
+        List<JournalRecord> records = messageJournal.read(OTHER_DESTINATION, 0, 1000);
+        assertEquals("{\"content\":\"after-crash\"}", payload(records.get(records.size() - 1)));
+    }
+
+    private MessageJournal openJournal() throws IOException {
+        MessageJournal journal = new MessageJournal(directory, SEGMENT_SIZE, 100, 4, 1024, 16, true);
+        journal.start();
+        return journal;
+    }
+
+    /**
+     * Appends the messages, every other one to OTHER_DESTINATION.
+     */
+    private void appendMessages(int from, int to) {
+        for (int i = from; i < to; i++) {
+            String destination = i % 2 == 0 ? DESTINATION : OTHER_DESTINATION;
+            assertTrue(messageJournal.append(destination, ("{\"content\":\"message-" + i + "\"}").getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = listSegments();
+        return segments.get(segments.size() - 1);
+    }
+
+    private static int endOfRecords(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int position = 0;
+        while (buffer.getInt(position) != 0) {
+            position += 4 + buffer.getInt(position);
+        }
+        return position;
+    }
+
+    private static String payload(JournalRecord record) {
+        return new String(record.getPayload(), StandardCharsets.UTF_8);
+    }
+}
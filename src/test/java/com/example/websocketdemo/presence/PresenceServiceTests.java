@@ -0,0 +1,52 @@
+package com.example.websocketdemo.presence;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class PresenceServiceTests {
+
+    // The deltas are not flushed here, the snapshots are up to date anyway.
+    private final PresenceService presenceService = new PresenceService(true, 1000, mock(SimpMessageSendingOperations.class),
+            mock(TaskScheduler.class), new SimpleMeterRegistry());
+
+    @Test
+    public void aSessionChangingItsNameMovesToTheNewName() {
+        Map<String, Object> sessionAttributes = new ConcurrentHashMap<>();
+        presenceService.join(PresenceService.PUBLIC_ROOM, "alice", sessionAttributes);
+        presenceService.join("red", "alice", sessionAttributes);
+
+        presenceService.join(PresenceService.PUBLIC_ROOM, "bob", sessionAttributes);
+        assertEquals(Collections.singletonList("bob"), presenceService.snapshot(PresenceService.PUBLIC_ROOM).getUsers());
+        assertEquals(Collections.singletonList("bob"), presenceService.snapshot("red").getUsers());
+
+        presenceService.leaveAll(sessionAttributes);
+        assertEquals(Collections.emptyList(), presenceService.snapshot(PresenceService.PUBLIC_ROOM).getUsers());
+        assertEquals(Collections.emptyList(), presenceService.snapshot("red").getUsers());
+    }
+
+    @Test
+    public void theOtherSessionsOfTheOldNameStayOnline() {
+        Map<String, Object> firstSessionAttributes = new ConcurrentHashMap<>();
+        Map<String, Object> secondSessionAttributes = new ConcurrentHashMap<>();
+        presenceService.join(PresenceService.PUBLIC_ROOM, "alice", firstSessionAttributes);
+        presenceService.join(PresenceService.PUBLIC_ROOM, "alice", secondSessionAttributes);
+
+        presenceService.join(PresenceService.PUBLIC_ROOM, "bob", secondSessionAttributes);
+        assertEquals(Arrays.asList("alice", "bob"), presenceService.snapshot(PresenceService.PUBLIC_ROOM).getUsers());
+
+        presenceService.leaveAll(secondSessionAttributes);
+        assertEquals(Collections.singletonList("alice"), presenceService.snapshot(PresenceService.PUBLIC_ROOM).getUsers());
+        presenceService.leaveAll(firstSessionAttributes);
+        assertEquals(Collections.emptyList(), presenceService.snapshot(PresenceService.PUBLIC_ROOM).getUsers());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.websocketdemo.presence;
+
+import com.example.websocketdemo.model.PresenceDelta;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RoomPresenceTests {
+
+    private final RoomPresence roomPresence = new RoomPresence("public");
+
+    @Test
+    public void coalescesTheChangesUntilTheFlush() {
+        assertTrue(roomPresence.join("alice"));
+        assertFalse(roomPresence.join("bob"));
+        assertFalse(roomPresence.join("carol"));
+        assertFalse(roomPresence.leave("carol"));
+
+        PresenceDelta presenceDelta = roomPresence.flush(1, 0);
+        assertEquals(Arrays.asList("alice", "bob"), presenceDelta.getJoined());
+        assertEquals(Collections.emptyList(), presenceDelta.getLeft());
+        assertEquals(2, presenceDelta.getCount());
+        assertEquals(Arrays.asList("alice", "bob"), roomPresence.snapshot().getUsers());
+        assertEquals(1, roomPresence.snapshot().getVersion());
+    }
+
+    @Test
+    public void leavingAndJoiningAgainBeforeTheFlushIsNotBroadcast() {
+        roomPresence.join("alice");
+        roomPresence.flush(1, 0);
+
+        assertTrue(roomPresence.leave("alice"));
+        assertFalse(roomPresence.join("alice"));
+        assertNull(roomPresence.flush(2, 0));
+        assertEquals(Collections.singletonList("alice"), roomPresence.snapshot().getUsers());
+    }
+
+    @Test
+    public void aUserIsOnlineUntilItsLastSessionLeaves() {
+        roomPresence.join("alice");
+        roomPresence.join("alice");
+        roomPresence.flush(1, 0);
+
+        assertFalse(roomPresence.leave("alice"));
+        assertEquals(1, roomPresence.size());
+        assertTrue(roomPresence.leave("alice"));
+        assertFalse(roomPresence.isIdle());
+
+        PresenceDelta presenceDelta = roomPresence.flush(2, 0);
+        assertEquals(Collections.singletonList("alice"), presenceDelta.getLeft());
+        assertEquals(0, presenceDelta.getCount());
+        assertTrue(roomPresence.isIdle());
+    }
+
+    @Test
+    public void theDeltasAreAtLeastTheIntervalApart() {
+        roomPresence.join("alice");
+        roomPresence.flush(1, 1000);
+        assertEquals(600, roomPresence.flushDelayMillis(1400, 1000));
+        assertEquals(0, roomPresence.flushDelayMillis(2500, 1000));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.websocketdemo.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GcraRateLimiterTests {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // 10 messages per second, so one every 100 ms, and up to 5 at once.
+    private final GcraRateLimiter rateLimiter = new GcraRateLimiter(10, 5);
+
+    @Test
+    public void allowsTheBurstThenTheRate() {
+        long now = ONE_SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire("session-1", now));
+        }
+        assertFalse(rateLimiter.tryAcquire("session-1", now));
+        // The other keys have their own bucket.
+        assertTrue(rateLimiter.tryAcquire("session-2", now));
+
+        assertFalse(rateLimiter.tryAcquire("session-1", now + ONE_SECOND / 20));
+        assertTrue(rateLimiter.tryAcquire("session-1", now + ONE_SECOND / 10));
+        assertFalse(rateLimiter.tryAcquire("session-1", now + ONE_SECOND / 10));
+    }
+
+    @Test
+    public void refillsTheBurstWhenIdle() {
+        long now = ONE_SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire("session-1", now));
+        }
+        now += ONE_SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire("session-1", now));
+        }
+        assertFalse(rateLimiter.tryAcquire("session-1", now));
+    }
+
+    @Test
+    public void evictsTheKeysWithAFullBucket() {
+        long now = ONE_SECOND;
+        rateLimiter.tryAcquire("session-1", now);
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.tryAcquire("session-2", now);
+        }
+        rateLimiter.evictIdle(now + ONE_SECOND / 5);
+        assertEquals(1, rateLimiter.size());
+        rateLimiter.evictIdle(now + ONE_SECOND);
+        assertEquals(0, rateLimiter.size());
+    }
+}
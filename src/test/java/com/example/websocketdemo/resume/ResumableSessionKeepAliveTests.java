@@ -0,0 +1,95 @@
+package com.example.websocketdemo.resume;
+
+import com.example.websocketdemo.interceptor.ResumableSessionChannelInterceptor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.MultiValueMap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The simple broker disconnects a session it hasn't heard from in 3 heart-beat intervals: 30 seconds with the default
+ * websocket.stomp.heartbeat.* and a client asking for 10 seconds. So a session suspended for longer must still be subscribed.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "websocket.stomp.resume.grace-period-seconds=60")
+public class ResumableSessionKeepAliveTests {
+
+    private static final String CONNECTION_ID = "connection-1";
+
+    private static final String DESTINATION = "/topic/public";
+
+    @Autowired
+    @Qualifier("clientInboundChannel")
+    private MessageChannel clientInboundChannel;
+
+    @Autowired
+    private SimpleBrokerMessageHandler simpleBrokerMessageHandler;
+
+    @Autowired
+    private ResumableSessionRegistry resumableSessionRegistry;
+
+    @Test
+    public void aSuspendedSessionOutlivesTheReadTimeoutOfTheBroker() throws Exception {
+        clientInboundChannel.send(frame(StompCommand.CONNECT));
+        ResumableSession resumableSession = resumableSessionRegistry.getByConnectionId(CONNECTION_ID);
+        assertNotNull(resumableSession);
+        clientInboundChannel.send(frame(StompCommand.SUBSCRIBE));
+        long deadlineMillis = System.currentTimeMillis() + 5000;
+        while (!isSubscribed(resumableSession) && System.currentTimeMillis() < deadlineMillis) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        assertTrue(isSubscribed(resumableSession));
+
+        // The connection is lost, and the client takes longer than the read timeout of the broker to come back.
+        assertTrue(resumableSessionRegistry.suspend(CONNECTION_ID));
+        TimeUnit.SECONDS.sleep(41);
+
+        assertTrue("The broker has dropped the subscription of the suspended session.", isSubscribed(resumableSession));
+        assertNotNull(resumableSessionRegistry.getBySessionId(resumableSession.getSessionId()));
+    }
+
+    private boolean isSubscribed(ResumableSession resumableSession) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setDestination(DESTINATION);
+        MultiValueMap<String, String> subscriptions = simpleBrokerMessageHandler.getSubscriptionRegistry()
+                .findSubscriptions(MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders()));
+        return subscriptions.containsKey(resumableSession.getSessionId());
+    }
+
+    /**
+     * The frame as the StompSubProtocolHandler hands it over, which also gives the heart-beat of a CONNECT to the broker.
+     */
+    private static Message<byte[]> frame(StompCommand command) {
+        StompHeaderAccessor headerAccessor = StompHeaderAccessor.create(command);
+        headerAccessor.setSessionId(CONNECTION_ID);
+        headerAccessor.setSessionAttributes(new ConcurrentHashMap<>());
+        if (StompCommand.CONNECT.equals(command)) {
+            headerAccessor.setAcceptVersion("1.2");
+            headerAccessor.setHeartbeat(10000, 10000);
+            headerAccessor.setHeader(SimpMessageHeaderAccessor.HEART_BEAT_HEADER, headerAccessor.getHeartbeat());
+            headerAccessor.setNativeHeader(ResumableSessionChannelInterceptor.RESUME_HEADER, "true");
+        } else {
+            headerAccessor.setDestination(DESTINATION);
+            headerAccessor.setSubscriptionId("sub-0");
+        }
+        headerAccessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.websocketdemo.resume;
+
+import com.example.websocketdemo.interceptor.StompErrorSender;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ResumableSessionRegistryTests {
+
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+
+    private final ScheduledFuture<?> expiry = mock(ScheduledFuture.class);
+
+    private final List<ApplicationEvent> events = new CopyOnWriteArrayList<>();
+
+    private final StompErrorSender stompErrorSender = mock(StompErrorSender.class);
+
+    private final MessageChannel clientInboundChannel = mock(MessageChannel.class);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ResumableSessionRegistry resumableSessionRegistry = new ResumableSessionRegistry(true, 30, 256, 10000, taskScheduler,
+            event -> events.add((ApplicationEvent) event), stompErrorSender, clientInboundChannel, meterRegistry);
+
+    @Before
+    public void setUp() {
+        doReturn(expiry).when(taskScheduler).schedule(any(Runnable.class), any(Date.class));
+    }
+
+    @Test
+    public void aSuspendedSessionIsResumedByTheToken() {
+        ResumableSession resumableSession = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        assertSame(resumableSession, resumableSessionRegistry.getBySessionId(resumableSession.getSessionId()));
+
+        assertTrue(resumableSessionRegistry.suspend("connection-1"));
+        assertEquals(1, suspendedSessions(), 0);
+        assertNull(resumableSessionRegistry.getByConnectionId("connection-1"));
+
+        assertSame(resumableSession, resumableSessionRegistry.resume(resumableSession.getToken(), "alice", 5, "connection-2", new HashMap<>()));
+        verify(expiry).cancel(false);
+        assertEquals("connection-2", resumableSession.getConnectionId());
+        assertEquals(5, resumableSession.getReplaySequence());
+        assertSame(resumableSession, resumableSessionRegistry.getByConnectionId("connection-2"));
+        assertEquals(0, suspendedSessions(), 0);
+        assertEquals(1, meterRegistry.get("websocket.sessions.resumed").counter().count(), 0);
+        verify(stompErrorSender, never()).sendError(anyString(), anyString());
+    }
+
+    @Test
+    public void anExpiredSessionIsDisconnectedFromTheBroker() {
+        ResumableSession resumableSession = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        resumableSession.getSessionAttributes().put("username", "alice");
+        resumableSessionRegistry.suspend("connection-1");
+
+        runExpiry();
+        assertTrue(resumableSession.isClosed());
+        assertNull(resumableSessionRegistry.getBySessionId(resumableSession.getSessionId()));
+        assertNull(resumableSessionRegistry.resume(resumableSession.getToken(), "alice", 0, "connection-2", new HashMap<>()));
+        assertEquals(0, suspendedSessions(), 0);
+        assertEquals(1, meterRegistry.get("websocket.sessions.resume.expired").counter().count(), 0);
+
+        ArgumentCaptor<Message<?>> disconnect = ArgumentCaptor.forClass(Message.class);
+        verify(clientInboundChannel).send(disconnect.capture());
+        assertEquals(SimpMessageType.DISCONNECT, SimpMessageHeaderAccessor.getMessageType(disconnect.getValue().getHeaders()));
+        assertEquals(resumableSession.getSessionId(), SimpMessageHeaderAccessor.getSessionId(disconnect.getValue().getHeaders()));
+
+        assertEquals(1, events.size());
+        ResumableSessionExpiredEvent expiredEvent = (ResumableSessionExpiredEvent) events.get(0);
+        assertEquals(resumableSession.getSessionId(), expiredEvent.getSessionId());
+        assertEquals("alice", expiredEvent.getSessionAttributes().get("username"));
+    }
+
+    @Test
+    public void aSessionResumedBeforeItsExpiryDoesNotExpire() {
+        ResumableSession resumableSession = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        resumableSessionRegistry.suspend("connection-1");
+        resumableSessionRegistry.resume(resumableSession.getToken(), "alice", 0, "connection-2", new HashMap<>());
+
+        // The expiry was cancelled, but it may have started already.
+        runExpiry();
+        assertFalse(resumableSession.isClosed());
+        assertTrue(events.isEmpty());
+        verify(clientInboundChannel, never()).send(any());
+    }
+
+    @Test
+    public void anotherUserCannotResumeTheSession() {
+        ResumableSession resumableSession = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        resumableSessionRegistry.suspend("connection-1");
+
+        assertNull(resumableSessionRegistry.resume(resumableSession.getToken(), "bob", 0, "connection-2", new HashMap<>()));
+        assertNull(resumableSessionRegistry.resume(resumableSession.getToken(), null, 0, "connection-3", new HashMap<>()));
+        assertNull(resumableSessionRegistry.getByConnectionId("connection-2"));
+        assertNull(resumableSessionRegistry.getByConnectionId("connection-3"));
+        assertEquals(1, suspendedSessions(), 0);
+        assertEquals(0, meterRegistry.get("websocket.sessions.resumed").counter().count(), 0);
+
+        // Its user still can.
+        assertSame(resumableSession, resumableSessionRegistry.resume(resumableSession.getToken(), "alice", 0, "connection-4", new HashMap<>()));
+    }
+
+    @Test
+    public void resumingALiveSessionClosesItsPreviousConnection() {
+        ResumableSession resumableSession = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        assertSame(resumableSession, resumableSessionRegistry.resume(resumableSession.getToken(), "alice", 0, "connection-2", new HashMap<>()));
+        verify(stompErrorSender).sendError(eq("connection-1"), anyString());
+        // The previous connection still finds the session, to have its frames dropped.
+        assertSame(resumableSession, resumableSessionRegistry.getByConnectionId("connection-1"));
+
+        // Once it has ended, the session is not suspended, as it's using the new connection.
+        assertTrue(resumableSessionRegistry.suspend("connection-1"));
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Date.class));
+        assertEquals("connection-2", resumableSession.getConnectionId());
+        assertEquals(0, suspendedSessions(), 0);
+    }
+
+    @Test
+    public void theDisconnectOfAnEndedConnectionIsDroppedOnce() {
+        resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        assertFalse(resumableSessionRegistry.isEnded("connection-1"));
+        resumableSessionRegistry.suspend("connection-1");
+        assertTrue(resumableSessionRegistry.isEnded("connection-1"));
+        assertFalse(resumableSessionRegistry.isEnded("connection-1"));
+
+        // Nor the one of a connection without a resumable session.
+        assertFalse(resumableSessionRegistry.suspend("connection-3"));
+        assertFalse(resumableSessionRegistry.isEnded("connection-3"));
+    }
+
+    @Test
+    public void aClosedSessionIsRemovedWhenItsConnectionEnds() {
+        ResumableSession resumableSession = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        resumableSessionRegistry.close(resumableSession);
+        assertNull(resumableSessionRegistry.resume(resumableSession.getToken(), "alice", 0, "connection-2", new HashMap<>()));
+
+        assertFalse(resumableSessionRegistry.suspend("connection-1"));
+        assertFalse(resumableSessionRegistry.isEnded("connection-1"));
+        assertNull(resumableSessionRegistry.getBySessionId(resumableSession.getSessionId()));
+    }
+
+    @Test
+    public void aSuspendedSessionIsKeptAliveAtTheBroker() {
+        doReturn(mock(ScheduledFuture.class)).when(taskScheduler).scheduleWithFixedDelay(any(Runnable.class), eq(10000L));
+        resumableSessionRegistry.afterPropertiesSet();
+        ArgumentCaptor<Runnable> keepAlive = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).scheduleWithFixedDelay(keepAlive.capture(), eq(10000L));
+
+        ResumableSession suspended = resumableSessionRegistry.open("connection-1", "alice", new HashMap<>());
+        resumableSessionRegistry.open("connection-2", "bob", new HashMap<>());
+        resumableSessionRegistry.suspend("connection-1");
+        keepAlive.getValue().run();
+
+        // The connected session has its own heart-beats.
+        ArgumentCaptor<Message<?>> heartbeat = ArgumentCaptor.forClass(Message.class);
+        verify(clientInboundChannel).send(heartbeat.capture());
+        assertEquals(SimpMessageType.HEARTBEAT, SimpMessageHeaderAccessor.getMessageType(heartbeat.getValue().getHeaders()));
+        assertEquals(suspended.getSessionId(), SimpMessageHeaderAccessor.getSessionId(heartbeat.getValue().getHeaders()));
+    }
+
+    private void runExpiry() {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(task.capture(), any(Date.class));
+        task.getValue().run();
+    }
+
+    private double suspendedSessions() {
+        return meterRegistry.get("websocket.sessions.resumable").tag("state", "suspended").gauge().value();
+    }
+}
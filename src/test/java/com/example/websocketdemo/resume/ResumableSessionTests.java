@@ -0,0 +1,115 @@
+package com.example.websocketdemo.resume;
+
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ResumableSessionTests {
+
+    private static final String SEQUENCE_HEADER = "session-sequence";
+
+    private final ResumableSession resumableSession = new ResumableSession("token", "resumable-1", "alice", 3, "connection-1", new HashMap<>());
+
+    @Test
+    public void sequencesTheMessagesAndKeepsTheLastOnes() {
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(Long.toString(i), sequenceOf(resumableSession.sequence(message(), SEQUENCE_HEADER)));
+        }
+        // Not sent before the CONNECTED frame. Only 3 are kept, so the replay starts after 2.
+        assertNull(resumableSession.getReceivingConnectionId());
+        assertEquals(sequences(3, 4, 5), sequencesOf(resumableSession.startReceiving("connection-1")));
+        assertEquals("connection-1", resumableSession.getReceivingConnectionId());
+    }
+
+    @Test
+    public void acknowledgeTrimsUpToTheSequence() {
+        for (int i = 1; i <= 3; i++) {
+            resumableSession.sequence(message(), SEQUENCE_HEADER);
+        }
+        resumableSession.acknowledge(2);
+        // Acknowledging again, or an older sequence, doesn't drop the next ones.
+        resumableSession.acknowledge(1);
+        resumableSession.acknowledge(2);
+        assertEquals(sequences(3), sequencesOf(resumableSession.startReceiving("connection-1")));
+    }
+
+    @Test
+    public void replaysTheMessagesAfterTheResumeSequence() {
+        resumableSession.startReceiving("connection-1");
+        for (int i = 1; i <= 3; i++) {
+            resumableSession.sequence(message(), SEQUENCE_HEADER);
+        }
+        ScheduledFuture<?> expiry = mock(ScheduledFuture.class);
+        resumableSession.suspend(expiry);
+        assertNull(resumableSession.getConnectionId());
+        assertNull(resumableSession.getReceivingConnectionId());
+
+        resumableSession.attach("connection-2", new HashMap<>(), true, 1);
+        verify(expiry).cancel(false);
+        assertTrue(resumableSession.isResumed());
+        assertEquals(1, resumableSession.getReplaySequence());
+        // Not before its CONNECTED frame has been sent, and only to the connection of the session.
+        assertNull(resumableSession.getReceivingConnectionId());
+        assertTrue(resumableSession.startReceiving("connection-1").isEmpty());
+        assertEquals(sequences(2, 3), sequencesOf(resumableSession.startReceiving("connection-2")));
+        assertTrue(resumableSession.startReceiving("connection-2").isEmpty());
+    }
+
+    @Test
+    public void theResumingConnectionGetsTheSessionAttributes() {
+        resumableSession.getSessionAttributes().put("username", "alice");
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        resumableSession.attach("connection-2", sessionAttributes, true, 0);
+        assertEquals("alice", sessionAttributes.get("username"));
+        assertSame(sessionAttributes, resumableSession.getSessionAttributes());
+    }
+
+    @Test
+    public void expireOnlyClosesASuspendedSession() {
+        resumableSession.sequence(message(), SEQUENCE_HEADER);
+        assertFalse(resumableSession.expire());
+
+        resumableSession.suspend(mock(ScheduledFuture.class));
+        assertTrue(resumableSession.expire());
+        assertTrue(resumableSession.isClosed());
+        assertFalse(resumableSession.expire());
+        resumableSession.attach("connection-2", new HashMap<>(), true, 0);
+        assertTrue(resumableSession.startReceiving("connection-2").isEmpty());
+    }
+
+    private static Message<?> message() {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId("resumable-1");
+        return MessageBuilder.createMessage(new byte[0], headerAccessor.getMessageHeaders());
+    }
+
+    private static String sequenceOf(Message<?> message) {
+        return NativeMessageHeaderAccessor.getFirstNativeHeader(SEQUENCE_HEADER, message.getHeaders());
+    }
+
+    private static List<String> sequencesOf(List<Message<?>> messages) {
+        return messages.stream().map(ResumableSessionTests::sequenceOf).collect(Collectors.toList());
+    }
+
+    private static List<String> sequences(long... sequences) {
+        return Arrays.stream(sequences).mapToObj(Long::toString).collect(Collectors.toList());
+    }
+}
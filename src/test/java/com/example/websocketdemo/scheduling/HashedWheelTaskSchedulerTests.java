@@ -0,0 +1,101 @@
+package com.example.websocketdemo.scheduling;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTaskSchedulerTests {
+
+    private final HashedWheelTaskScheduler taskScheduler = new HashedWheelTaskScheduler(10, 8, 2, Runnable::run, "test-wheel");
+
+    @After
+    public void destroy() {
+        taskScheduler.destroy();
+    }
+
+    @Test
+    public void expiresTheTimeoutsAtTheEndOfTheirTick() {
+        TimerWheel timerWheel = new TimerWheel(8, 10, 0);
+        WheelTimeout soon = timeout(15);
+        WheelTimeout nextRound = timeout(95);
+        WheelTimeout overdue = timeout(-50);
+        timerWheel.add(soon, 0);
+        timerWheel.add(nextRound, 0);
+        timerWheel.add(overdue, 0);
+        assertEquals(3, timerWheel.size());
+
+        List<WheelTimeout> expired = new ArrayList<>();
+        timerWheel.expire(0, expired);
+        assertEquals(Collections.singletonList(overdue), expired);
+        expired.clear();
+        timerWheel.expire(1, expired);
+        assertEquals(Collections.singletonList(soon), expired);
+
+        // 95 ms is in the tick 9, which is the bucket 1 once the wheel has turned.
+        expired.clear();
+        for (long tick = 2; tick < 9; tick++) {
+            timerWheel.expire(tick, expired);
+        }
+        assertTrue(expired.isEmpty());
+        timerWheel.expire(9, expired);
+        assertEquals(Collections.singletonList(nextRound), expired);
+        assertEquals(0, timerWheel.size());
+    }
+
+    @Test
+    public void removesTheCancelledTimeouts() {
+        TimerWheel timerWheel = new TimerWheel(8, 10, 0);
+        WheelTimeout first = timeout(5);
+        WheelTimeout second = timeout(6);
+        WheelTimeout third = timeout(7);
+        timerWheel.add(first, 0);
+        timerWheel.add(second, 0);
+        timerWheel.add(third, 0);
+        timerWheel.remove(second);
+        timerWheel.remove(second);
+        assertEquals(2, timerWheel.size());
+
+        List<WheelTimeout> expired = new ArrayList<>();
+        timerWheel.expire(0, expired);
+        assertEquals(Arrays.asList(first, third), expired);
+    }
+
+    @Test
+    public void runsTheScheduledTasks() throws Exception {
+        CountDownLatch once = new CountDownLatch(1);
+        CountDownLatch periodic = new CountDownLatch(3);
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        ScheduledFuture<?> future = taskScheduler.schedule(once::countDown, new Date(System.currentTimeMillis() + 30));
+        taskScheduler.scheduleWithFixedDelay(() -> {
+            periodic.countDown();
+            throw new IllegalStateException("A periodic task keeps running after an exception.");
+        }, 20);
+        ScheduledFuture<?> cancelled = taskScheduler.schedule(cancelledRuns::incrementAndGet, new Date(System.currentTimeMillis() + 30));
+        assertTrue(cancelled.cancel(false));
+
+        assertTrue(once.await(1, TimeUnit.SECONDS));
+        assertTrue(periodic.await(1, TimeUnit.SECONDS));
+        future.get(1, TimeUnit.SECONDS);
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertTrue(cancelled.isCancelled());
+        assertEquals(0, cancelledRuns.get());
+    }
+
+    private static WheelTimeout timeout(long deadlineMillis) {
+        return new WheelTimeout(null, () -> { }, deadlineMillis, 0, null);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.websocketdemo.session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoalescingWebSocketSessionDecoratorTests {
+
+    private static final String DESTINATION = "/topic/public";
+
+    private final WebSocketSession delegate = mock(WebSocketSession.class);
+
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+
+    // The flushes only run when the test runs them.
+    private final Queue<Runnable> flushes = new ConcurrentLinkedQueue<>();
+
+    // Up to 3 frames, or 1000 characters.
+    private final CoalescingWebSocketSessionDecorator session = new CoalescingWebSocketSessionDecorator(delegate, taskScheduler,
+            flushes::add, Collections.singleton(DESTINATION), 5, 3, 1000);
+
+    @Before
+    public void setUp() {
+        when(delegate.isOpen()).thenReturn(true);
+        doReturn(mock(ScheduledFuture.class)).when(taskScheduler).schedule(any(Runnable.class), any(Date.class));
+    }
+
+    @Test
+    public void theFramesToTheDestinationsArePackedInOrder() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            session.sendMessage(new TextMessage(message(DESTINATION, "m" + i)));
+        }
+        // The 3rd frame fills the packed message, the 4th one waits for the window.
+        assertEquals(Collections.singletonList(message(DESTINATION, "m1") + message(DESTINATION, "m2") + message(DESTINATION, "m3")),
+                sent(1));
+    }
+
+    @Test
+    public void theOtherFramesSendThePendingOnesFirst() throws Exception {
+        session.sendMessage(new TextMessage(message(DESTINATION, "m1")));
+        session.sendMessage(new TextMessage(message(DESTINATION, "m2")));
+        String privateMessage = message("/user/queue/messages-user1", "m3");
+        session.sendMessage(new TextMessage(privateMessage));
+        String receipt = "RECEIPT\nreceipt-id:r1\n\n\u0000";
+        session.sendMessage(new TextMessage(receipt));
+
+        assertEquals(Arrays.asList(message(DESTINATION, "m1") + message(DESTINATION, "m2"), privateMessage, receipt), sent(3));
+    }
+
+    @Test
+    public void aFrameThatWouldMakeThePackedMessageTooLongIsSentWithTheNextOnes() throws Exception {
+        String first = message(DESTINATION, "m1");
+        String second = message(DESTINATION, repeat('x', (1000 - first.length()) / 2));
+        session.sendMessage(new TextMessage(first));
+        // The body is in the message-id header too, so the frame is a bit shorter than the limit, but not both of them.
+        assertTrue(second.length() < 1000 && first.length() + second.length() > 1000);
+        session.sendMessage(new TextMessage(second));
+        assertEquals(Collections.singletonList(first), sent(1));
+    }
+
+    @Test
+    public void theWindowIsFlushedByTheFlushExecutor() throws Exception {
+        session.sendMessage(new TextMessage(message(DESTINATION, "m1")));
+        session.sendMessage(new TextMessage(message(DESTINATION, "m2")));
+
+        // The TaskScheduler only hands the flush over, it doesn't send anything itself.
+        ArgumentCaptor<Runnable> window = ArgumentCaptor.forClass(Runnable.class);
+        verify(taskScheduler).schedule(window.capture(), any(Date.class));
+        window.getValue().run();
+        verify(delegate, never()).sendMessage(any());
+        assertEquals(1, flushes.size());
+
+        flushes.poll().run();
+        assertEquals(Collections.singletonList(message(DESTINATION, "m1") + message(DESTINATION, "m2")), sent(1));
+        assertTrue(flushes.isEmpty());
+    }
+
+    private List<String> sent(int count) throws Exception {
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(delegate, times(count)).sendMessage(sent.capture());
+        return sent.getAllValues().stream().map(message -> ((TextMessage) message).getPayload()).collect(Collectors.toList());
+    }
+
+    private static String message(String destination, String body) {
+        return "MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\nmessage-id:" + body + "\n\n" + body + "\u0000";
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            stringBuilder.append(c);
+        }
+        return stringBuilder.toString();
+    }
+}
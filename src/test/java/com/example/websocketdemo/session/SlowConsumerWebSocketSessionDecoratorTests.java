@@ -0,0 +1,166 @@
+package com.example.websocketdemo.session;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SlowConsumerWebSocketSessionDecoratorTests {
+
+    // Three of the frames below fit.
+    private static final long MAX_BUFFER_SIZE = 3 * frame("/topic/room.red", "0").getPayloadLength();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final List<ApplicationEvent> events = new CopyOnWriteArrayList<>();
+
+    private final ApplicationEventPublisher eventPublisher = event -> events.add((ApplicationEvent) event);
+
+    // Released once the test has queued its messages, so the first send is stalled until then.
+    private final CountDownLatch stalled = new CountDownLatch(1);
+
+    private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+
+    private final List<String> sentPayloads = new CopyOnWriteArrayList<>();
+
+    private final WebSocketSession delegate = mock(WebSocketSession.class);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void dropOldestKeepsTheNewestMessages() throws Exception {
+        SlowConsumerWebSocketSessionDecorator session = stalledSession(SlowConsumerPolicy.DROP_OLDEST);
+        session.sendMessage(frame("/topic/room.red", "0"));
+        awaitFirstSend();
+        for (int i = 1; i < 6; i++) {
+            session.sendMessage(frame("/topic/room.red", Integer.toString(i)));
+        }
+        stalled.countDown();
+
+        assertEquals(listOf("0", "3", "4", "5"), waitForSent(4));
+        assertEquals(2, evictedMessageCount());
+    }
+
+    @Test
+    public void dropNewestKeepsTheQueuedMessages() throws Exception {
+        SlowConsumerWebSocketSessionDecorator session = stalledSession(SlowConsumerPolicy.DROP_NEWEST);
+        session.sendMessage(frame("/topic/room.red", "0"));
+        awaitFirstSend();
+        for (int i = 1; i < 6; i++) {
+            session.sendMessage(frame("/topic/room.red", Integer.toString(i)));
+        }
+        stalled.countDown();
+
+        assertEquals(listOf("0", "1", "2", "3"), waitForSent(4));
+        assertEquals(2, evictedMessageCount());
+    }
+
+    @Test
+    public void coalesceLatestKeepsTheLatestMessagePerDestination() throws Exception {
+        SlowConsumerWebSocketSessionDecorator session = stalledSession(SlowConsumerPolicy.COALESCE_LATEST);
+        session.sendMessage(frame("/topic/room.red", "0"));
+        awaitFirstSend();
+        session.sendMessage(frame("/topic/room.red", "1"));
+        session.sendMessage(frame("/topic/room.blue", "2"));
+        session.sendMessage(frame("/topic/room.red", "3"));
+        session.sendMessage(frame("/topic/room.red", "4"));
+        stalled.countDown();
+
+        assertEquals(listOf("0", "2", "4"), waitForSent(3));
+        assertEquals(2, evictedMessageCount());
+    }
+
+    @Test
+    public void disconnectClosesTheSession() throws Exception {
+        SlowConsumerWebSocketSessionDecorator session = stalledSession(SlowConsumerPolicy.DISCONNECT);
+        session.sendMessage(frame("/topic/room.red", "0"));
+        awaitFirstSend();
+        for (int i = 1; i < 5; i++) {
+            session.sendMessage(frame("/topic/room.red", Integer.toString(i)));
+        }
+        stalled.countDown();
+
+        verify(delegate, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void otherFramesAreNeverDropped() throws Exception {
+        SlowConsumerWebSocketSessionDecorator session = stalledSession(SlowConsumerPolicy.DROP_NEWEST);
+        session.sendMessage(frame("/topic/room.red", "0"));
+        awaitFirstSend();
+        for (int i = 1; i < 4; i++) {
+            session.sendMessage(frame("/topic/room.red", Integer.toString(i)));
+        }
+        session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n\u0000"));
+        stalled.countDown();
+
+        List<String> sent = waitForSent(5);
+        assertTrue(sent.get(4).startsWith("RECEIPT"));
+    }
+
+    private SlowConsumerWebSocketSessionDecorator stalledSession(SlowConsumerPolicy policy) throws Exception {
+        when(delegate.getId()).thenReturn("session-1");
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            firstSendStarted.countDown();
+            stalled.await(5, TimeUnit.SECONDS);
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            sentPayloads.add(message.getPayload().toString());
+            return null;
+        }).when(delegate).sendMessage(any());
+        return new SlowConsumerWebSocketSessionDecorator(delegate, executor, eventPublisher,
+                policy, MAX_BUFFER_SIZE, 60000, CloseStatus.SESSION_NOT_RELIABLE, true);
+    }
+
+    private void awaitFirstSend() throws InterruptedException {
+        assertTrue(firstSendStarted.await(1, TimeUnit.SECONDS));
+    }
+
+    private List<String> waitForSent(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && sentPayloads.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        return sentPayloads.stream()
+                .map(payload -> payload.startsWith("MESSAGE") ? payload.substring(payload.indexOf("\n\n") + 2, payload.length() - 1) : payload)
+                .collect(Collectors.toList());
+    }
+
+    private int evictedMessageCount() {
+        return events.stream().mapToInt(event -> ((SlowConsumerEvent) event).getEvictedMessageCount()).sum();
+    }
+
+    private static List<String> listOf(String... payloads) {
+        return Arrays.asList(payloads);
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\nmessage-id:1\n\n" + body + "\u0000");
+    }
+}
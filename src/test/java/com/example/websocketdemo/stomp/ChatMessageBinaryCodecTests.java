@@ -0,0 +1,43 @@
+package com.example.websocketdemo.stomp;
+
+import com.example.websocketdemo.model.ChatMessage;
+import org.junit.Test;
+import org.springframework.messaging.converter.MessageConversionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ChatMessageBinaryCodecTests {
+
+    @Test
+    public void roundTrip() {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setType(ChatMessage.MessageType.JOIN);
+        chatMessage.setSender("bob");
+
+        byte[] encoded = ChatMessageBinaryCodec.encode(chatMessage);
+        assertArrayEquals(new byte[]{1, 2, 4, 'b', 'o', 'b', 0}, encoded);
+        ChatMessage decoded = ChatMessageBinaryCodec.decode(encoded);
+        assertEquals(ChatMessage.MessageType.JOIN, decoded.getType());
+        assertEquals("bob", decoded.getSender());
+        assertNull(decoded.getContent());
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void rejectsAFifthLengthByteOverTheHighBits() {
+        // 0x10 in the 5th byte would be shifted out of the int.
+        ChatMessageBinaryCodec.decode(new byte[]{1, 2, (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 0});
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void rejectsANegativeLength() {
+        // 0xFFFFFFFF, so a length of -2.
+        ChatMessageBinaryCodec.decode(new byte[]{1, 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0});
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void rejectsALengthOverTheRemainingBytes() {
+        ChatMessageBinaryCodec.decode(new byte[]{1, 2, 10, 'b', 'o', 'b', 0});
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.websocketdemo.stomp;
+
+import com.example.websocketdemo.interceptor.ResumableSessionChannelInterceptor;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SharedPayloadStompEncoderTests {
+
+    // The same object for every subscriber, like the SimpleBrokerMessageHandler gives them.
+    private final byte[] payload = "{\"type\":\"CHAT\",\"content\":\"hello\",\"sender\":\"alice\"}".getBytes(StandardCharsets.UTF_8);
+
+    // Kept across the frames, so the ones after the first are made from its FrameTemplate.
+    private final SharedPayloadStompEncoder sharedPayloadStompEncoder = new SharedPayloadStompEncoder(0);
+
+    @Test
+    public void theFramesAreTheOnesOfStompEncoder() throws Exception {
+        assertSameFrames("session-1", "sub-0", null, null);
+        assertSameFrames("session-2", "sub-1", null, null);
+        assertSameFrames("session-3", "sub-0", "42", null);
+    }
+
+    @Test
+    public void theFramesWithHeadersToEscapeAreTheOnesOfStompEncoder() throws Exception {
+        assertSameFrames("session-1", "sub:0\\a", null, "a:b\nc\\d");
+        assertSameFrames("session-2", "sub\r1", "7", "a:b\nc\\d");
+        assertSameFrames("session-3", "sub-2", null, "plain");
+    }
+
+    /**
+     * Sends the MESSAGE of the broker through a StompSubProtocolHandler with each encoder, and compares the frames.
+     */
+    private void assertSameFrames(String sessionId, String subscriptionId, String sessionSequence, String roomHeader) throws Exception {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headerAccessor.setSessionId(sessionId);
+        headerAccessor.setSubscriptionId(subscriptionId);
+        headerAccessor.setDestination("/topic/public");
+        headerAccessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (roomHeader != null) {
+            headerAccessor.setNativeHeader("room", roomHeader);
+        }
+        if (sessionSequence != null) {
+            headerAccessor.setNativeHeader(ResumableSessionChannelInterceptor.SESSION_SEQUENCE_HEADER, sessionSequence);
+        }
+        // Or the StompSubProtocolHandler makes one from a counter, which is another one for each encoder.
+        headerAccessor.setNativeHeader(StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER, sessionId + ":" + subscriptionId);
+        Message<byte[]> message = MessageBuilder.createMessage(payload, headerAccessor.getMessageHeaders());
+
+        assertEquals(frame(new StompEncoder(), sessionId, message), frame(sharedPayloadStompEncoder, sessionId, message));
+        // Below the minimum payload size, the SharedPayloadStompEncoder leaves it to the StompEncoder.
+        assertEquals(frame(new StompEncoder(), sessionId, message), frame(new SharedPayloadStompEncoder(Integer.MAX_VALUE), sessionId, message));
+    }
+
+    private static String frame(StompEncoder stompEncoder, String sessionId, Message<byte[]> message) throws Exception {
+        StompSubProtocolHandler stompSubProtocolHandler = new StompSubProtocolHandler();
+        stompSubProtocolHandler.setEncoder(stompEncoder);
+        WebSocketSession webSocketSession = mock(WebSocketSession.class);
+        when(webSocketSession.getId()).thenReturn(sessionId);
+        when(webSocketSession.isOpen()).thenReturn(true);
+        stompSubProtocolHandler.handleMessageToClient(webSocketSession, message);
+        ArgumentCaptor<TextMessage> textMessage = ArgumentCaptor.forClass(TextMessage.class);
+        verify(webSocketSession, times(1)).sendMessage(textMessage.capture());
+        return textMessage.getValue().getPayload();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.websocketdemo.user;
+
+import org.junit.Test;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpUser;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardedSimpUserRegistryTests {
+
+    private final ShardedSimpUserRegistry userRegistry = new ShardedSimpUserRegistry(4);
+
+    @Test
+    public void keepsTheSessionsOfEachUser() {
+        userRegistry.addSession("alice", "session-1");
+        userRegistry.addSession("alice", "session-2");
+        userRegistry.addSession("bob", "session-3");
+
+        assertEquals(new HashSet<>(Arrays.asList("session-1", "session-2")), sessionIds(userRegistry.getUser("alice")));
+        assertEquals(2, userRegistry.getUserCount());
+        assertEquals(3, userRegistry.getSessionCount());
+        assertNull(userRegistry.getUser("carol"));
+    }
+
+    @Test
+    public void removesTheUserWithItsLastSession() {
+        userRegistry.addSession("alice", "session-1");
+        userRegistry.addSession("alice", "session-2");
+
+        userRegistry.removeSession("session-1");
+        assertEquals(new HashSet<>(Arrays.asList("session-2")), sessionIds(userRegistry.getUser("alice")));
+        userRegistry.removeSession("session-2");
+        userRegistry.removeSession("session-2");
+        assertNull(userRegistry.getUser("alice"));
+        assertEquals(0, userRegistry.getUserCount());
+    }
+
+    @Test
+    public void findsTheSubscriptionsOfTheSessions() {
+        userRegistry.addSession("alice", "session-1");
+        userRegistry.addSession("bob", "session-2");
+        userRegistry.addSubscription("session-1", "sub-1", "/user/queue/messages");
+        userRegistry.addSubscription("session-2", "sub-1", "/topic/public");
+
+        assertEquals(1, userRegistry.findSubscriptions(subscription -> subscription.getDestination().startsWith("/user/")).size());
+        userRegistry.removeSubscription("session-1", "sub-1");
+        assertEquals(0, userRegistry.findSubscriptions(subscription -> subscription.getDestination().startsWith("/user/")).size());
+    }
+
+    private static Set<String> sessionIds(SimpUser user) {
+        return user.getSessions().stream().map(SimpSession::getId).collect(Collectors.toSet());
+    }
+}